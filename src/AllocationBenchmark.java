@@ -0,0 +1,110 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures the bytes each engine allocates per query, the garbage that drives
+ * young collections under load, with the JVM's per-thread allocation counter.
+ * Every engine is measured through topMatches(String, int), iterating the
+ * results; a BufferedAutocompletor is measured again through
+ * topMatches(CharSequence, ResultBuffer), with a StringBuilder prefix and one
+ * buffer reused for every query, which should allocate nothing once warm.
+ *
+ * % java AllocationBenchmark data/cities.txt 20000
+ *
+ * warms each engine up on 20000 queries and then measures 20000 more: random
+ * prefixes of random terms, k = 10. Class names after the number restrict
+ * the measurement to those engines.
+ */
+public class AllocationBenchmark {
+
+	private static final int K = 10;
+
+	public static void main(String[] args) throws FileNotFoundException {
+		File file = new File(args.length >= 1 ? args[0] : "data/cities.txt");
+		int queries = args.length >= 2 ? Integer.parseInt(args[1]) : 20000;
+		String[] engines = args.length >= 3 ? Arrays.copyOfRange(args, 2, args.length)
+				: AutocompletorBenchmark.ENGINES;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.out.println("This JVM does not count allocated bytes per thread");
+			return;
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+		Dictionary dictionary = Dictionary.read(file, false);
+		String[] terms = dictionary.getTerms();
+		Random random = new Random(1234);
+		StringBuilder[] prefixes = new StringBuilder[queries];
+		for (int i = 0; i < queries; i++) {
+			String term = terms[random.nextInt(terms.length)];
+			prefixes[i] = new StringBuilder(term.substring(0, random.nextInt(Math.min(term.length(), 6) + 1)));
+		}
+		String[] strings = new String[queries];
+		for (int i = 0; i < queries; i++) {
+			strings[i] = prefixes[i].toString();
+		}
+		System.out.println(file + " (" + dictionary.size() + " terms), " + queries + " queries, k = " + K);
+		System.out.println(String.format("%-26s %14s %10s %14s %10s", "engine", "B/query", "ns/query",
+				"buffered B/q", "ns/query"));
+		for (String engine : engines) {
+			Autocompletor auto;
+			try {
+				auto = dictionary.newAutocompletor(engine);
+			} catch (IllegalArgumentException e) {
+				System.out.println(String.format("%-26s %s", engine, e.getMessage()));
+				continue;
+			}
+			long thread = Thread.currentThread().getId();
+			// the first pass warms up, the second is measured
+			long[] iterated = null;
+			for (int pass = 0; pass < 2; pass++) {
+				long bytes = threads.getThreadAllocatedBytes(thread);
+				long start = System.nanoTime();
+				long found = 0;
+				for (String prefix : strings) {
+					for (String word : auto.topMatches(prefix, K)) {
+						found++;
+					}
+				}
+				long nanos = System.nanoTime() - start;
+				iterated = new long[] { threads.getThreadAllocatedBytes(thread) - bytes, nanos, found };
+			}
+			String buffered = String.format("%14s %10s", "-", "-");
+			if (auto instanceof BufferedAutocompletor) {
+				BufferedAutocompletor b = (BufferedAutocompletor) auto;
+				ResultBuffer results = new ResultBuffer(K);
+				long[] measured = null;
+				for (int pass = 0; pass < 2; pass++) {
+					long bytes = threads.getThreadAllocatedBytes(thread);
+					long start = System.nanoTime();
+					long found = 0;
+					for (StringBuilder prefix : prefixes) {
+						found += b.topMatches(prefix, results);
+					}
+					long nanos = System.nanoTime() - start;
+					measured = new long[] { threads.getThreadAllocatedBytes(thread) - bytes, nanos, found };
+				}
+				if (measured[2] != iterated[2]) {
+					System.out.println(engine + ": buffered queries found " + measured[2] + " words, not "
+							+ iterated[2]);
+				}
+				buffered = String.format("%14.1f %10.0f", (double) measured[0] / queries,
+						(double) measured[1] / queries);
+			}
+			System.out.println(String.format("%-26s %14.1f %10.0f %s", engine, (double) iterated[0] / queries,
+					(double) iterated[1] / queries, buffered));
+			if (auto instanceof Closeable) {
+				try {
+					((Closeable) auto).close();
+				} catch (IOException e) {
+					// only the measurement matters
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+import java.util.Arrays;
+
+/**
+ * A set of attribute ids, such as a country or a category, that suggestions
+ * are restricted to: a term passes if it has any of them. Ids are
+ * non-negative ints chosen by the caller.
+ *
+ * Engines summarize the attributes under a subtree or in a range of terms
+ * as a 32-bit mask, each id setting one bit chosen by hashing it, so a
+ * summary is a small Bloom filter. A summary that shares no bit with the
+ * filter's cannot hold a passing term and is skipped whole; one that does
+ * may still hold none, and its terms are checked exactly.
+ */
+public class AttributeFilter {
+
+	private final int[] myIds;
+	private final int mySummary;
+
+	/**
+	 * @throws NullPointerException
+	 *             if ids is null
+	 * @throws IllegalArgumentException
+	 *             if any id is negative
+	 */
+	public AttributeFilter(int... ids) {
+		if (ids == null) {
+			throw new NullPointerException("Invalid ids");
+		}
+		myIds = sortedIds(ids);
+		mySummary = summary(myIds);
+	}
+
+	/**
+	 * A sorted copy of ids without repeats
+	 *
+	 * @throws IllegalArgumentException
+	 *             if any id is negative
+	 */
+	static int[] sortedIds(int[] ids) {
+		int[] sorted = ids.clone();
+		Arrays.sort(sorted);
+		int n = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (sorted[i] < 0) {
+				throw new IllegalArgumentException("Negative attribute id:" + sorted[i]);
+			}
+			if (n == 0 || sorted[n - 1] != sorted[i]) {
+				sorted[n++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(sorted, n);
+	}
+
+	/**
+	 * The summary bit of id
+	 */
+	static int bit(int id) {
+		return 1 << (id * 0x9E3779B9 >>> 27);
+	}
+
+	/**
+	 * The summary of ids[from, to)
+	 */
+	static int summary(int[] ids, int from, int to) {
+		int summary = 0;
+		for (int i = from; i < to; i++) {
+			summary |= bit(ids[i]);
+		}
+		return summary;
+	}
+
+	static int summary(int[] ids) {
+		return summary(ids, 0, ids.length);
+	}
+
+	/**
+	 * Whether a subtree or range with this summary may hold a passing term
+	 */
+	public boolean mayMatch(int summary) {
+		return (summary & mySummary) != 0;
+	}
+
+	/**
+	 * Whether the sorted ids[from, to) include any of this filter's
+	 */
+	public boolean accepts(int[] ids, int from, int to) {
+		int i = from;
+		int j = 0;
+		while (i < to && j < myIds.length) {
+			if (ids[i] < myIds[j]) {
+				i++;
+			} else if (ids[i] > myIds[j]) {
+				j++;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public boolean accepts(int id) {
+		return Arrays.binarySearch(myIds, id) >= 0;
+	}
+
+	public int getSummary() {
+		return mySummary;
+	}
+
+	public String toString() {
+		return Arrays.toString(myIds);
+	}
+}
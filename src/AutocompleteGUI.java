@@ -45,13 +45,11 @@ import java.awt.event.MouseListener;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.LinkedList;
 import java.util.Locale;
 import java.util.Queue;
-import java.util.Scanner;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -77,6 +75,14 @@ public class AutocompleteGUI extends JFrame {
 	public static final String CHARSET = "UTF-8";
 	public static final Locale LOCALE = Locale.US;
 
+	// how long a selected suggestion's boost takes to halve, and how many
+	// selections are remembered
+	private static final long BOOST_HALF_LIFE = 10 * 60 * 1000;
+	private static final int BOOST_CAPACITY = 256;
+
+	// how often the dictionary file is checked for changes
+	private static final long RELOAD_PERIOD = 2000;
+
 	// display top k results
 	private final int k;
 	private final String autocompletorClassName;
@@ -138,6 +144,8 @@ public class AutocompleteGUI extends JFrame {
 	private class AutocompletePanel extends JPanel {
 		private final JTextField searchText;
 		private Autocompletor auto;
+		// this user's recently selected suggestions, ranked above the rest
+		private UserBoosts boosts;
 		private String[] results = new String[k];
 		private JList<String> suggestions;
 
@@ -149,26 +157,33 @@ public class AutocompleteGUI extends JFrame {
 		public AutocompletePanel(String filename) {
 			super();
 
-			// read in the data
-			Scanner in;
+			// read in the data and create the autocomplete object, rebuilt in
+			// the background whenever the file changes
 			try {
-				in = new Scanner(new File(filename), CHARSET);
-				in.useLocale(LOCALE);
-				int N = Integer.parseInt(in.nextLine());
-				String[] terms = new String[N];
-				double[] weights = new double[N];
-				for (int i = 0; i < N; i++) {
-					String line = in.nextLine();
-					int tab = line.indexOf('\t');
-					weights[i] = Double.parseDouble(line.substring(0, tab).trim());
-					terms[i] = line.substring(tab + 1);
+				ManagedAutocompletor managed = new ManagedAutocompletor(new File(filename), false,
+						autocompletorClassName);
+				if (managed.getChoice() != null) {
+					System.out.println(managed.getChoice().getReason());
 				}
-				// create the autocomplete object
-				auto = (Autocompletor) Class.forName(autocompletorClassName)
-						.getDeclaredConstructor(String[].class, double[].class).newInstance(terms, weights);
+				managed.addListener(new ManagedAutocompletor.Listener() {
+					public void swapped(Autocompletor previous, Autocompletor current, Dictionary dictionary,
+							long buildNanos) {
+						System.out.println("Reloaded " + dictionary.size() + " words from " + filename + " in "
+								+ buildNanos / 1E9 + "s");
+					}
 
-			} catch (InstantiationException | IllegalAccessException | ClassNotFoundException | IllegalArgumentException
-					| InvocationTargetException | NoSuchMethodException | SecurityException e1) {
+					public void failed(Exception e) {
+						System.out.println("Cannot reload " + filename + ": " + e);
+					}
+				});
+				managed.watch(RELOAD_PERIOD);
+				auto = managed;
+				// a selection is worth as much as the heaviest term, fading
+				// by half every BOOST_HALF_LIFE
+				boosts = new UserBoosts(auto.weightOf(auto.topMatch("")), BOOST_HALF_LIFE, BOOST_CAPACITY);
+				auto = new PersonalizedAutocomplete(auto, boosts);
+
+			} catch (IllegalArgumentException e1) {
 				e1.printStackTrace();
 				System.exit(1);
 			} catch (FileNotFoundException e2) {
@@ -273,6 +288,7 @@ public class AutocompleteGUI extends JFrame {
 						int index = theList.locationToIndex(mouseEvent.getPoint());
 						if (index >= 0) {
 							String selection = getSelectedText();
+							boosts.select(selection);
 							searchText.setText(selection);
 							String text = searchText.getText();
 							getSuggestions(text);
@@ -299,6 +315,9 @@ public class AutocompleteGUI extends JFrame {
 			});
 			searchText.addActionListener(new ActionListener() {
 				public void actionPerformed(ActionEvent e) {
+					if (!suggestions.isSelectionEmpty()) {
+						boosts.select(getSelectedText());
+					}
 					String selection = getSelectedText();
 					searchText.setText(selection);
 					getSuggestions(selection);
@@ -16,12 +16,23 @@ public class AutocompleteMain {
 	final static String BRUTE_AUTOCOMPLETE = "BruteAutocomplete";
 	final static String BINARY_SEARCH_AUTOCOMPLETE = "BinarySearchAutocomplete";
 	final static String TRIE_AUTOCOMPLETE = "TrieAutocomplete";
+	final static String TERNARY_SEARCH_AUTOCOMPLETE = "TernarySearchAutocomplete";
+	final static String FST_AUTOCOMPLETE = "FSTAutocomplete";
+	final static String LAZY_TRIE_AUTOCOMPLETE = "LazyTrieAutocomplete";
+	final static String DISK_AUTOCOMPLETE = "DiskAutocomplete";
+	/* Chosen for each dictionary by AutocompletorFactory's cost model */
+	final static String AUTOMATIC = AutocompletorFactory.AUTOMATIC;
 
 	/* Modify name of Autocompletor implementation as necessary */
 	
 	//final static String AUTOCOMPLETOR_CLASS_NAME = BRUTE_AUTOCOMPLETE;
 	//final static String AUTOCOMPLETOR_CLASS_NAME = BINARY_SEARCH_AUTOCOMPLETE;
-	final static String AUTOCOMPLETOR_CLASS_NAME = TRIE_AUTOCOMPLETE;
+	//final static String AUTOCOMPLETOR_CLASS_NAME = TERNARY_SEARCH_AUTOCOMPLETE;
+	//final static String AUTOCOMPLETOR_CLASS_NAME = FST_AUTOCOMPLETE;
+	//final static String AUTOCOMPLETOR_CLASS_NAME = LAZY_TRIE_AUTOCOMPLETE;
+	//final static String AUTOCOMPLETOR_CLASS_NAME = DISK_AUTOCOMPLETE;
+	//final static String AUTOCOMPLETOR_CLASS_NAME = TRIE_AUTOCOMPLETE;
+	final static String AUTOCOMPLETOR_CLASS_NAME = AUTOMATIC;
 
 	public static void main(String[] args) {
 		String filename = null;
@@ -0,0 +1,419 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves an Autocompletor over HTTP using the JDK's built in HttpServer. Every
+ * request runs on its own virtual thread (or a pooled platform thread on JDKs
+ * without virtual threads). Three JSON endpoints are exposed:
+ *
+ * <pre>
+ *   GET /topMatches?prefix=ca&amp;k=3  -&gt; {"prefix":"ca","k":3,"matches":["car","cat"]}
+ *   GET /topMatch?prefix=ca         -&gt; {"prefix":"ca","match":"car"}
+ *   GET /weightOf?term=car          -&gt; {"term":"car","weight":7.0}
+ * </pre>
+ *
+ * Responses are sent with a fixed Content-Length so HTTP/1.1 clients can keep
+ * their connections alive between requests. JSON is written by pooled
+ * ResponseEncoders straight into a reusable byte buffer, so answering a request
+ * does not build intermediate Strings.
+ *
+ * Run from main, the server watches the dictionary file and swaps in an
+ * engine rebuilt from it whenever it changes. main also calls useNoDelay:
+ * headers and body are separate writes, and without TCP_NODELAY every
+ * keep-alive response waits on the client's delayed ACK. The property it sets
+ * applies to every HttpServer in the JVM, so a program embedding this class
+ * decides it for itself, with -Dsun.net.httpserver.nodelay=true or by calling
+ * useNoDelay before its first server is created.
+ *
+ * % java AutocompleteServer data/cities.txt TrieAutocomplete 8080
+ */
+public class AutocompleteServer {
+
+	public static final int DEFAULT_PORT = 8080;
+	public static final int DEFAULT_K = 10;
+	/**
+	 * Milliseconds between checks of the dictionary file for changes
+	 */
+	public static final long RELOAD_PERIOD = 2000;
+
+	/**
+	 * Maximum number of idle encoders kept for reuse
+	 */
+	private static final int ENCODER_POOL_SIZE = 256;
+
+	private final Autocompletor myAutocompletor;
+	private final HttpServer myServer;
+	private final ExecutorService myExecutor;
+	private final ArrayBlockingQueue<ResponseEncoder> myEncoders = new ArrayBlockingQueue<ResponseEncoder>(
+			ENCODER_POOL_SIZE);
+
+	/**
+	 * Creates a server for auto, listening on port. Use port 0 to pick any free
+	 * port. The server does not accept requests until start is called.
+	 *
+	 * @throws NullPointerException
+	 *             if auto is null
+	 * @throws IOException
+	 *             if the port cannot be bound
+	 */
+	public AutocompleteServer(Autocompletor auto, int port) throws IOException {
+		if (auto == null) {
+			throw new NullPointerException("Autocompletor is null");
+		}
+		myAutocompletor = auto;
+		myServer = HttpServer.create(new InetSocketAddress(port), 0);
+		myExecutor = VirtualThreads.newThreadPerTaskExecutor();
+		myServer.setExecutor(myExecutor);
+		myServer.createContext("/topMatches", new Endpoint() {
+			void answer(HttpExchange exchange, String query, ResponseEncoder out) {
+				String prefix = param(query, "prefix", "");
+				int k = Integer.parseInt(param(query, "k", "" + DEFAULT_K));
+				out.beginObject();
+				out.name("prefix").value(prefix);
+				out.name("k").value(k);
+				out.name("matches").beginArray();
+				for (String match : myAutocompletor.topMatches(prefix, k)) {
+					out.value(match);
+				}
+				out.endArray();
+				out.endObject();
+			}
+		});
+		myServer.createContext("/topMatch", new Endpoint() {
+			void answer(HttpExchange exchange, String query, ResponseEncoder out) {
+				String prefix = param(query, "prefix", "");
+				out.beginObject();
+				out.name("prefix").value(prefix);
+				out.name("match").value(myAutocompletor.topMatch(prefix));
+				out.endObject();
+			}
+		});
+		myServer.createContext("/weightOf", new Endpoint() {
+			void answer(HttpExchange exchange, String query, ResponseEncoder out) {
+				String term = param(query, "term", null);
+				if (term == null) {
+					throw new IllegalArgumentException("Missing parameter: term");
+				}
+				out.beginObject();
+				out.name("term").value(term);
+				out.name("weight").value(myAutocompletor.weightOf(term));
+				out.endObject();
+			}
+		});
+	}
+
+	/**
+	 * Sets sun.net.httpserver.nodelay unless it is already set; it is read
+	 * once, so this must run before the JVM's first HttpServer is created
+	 */
+	public static void useNoDelay() {
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	public void start() {
+		myServer.start();
+	}
+
+	/**
+	 * Stops accepting requests, waiting up to delaySeconds for requests in
+	 * progress to finish.
+	 */
+	public void stop(int delaySeconds) {
+		myServer.stop(delaySeconds);
+		myExecutor.shutdown();
+	}
+
+	/**
+	 * The port this server listens on
+	 */
+	public int getPort() {
+		return myServer.getAddress().getPort();
+	}
+
+	private ResponseEncoder borrowEncoder() {
+		ResponseEncoder encoder = myEncoders.poll();
+		return encoder == null ? new ResponseEncoder() : encoder;
+	}
+
+	private void returnEncoder(ResponseEncoder encoder) {
+		encoder.reset();
+		myEncoders.offer(encoder);
+	}
+
+	/**
+	 * Returns the decoded value of the named parameter in a raw query string, or
+	 * defaultValue if the parameter is absent.
+	 */
+	static String param(String query, String name, String defaultValue) {
+		if (query == null) {
+			return defaultValue;
+		}
+		int start = 0;
+		while (start <= query.length()) {
+			int end = query.indexOf('&', start);
+			if (end < 0) {
+				end = query.length();
+			}
+			int eq = query.indexOf('=', start);
+			if (eq > start && eq < end && eq - start == name.length() && query.startsWith(name, start)) {
+				try {
+					return URLDecoder.decode(query.substring(eq + 1, end), "UTF-8");
+				} catch (UnsupportedEncodingException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			start = end + 1;
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Common request handling: only GET is allowed, bad parameters become a 400
+	 * response, and the encoded body is sent with a fixed length.
+	 */
+	private abstract class Endpoint implements HttpHandler {
+
+		abstract void answer(HttpExchange exchange, String query, ResponseEncoder out);
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			ResponseEncoder out = borrowEncoder();
+			try {
+				int status = 200;
+				if (!"GET".equals(exchange.getRequestMethod())) {
+					status = 405;
+					out.error("Only GET is supported");
+				} else {
+					try {
+						answer(exchange, exchange.getRequestURI().getRawQuery(), out);
+					} catch (IllegalArgumentException | NullPointerException e) {
+						// NumberFormatException is an IllegalArgumentException
+						status = 400;
+						out.reset();
+						out.error(e.getMessage() == null ? e.toString() : e.getMessage());
+					}
+				}
+				exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+				exchange.sendResponseHeaders(status, out.size());
+				OutputStream body = exchange.getResponseBody();
+				out.writeTo(body);
+				body.close();
+			} finally {
+				returnEncoder(out);
+				exchange.close();
+			}
+		}
+	}
+
+	/**
+	 * Minimal JSON writer that encodes directly into a growable UTF-8 byte
+	 * buffer. The buffer is kept between uses, so once it has grown to the size
+	 * of a typical response, encoding allocates nothing.
+	 */
+	static class ResponseEncoder {
+		private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+		private byte[] myBuffer = new byte[512];
+		private int mySize;
+		/**
+		 * Whether the next value or name needs a comma before it
+		 */
+		private boolean myNeedsComma;
+
+		void reset() {
+			mySize = 0;
+			myNeedsComma = false;
+		}
+
+		int size() {
+			return mySize;
+		}
+
+		void writeTo(OutputStream out) throws IOException {
+			out.write(myBuffer, 0, mySize);
+		}
+
+		ResponseEncoder beginObject() {
+			separate();
+			put('{');
+			myNeedsComma = false;
+			return this;
+		}
+
+		ResponseEncoder endObject() {
+			put('}');
+			myNeedsComma = true;
+			return this;
+		}
+
+		ResponseEncoder beginArray() {
+			separate();
+			put('[');
+			myNeedsComma = false;
+			return this;
+		}
+
+		ResponseEncoder endArray() {
+			put(']');
+			myNeedsComma = true;
+			return this;
+		}
+
+		ResponseEncoder name(String name) {
+			value(name);
+			put(':');
+			myNeedsComma = false;
+			return this;
+		}
+
+		ResponseEncoder value(String s) {
+			separate();
+			put('"');
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				if (c == '"' || c == '\\') {
+					put('\\');
+					put(c);
+				} else if (c < 0x20) {
+					put('\\');
+					put('u');
+					put('0');
+					put('0');
+					put(HEX[c >> 4]);
+					put(HEX[c & 0xF]);
+				} else if (c < 0x80) {
+					put(c);
+				} else if (c < 0x800) {
+					put(0xC0 | (c >> 6));
+					put(0x80 | (c & 0x3F));
+				} else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+						&& Character.isLowSurrogate(s.charAt(i + 1))) {
+					int cp = Character.toCodePoint(c, s.charAt(++i));
+					put(0xF0 | (cp >> 18));
+					put(0x80 | ((cp >> 12) & 0x3F));
+					put(0x80 | ((cp >> 6) & 0x3F));
+					put(0x80 | (cp & 0x3F));
+				} else {
+					put(0xE0 | (c >> 12));
+					put(0x80 | ((c >> 6) & 0x3F));
+					put(0x80 | (c & 0x3F));
+				}
+			}
+			put('"');
+			myNeedsComma = true;
+			return this;
+		}
+
+		ResponseEncoder value(long n) {
+			separate();
+			if (n < 0) {
+				put('-');
+			}
+			int start = mySize;
+			// digits of a negative n are taken negated, as -Long.MIN_VALUE
+			// does not fit in a long
+			do {
+				put((int) ('0' + Math.abs(n % 10)));
+				n /= 10;
+			} while (n != 0);
+			// digits were written least significant first
+			for (int i = start, j = mySize - 1; i < j; i++, j--) {
+				byte tmp = myBuffer[i];
+				myBuffer[i] = myBuffer[j];
+				myBuffer[j] = tmp;
+			}
+			myNeedsComma = true;
+			return this;
+		}
+
+		ResponseEncoder value(double d) {
+			if (d == (long) d && Math.abs(d) < 1E15) {
+				value((long) d);
+				put('.');
+				put('0');
+				return this;
+			}
+			separate();
+			// JSON has no NaN or Infinity
+			String s = Double.isNaN(d) || Double.isInfinite(d) ? "null" : Double.toString(d);
+			for (int i = 0; i < s.length(); i++) {
+				put(s.charAt(i));
+			}
+			myNeedsComma = true;
+			return this;
+		}
+
+		void error(String message) {
+			beginObject();
+			name("error").value(message);
+			endObject();
+		}
+
+		private void separate() {
+			if (myNeedsComma) {
+				put(',');
+			}
+		}
+
+		private void put(int b) {
+			if (mySize == myBuffer.length) {
+				byte[] bigger = new byte[myBuffer.length * 2];
+				System.arraycopy(myBuffer, 0, bigger, 0, mySize);
+				myBuffer = bigger;
+			}
+			myBuffer[mySize++] = (byte) b;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: java AutocompleteServer <dictionary file> [class name] [port]");
+			System.exit(1);
+		}
+		String className = args.length >= 2 ? args[1] : AutocompleteMain.AUTOCOMPLETOR_CLASS_NAME;
+		int port = args.length >= 3 ? Integer.parseInt(args[2]) : DEFAULT_PORT;
+		final String filename = args[0];
+		useNoDelay();
+		long startTime = System.nanoTime();
+		ManagedAutocompletor auto = new ManagedAutocompletor(new File(filename), false, className);
+		System.out.println("Loaded " + auto.getDictionary().size() + " words into " + className + " in "
+				+ (System.nanoTime() - startTime) / 1E9 + "s");
+		if (auto.getChoice() != null) {
+			System.out.println(auto.getChoice().getReason());
+		}
+		// pick up changes to the file without a restart
+		auto.addListener(new ManagedAutocompletor.Listener() {
+			public void swapped(Autocompletor previous, Autocompletor current, Dictionary dictionary,
+					long buildNanos) {
+				System.out.println("Reloaded " + dictionary.size() + " words from " + filename + " in "
+						+ buildNanos / 1E9 + "s");
+			}
+
+			public void failed(Exception e) {
+				System.out.println("Cannot reload " + filename + ": " + e);
+			}
+		});
+		auto.watch(RELOAD_PERIOD);
+		final AutocompleteServer server = new AutocompleteServer(auto, port);
+		server.start();
+		System.out.println("Listening on port " + server.getPort()
+				+ (VirtualThreads.isAvailable() ? " (virtual threads)" : " (platform threads)"));
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				server.stop(1);
+			}
+		});
+	}
+}
@@ -0,0 +1,161 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local load test for AutocompleteServer. Starts a server on a free port and
+ * drives it with an increasing number of client threads, each of which sends
+ * topMatches requests back to back over its own keep-alive connection. For
+ * every concurrency level the sustained requests/sec and latency distribution
+ * are printed, followed by the highest throughput whose p99 stayed within the
+ * target.
+ *
+ * % java AutocompleteServerBenchmark data/cities.txt TrieAutocomplete 64 5 10
+ *
+ * runs up to 64 clients, 5 seconds per level, with a 10ms p99 target.
+ */
+public class AutocompleteServerBenchmark {
+
+	public static Random ourRandom = new Random(1234);
+
+	private static final int NUM_URLS = 4096;
+	private static final int WARMUP_MILLIS = 1000;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: java AutocompleteServerBenchmark <dictionary file> [class name] "
+					+ "[max clients] [seconds per level] [p99 target ms]");
+			System.exit(1);
+		}
+		String className = args.length >= 2 ? args[1] : AutocompleteMain.AUTOCOMPLETOR_CLASS_NAME;
+		int maxClients = args.length >= 3 ? Integer.parseInt(args[2]) : 64;
+		int seconds = args.length >= 4 ? Integer.parseInt(args[3]) : 5;
+		double targetMillis = args.length >= 5 ? Double.parseDouble(args[4]) : 10;
+		// let every client keep its connection alive, the JDK default is 5
+		System.setProperty("http.maxConnections", "" + maxClients);
+		// or every keep-alive response waits on a delayed ACK
+		AutocompleteServer.useNoDelay();
+
+		Dictionary dictionary = Dictionary.read(new File(args[0]), true);
+		Autocompletor auto;
+		if (AutocompletorFactory.AUTOMATIC.equals(className)) {
+			AutocompletorFactory.Choice choice = dictionary.chooseAutocompletor(AutocompleteMain.K);
+			System.out.println(choice.getReason());
+			auto = choice.getEngine();
+		} else {
+			auto = dictionary.newAutocompletor(className);
+		}
+		AutocompleteServer server = new AutocompleteServer(auto, 0);
+		server.start();
+		System.out.println("Benchmarking " + className + " behind AutocompleteServer on port " + server.getPort()
+				+ (VirtualThreads.isAvailable() ? " (virtual threads)" : " (platform threads)"));
+
+		URL[] urls = randomQueries(dictionary.getTerms(), server.getPort());
+		double bestThroughput = 0;
+		int bestClients = 0;
+		try {
+			for (int clients = 1; clients <= maxClients; clients *= 2) {
+				run(urls, clients, WARMUP_MILLIS, new Histogram());
+				Histogram latencies = new Histogram();
+				long ops = run(urls, clients, seconds * 1000L, latencies);
+				double throughput = ops / (double) seconds;
+				double p99Millis = latencies.percentile(99) / 1E6;
+				System.out.println(String.format("%4d clients: %10.0f req/s  %s", clients, throughput,
+						latencies.toLatencyString()));
+				if (p99Millis <= targetMillis && throughput > bestThroughput) {
+					bestThroughput = throughput;
+					bestClients = clients;
+				}
+			}
+		} finally {
+			server.stop(0);
+		}
+		if (bestClients == 0) {
+			System.out.println("No concurrency level met the p99 target of " + targetMillis + "ms");
+		} else {
+			System.out.println(String.format("Sustained %.0f req/s at p99 <= %.1fms with %d clients", bestThroughput,
+					targetMillis, bestClients));
+		}
+	}
+
+	/**
+	 * Builds topMatches requests for 1 to 4 character prefixes of random terms,
+	 * with k a power of two between 1 and 16.
+	 */
+	static URL[] randomQueries(String[] terms, int port) throws IOException {
+		URL[] urls = new URL[NUM_URLS];
+		for (int i = 0; i < urls.length; i++) {
+			String word = terms[ourRandom.nextInt(terms.length)];
+			String prefix = word.substring(0, Math.min(word.length(), 1 + ourRandom.nextInt(4)));
+			int k = 1 << ourRandom.nextInt(5);
+			urls[i] = new URL("http://localhost:" + port + "/topMatches?prefix=" + URLEncoder.encode(prefix, "UTF-8")
+					+ "&k=" + k);
+		}
+		return urls;
+	}
+
+	/**
+	 * Sends requests from the given number of client threads for millis
+	 * milliseconds, recording each request's latency.
+	 *
+	 * @return the number of requests completed
+	 */
+	static long run(final URL[] urls, int clients, long millis, final Histogram latencies)
+			throws InterruptedException {
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicLong completed = new AtomicLong();
+		Thread[] threads = new Thread[clients];
+		for (int c = 0; c < clients; c++) {
+			final int seed = c;
+			threads[c] = new Thread() {
+				public void run() {
+					Random random = new Random(seed);
+					byte[] buffer = new byte[8192];
+					long count = 0;
+					while (!done.get()) {
+						long start = System.nanoTime();
+						try {
+							fetch(urls[random.nextInt(urls.length)], buffer);
+						} catch (IOException e) {
+							System.err.println("Request failed: " + e);
+							continue;
+						}
+						latencies.record(System.nanoTime() - start);
+						count++;
+					}
+					completed.addAndGet(count);
+				}
+			};
+			threads[c].start();
+		}
+		Thread.sleep(millis);
+		done.set(true);
+		for (Thread t : threads) {
+			t.join();
+		}
+		return completed.get();
+	}
+
+	/**
+	 * Performs one GET and drains the body so the connection goes back to the
+	 * JDK's keep-alive cache.
+	 */
+	static void fetch(URL url, byte[] buffer) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		int status = connection.getResponseCode();
+		if (status != 200) {
+			throw new IOException("HTTP " + status + " for " + url);
+		}
+		InputStream in = connection.getInputStream();
+		while (in.read(buffer) >= 0) {
+			// discard
+		}
+		in.close();
+	}
+}
@@ -3,6 +3,7 @@ import java.io.IOException;
 import java.util.Locale;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.swing.JFileChooser;
 
@@ -11,10 +12,36 @@ public class AutocompletorBenchmark {
 	public static Random ourRandom = new Random(1234);
 	public static final String CHARSET = "UTF-8";
 	public static final Locale LOCALE = Locale.US;
+
+	/**
+	 * Every Autocompletor implementation, for tools that compare them all
+	 */
+	public static final String[] ENGINES = { AutocompleteMain.BRUTE_AUTOCOMPLETE,
+			AutocompleteMain.BINARY_SEARCH_AUTOCOMPLETE, AutocompleteMain.TRIE_AUTOCOMPLETE,
+			AutocompleteMain.TERNARY_SEARCH_AUTOCOMPLETE, AutocompleteMain.FST_AUTOCOMPLETE,
+			AutocompleteMain.LAZY_TRIE_AUTOCOMPLETE, AutocompleteMain.DISK_AUTOCOMPLETE };
+
+	/**
+	 * The engine AutocompletorFactory chose for the dictionary benchmarked;
+	 * main calibrates before it times getInstance, which then only builds.
+	 * Other callers have getInstance choose for the first dictionary they
+	 * pass, and build the same engine for later ones.
+	 */
+	private static AutocompletorFactory.Choice ourChoice;
+
 	public static Autocompletor getInstance(String[] words, double[] weights) {
 		//return new BruteAutocomplete(words, weights);
 		//return new BinarySearchAutocomplete(words,weights);
-		return new TrieAutocomplete(words,weights);
+		//return new TernarySearchAutocomplete(words,weights);
+		//return new FSTAutocomplete(words,weights);
+		//return new LazyTrieAutocomplete(words,weights);
+		//return new DiskAutocomplete(words,weights);
+		//return new TrieAutocomplete(words,weights);
+		if (ourChoice == null) {
+			ourChoice = new AutocompletorFactory().choose(new Dictionary(words, weights), 10);
+			return ourChoice.getEngine();
+		}
+		return ourChoice.build(new Dictionary(words, weights));
 	}
 	// chooser allows users to select a file by navigating through
 	// directories
@@ -51,11 +78,41 @@ public class AutocompletorBenchmark {
 
 	public static long countNodes(Node root) {
 		long result = 1;
-		for (Node child : root.children.values())
-			result += countNodes(child);
+		for (int i = 0; i < root.slotCount(); i++)
+			if (root.slot(i) != null)
+				result += countNodes(root.slot(i));
 		return result;
 	}
 
+	/**
+	 * Times TrieAutocomplete's build on fork-join pools of 1, 2, 4... up to
+	 * the number of cores, and prints each speedup over the sequential build
+	 */
+	public static void reportParallelBuild(String[] terms, double[] weights) {
+		int cores = Runtime.getRuntime().availableProcessors();
+		double sequential = buildSeconds(terms, weights, null);
+		System.out.println("Sequential build - " + sequential + " (" + cores + " cores)");
+		for (int threads = 1; threads <= cores; threads = threads < cores && 2 * threads > cores ? cores
+				: 2 * threads) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			double seconds = buildSeconds(terms, weights, pool);
+			pool.shutdown();
+			System.out.println(String.format("Parallel build, %d threads - %f (%.2fx)", threads, seconds,
+					sequential / seconds));
+		}
+	}
+
+	// best of three, the first usually pays for class loading and compilation
+	private static double buildSeconds(String[] terms, double[] weights, ForkJoinPool pool) {
+		double best = Double.MAX_VALUE;
+		for (int trial = 0; trial < 3; trial++) {
+			long start = System.nanoTime();
+			new TrieAutocomplete(terms, weights, WeightEncoding.RANK, pool);
+			best = Math.min(best, (System.nanoTime() - start) / 1E9);
+		}
+		return best;
+	}
+
 		public static void main(String[] args) {
 		
 		Scanner in = null;
@@ -83,12 +140,19 @@ public class AutocompletorBenchmark {
 			System.exit(0);
 		}
 		long startTime = System.nanoTime();
+		ourChoice = new AutocompletorFactory().choose(new Dictionary(terms, weights), 10);
+		System.out.println(ourChoice.getReason());
+		System.out.println("Time to choose - " + (System.nanoTime() - startTime) / 1E9);
+		startTime = System.nanoTime();
 		Autocompletor auto = getInstance(terms, weights);
 		System.out.println("Benchmarking " + auto.getClass().getName() + "...");
 		System.out.println("Found " + N + " words");
 		System.out.println("Time to initialize - " + (System.nanoTime() - startTime) / 1E9);
-		if (auto instanceof TrieAutocomplete)
+		if (auto instanceof TrieAutocomplete) {
 			System.out.println("Created " + countNodes(((TrieAutocomplete) auto).myRoot) + " nodes");
+		}
+		// builds its own tries, whatever engine was chosen
+		reportParallelBuild(terms, weights);
 		String randomWord = "";
 		while (randomWord.length() <= 2)
 			randomWord = terms[ourRandom.nextInt(terms.length)];
@@ -119,5 +183,18 @@ public class AutocompletorBenchmark {
 						+ (System.nanoTime() - startTime) / (1E9 * NTRIALS));
 			}
 		}
+		if (auto instanceof QueryStatsSource) {
+			// one more untimed pass to show where the work goes
+			QueryStatsCollector collector = new QueryStatsCollector(queries.length);
+			((QueryStatsSource) auto).setStatsCollector(collector);
+			for (String query : queries) {
+				for (int k = 1; k <= 256; k *= 2) {
+					auto.topMatches(query, k);
+				}
+			}
+			((QueryStatsSource) auto).setStatsCollector(null);
+			System.out.println("Query statistics:");
+			System.out.print(collector.report());
+		}
 	}
 }
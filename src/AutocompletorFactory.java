@@ -0,0 +1,621 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Picks the engine for a dictionary instead of a hard-coded class name. It
+ * profiles the dictionary (size, alphabet, average length, how much of each
+ * word its sorted neighbour shares, how many distinct weights, the k queries
+ * will ask for) and configures the candidates from the profile:
+ *
+ * - The front-coded BinarySearch is only a candidate when words share at
+ *   least FRONT_CODING_SHARING of their chars, with blocks sized by
+ *   frontCodedBlock.
+ * - The trie's weights are encoded by trieEncoding, from the number of
+ *   distinct weights.
+ *
+ * Alphabet and average length are reported but not modelled: what they cost
+ * the trie and ternary search tree is measured instead. The factory then
+ * calibrates a cost model with a short benchmark: every candidate is built on
+ * a random sample of the terms and timed on queries for prefixes of sampled
+ * words, once warm and until its time holds steady, its work counted with
+ * QueryStats. Each measurement is scaled up to the whole dictionary by how
+ * the engine's work grows:
+ *
+ * - BruteAutocomplete tests every term, so its time grows with n.
+ * - BinarySearchAutocomplete's probes grow with log n and the matching
+ *   range it scans with n; its time is split between the two by its counts.
+ * - The trie and ternary search tree visit the paths to the top k words,
+ *   which lengthen about as log n.
+ *
+ * Heap per term is measured on the sample with HeapFootprint too. The
+ * fastest candidate whose heap fits the budget is built; if none fits, the
+ * dictionary goes to DiskAutocomplete. The Choice can build the same engine,
+ * configured the same way, for an edited dictionary without calibrating
+ * again.
+ */
+public class AutocompletorFactory {
+
+	/**
+	 * The class name Dictionary.newAutocompletor takes to choose with a
+	 * default factory
+	 */
+	public static final String AUTOMATIC = "auto";
+
+	public static final int DEFAULT_SAMPLE = 5000;
+	public static final int DEFAULT_QUERIES = 500;
+
+	/**
+	 * How long each candidate is queried before it is timed, so the JIT has
+	 * compiled its loops; a single pass leaves them interpreted and inflates
+	 * the slower engines' times several fold
+	 */
+	private static final long WARMUP_NANOS = 100000000L;
+
+	/**
+	 * Passes are then timed until this many in a row are no faster than the
+	 * fastest, which is kept: later compilations can still speed an engine up,
+	 * and passes a collection landed in are discarded
+	 */
+	private static final int STEADY_PASSES = 3;
+
+	/**
+	 * The most time spent calibrating one candidate
+	 */
+	private static final long CALIBRATION_NANOS = 1000000000L;
+
+	/**
+	 * The least prefix sharing at which the front-coded candidate is tried:
+	 * below it the shared lengths and the block heads take most of what front
+	 * coding saves
+	 */
+	static final double FRONT_CODING_SHARING = 0.25;
+
+	/**
+	 * The block size for words sharing a fraction sharing of their chars. A
+	 * word keeps about 1 - sharing of its chars but a block's head keeps all
+	 * of them, so blocks are made long enough that the heads add at most a
+	 * tenth; longer blocks only make each lookup decode more words.
+	 */
+	static int frontCodedBlock(double sharing) {
+		double least = sharing >= 1 ? Double.MAX_VALUE : 10 * sharing / (1 - sharing);
+		int block = 4;
+		while (block < 64 && block < least) {
+			block <<= 1;
+		}
+		return block;
+	}
+
+	/**
+	 * The trie's weight encoding. RANK keeps 4 bytes a term and 8 a distinct
+	 * weight, FLOAT 4 and 8 a term, QUANTIZED_16 2 and 8 a term. FLOAT is
+	 * never smaller than RANK, and RANK is exact, so it is used unless
+	 * QUANTIZED_16 is smaller: when more than three quarters of the weights
+	 * are distinct.
+	 */
+	static WeightEncoding trieEncoding(Profile profile) {
+		long n = profile.getSize();
+		return 4 * n + 8L * profile.getDistinctWeights() <= 10 * n ? WeightEncoding.RANK
+				: WeightEncoding.QUANTIZED_16;
+	}
+
+	/**
+	 * What the choice is based on
+	 */
+	public static class Profile {
+		private final int mySize;
+		private final int myAlphabet;
+		private final double myAverageLength;
+		private final double myPrefixSharing;
+		private final int myDistinctWeights;
+		private final int myK;
+
+		Profile(String[] terms, double[] weights, int k) {
+			mySize = terms.length;
+			myK = k;
+			double[] sorted = weights.clone();
+			Arrays.sort(sorted);
+			int distinct = 0;
+			for (int i = 0; i < sorted.length; i++) {
+				if (i == 0 || Double.compare(sorted[i - 1], sorted[i]) != 0) {
+					distinct++;
+				}
+			}
+			myDistinctWeights = distinct;
+			boolean[] seen = new boolean[Character.MAX_VALUE + 1];
+			int alphabet = 0;
+			long chars = 0;
+			for (String term : terms) {
+				for (int j = 0; j < term.length(); j++) {
+					if (!seen[term.charAt(j)]) {
+						seen[term.charAt(j)] = true;
+						alphabet++;
+					}
+				}
+				chars += term.length();
+			}
+			myAlphabet = alphabet;
+			myAverageLength = terms.length == 0 ? 0 : (double) chars / terms.length;
+			// characters each word shares with the one before it in order
+			int[] order = TermSort.order(terms);
+			long shared = 0;
+			for (int i = 1; i < order.length; i++) {
+				String previous = terms[order[i - 1]];
+				String word = terms[order[i]];
+				int limit = Math.min(previous.length(), word.length());
+				int j = 0;
+				while (j < limit && previous.charAt(j) == word.charAt(j)) {
+					j++;
+				}
+				shared += j;
+			}
+			myPrefixSharing = chars == 0 ? 0 : (double) shared / chars;
+		}
+
+		public int getSize() {
+			return mySize;
+		}
+
+		/**
+		 * The number of distinct chars in the words
+		 */
+		public int getAlphabet() {
+			return myAlphabet;
+		}
+
+		public double getAverageLength() {
+			return myAverageLength;
+		}
+
+		/**
+		 * The fraction of all characters that repeat the start of the word
+		 * before in sorted order, what front coding saves
+		 */
+		public double getPrefixSharing() {
+			return myPrefixSharing;
+		}
+
+		/**
+		 * The number of different weights
+		 */
+		public int getDistinctWeights() {
+			return myDistinctWeights;
+		}
+
+		public int getK() {
+			return myK;
+		}
+
+		public String toString() {
+			return String.format(
+					"%d terms, alphabet %d, average length %.1f, %.0f%% prefix shared, %d distinct weights, k=%d",
+					mySize, myAlphabet, myAverageLength, 100 * myPrefixSharing, myDistinctWeights, myK);
+		}
+	}
+
+	/**
+	 * One candidate's predicted cost on the whole dictionary
+	 */
+	public static class Estimate implements Comparable<Estimate> {
+		private final Candidate myCandidate;
+		private final String myName;
+		private final double myNanos;
+		private final long myBytes;
+		private final boolean myFits;
+
+		Estimate(Candidate candidate, String name, double nanos, long bytes, boolean fits) {
+			myCandidate = candidate;
+			myName = name;
+			myNanos = nanos;
+			myBytes = bytes;
+			myFits = fits;
+		}
+
+		/**
+		 * The candidate and how it is configured
+		 */
+		public String getName() {
+			return myName;
+		}
+
+		/**
+		 * Predicted time of a topMatches query
+		 */
+		public double getNanosPerQuery() {
+			return myNanos;
+		}
+
+		/**
+		 * Predicted heap, not counting the terms themselves
+		 */
+		public long getHeapBytes() {
+			return myBytes;
+		}
+
+		/**
+		 * Whether the heap is within the factory's budget
+		 */
+		public boolean fits() {
+			return myFits;
+		}
+
+		/**
+		 * Those that fit first, fastest first
+		 */
+		public int compareTo(Estimate other) {
+			if (myFits != other.myFits) {
+				return myFits ? -1 : 1;
+			}
+			return Double.compare(myNanos, other.myNanos);
+		}
+
+		public String toString() {
+			return String.format("%s %.1fus %dMB%s", myName, myNanos / 1E3, myBytes >> 20,
+					myFits ? "" : " (over budget)");
+		}
+	}
+
+	/**
+	 * The engine built and why
+	 */
+	public static class Choice {
+		private final Autocompletor myEngine;
+		private final Candidate myCandidate;
+		private final String myName;
+		private final Profile myProfile;
+		private final List<Estimate> myEstimates;
+
+		Choice(Autocompletor engine, Candidate candidate, String name, Profile profile, List<Estimate> estimates) {
+			myEngine = engine;
+			myCandidate = candidate;
+			myName = name;
+			myProfile = profile;
+			myEstimates = estimates;
+		}
+
+		public Autocompletor getEngine() {
+			return myEngine;
+		}
+
+		/**
+		 * Builds the chosen engine from dictionary, configured as it was for
+		 * the dictionary profiled, without calibrating again: for a dictionary
+		 * rebuilt after edits, which would seldom change the choice
+		 *
+		 * @throws NullPointerException
+		 *             if dictionary is null
+		 * @throws IllegalArgumentException
+		 *             if the engine refuses dictionary, as BruteAutocomplete
+		 *             refuses repeated words
+		 */
+		public Autocompletor build(Dictionary dictionary) {
+			if (dictionary == null) {
+				throw new NullPointerException("Invalid dictionary");
+			}
+			return myCandidate.build(dictionary.getTerms(), dictionary.getWeights(), myProfile);
+		}
+
+		/**
+		 * The candidate chosen and its configuration, as named in the
+		 * estimates
+		 */
+		public String getName() {
+			return myName;
+		}
+
+		public Profile getProfile() {
+			return myProfile;
+		}
+
+		/**
+		 * Every candidate's estimate, best first
+		 */
+		public List<Estimate> getEstimates() {
+			return myEstimates;
+		}
+
+		/**
+		 * The choice, the dictionary's profile and every estimate, for a log
+		 */
+		public String getReason() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("Chose ").append(myName).append(" for ").append(myProfile);
+			if (myEstimates.isEmpty() || !myEstimates.get(0).fits()) {
+				sb.append("; no in-memory engine fits the heap budget");
+			}
+			sb.append("; predicted ");
+			for (int i = 0; i < myEstimates.size(); i++) {
+				sb.append(i == 0 ? "" : ", ").append(myEstimates.get(i));
+			}
+			return sb.toString();
+		}
+
+		public String toString() {
+			return getReason();
+		}
+	}
+
+	/**
+	 * Builds one candidate from terms and weights, configured for a profile
+	 */
+	private static abstract class Candidate {
+		final String myName;
+
+		Candidate(String name) {
+			myName = name;
+		}
+
+		/**
+		 * Whether the candidate is worth calibrating for profile
+		 */
+		boolean applies(Profile profile) {
+			return true;
+		}
+
+		/**
+		 * The name with the configuration profile gives it
+		 */
+		String name(Profile profile) {
+			return myName;
+		}
+
+		abstract Autocompletor build(String[] terms, double[] weights, Profile profile);
+
+		/**
+		 * Scales the sample's time per query to n terms
+		 */
+		abstract double scale(double nanos, double comparisons, double scanned, int sample, int n);
+	}
+
+	private static double logRatio(int sample, int n) {
+		return n <= sample ? 1 : Math.log(n) / Math.log(Math.max(2, sample));
+	}
+
+	private static final Candidate[] CANDIDATES = { new Candidate(AutocompleteMain.BRUTE_AUTOCOMPLETE) {
+		Autocompletor build(String[] terms, double[] weights, Profile profile) {
+			return new BruteAutocomplete(terms, weights);
+		}
+
+		double scale(double nanos, double comparisons, double scanned, int sample, int n) {
+			return nanos * n / sample;
+		}
+	}, new Candidate(AutocompleteMain.BINARY_SEARCH_AUTOCOMPLETE) {
+		Autocompletor build(String[] terms, double[] weights, Profile profile) {
+			return new BinarySearchAutocomplete(terms, weights);
+		}
+
+		double scale(double nanos, double comparisons, double scanned, int sample, int n) {
+			return scaleBinarySearch(nanos, comparisons, scanned, sample, n);
+		}
+	}, new Candidate(AutocompleteMain.BINARY_SEARCH_AUTOCOMPLETE + "(front coded)") {
+		boolean applies(Profile profile) {
+			return profile.getPrefixSharing() >= FRONT_CODING_SHARING;
+		}
+
+		String name(Profile profile) {
+			return AutocompleteMain.BINARY_SEARCH_AUTOCOMPLETE + "(front coded, blocks of "
+					+ frontCodedBlock(profile.getPrefixSharing()) + ")";
+		}
+
+		Autocompletor build(String[] terms, double[] weights, Profile profile) {
+			return new BinarySearchAutocomplete(terms, weights, frontCodedBlock(profile.getPrefixSharing()));
+		}
+
+		double scale(double nanos, double comparisons, double scanned, int sample, int n) {
+			return scaleBinarySearch(nanos, comparisons, scanned, sample, n);
+		}
+	}, new Candidate(AutocompleteMain.TRIE_AUTOCOMPLETE) {
+		String name(Profile profile) {
+			WeightEncoding encoding = trieEncoding(profile);
+			return encoding == WeightEncoding.RANK ? myName : myName + "(" + encoding + ")";
+		}
+
+		Autocompletor build(String[] terms, double[] weights, Profile profile) {
+			return new TrieAutocomplete(terms, weights, trieEncoding(profile));
+		}
+
+		double scale(double nanos, double comparisons, double scanned, int sample, int n) {
+			return nanos * logRatio(sample, n);
+		}
+	}, new Candidate(AutocompleteMain.TERNARY_SEARCH_AUTOCOMPLETE) {
+		Autocompletor build(String[] terms, double[] weights, Profile profile) {
+			return new TernarySearchAutocomplete(terms, weights);
+		}
+
+		double scale(double nanos, double comparisons, double scanned, int sample, int n) {
+			return nanos * logRatio(sample, n);
+		}
+	} };
+
+	/**
+	 * Where the dictionary goes when no candidate fits
+	 */
+	private static final Candidate DISK = new Candidate(AutocompleteMain.DISK_AUTOCOMPLETE) {
+		Autocompletor build(String[] terms, double[] weights, Profile profile) {
+			return new DiskAutocomplete(terms, weights);
+		}
+
+		double scale(double nanos, double comparisons, double scanned, int sample, int n) {
+			return nanos;
+		}
+	};
+
+	/**
+	 * Probes grow with log n and the scanned range with n
+	 */
+	private static double scaleBinarySearch(double nanos, double comparisons, double scanned, int sample, int n) {
+		if (comparisons + scanned == 0) {
+			return nanos;
+		}
+		return nanos * (comparisons * logRatio(sample, n) + scanned * Math.max(1.0, (double) n / sample))
+				/ (comparisons + scanned);
+	}
+
+	private final long myBudget;
+	private final int mySample;
+	private final int myQueries;
+	private final Random myRandom;
+
+	/**
+	 * A factory allowing half the heap not yet in use
+	 */
+	public AutocompletorFactory() {
+		this(defaultBudget(), DEFAULT_SAMPLE, DEFAULT_QUERIES, new Random(1234));
+	}
+
+	private static long defaultBudget() {
+		Runtime runtime = Runtime.getRuntime();
+		return (runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory())) / 2;
+	}
+
+	/**
+	 * @param memoryBudget
+	 *            - the most heap the engine may take, not counting the terms
+	 * @param sampleSize
+	 *            - the number of terms candidates are calibrated on
+	 * @param queries
+	 *            - the number of queries each is timed on
+	 * @param random
+	 *            - draws the sample and the queries
+	 * @throws NullPointerException
+	 *             if random is null
+	 * @throws IllegalArgumentException
+	 *             if memoryBudget is negative or sampleSize or queries is not
+	 *             positive
+	 */
+	public AutocompletorFactory(long memoryBudget, int sampleSize, int queries, Random random) {
+		if (random == null) {
+			throw new NullPointerException("Invalid random");
+		}
+		if (memoryBudget < 0 || sampleSize <= 0 || queries <= 0) {
+			throw new IllegalArgumentException("Illegal budget " + memoryBudget + ", sample " + sampleSize
+					+ " or queries " + queries);
+		}
+		myBudget = memoryBudget;
+		mySample = sampleSize;
+		myQueries = queries;
+		myRandom = random;
+	}
+
+	/**
+	 * Profiles dictionary, calibrates every candidate that applies on a
+	 * sample of it and builds the best for queries asking for k matches
+	 *
+	 * @throws NullPointerException
+	 *             if dictionary is null
+	 * @throws IllegalArgumentException
+	 *             if k is negative
+	 */
+	public Choice choose(Dictionary dictionary, int k) {
+		if (dictionary == null) {
+			throw new NullPointerException("Invalid dictionary");
+		}
+		if (k < 0) {
+			throw new IllegalArgumentException("Illegal value of k:" + k);
+		}
+		String[] terms = dictionary.getTerms();
+		double[] weights = dictionary.getWeights();
+		Profile profile = new Profile(terms, weights, k);
+		int n = terms.length;
+		int s = Math.min(n, mySample);
+		// a random sample without repeats, by a partial shuffle of the indexes
+		int[] indexes = new int[n];
+		for (int i = 0; i < n; i++) {
+			indexes[i] = i;
+		}
+		String[] sampleTerms = new String[s];
+		double[] sampleWeights = new double[s];
+		for (int i = 0; i < s; i++) {
+			int j = i + myRandom.nextInt(n - i);
+			int t = indexes[i];
+			indexes[i] = indexes[j];
+			indexes[j] = t;
+			sampleTerms[i] = terms[indexes[i]];
+			sampleWeights[i] = weights[indexes[i]];
+		}
+		// prefixes of sampled words, as they are typed
+		String[] prefixes = new String[s == 0 ? 0 : myQueries];
+		for (int i = 0; i < prefixes.length; i++) {
+			String word = sampleTerms[myRandom.nextInt(s)];
+			prefixes[i] = word.substring(0, myRandom.nextInt(Math.min(word.length(), 6) + 1));
+		}
+		List<Estimate> estimates = new ArrayList<Estimate>();
+		for (Candidate candidate : CANDIDATES) {
+			if (!candidate.applies(profile)) {
+				continue;
+			}
+			Autocompletor engine;
+			try {
+				engine = candidate.build(sampleTerms, sampleWeights, profile);
+			} catch (IllegalArgumentException e) {
+				// such as BruteAutocomplete refusing repeated words
+				continue;
+			}
+			long bytes = s == 0 ? 0 : HeapFootprint.of(engine, sampleTerms).bytes() * n / s;
+			long warm = System.nanoTime();
+			while (prefixes.length > 0 && System.nanoTime() - warm < WARMUP_NANOS) {
+				query(engine, prefixes, k);
+			}
+			double nanos = prefixes.length == 0 ? 0 : Double.MAX_VALUE;
+			int steady = 0;
+			while (prefixes.length > 0 && steady < STEADY_PASSES && System.nanoTime() - warm < CALIBRATION_NANOS) {
+				long start = System.nanoTime();
+				query(engine, prefixes, k);
+				double pass = (double) (System.nanoTime() - start) / prefixes.length;
+				// a pass within 5% of the fastest counts as steady
+				steady = pass < nanos * 0.95 ? 0 : steady + 1;
+				nanos = Math.min(nanos, pass);
+			}
+			// then one more to count the work, which counting would slow
+			double comparisons = 0;
+			double scanned = 0;
+			if (engine instanceof QueryStatsSource) {
+				QueryStatsCollector collector = new QueryStatsCollector(0);
+				((QueryStatsSource) engine).setStatsCollector(collector);
+				query(engine, prefixes, k);
+				((QueryStatsSource) engine).setStatsCollector(null);
+				comparisons = collector.getHistogram(QueryStats.Counter.COMPARISONS).mean();
+				scanned = collector.getHistogram(QueryStats.Counter.RANGE_SCANNED).mean();
+			}
+			estimates.add(new Estimate(candidate, candidate.name(profile),
+					candidate.scale(nanos, comparisons, scanned, Math.max(1, s), n), bytes, bytes <= myBudget));
+		}
+		Collections.sort(estimates);
+		for (Estimate estimate : estimates) {
+			if (!estimate.fits()) {
+				break;
+			}
+			try {
+				return new Choice(estimate.myCandidate.build(terms, weights, profile), estimate.myCandidate,
+						estimate.getName(), profile, estimates);
+			} catch (IllegalArgumentException e) {
+				// repeated words the sample did not hold; try the next best
+			}
+		}
+		return new Choice(DISK.build(terms, weights, profile), DISK, DISK.myName, profile, estimates);
+	}
+
+	private static void query(Autocompletor engine, String[] prefixes, int k) {
+		for (String prefix : prefixes) {
+			for (String word : engine.topMatches(prefix, k)) {
+				if (word == null) {
+					throw new IllegalStateException(engine.getClass().getName() + " returned null");
+				}
+			}
+		}
+	}
+
+	/**
+	 * The names of the candidates, in the order they are calibrated, before
+	 * a profile configures them
+	 */
+	public static List<String> candidates() {
+		String[] names = new String[CANDIDATES.length];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = CANDIDATES[i].myName;
+		}
+		return Arrays.asList(names);
+	}
+}
@@ -2,6 +2,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.PriorityQueue;
@@ -13,10 +14,51 @@ import java.util.PriorityQueue;
  * @author Austin Lu, adapted from Kevin Wayne
  * @author Jeff Forbes
  */
-public class BinarySearchAutocomplete implements Autocompletor {
+public class BinarySearchAutocomplete
+		implements PagedAutocompletor, FilteredAutocompletor, BufferedAutocompletor, QueryStatsSource {
 
 	Term[] myTerms;
 
+	/**
+	 * The sorted words in compact form, in place of myTerms, or null
+	 */
+	TermStore myStore;
+
+	/**
+	 * The weights of the words in myStore
+	 */
+	double[] myWeights;
+
+	/**
+	 * Where per-query statistics go, null when they are not being collected
+	 */
+	QueryStatsCollector myStatsCollector;
+
+	/**
+	 * The sorted terms in each block of this many share an attribute summary
+	 */
+	static final int ATTRIBUTE_BLOCK = 64;
+
+	/**
+	 * The attributes of the sorted terms, or null if they have none
+	 */
+	TermAttributes myAttributes;
+
+	/**
+	 * The AttributeFilter summary of each block of ATTRIBUTE_BLOCK sorted
+	 * terms
+	 */
+	int[] myBlockAttributes;
+
+	/**
+	 * Each thread's heap for buffered queries
+	 */
+	private final ThreadLocal<IndexHeap> myHeaps = new ThreadLocal<IndexHeap>() {
+		protected IndexHeap initialValue() {
+			return new IndexHeap(16);
+		}
+	};
+
 	/**
 	 * Given arrays of words and weights, initialize myTerms to a corresponding
 	 * array of Terms sorted lexicographically.
@@ -50,7 +92,66 @@ public class BinarySearchAutocomplete implements Autocompletor {
 			}
 			myTerms[i] = new Term(terms[i], weights[i]);
 		}
-		Arrays.sort(myTerms);
+		TermSort.sort(myTerms);
+	}
+
+	/**
+	 * Sorts the terms with attributes, which topMatches can filter on. Each
+	 * block of ATTRIBUTE_BLOCK sorted terms keeps a summary of its attributes,
+	 * so a filtered scan of a matching range skips the blocks without a
+	 * passing term.
+	 * 
+	 * @param attributes
+	 *            - the attribute ids of each term, null for a term with none
+	 * @throws NullPointerException
+	 *             if any argument is null
+	 * @throws IllegalArgumentException
+	 *             if the arrays are different lengths or any weight or
+	 *             attribute id is negative
+	 */
+	public BinarySearchAutocomplete(String[] terms, double[] weights, int[][] attributes) {
+		this(terms, weights);
+		if (attributes == null) {
+			throw new NullPointerException("One or more arguments null");
+		}
+		if (attributes.length != terms.length) {
+			throw new IllegalArgumentException("Terms and attributes are different lengths");
+		}
+		// the order TermSort.sort put myTerms in
+		myAttributes = new TermAttributes(attributes, TermSort.order(terms));
+		myBlockAttributes = new int[(terms.length + ATTRIBUTE_BLOCK - 1) / ATTRIBUTE_BLOCK];
+		for (int i = 0; i < terms.length; i++) {
+			myBlockAttributes[i / ATTRIBUTE_BLOCK] |= myAttributes.summary(i);
+		}
+	}
+
+	/**
+	 * Stores the sorted words front coded in blocks of blockSize rather than
+	 * as an array of Terms: much smaller, at the cost of decoding up to a
+	 * block of words for each binary search. A blockSize of 0 stores them
+	 * whole in a TermArena, which searches the bytes directly. Either way
+	 * ranges are scanned by weight alone, and only the words returned are
+	 * decoded.
+	 * 
+	 * @throws NullPointerException
+	 *             if either argument is null
+	 * @throws IllegalArgumentException
+	 *             if terms and weights are different length, any weight is
+	 *             negative or blockSize is negative
+	 */
+	public BinarySearchAutocomplete(String[] terms, double[] weights, int blockSize) {
+		this(terms, weights);
+		if (blockSize < 0) {
+			throw new IllegalArgumentException("Illegal block size " + blockSize);
+		}
+		String[] words = new String[myTerms.length];
+		myWeights = new double[myTerms.length];
+		for (int i = 0; i < myTerms.length; i++) {
+			words[i] = myTerms[i].getWord();
+			myWeights[i] = myTerms[i].getWeight();
+		}
+		myStore = blockSize == 0 ? new TermArena(words) : new FrontCodedTerms(words, blockSize);
+		myTerms = null;
 	}
 
 	/**
@@ -157,13 +258,26 @@ public class BinarySearchAutocomplete implements Autocompletor {
 		if (k < 0) {
 			throw new IllegalArgumentException("Illegal value of k:" + k);
 		}
+		QueryStats stats = myStatsCollector == null ? null : new QueryStats(prefix, k);
+		long start = stats == null ? 0 : System.nanoTime();
+		if (myStore != null) {
+			return storeTopMatches(prefix, k, stats, start);
+		}
+		Comparator<Term> prefixOrder = new Term.PrefixOrder(prefix.length());
+		if (stats != null) {
+			prefixOrder = stats.counting(prefixOrder);
+		}
 		//Create new term objects for prefix that has a weight 0 & find lower and upper bound weights
-		int lowBound = firstIndexOf(myTerms, new Term(prefix, 0), new Term.PrefixOrder(prefix.length()));
-		int upBound = lastIndexOf(myTerms, new Term(prefix, 0), new Term.PrefixOrder(prefix.length()));
+		int lowBound = firstIndexOf(myTerms, new Term(prefix, 0), prefixOrder);
+		int upBound = lastIndexOf(myTerms, new Term(prefix, 0), prefixOrder);
 		//Empty case iterable element
 		ArrayList<String> emptyCase = new ArrayList<>();
 		//If the firstIndex doesn't exist or the lastIndex doens't exist, then return an empty array
 		if(lowBound < 0 || upBound < 0 || k == 0) {
+			if (stats != null) {
+				stats.nanos = System.nanoTime() - start;
+				myStatsCollector.record(stats);
+			}
 			return emptyCase;
 		}
 		//Make priority queue for weights
@@ -175,6 +289,9 @@ public class BinarySearchAutocomplete implements Autocompletor {
 			} else if (pq.peek().getWeight() < myTerms[i].getWeight()) {
 				pq.remove();
 				pq.add(myTerms[i]);
+				if (stats != null) {
+					stats.heapReplacements++;
+				}
 			}
 		}
 		LinkedList<String> ret = new LinkedList<String>();
@@ -183,6 +300,11 @@ public class BinarySearchAutocomplete implements Autocompletor {
 		for (int i = 0; i < param; i++) {
 			ret.addFirst(pq.remove().getWord());
 		}
+		if (stats != null) {
+			stats.rangeScanned = upBound - lowBound + 1;
+			stats.nanos = System.nanoTime() - start;
+			myStatsCollector.record(stats);
+		}
 		return ret;
 	}
 
@@ -204,34 +326,377 @@ public class BinarySearchAutocomplete implements Autocompletor {
 		if (prefix == null) {
 			throw new NullPointerException("Invalid parameter");
 		}
+		QueryStats stats = myStatsCollector == null ? null : new QueryStats(prefix, 1);
+		long start = stats == null ? 0 : System.nanoTime();
+		if (myStore != null) {
+			Iterator<String> match = storeTopMatches(prefix, 1, stats, start).iterator();
+			return match.hasNext() ? match.next() : "";
+		}
+		Comparator<Term> prefixOrder = new Term.PrefixOrder(prefix.length());
+		if (stats != null) {
+			prefixOrder = stats.counting(prefixOrder);
+		}
 		//Create new term objects for prefix that has a weight 0 & find lower and upper bound weights
-		int lowBound = firstIndexOf(myTerms, new Term(prefix, 0), new Term.PrefixOrder(prefix.length()));
-		int upBound = lastIndexOf(myTerms, new Term(prefix, 0), new Term.PrefixOrder(prefix.length()));
+		int lowBound = firstIndexOf(myTerms, new Term(prefix, 0), prefixOrder);
+		int upBound = lastIndexOf(myTerms, new Term(prefix, 0), prefixOrder);
 		//Initialize empty term
 		Term match = new Term("", 0);
 		//If the firstIndex doesn't exist or the lastIndex doens't exist, then return an empty array
 		if(lowBound < 0 || upBound < 0) {
+			if (stats != null) {
+				stats.nanos = System.nanoTime() - start;
+				myStatsCollector.record(stats);
+			}
 			return match.getWord();
 		}
 		//Iterate through the terms given and add those to priority queue with up to k elements
 		for (int i = lowBound; i <= upBound; i++) {
 			if (myTerms[i].getWeight() > match.getWeight()) {
 				match = myTerms[i];
+				if (stats != null) {
+					stats.heapReplacements++;
+				}
 			}
 		}
+		if (stats != null) {
+			stats.rangeScanned = upBound - lowBound + 1;
+			stats.nanos = System.nanoTime() - start;
+			myStatsCollector.record(stats);
+		}
 		return match.getWord();
 	}
 
+	/**
+	 * topMatches over myStore: the heaviest k of the range are picked by index
+	 * and weight, and only their words are decoded.
+	 */
+	private Iterable<String> storeTopMatches(String prefix, int k, QueryStats stats, long start) {
+		final double[] weights = myWeights;
+		int lowBound = myStore.firstIndexOf(prefix);
+		int upBound = myStore.lastIndexOf(prefix);
+		if (lowBound < 0 || upBound < 0 || k == 0) {
+			if (stats != null) {
+				stats.nanos = System.nanoTime() - start;
+				myStatsCollector.record(stats);
+			}
+			return new ArrayList<String>();
+		}
+		//Indexes of the heaviest terms so far, lightest first
+		PriorityQueue<Integer> pq = new PriorityQueue<Integer>(k, new Comparator<Integer>() {
+			public int compare(Integer i, Integer j) {
+				return Double.compare(weights[i], weights[j]);
+			}
+		});
+		for (int i = lowBound; i <= upBound; i++) {
+			if (pq.size() < k) {
+				pq.add(i);
+			} else if (weights[pq.peek()] < weights[i]) {
+				pq.remove();
+				pq.add(i);
+				if (stats != null) {
+					stats.heapReplacements++;
+				}
+			}
+		}
+		LinkedList<String> ret = new LinkedList<String>();
+		while (!pq.isEmpty()) {
+			ret.addFirst(myStore.word(pq.remove()));
+		}
+		if (stats != null) {
+			stats.rangeScanned = upBound - lowBound + 1;
+			stats.nanos = System.nanoTime() - start;
+			myStatsCollector.record(stats);
+		}
+		return ret;
+	}
+
+	/**
+	 * topMatches among the terms passing filter. The matching range is
+	 * scanned a block of ATTRIBUTE_BLOCK terms at a time, skipping each block
+	 * whose summary rules the filter out, and only the passing terms reach
+	 * the heap.
+	 */
+	public Iterable<String> topMatches(String prefix, int k, AttributeFilter filter) {
+		if (filter == null) {
+			return topMatches(prefix, k);
+		}
+		if (prefix == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		if (k < 0) {
+			throw new IllegalArgumentException("Illegal value of k:" + k);
+		}
+		QueryStats stats = myStatsCollector == null ? null : new QueryStats(prefix, k);
+		long start = stats == null ? 0 : System.nanoTime();
+		int[] range = range(prefix);
+		if (range == null || k == 0 || myAttributes == null) {
+			if (stats != null) {
+				stats.nanos = System.nanoTime() - start;
+				myStatsCollector.record(stats);
+			}
+			return new ArrayList<String>();
+		}
+		//Indexes of the heaviest passing terms so far, lightest first
+		PriorityQueue<Integer> pq = new PriorityQueue<Integer>(k, new Comparator<Integer>() {
+			public int compare(Integer i, Integer j) {
+				return Double.compare(weight(i), weight(j));
+			}
+		});
+		int scanned = 0;
+		for (int i = range[0]; i <= range[1];) {
+			int blockEnd = Math.min(range[1] + 1, (i / ATTRIBUTE_BLOCK + 1) * ATTRIBUTE_BLOCK);
+			if (!filter.mayMatch(myBlockAttributes[i / ATTRIBUTE_BLOCK])) {
+				i = blockEnd;
+				continue;
+			}
+			for (; i < blockEnd; i++) {
+				scanned++;
+				if (!myAttributes.matches(i, filter)) {
+					continue;
+				}
+				if (pq.size() < k) {
+					pq.add(i);
+				} else if (weight(pq.peek()) < weight(i)) {
+					pq.remove();
+					pq.add(i);
+					if (stats != null) {
+						stats.heapReplacements++;
+					}
+				}
+			}
+		}
+		LinkedList<String> ret = new LinkedList<String>();
+		while (!pq.isEmpty()) {
+			ret.addFirst(word(pq.remove()));
+		}
+		if (stats != null) {
+			stats.rangeScanned = scanned;
+			stats.nanos = System.nanoTime() - start;
+			myStatsCollector.record(stats);
+		}
+		return ret;
+	}
+
+	/**
+	 * topMatches into results: the range is found by comparing prefix with
+	 * the words a char at a time, its heaviest indexes kept in this thread's
+	 * heap and only their words copied into results
+	 */
+	public int topMatches(CharSequence prefix, ResultBuffer results) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		int k = results.capacity();
+		results.clear();
+		int lowBound;
+		int upBound;
+		if (myStore != null) {
+			lowBound = myStore.firstIndexOf(prefix);
+			upBound = myStore.lastIndexOf(prefix);
+		} else {
+			lowBound = firstIndexOf(prefix);
+			upBound = lastIndexOf(prefix);
+		}
+		if (lowBound < 0 || upBound < 0 || k == 0) {
+			return 0;
+		}
+		IndexHeap heap = myHeaps.get();
+		heap.clear();
+		for (int i = lowBound; i <= upBound; i++) {
+			double weight = weight(i);
+			if (heap.size() < k) {
+				heap.add(i, weight);
+			} else if (heap.peekPriority() < weight) {
+				heap.replaceTop(i, weight);
+			}
+		}
+		int n = heap.drainDescending();
+		for (int i = 0; i < n; i++) {
+			if (myStore != null) {
+				myStore.addWord(heap.item(i), heap.priority(i), results);
+			} else {
+				results.add(myTerms[heap.item(i)].getWord(), heap.priority(i));
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Compares word with prefix as Term.PrefixOrder does
+	 */
+	private static int comparePrefix(String word, CharSequence prefix) {
+		int n = Math.min(word.length(), prefix.length());
+		for (int j = 0; j < n; j++) {
+			if (word.charAt(j) != prefix.charAt(j)) {
+				return word.charAt(j) - prefix.charAt(j);
+			}
+		}
+		return word.length() >= prefix.length() ? 0 : -1;
+	}
+
+	/**
+	 * The first index of myTerms whose word starts with prefix, or -1
+	 */
+	private int firstIndexOf(CharSequence prefix) {
+		int lo = 0;
+		int hi = myTerms.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (comparePrefix(myTerms[mid].getWord(), prefix) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo < myTerms.length && comparePrefix(myTerms[lo].getWord(), prefix) == 0 ? lo : -1;
+	}
+
+	/**
+	 * The last index of myTerms whose word starts with prefix, or -1
+	 */
+	private int lastIndexOf(CharSequence prefix) {
+		int lo = 0;
+		int hi = myTerms.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (comparePrefix(myTerms[mid].getWord(), prefix) <= 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo > 0 && comparePrefix(myTerms[lo - 1].getWord(), prefix) == 0 ? lo - 1 : -1;
+	}
+
+	/**
+	 * The first and last index of the terms starting with prefix, or null if
+	 * there are none
+	 */
+	private int[] range(String prefix) {
+		int lowBound;
+		int upBound;
+		if (myStore != null) {
+			lowBound = myStore.firstIndexOf(prefix);
+			upBound = myStore.lastIndexOf(prefix);
+		} else {
+			Comparator<Term> prefixOrder = new Term.PrefixOrder(prefix.length());
+			lowBound = firstIndexOf(myTerms, new Term(prefix, 0), prefixOrder);
+			upBound = lastIndexOf(myTerms, new Term(prefix, 0), prefixOrder);
+		}
+		if (lowBound < 0 || upBound < 0) {
+			return null;
+		}
+		return new int[] { lowBound, upBound };
+	}
+
+	private double weight(int index) {
+		return myTerms != null ? myTerms[index].getWeight() : myWeights[index];
+	}
+
+	private String word(int index) {
+		return myTerms != null ? myTerms[index].getWord() : myStore.word(index);
+	}
+
+	/**
+	 * The indexes of a matching range in a binary max-heap by weight, built in
+	 * linear time; each page pops its words in O(log n) apiece
+	 */
+	private class RangeHeap {
+		final int[] myHeap;
+		int mySize;
+
+		RangeHeap(int from, int to) {
+			mySize = to - from;
+			myHeap = new int[mySize];
+			for (int i = 0; i < mySize; i++) {
+				myHeap[i] = from + i;
+			}
+			for (int i = mySize / 2 - 1; i >= 0; i--) {
+				sink(i);
+			}
+		}
+
+		int pop() {
+			int top = myHeap[0];
+			myHeap[0] = myHeap[--mySize];
+			sink(0);
+			return top;
+		}
+
+		private void sink(int i) {
+			while (2 * i + 1 < mySize) {
+				int child = 2 * i + 1;
+				if (child + 1 < mySize && weight(myHeap[child + 1]) > weight(myHeap[child])) {
+					child++;
+				}
+				if (weight(myHeap[i]) >= weight(myHeap[child])) {
+					return;
+				}
+				int t = myHeap[i];
+				myHeap[i] = myHeap[child];
+				myHeap[child] = t;
+				i = child;
+			}
+		}
+	}
+
+	/**
+	 * Finds the matching range and heapifies it, O(m) for m matches once;
+	 * every page after that costs O(size log m)
+	 */
+	public Page firstPage(String prefix, int size) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		if (size < 0) {
+			throw new IllegalArgumentException("Illegal page size:" + size);
+		}
+		int[] range = range(prefix);
+		if (range == null) {
+			return new Page(new ArrayList<String>(), new double[0], null);
+		}
+		return page(new RangeHeap(range[0], range[1] + 1), size);
+	}
+
+	public Page nextPage(Page.Continuation next, int size) {
+		if (next == null) {
+			throw new NullPointerException("Invalid continuation");
+		}
+		if (size < 0) {
+			throw new IllegalArgumentException("Illegal page size:" + size);
+		}
+		return page((RangeHeap) next.take(this), size);
+	}
+
+	private Page page(RangeHeap heap, int size) {
+		ArrayList<String> words = new ArrayList<String>(Math.min(size, heap.mySize));
+		double[] weights = new double[Math.min(size, heap.mySize)];
+		while (words.size() < size && heap.mySize > 0) {
+			int index = heap.pop();
+			weights[words.size()] = weight(index);
+			words.add(word(index));
+		}
+		return new Page(words, weights, heap.mySize == 0 ? null : new Page.Continuation(this, heap));
+	}
+
+	public void setStatsCollector(QueryStatsCollector collector) {
+		myStatsCollector = collector;
+	}
+
 	/**
 	 * Return the weight of a given term. If term is not in the dictionary, return
-	 * 0.0
+	 * 0.0. The term is binary searched for: it sorts before every other word
+	 * it is a prefix of, so it is the first of their range if present.
 	 */
 	public double weightOf(String term) {
-		for (Term T:myTerms) {
-			if (T.getWord() == term) {
-				return T.getWeight();
-			}
+		if (term == null) {
+			return 0.0;
+		}
+		if (myStore != null) {
+			int i = myStore.indexOf(term);
+			return i < 0 ? 0.0 : myWeights[i];
 		}
-		return 0.0;
+		int i = firstIndexOf(term);
+		return i >= 0 && myTerms[i].getWord().equals(term) ? myTerms[i].getWeight() : 0.0;
 	}
 }
@@ -1,14 +1,35 @@
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.PriorityQueue;
 
 /**
  * Implements Autocompletor by scanning through the entire array of terms for
- * every topKMatches or topMatch query.
+ * every topKMatches or topMatch query. The words are kept in a TermArena and
+ * tested against the prefix byte by byte; only the words returned are decoded.
  */
-public class BruteAutocomplete implements Autocompletor {
+public class BruteAutocomplete implements BufferedAutocompletor, QueryStatsSource {
 
-	Term[] myTerms;
+	TermArena myWords;
+
+	/**
+	 * The weights of myWords
+	 */
+	double[] myWeights;
+
+	/**
+	 * Where per-query statistics go, null when they are not being collected
+	 */
+	QueryStatsCollector myStatsCollector;
+
+	/**
+	 * Each thread's heap for buffered queries
+	 */
+	private final ThreadLocal<IndexHeap> myHeaps = new ThreadLocal<IndexHeap>() {
+		protected IndexHeap initialValue() {
+			return new IndexHeap(16);
+		}
+	};
 
 	/**
 	 * Create immutable instance with terms constructed from parameter
@@ -35,13 +56,10 @@ public class BruteAutocomplete implements Autocompletor {
 			throw new IllegalArgumentException("terms and weights are not the same length");
 		}
 
-		myTerms = new Term[terms.length];
-
 		HashSet<String> words = new HashSet<String>();
 
 		for (int i = 0; i < terms.length; i++) {
 			words.add(terms[i]);
-			myTerms[i] = new Term(terms[i], weights[i]);
 			if (weights[i] < 0) {
 				throw new IllegalArgumentException("Negative weight " + weights[i]);
 			}
@@ -49,6 +67,9 @@ public class BruteAutocomplete implements Autocompletor {
 		if (words.size() != terms.length) {
 			throw new IllegalArgumentException("Duplicate input terms");
 		}
+		// rejects null words
+		myWords = new TermArena(terms);
+		myWeights = weights.clone();
 	}
 
 	public Iterable<String> topMatches(String prefix, int k) {
@@ -56,42 +77,117 @@ public class BruteAutocomplete implements Autocompletor {
 			throw new IllegalArgumentException("Illegal value of k:" + k);
 		}
 
-		// maintain pq of size k
-		PriorityQueue<Term> pq = new PriorityQueue<Term>(k, new Term.WeightOrder());
-		for (Term t : myTerms) {
-			if (!t.getWord().startsWith(prefix))
+		QueryStats stats = myStatsCollector == null ? null : new QueryStats(prefix, k);
+		long start = stats == null ? 0 : System.nanoTime();
+		byte[] key = TermArena.encode(prefix);
+		// maintain pq of size k, of indexes lightest first
+		final double[] weights = myWeights;
+		PriorityQueue<Integer> pq = new PriorityQueue<Integer>(Math.max(1, k), new Comparator<Integer>() {
+			public int compare(Integer i, Integer j) {
+				return Double.compare(weights[i], weights[j]);
+			}
+		});
+		for (int t = 0; t < weights.length; t++) {
+			if (!myWords.startsWith(t, key))
 				continue;
+			if (stats != null) {
+				stats.rangeScanned++;
+			}
 			if (pq.size() < k) {
 				pq.add(t);
-			} else if (pq.peek().getWeight() < t.getWeight()) {
+			} else if (k > 0 && weights[pq.peek()] < weights[t]) {
 				pq.remove();
 				pq.add(t);
+				if (stats != null) {
+					stats.heapReplacements++;
+				}
 			}
 		}
 		int numResults = Math.min(k, pq.size());
 		LinkedList<String> ret = new LinkedList<String>();
 		for (int i = 0; i < numResults; i++) {
-			ret.addFirst(pq.remove().getWord());
+			ret.addFirst(myWords.word(pq.remove()));
+		}
+		if (stats != null) {
+			// every term is tested against the prefix
+			stats.comparisons = weights.length;
+			stats.nanos = System.nanoTime() - start;
+			myStatsCollector.record(stats);
 		}
 		return ret;
 	}
 
+	/**
+	 * topMatches into results, testing prefix against the encoded words a
+	 * char at a time and keeping the heaviest indexes in this thread's heap
+	 */
+	public int topMatches(CharSequence prefix, ResultBuffer results) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		int k = results.capacity();
+		results.clear();
+		if (k == 0) {
+			return 0;
+		}
+		IndexHeap heap = myHeaps.get();
+		heap.clear();
+		for (int t = 0; t < myWeights.length; t++) {
+			if (heap.size() == k && myWeights[t] <= heap.peekPriority() || !myWords.startsWith(t, prefix)) {
+				continue;
+			}
+			if (heap.size() < k) {
+				heap.add(t, myWeights[t]);
+			} else {
+				heap.replaceTop(t, myWeights[t]);
+			}
+		}
+		int n = heap.drainDescending();
+		for (int i = 0; i < n; i++) {
+			myWords.addWord(heap.item(i), heap.priority(i), results);
+		}
+		return n;
+	}
+
 	public String topMatch(String prefix) {
-		String maxTerm = "";
+		QueryStats stats = myStatsCollector == null ? null : new QueryStats(prefix, 1);
+		long start = stats == null ? 0 : System.nanoTime();
+		byte[] key = TermArena.encode(prefix);
+		int maxTerm = -1;
 		double maxWeight = -1;
-		for (Term t : myTerms) {
-			if (t.getWeight() > maxWeight && t.getWord().startsWith(prefix)) {
-				maxWeight = t.getWeight();
-				maxTerm = t.getWord();
+		for (int t = 0; t < myWeights.length; t++) {
+			if (myWeights[t] <= maxWeight) {
+				continue;
+			}
+			// as in topMatches, prefix tests are comparisons and the matches
+			// they find are scanned; lighter terms are not tested
+			if (stats != null) {
+				stats.comparisons++;
+			}
+			if (myWords.startsWith(t, key)) {
+				maxWeight = myWeights[t];
+				maxTerm = t;
+				if (stats != null) {
+					stats.rangeScanned++;
+					stats.heapReplacements++;
+				}
 			}
 		}
-		return maxTerm;
+		if (stats != null) {
+			stats.nanos = System.nanoTime() - start;
+			myStatsCollector.record(stats);
+		}
+		return maxTerm < 0 ? "" : myWords.word(maxTerm);
+	}
+
+	public void setStatsCollector(QueryStatsCollector collector) {
+		myStatsCollector = collector;
 	}
 
 	public double weightOf(String term) {
-		for (Term t : myTerms) {
-			if (t.getWord().equalsIgnoreCase(term))
-				return t.getWeight();
+		for (int t = 0; t < myWeights.length; t++) {
+			if (myWords.word(t).equalsIgnoreCase(term))
+				return myWeights[t];
 		}
 		// term is not in dictionary return 0
 		return 0;
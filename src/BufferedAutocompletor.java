@@ -0,0 +1,28 @@
+/**
+ * An Autocompletor that can answer into a buffer the caller supplies and
+ * reuses, so that a warm query allocates nothing: the prefix is any
+ * CharSequence, such as the StringBuilder a text field edits, the search
+ * works in heaps kept per thread, and the words are copied into the buffer
+ * rather than returned as new Strings.
+ *
+ * BruteAutocomplete, BinarySearchAutocomplete with either word store,
+ * TrieAutocomplete, TernarySearchAutocomplete and LazyTrieAutocomplete, once
+ * the nodes a query visits have been created, answer this way. FSTAutocomplete
+ * and DiskAutocomplete do not: the FST spells each result out of its arcs
+ * into a new String, and the disk engine decodes whole blocks of Strings into
+ * its page cache, so their queries allocate.
+ */
+public interface BufferedAutocompletor extends Autocompletor {
+
+	/**
+	 * Clears results and fills it with the results.capacity() words starting
+	 * with prefix of largest weight, in descending weight order, or all of
+	 * them if there are fewer. Such queries are not counted in query
+	 * statistics.
+	 *
+	 * @return the number of words found
+	 * @throws NullPointerException
+	 *             if prefix or results is null
+	 */
+	public int topMatches(CharSequence prefix, ResultBuffer results);
+}
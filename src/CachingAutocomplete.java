@@ -0,0 +1,407 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * An Autocompletor that remembers the results of another Autocompletor. Results
+ * are cached per prefix along with the k they were computed for, so a query for
+ * a smaller k is answered from the entry for a larger k.
+ *
+ * The cache is bounded either by number of entries or by an estimate of the
+ * bytes the entries retain, and uses W-TinyLFU eviction: new entries go into a
+ * small LRU window, and an entry leaving the window only displaces the least
+ * recently used entry of the main cache if a FrequencySketch says the new
+ * prefix has been requested more often. The main cache is a segmented LRU, so
+ * prefixes hit twice are protected from a burst of one-off queries.
+ *
+ * Safe for concurrent use if the wrapped Autocompletor is. Misses are computed
+ * outside the lock, so two threads missing on the same prefix may both query
+ * the wrapped Autocompletor.
+ */
+public class CachingAutocomplete implements Autocompletor {
+
+	/**
+	 * What the capacity of a CachingAutocomplete counts
+	 */
+	public enum Bound {
+		ENTRIES, BYTES
+	}
+
+	private static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2;
+	private static final double WINDOW_FRACTION = 0.01;
+	private static final double PROTECTED_FRACTION = 0.8;
+
+	private final Autocompletor myAutocompletor;
+	private final Bound myBound;
+	private final long myCapacity;
+	private final long myWindowCapacity;
+	private final long myProtectedCapacity;
+
+	private final HashMap<String, Entry> myEntries = new HashMap<String, Entry>();
+	private final FrequencySketch mySketch;
+	/**
+	 * Sentinels of the circular LRU lists, one per region, least recent first
+	 */
+	private final Entry[] myQueues = new Entry[3];
+	private final long[] myRegionWeights = new long[3];
+
+	private long myHits;
+	private long myMisses;
+	private long myEvictions;
+	private long myRejections;
+
+	/**
+	 * Creates a cache in front of auto.
+	 *
+	 * @param auto
+	 *            - the Autocompletor whose results are cached
+	 * @param capacity
+	 *            - the maximum number of entries, or of estimated bytes
+	 * @param bound
+	 *            - whether capacity counts entries or bytes
+	 * @throws NullPointerException
+	 *             if auto or bound is null
+	 * @throws IllegalArgumentException
+	 *             if capacity is not positive
+	 */
+	public CachingAutocomplete(Autocompletor auto, long capacity, Bound bound) {
+		if (auto == null || bound == null) {
+			throw new NullPointerException("One or more arguments null");
+		}
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Illegal capacity: " + capacity);
+		}
+		myAutocompletor = auto;
+		myBound = bound;
+		myCapacity = capacity;
+		myWindowCapacity = Math.max(1, (long) (capacity * WINDOW_FRACTION));
+		myProtectedCapacity = (long) ((capacity - myWindowCapacity) * PROTECTED_FRACTION);
+		// a byte bound holds far fewer entries than it has bytes
+		mySketch = new FrequencySketch(bound == Bound.ENTRIES ? capacity : Math.max(1, capacity / 256));
+		for (int q = 0; q < myQueues.length; q++) {
+			myQueues[q] = new Entry(null, null, 0, false);
+			myQueues[q].prev = myQueues[q];
+			myQueues[q].next = myQueues[q];
+		}
+	}
+
+	/**
+	 * Creates a cache holding at most maxEntries prefixes.
+	 */
+	public CachingAutocomplete(Autocompletor auto, long maxEntries) {
+		this(auto, maxEntries, Bound.ENTRIES);
+	}
+
+	/**
+	 * Cached results for one prefix
+	 */
+	private static class Entry {
+		final String prefix;
+		final String[] matches;
+		/**
+		 * The k matches was computed for
+		 */
+		final int k;
+		/**
+		 * Whether matches holds every term starting with prefix, in which case
+		 * it can answer any k
+		 */
+		final boolean complete;
+		final long bytes;
+		int queue;
+		Entry prev, next;
+
+		Entry(String prefix, String[] matches, int k, boolean complete) {
+			this.prefix = prefix;
+			this.matches = matches;
+			this.k = k;
+			this.complete = complete;
+			this.bytes = prefix == null ? 0 : estimateBytes(prefix, matches);
+		}
+
+		boolean canAnswer(int k) {
+			return complete || k <= this.k;
+		}
+
+		/**
+		 * Whether topMatch can be answered: an entry from topMatch holds its
+		 * result even when k is 0, and a complete entry holds no matches only
+		 * when there are none
+		 */
+		boolean canAnswerTopMatch() {
+			return complete || matches.length > 0;
+		}
+
+		/**
+		 * Whether this entry answers every query other does
+		 */
+		boolean covers(Entry other) {
+			return complete || !other.complete && k >= other.k
+					&& (canAnswerTopMatch() || !other.canAnswerTopMatch());
+		}
+	}
+
+	/**
+	 * Rough retained size of an entry: the entry, its map node, the prefix and
+	 * the array of matches. The match Strings themselves usually belong to the
+	 * wrapped Autocompletor and are counted at a reference each.
+	 */
+	static long estimateBytes(String prefix, String[] matches) {
+		return 48 + 32 + 40 + 2L * prefix.length() + 16 + 8L * matches.length;
+	}
+
+	private long weigh(Entry e) {
+		return myBound == Bound.ENTRIES ? 1 : e.bytes;
+	}
+
+	public Iterable<String> topMatches(String prefix, int k) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		if (k < 0) {
+			throw new IllegalArgumentException("Illegal value of k:" + k);
+		}
+		Entry e = lookup(prefix, k);
+		if (e == null) {
+			List<String> computed = new ArrayList<String>();
+			for (String s : myAutocompletor.topMatches(prefix, k)) {
+				computed.add(s);
+			}
+			e = new Entry(prefix, computed.toArray(new String[0]), k, computed.size() < k);
+			insert(e);
+		}
+		int n = Math.min(k, e.matches.length);
+		return Collections.unmodifiableList(Arrays.asList(e.matches).subList(0, n));
+	}
+
+	public String topMatch(String prefix) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		Entry e = lookup(prefix, -1);
+		if (e == null) {
+			String match = myAutocompletor.topMatch(prefix);
+			if (match == null) {
+				match = "";
+			}
+			// "" is also what topMatch returns for no match, so only a
+			// non-empty match proves what topMatches(prefix, 1) would be
+			e = new Entry(prefix, new String[] { match }, match.isEmpty() ? 0 : 1, false);
+			insert(e);
+		}
+		return e.matches.length == 0 ? "" : e.matches[0];
+	}
+
+	/**
+	 * Weights are not cached; this asks the wrapped Autocompletor.
+	 */
+	public double weightOf(String term) {
+		return myAutocompletor.weightOf(term);
+	}
+
+	/**
+	 * Replays queries through the cache so that it starts out holding, and
+	 * knowing the popularity of, the prefixes users ask for. Hit and miss
+	 * counters are cleared afterwards.
+	 */
+	public void warm(Iterable<String> queries, int k) {
+		for (String q : queries) {
+			topMatches(q, k);
+		}
+		synchronized (this) {
+			myHits = 0;
+			myMisses = 0;
+		}
+	}
+
+	/**
+	 * Warms the cache from a query log with one prefix per line.
+	 *
+	 * @throws FileNotFoundException
+	 *             if log cannot be opened
+	 */
+	public void warm(File log, int k) throws FileNotFoundException {
+		List<String> queries = new ArrayList<String>();
+		Scanner in = new Scanner(log, Dictionary.CHARSET);
+		try {
+			while (in.hasNextLine()) {
+				queries.add(in.nextLine());
+			}
+		} finally {
+			in.close();
+		}
+		warm(queries, k);
+	}
+
+	/**
+	 * Returns the entry for prefix if it can answer k, or topMatch if k is -1,
+	 * counting a hit or miss
+	 */
+	private synchronized Entry lookup(String prefix, int k) {
+		mySketch.increment(prefix.hashCode());
+		Entry e = myEntries.get(prefix);
+		if (e == null || !(k < 0 ? e.canAnswerTopMatch() : e.canAnswer(k))) {
+			myMisses++;
+			return null;
+		}
+		myHits++;
+		touch(e);
+		return e;
+	}
+
+	/**
+	 * Moves e to the most recent end of its region, promoting probation
+	 * entries to the protected region.
+	 */
+	private void touch(Entry e) {
+		if (e.queue == PROBATION) {
+			unlink(e);
+			link(e, PROTECTED);
+			while (myRegionWeights[PROTECTED] > myProtectedCapacity) {
+				Entry demoted = myQueues[PROTECTED].next;
+				unlink(demoted);
+				link(demoted, PROBATION);
+			}
+		} else {
+			int q = e.queue;
+			unlink(e);
+			link(e, q);
+		}
+	}
+
+	private synchronized void insert(Entry e) {
+		Entry old = myEntries.get(e.prefix);
+		if (old != null && old.covers(e)) {
+			// a racing miss already stored as much or more
+			return;
+		}
+		myEntries.put(e.prefix, e);
+		if (old != null) {
+			// replaced by results that answer more, keep its place
+			int q = old.queue;
+			unlink(old);
+			link(e, q);
+		} else {
+			link(e, WINDOW);
+		}
+		evict();
+	}
+
+	/**
+	 * Moves entries out of the window and decides, by frequency, which of them
+	 * the main region keeps.
+	 */
+	private void evict() {
+		while (myRegionWeights[WINDOW] > myWindowCapacity && myQueues[WINDOW].next != myQueues[WINDOW]) {
+			Entry candidate = myQueues[WINDOW].next;
+			unlink(candidate);
+			link(candidate, PROBATION);
+			while (total() > myCapacity) {
+				Entry victim = myQueues[PROBATION].next;
+				if (victim == candidate) {
+					// nothing older in probation, check protected entries
+					victim = myQueues[PROTECTED].next != myQueues[PROTECTED] ? myQueues[PROTECTED].next : candidate;
+				}
+				if (victim != candidate
+						&& mySketch.frequency(candidate.prefix.hashCode()) <= mySketch.frequency(victim.prefix.hashCode())) {
+					myRejections++;
+					victim = candidate;
+				}
+				remove(victim);
+				if (victim == candidate) {
+					break;
+				}
+			}
+		}
+		// the window alone may be over capacity if capacity is tiny
+		while (total() > myCapacity && myQueues[WINDOW].next != myQueues[WINDOW]) {
+			remove(myQueues[WINDOW].next);
+		}
+	}
+
+	private long total() {
+		return myRegionWeights[WINDOW] + myRegionWeights[PROBATION] + myRegionWeights[PROTECTED];
+	}
+
+	private void remove(Entry e) {
+		unlink(e);
+		myEntries.remove(e.prefix);
+		myEvictions++;
+	}
+
+	private void link(Entry e, int queue) {
+		Entry head = myQueues[queue];
+		e.queue = queue;
+		e.prev = head.prev;
+		e.next = head;
+		head.prev.next = e;
+		head.prev = e;
+		myRegionWeights[queue] += weigh(e);
+	}
+
+	private void unlink(Entry e) {
+		e.prev.next = e.next;
+		e.next.prev = e.prev;
+		e.prev = null;
+		e.next = null;
+		myRegionWeights[e.queue] -= weigh(e);
+	}
+
+	public synchronized long getHitCount() {
+		return myHits;
+	}
+
+	public synchronized long getMissCount() {
+		return myMisses;
+	}
+
+	/**
+	 * Fraction of lookups answered from the cache, 0 if there were none
+	 */
+	public synchronized double getHitRate() {
+		long lookups = myHits + myMisses;
+		return lookups == 0 ? 0 : (double) myHits / lookups;
+	}
+
+	/**
+	 * Number of entries removed to stay within capacity, including new entries
+	 * that were not admitted
+	 */
+	public synchronized long getEvictionCount() {
+		return myEvictions;
+	}
+
+	/**
+	 * Number of new entries turned away because they were requested less often
+	 * than the entry they would have replaced
+	 */
+	public synchronized long getRejectionCount() {
+		return myRejections;
+	}
+
+	/**
+	 * Number of prefixes currently cached
+	 */
+	public synchronized int size() {
+		return myEntries.size();
+	}
+
+	/**
+	 * Total weight of the cached entries, in entries or estimated bytes
+	 */
+	public synchronized long weight() {
+		return total();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("CachingAutocomplete(%s) size=%d weight=%d/%d %s hits=%d misses=%d hitRate=%.3f "
+				+ "evictions=%d rejections=%d", myAutocompletor.getClass().getName(), myEntries.size(), total(),
+				myCapacity, myBound, myHits, myMisses, getHitRate(), myEvictions, myRejections);
+	}
+}
@@ -0,0 +1,206 @@
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Multi-threaded throughput benchmark. N threads share one Autocompletor and
+ * issue a mix of topMatch, topMatches and weightOf calls as fast as they can,
+ * for N = 1, 2, 4, ... up to a maximum. Prefixes come from a Zipfian
+ * distribution over the dictionary's terms, heaviest terms most often, each cut
+ * to a random length. For every N the aggregate ops/sec, the speedup over one
+ * thread and the latency distribution are printed, which shows where an engine
+ * stops scaling.
+ *
+ * % java ConcurrentBenchmark data/wiktionary.txt TrieAutocomplete 32 3 platform 20,70,10
+ *
+ * runs up to 32 platform threads for 3 seconds each, with 20% topMatch, 70%
+ * topMatches and 10% weightOf calls. Use "virtual" for virtual threads.
+ */
+public class ConcurrentBenchmark {
+
+	public static final int DEFAULT_K = 10;
+	public static final double ZIPF_EXPONENT = 1.0;
+
+	private static final int NUM_QUERIES = 1 << 16;
+	private static final int WARMUP_MILLIS = 1000;
+
+	private static final int TOP_MATCH = 0, TOP_MATCHES = 1, WEIGHT_OF = 2;
+
+	/**
+	 * Consumes query results so the JIT cannot discard the calls
+	 */
+	static volatile long ourSink;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: java ConcurrentBenchmark <dictionary file> [class name] [max threads] "
+					+ "[seconds per step] [platform|virtual] [topMatch%,topMatches%,weightOf%] [k]");
+			System.exit(1);
+		}
+		String className = args.length >= 2 ? args[1] : AutocompleteMain.AUTOCOMPLETOR_CLASS_NAME;
+		int maxThreads = args.length >= 3 ? Integer.parseInt(args[2])
+				: 4 * Runtime.getRuntime().availableProcessors();
+		int seconds = args.length >= 4 ? Integer.parseInt(args[3]) : 3;
+		boolean virtual = args.length >= 5 && args[4].equals("virtual");
+		int[] mix = args.length >= 6 ? parseMix(args[5]) : new int[] { 20, 70, 10 };
+		int k = args.length >= 7 ? Integer.parseInt(args[6]) : DEFAULT_K;
+
+		Dictionary dictionary = Dictionary.read(new File(args[0]), true);
+		long startTime = System.nanoTime();
+		Autocompletor auto;
+		if (AutocompletorFactory.AUTOMATIC.equals(className)) {
+			// calibrated apart, so the initialization timed is the build alone
+			AutocompletorFactory.Choice choice = dictionary.chooseAutocompletor(k);
+			System.out.println(choice.getReason() + " (" + (System.nanoTime() - startTime) / 1E9 + "s to choose)");
+			startTime = System.nanoTime();
+			auto = choice.build(dictionary);
+		} else {
+			auto = dictionary.newAutocompletor(className);
+		}
+		System.out.println("Benchmarking " + auto.getClass().getName() + " with " + dictionary.size() + " words ("
+				+ (System.nanoTime() - startTime) / 1E9 + "s to initialize)");
+		System.out.println("Threads: " + (virtual && VirtualThreads.isAvailable() ? "virtual" : "platform")
+				+ ", mix topMatch/topMatches/weightOf: " + mix[0] + "/" + mix[1] + "/" + mix[2] + ", k=" + k
+				+ ", cores: " + Runtime.getRuntime().availableProcessors());
+
+		Workload workload = new Workload(dictionary, mix, k, new Random(1234));
+		double baseline = 0;
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			run(auto, workload, threads, virtual, WARMUP_MILLIS, new Histogram());
+			Histogram latencies = new Histogram();
+			long ops = run(auto, workload, threads, virtual, seconds * 1000L, latencies);
+			double throughput = ops / (double) seconds;
+			if (threads == 1) {
+				baseline = throughput;
+			}
+			System.out.println(String.format("%4d threads: %12.0f ops/s  x%5.2f  %s", threads, throughput,
+					throughput / baseline, latencies.toLatencyString()));
+		}
+	}
+
+	/**
+	 * Parses "a,b,c" into the relative frequency of topMatch, topMatches and
+	 * weightOf calls.
+	 */
+	static int[] parseMix(String s) {
+		String[] parts = s.split(",");
+		if (parts.length != 3) {
+			throw new IllegalArgumentException("Mix needs three percentages: " + s);
+		}
+		int[] mix = new int[3];
+		for (int i = 0; i < 3; i++) {
+			mix[i] = Integer.parseInt(parts[i].trim());
+			if (mix[i] < 0) {
+				throw new IllegalArgumentException("Negative percentage: " + s);
+			}
+		}
+		if (mix[0] + mix[1] + mix[2] == 0) {
+			throw new IllegalArgumentException("Empty mix: " + s);
+		}
+		return mix;
+	}
+
+	/**
+	 * A precomputed sequence of operations, so that generating queries is not
+	 * part of what is measured.
+	 */
+	static class Workload {
+		final byte[] ops = new byte[NUM_QUERIES];
+		final String[] args = new String[NUM_QUERIES];
+		final int k;
+
+		Workload(Dictionary dictionary, int[] mix, int k, Random random) {
+			this.k = k;
+			final String[] terms = dictionary.getTerms();
+			final double[] weights = dictionary.getWeights();
+			// rank terms by descending weight, the heaviest are the most popular
+			Integer[] byWeight = new Integer[terms.length];
+			for (int i = 0; i < byWeight.length; i++) {
+				byWeight[i] = i;
+			}
+			Arrays.sort(byWeight, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return Double.compare(weights[b], weights[a]);
+				}
+			});
+			ZipfGenerator zipf = new ZipfGenerator(terms.length, ZIPF_EXPONENT);
+			int total = mix[0] + mix[1] + mix[2];
+			for (int i = 0; i < NUM_QUERIES; i++) {
+				String term = terms[byWeight[zipf.next(random)]];
+				int r = random.nextInt(total);
+				if (r < mix[0]) {
+					ops[i] = TOP_MATCH;
+				} else if (r < mix[0] + mix[1]) {
+					ops[i] = TOP_MATCHES;
+				} else {
+					ops[i] = WEIGHT_OF;
+				}
+				if (ops[i] == WEIGHT_OF || term.isEmpty()) {
+					args[i] = term;
+				} else {
+					args[i] = term.substring(0, 1 + random.nextInt(Math.min(term.length(), 6)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the workload on the given number of threads for millis
+	 * milliseconds. Each thread records latencies in its own Histogram, which
+	 * are merged into latencies at the end, so the measurement itself does not
+	 * add contention.
+	 *
+	 * @return the number of operations completed
+	 */
+	static long run(final Autocompletor auto, final Workload workload, int threads, boolean virtual, long millis,
+			Histogram latencies) throws InterruptedException {
+		final AtomicBoolean done = new AtomicBoolean();
+		final long[] counts = new long[threads];
+		final Histogram[] histograms = new Histogram[threads];
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int id = t;
+			histograms[t] = new Histogram();
+			workers[t] = VirtualThreads.start(new Runnable() {
+				public void run() {
+					Histogram h = histograms[id];
+					// each thread starts at a different place in the workload
+					int i = (int) ((id * 0x9E3779B97F4A7C15L) >>> 48);
+					long count = 0;
+					long sink = 0;
+					while (!done.get()) {
+						int q = i++ & (NUM_QUERIES - 1);
+						long start = System.nanoTime();
+						switch (workload.ops[q]) {
+						case TOP_MATCH:
+							sink += auto.topMatch(workload.args[q]).length();
+							break;
+						case TOP_MATCHES:
+							for (String s : auto.topMatches(workload.args[q], workload.k)) {
+								sink += s.length();
+							}
+							break;
+						default:
+							sink += (long) auto.weightOf(workload.args[q]);
+						}
+						h.record(System.nanoTime() - start);
+						count++;
+					}
+					counts[id] = count;
+					ourSink += sink;
+				}
+			}, virtual);
+		}
+		Thread.sleep(millis);
+		done.set(true);
+		long total = 0;
+		for (int t = 0; t < threads; t++) {
+			workers[t].join();
+			total += counts[t];
+			latencies.add(histograms[t]);
+		}
+		return total;
+	}
+}
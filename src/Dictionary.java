@@ -0,0 +1,154 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+ * A weighted word list read from one of the data files. The first line of the
+ * file holds the number of entries N, and each of the following N lines holds a
+ * weight and a word separated by a tab.
+ *
+ * This is the same format read by AutocompleteGUI and AutocompletorBenchmark.
+ */
+public class Dictionary {
+
+	public static final String CHARSET = "UTF-8";
+	public static final Locale LOCALE = Locale.US;
+
+	private final String[] myTerms;
+	private final double[] myWeights;
+
+	public Dictionary(String[] terms, double[] weights) {
+		if (terms == null || weights == null) {
+			throw new NullPointerException("One or more arguments null");
+		}
+		if (terms.length != weights.length) {
+			throw new IllegalArgumentException("Terms and weights are different lengths");
+		}
+		myTerms = terms;
+		myWeights = weights;
+	}
+
+	/**
+	 * Reads a dictionary file.
+	 *
+	 * @param file
+	 *            - the file to read
+	 * @param lowerCase
+	 *            - whether every word should be converted to lower case, as
+	 *            AutocompletorBenchmark does
+	 * @throws FileNotFoundException
+	 *             if file cannot be opened
+	 * @throws IllegalArgumentException
+	 *             if the file is malformatted
+	 */
+	public static Dictionary read(File file, boolean lowerCase) throws FileNotFoundException {
+		Scanner in = new Scanner(file, CHARSET);
+		in.useLocale(LOCALE);
+		try {
+			int n = Integer.parseInt(in.nextLine().trim());
+			String[] terms = new String[n];
+			double[] weights = new double[n];
+			for (int i = 0; i < n; i++) {
+				String line = in.nextLine();
+				int tab = line.indexOf('\t');
+				weights[i] = Double.parseDouble(line.substring(0, tab).trim());
+				terms[i] = line.substring(tab + 1);
+				if (lowerCase) {
+					terms[i] = terms[i].toLowerCase();
+				}
+			}
+			return new Dictionary(terms, weights);
+		} catch (RuntimeException e) { //could be any parsing related exception
+			throw new IllegalArgumentException("File is malformatted: " + file, e);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Creates an Autocompletor from this dictionary by reflection, the same way
+	 * AutocompleteGUI does, from the name of a class with a (String[], double[])
+	 * constructor. AutocompletorFactory.AUTOMATIC instead has a default
+	 * factory choose the engine for queries of AutocompleteMain.K matches;
+	 * chooseAutocompletor also tells why.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if className does not name such a class
+	 */
+	public Autocompletor newAutocompletor(String className) {
+		if (AutocompletorFactory.AUTOMATIC.equals(className)) {
+			return chooseAutocompletor(AutocompleteMain.K).getEngine();
+		}
+		try {
+			return (Autocompletor) Class.forName(className)
+					.getDeclaredConstructor(String[].class, double[].class).newInstance(myTerms, myWeights);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalArgumentException("Cannot create " + className, e.getCause());
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			throw new IllegalArgumentException("Cannot create " + className, e);
+		}
+	}
+
+	/**
+	 * Has a default AutocompletorFactory choose and build the engine for
+	 * queries of k matches; the Choice holds the engine, the reason for it
+	 * and can build it again for an edited dictionary
+	 *
+	 * @throws IllegalArgumentException
+	 *             if k is negative
+	 */
+	public AutocompletorFactory.Choice chooseAutocompletor(int k) {
+		return new AutocompletorFactory().choose(this, k);
+	}
+
+	/**
+	 * A copy of this dictionary with the weights in changes: each word already
+	 * in it takes its new weight and each other word is added, as a batch of
+	 * updates from PopularityIngester is applied before a rebuild.
+	 *
+	 * @throws NullPointerException
+	 *             if changes is null or holds a null word or weight
+	 */
+	public Dictionary withWeights(Map<String, Double> changes) {
+		HashMap<String, Integer> index = new HashMap<String, Integer>();
+		for (int i = 0; i < myTerms.length; i++) {
+			index.put(myTerms[i], i);
+		}
+		String[] terms = Arrays.copyOf(myTerms, myTerms.length + changes.size());
+		double[] weights = Arrays.copyOf(myWeights, terms.length);
+		int n = myTerms.length;
+		for (Map.Entry<String, Double> e : changes.entrySet()) {
+			if (e.getKey() == null) {
+				throw new NullPointerException("Invalid word");
+			}
+			Integer i = index.get(e.getKey());
+			if (i == null) {
+				terms[n] = e.getKey();
+				weights[n++] = e.getValue();
+			} else {
+				weights[i] = e.getValue();
+			}
+		}
+		return new Dictionary(Arrays.copyOf(terms, n), Arrays.copyOf(weights, n));
+	}
+
+	public String[] getTerms() {
+		return myTerms;
+	}
+
+	public double[] getWeights() {
+		return myWeights;
+	}
+
+	public int size() {
+		return myTerms.length;
+	}
+}
@@ -0,0 +1,802 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * An Autocompletor whose terms stay on disk, for dictionaries larger than the
+ * heap. The index file holds the sorted terms in blocks of a fixed number,
+ * front coded as in FrontCodedTerms with each term's weight after it, and a
+ * directory with each block's offset, first term and largest weight. Only the
+ * directory is read into the heap: the block heads as a TermArena to binary
+ * search a prefix's blocks, and a segment tree over the block maxima. The
+ * blocks are memory mapped and paged in by the OS as they are read, and the
+ * most recently decoded blocks are kept in an LRU page cache of a chosen
+ * number of blocks.
+ *
+ * A query visits the blocks that can hold its prefix in descending order of
+ * their largest weight, so it decodes only the blocks that can still add to
+ * the top k and stops as soon as the k-th best weight found is at least the
+ * largest weight of any block not yet decoded.
+ *
+ * Index files are written in sorted order, one term at a time, by a Writer,
+ * so writing one never needs the whole dictionary in memory either.
+ */
+public class DiskAutocomplete implements Autocompletor, Closeable {
+
+	public static final int DEFAULT_BLOCK_SIZE = 64;
+	public static final int DEFAULT_CACHE_BLOCKS = 1024;
+
+	private static final int MAGIC = 0x41434458;
+	private static final int FOOTER_BYTES = 28;
+	/**
+	 * A block's offset, largest weight and head length in the directory
+	 */
+	private static final int RECORD_BYTES = 20;
+	/**
+	 * The most bytes mapped at once; a single mapping is limited to 2GB
+	 */
+	private static final long SEGMENT_BYTES = 1L << 30;
+
+	private final File myFile;
+	private final RandomAccessFile myRaf;
+	private final int myBlockSize;
+	private final long mySize;
+
+	/**
+	 * The first term of each block
+	 */
+	private final TermArena myHeads;
+	/**
+	 * Offset of each block in the file, and where the directory starts at the
+	 * end
+	 */
+	private final long[] myBlockStart;
+	private final double[] myBlockMax;
+	/**
+	 * Segment tree of the index of the heaviest block in each range
+	 */
+	private final int[] myMaxBlock;
+	private final int myLeaves;
+
+	/**
+	 * Mapped on first use; segment i covers the blocks from offset
+	 * mySegmentStart[i] to mySegmentStart[i + 1]
+	 */
+	private final long[] mySegmentStart;
+	private final MappedByteBuffer[] mySegments;
+
+	private final LinkedHashMap<Integer, Block> myCache;
+	private long myHits;
+	private long myMisses;
+
+	/**
+	 * The terms and weights of one decoded block
+	 */
+	private static class Block {
+		final String[] myWords;
+		final double[] myWeights;
+
+		Block(int size) {
+			myWords = new String[size];
+			myWeights = new double[size];
+		}
+	}
+
+	/**
+	 * Writes an index file from terms given in ascending order. The directory
+	 * is spooled to two temporary files as the blocks are written and copied
+	 * after them on close, so a Writer's memory does not grow with the number
+	 * of terms either.
+	 */
+	public static class Writer implements Closeable {
+
+		/**
+		 * Bytes buffered for each of the index and the two directory files
+		 */
+		static final int BUFFER_BYTES = 1 << 16;
+		/**
+		 * The memory a Writer's buffers take, which does not grow with the
+		 * terms
+		 */
+		static final int BUFFERED_BYTES = 3 * BUFFER_BYTES;
+
+		private final File myFile;
+		private final DataOutputStream myOut;
+		private final int myBlockSize;
+		/**
+		 * Each block's offset, largest weight and head length, and the heads
+		 */
+		private final File myRecordFile;
+		private final File myHeadFile;
+		private final DataOutputStream myRecords;
+		private final OutputStream myHeads;
+		private byte[] myBlock = new byte[256];
+		private int myBlockLength;
+		private int myHeadLength;
+		private double myMax;
+		private long myOffset;
+		private long myHeadBytes;
+		private long mySize;
+		private int myBlocks;
+		private String myPrevious;
+
+		/**
+		 * @param file
+		 *            - where the index is written, replacing any file there
+		 * @param blockSize
+		 *            - the number of terms in a block
+		 * @throws IOException
+		 *             if the file cannot be created
+		 * @throws IllegalArgumentException
+		 *             if blockSize is less than 1
+		 */
+		public Writer(File file, int blockSize) throws IOException {
+			if (blockSize < 1) {
+				throw new IllegalArgumentException("Illegal block size " + blockSize);
+			}
+			myFile = file;
+			myBlockSize = blockSize;
+			File directory = file.getAbsoluteFile().getParentFile();
+			myRecordFile = File.createTempFile("blocks", ".tmp", directory);
+			myHeadFile = File.createTempFile("heads", ".tmp", directory);
+			myRecords = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(myRecordFile), BUFFER_BYTES));
+			myHeads = new BufferedOutputStream(new FileOutputStream(myHeadFile), BUFFER_BYTES);
+			myOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_BYTES));
+			myOut.writeInt(MAGIC);
+			myOffset = 4;
+		}
+
+		/**
+		 * Adds the next term
+		 *
+		 * @throws NullPointerException
+		 *             if word is null
+		 * @throws IllegalArgumentException
+		 *             if weight is negative or word does not sort after the
+		 *             word added before it
+		 */
+		public void add(String word, double weight) throws IOException {
+			if (word == null) {
+				throw new NullPointerException("Invalid word");
+			}
+			if (!(weight >= 0)) {
+				throw new IllegalArgumentException("Negative weight:" + word);
+			}
+			if (myPrevious != null && myPrevious.compareTo(word) >= 0) {
+				throw new IllegalArgumentException("Terms not sorted or duplicated at " + word);
+			}
+			int shared = 0;
+			if (mySize % myBlockSize == 0) {
+				flushBlock();
+				byte[] head = TermArena.encode(word);
+				myHeads.write(head);
+				myHeadLength = head.length;
+				myHeadBytes += head.length;
+				if (myHeadBytes > Integer.MAX_VALUE - 8) {
+					throw new IllegalArgumentException("Block heads too long for one array at " + word);
+				}
+				myMax = weight;
+			} else {
+				int limit = Math.min(myPrevious.length(), word.length());
+				while (shared < limit && myPrevious.charAt(shared) == word.charAt(shared)) {
+					shared++;
+				}
+				myMax = Math.max(myMax, weight);
+			}
+			// two varints of at most 5 bytes, 3 bytes a char and the weight
+			int needed = myBlockLength + 18 + 3 * (word.length() - shared);
+			if (needed > myBlock.length) {
+				myBlock = Arrays.copyOf(myBlock, Math.max(2 * myBlock.length, needed));
+			}
+			myBlockLength = writeVarint(myBlock, myBlockLength, shared);
+			myBlockLength = writeVarint(myBlock, myBlockLength, word.length() - shared);
+			for (int j = shared; j < word.length(); j++) {
+				myBlockLength = TermArena.encode(word.charAt(j), myBlock, myBlockLength);
+			}
+			long bits = Double.doubleToLongBits(weight);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				myBlock[myBlockLength++] = (byte) (bits >>> shift);
+			}
+			myPrevious = word;
+			mySize++;
+		}
+
+		private void flushBlock() throws IOException {
+			if (myBlockLength > 0) {
+				myOut.write(myBlock, 0, myBlockLength);
+				myRecords.writeLong(myOffset);
+				myRecords.writeDouble(myMax);
+				myRecords.writeInt(myHeadLength);
+				myOffset += myBlockLength;
+				myBlockLength = 0;
+				myBlocks++;
+			}
+		}
+
+		/**
+		 * Writes the directory after the last block and closes the file. If
+		 * that fails the file is deleted, as it is no index.
+		 */
+		public void close() throws IOException {
+			boolean written = false;
+			try {
+				flushBlock();
+				myRecords.close();
+				myHeads.close();
+				long directory = myOffset;
+				Files.copy(myRecordFile.toPath(), myOut);
+				Files.copy(myHeadFile.toPath(), myOut);
+				myOut.writeLong(mySize);
+				myOut.writeInt(myBlocks);
+				myOut.writeInt(myBlockSize);
+				myOut.writeLong(directory);
+				myOut.writeInt(MAGIC);
+				myOut.flush();
+				written = true;
+			} finally {
+				myRecords.close();
+				myHeads.close();
+				myOut.close();
+				myRecordFile.delete();
+				myHeadFile.delete();
+				if (!written) {
+					myFile.delete();
+				}
+			}
+		}
+
+		/**
+		 * Closes and deletes the file without writing the directory, for when
+		 * the terms could not all be added; a truncated index must not be
+		 * left to be opened as a whole one
+		 */
+		public void abort() {
+			for (Closeable stream : new Closeable[] { myRecords, myHeads, myOut }) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+					// the files are deleted anyway
+				}
+			}
+			myRecordFile.delete();
+			myHeadFile.delete();
+			myFile.delete();
+		}
+
+		public File getFile() {
+			return myFile;
+		}
+	}
+
+	private static int writeVarint(byte[] data, int pos, int value) {
+		while (value >= 0x80) {
+			data[pos++] = (byte) (value | 0x80);
+			value >>>= 7;
+		}
+		data[pos++] = (byte) value;
+		return pos;
+	}
+
+	/**
+	 * Writes terms to a temporary index file and opens it with the default
+	 * block and cache sizes, for comparison with the in-memory engines. The
+	 * whole file is mapped at once and then closed and deleted, so the engine
+	 * holds no file descriptor and its disk space is freed when the mappings
+	 * are garbage collected; close need not be called, and getFile names a
+	 * file that no longer exists.
+	 *
+	 * @param terms
+	 *            - The words we will autocomplete from
+	 * @param weights
+	 *            - Their weights, such that terms[i] has weight weights[i]. If a
+	 *            word appears more than once its last weight is used, as in
+	 *            TrieAutocomplete.
+	 * @throws NullPointerException
+	 *             if either argument or any term is null
+	 * @throws IllegalArgumentException
+	 *             if terms and weights are different length or any weight is
+	 *             negative
+	 * @throws UncheckedIOException
+	 *             if the file cannot be written
+	 */
+	public DiskAutocomplete(String[] terms, double[] weights) {
+		this(writeTemporary(terms, weights), DEFAULT_CACHE_BLOCKS, SEGMENT_BYTES);
+		try {
+			for (int i = 0; i < mySegments.length; i++) {
+				segment(i);
+			}
+			myRaf.close();
+		} catch (IOException | RuntimeException e) {
+			closeQuietly();
+			myFile.delete();
+			throw e instanceof IOException ? new UncheckedIOException((IOException) e) : (RuntimeException) e;
+		}
+		// a mapping outlives its channel; where the file system will not
+		// delete a mapped file, it goes when the JVM exits
+		if (!myFile.delete()) {
+			myFile.deleteOnExit();
+		}
+	}
+
+	private static File writeTemporary(String[] terms, double[] weights) {
+		if (terms == null || weights == null) {
+			throw new NullPointerException("One or more arguments null");
+		}
+		if (terms.length != weights.length) {
+			throw new IllegalArgumentException("Terms and weights are different lengths");
+		}
+		Term[] sorted = new Term[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			// Term rejects null words and negative weights
+			sorted[i] = new Term(terms[i], weights[i]);
+		}
+		// stable, so the last of several equal words is last here too
+		TermSort.sort(sorted);
+		File file = null;
+		try {
+			file = File.createTempFile("autocomplete", ".idx");
+			Writer writer = new Writer(file, DEFAULT_BLOCK_SIZE);
+			boolean added = false;
+			try {
+				for (int i = 0; i < sorted.length; i++) {
+					if (i + 1 < sorted.length && sorted[i].getWord().equals(sorted[i + 1].getWord())) {
+						continue;
+					}
+					writer.add(sorted[i].getWord(), sorted[i].getWeight());
+				}
+				added = true;
+			} finally {
+				if (added) {
+					writer.close();
+				} else {
+					writer.abort();
+				}
+			}
+			return file;
+		} catch (IOException e) {
+			if (file != null) {
+				file.delete();
+			}
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Opens an index file written by a Writer. The file stays open until
+	 * close is called, which the caller must do.
+	 *
+	 * @param file
+	 *            - the index file
+	 * @param cacheBlocks
+	 *            - the most decoded blocks kept in the page cache, 0 for none
+	 * @throws UncheckedIOException
+	 *             if the file cannot be read
+	 * @throws IllegalArgumentException
+	 *             if cacheBlocks is negative or file is not an index file
+	 */
+	public DiskAutocomplete(File file, int cacheBlocks) {
+		this(file, cacheBlocks, SEGMENT_BYTES);
+	}
+
+	/**
+	 * Opens file mapping at most segmentBytes at once, so tests can cross
+	 * segments without 1GB files
+	 */
+	DiskAutocomplete(File file, int cacheBlocks, long segmentBytes) {
+		if (file == null) {
+			throw new NullPointerException("Invalid file");
+		}
+		if (cacheBlocks < 0) {
+			throw new IllegalArgumentException("Illegal cache size " + cacheBlocks);
+		}
+		myFile = file;
+		try {
+			myRaf = new RandomAccessFile(file, "r");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		try {
+			long length = myRaf.length();
+			if (length < 4 + FOOTER_BYTES) {
+				throw new IllegalArgumentException("Not an index file: " + file);
+			}
+			FileChannel channel = myRaf.getChannel();
+			ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES);
+			channel.read(footer, length - FOOTER_BYTES);
+			footer.flip();
+			mySize = footer.getLong();
+			int blocks = footer.getInt();
+			myBlockSize = footer.getInt();
+			long directory = footer.getLong();
+			long headBytes = length - FOOTER_BYTES - directory - (long) RECORD_BYTES * blocks;
+			if (footer.getInt() != MAGIC || blocks < 0 || headBytes < 0 || headBytes > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Not an index file: " + file);
+			}
+			// the records, then the heads read straight into an arena
+			ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, directory, (long) RECORD_BYTES * blocks);
+			myBlockStart = new long[blocks + 1];
+			myBlockMax = new double[blocks];
+			int[] headStart = new int[blocks + 1];
+			for (int b = 0; b < blocks; b++) {
+				myBlockStart[b] = in.getLong();
+				myBlockMax[b] = in.getDouble();
+				headStart[b + 1] = headStart[b] + in.getInt();
+			}
+			myBlockStart[blocks] = directory;
+			if (headStart[blocks] != headBytes) {
+				throw new IllegalArgumentException("Not an index file: " + file);
+			}
+			byte[] heads = new byte[(int) headBytes];
+			ByteBuffer read = ByteBuffer.wrap(heads);
+			while (read.hasRemaining()) {
+				if (channel.read(read, directory + (long) RECORD_BYTES * blocks + read.position()) < 0) {
+					throw new IllegalArgumentException("Not an index file: " + file);
+				}
+			}
+			myHeads = new TermArena(heads, headStart);
+		} catch (IOException e) {
+			closeQuietly();
+			throw new UncheckedIOException(e);
+		} catch (IllegalArgumentException e) {
+			closeQuietly();
+			throw e;
+		} catch (RuntimeException e) {
+			// a truncated or corrupt directory
+			closeQuietly();
+			throw new IllegalArgumentException("Not an index file: " + file, e);
+		}
+
+		int blocks = myBlockMax.length;
+		myLeaves = Math.max(1, blocks);
+		myMaxBlock = new int[2 * myLeaves];
+		for (int i = 0; i < myLeaves; i++) {
+			myMaxBlock[myLeaves + i] = Math.min(i, blocks - 1);
+		}
+		for (int i = myLeaves - 1; i > 0; i--) {
+			myMaxBlock[i] = heavier(myMaxBlock[2 * i], myMaxBlock[2 * i + 1]);
+		}
+
+		// group whole blocks into segments small enough to map
+		ArrayList<Long> starts = new ArrayList<Long>();
+		starts.add(myBlockStart[0]);
+		for (int b = 1; b < blocks; b++) {
+			if (myBlockStart[b + 1] - starts.get(starts.size() - 1) > segmentBytes) {
+				starts.add(myBlockStart[b]);
+			}
+		}
+		mySegmentStart = new long[starts.size() + 1];
+		for (int i = 0; i < starts.size(); i++) {
+			mySegmentStart[i] = starts.get(i);
+		}
+		mySegmentStart[starts.size()] = myBlockStart[blocks];
+		mySegments = new MappedByteBuffer[starts.size()];
+
+		final int capacity = cacheBlocks;
+		myCache = new LinkedHashMap<Integer, Block>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Integer, Block> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	private void closeQuietly() {
+		try {
+			myRaf.close();
+		} catch (IOException e) {
+			// already failing
+		}
+	}
+
+	private int heavier(int i, int j) {
+		return myBlockMax[j] > myBlockMax[i] ? j : i;
+	}
+
+	/**
+	 * Index of the heaviest block in [lo, hi), which must not be empty
+	 */
+	private int maxBlock(int lo, int hi) {
+		int best = lo;
+		for (lo += myLeaves, hi += myLeaves; lo < hi; lo >>= 1, hi >>= 1) {
+			if ((lo & 1) == 1) {
+				best = heavier(best, myMaxBlock[lo++]);
+			}
+			if ((hi & 1) == 1) {
+				best = heavier(best, myMaxBlock[--hi]);
+			}
+		}
+		return best;
+	}
+
+
+	/**
+	 * Block b, from the page cache or decoded from its mapped segment
+	 */
+	private Block block(int b) {
+		synchronized (myCache) {
+			Block block = myCache.get(b);
+			if (block != null) {
+				myHits++;
+				return block;
+			}
+			myMisses++;
+		}
+		byte[] data = new byte[(int) (myBlockStart[b + 1] - myBlockStart[b])];
+		int i = segmentOf(myBlockStart[b]);
+		ByteBuffer segment = segment(i).duplicate();
+		segment.position((int) (myBlockStart[b] - mySegmentStart[i]));
+		segment.get(data);
+
+		Block block = new Block((int) Math.min(myBlockSize, mySize - (long) b * myBlockSize));
+		char[] chars = new char[32];
+		int pos = 0;
+		for (int w = 0; w < block.myWords.length; w++) {
+			int shared = 0;
+			for (int shift = 0;; shift += 7) {
+				shared |= (data[pos] & 0x7F) << shift;
+				if (data[pos++] >= 0) {
+					break;
+				}
+			}
+			int length = shared;
+			for (int shift = 0;; shift += 7) {
+				length += (data[pos] & 0x7F) << shift;
+				if (data[pos++] >= 0) {
+					break;
+				}
+			}
+			if (length > chars.length) {
+				chars = Arrays.copyOf(chars, Math.max(2 * chars.length, length));
+			}
+			for (int j = shared; j < length; j++) {
+				chars[j] = TermArena.decode(data, pos);
+				pos += TermArena.sequenceLength(data[pos]);
+			}
+			block.myWords[w] = new String(chars, 0, length);
+			long bits = 0;
+			for (int j = 0; j < 8; j++) {
+				bits = bits << 8 | data[pos++] & 0xFF;
+			}
+			block.myWeights[w] = Double.longBitsToDouble(bits);
+		}
+		synchronized (myCache) {
+			myCache.put(b, block);
+		}
+		return block;
+	}
+
+	private int segmentOf(long offset) {
+		int i = Arrays.binarySearch(mySegmentStart, offset);
+		return i >= 0 ? i : -i - 2;
+	}
+
+	/**
+	 * Segment i, mapped now if it has not been
+	 */
+	private ByteBuffer segment(int i) {
+		synchronized (mySegments) {
+			if (mySegments[i] == null) {
+				try {
+					mySegments[i] = myRaf.getChannel().map(FileChannel.MapMode.READ_ONLY, mySegmentStart[i],
+							mySegmentStart[i + 1] - mySegmentStart[i]);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			return mySegments[i];
+		}
+	}
+
+	/**
+	 * Returns the k words in the dictionary that start with prefix, in
+	 * descending order of weight
+	 *
+	 * @throws NullPointerException
+	 *             if prefix is null
+	 * @throws IllegalArgumentException
+	 *             if k is negative
+	 */
+	public Iterable<String> topMatches(String prefix, int k) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		if (k < 0) {
+			throw new IllegalArgumentException("Illegal value of k:" + k);
+		}
+		LinkedList<String> ret = new LinkedList<String>();
+		if (k == 0 || mySize == 0) {
+			return ret;
+		}
+		byte[] key = TermArena.encode(prefix);
+		// the matches start in the last block whose head sorts before them,
+		// or the first block if none does, and end in the last block whose
+		// head does not sort after them
+		int lo = Math.max(0, countHeads(key, false) - 1);
+		int hi = countHeads(key, true);
+		if (lo >= hi) {
+			return ret;
+		}
+		// the best k so far, lowest weight first
+		PriorityQueue<Term> best = new PriorityQueue<Term>(k, new Term.WeightOrder());
+		// ranges of blocks not yet decoded, heaviest block first
+		PriorityQueue<int[]> ranges = new PriorityQueue<int[]>(16, new Comparator<int[]>() {
+			public int compare(int[] a, int[] b) {
+				return Double.compare(myBlockMax[b[2]], myBlockMax[a[2]]);
+			}
+		});
+		ranges.add(new int[] { lo, hi, maxBlock(lo, hi) });
+		while (!ranges.isEmpty()) {
+			int[] range = ranges.remove();
+			int b = range[2];
+			if (best.size() == k && best.peek().getWeight() >= myBlockMax[b]) {
+				break;
+			}
+			Block block = block(b);
+			for (int i = 0; i < block.myWords.length; i++) {
+				if (block.myWords[i].startsWith(prefix)) {
+					if (best.size() < k) {
+						best.add(new Term(block.myWords[i], block.myWeights[i]));
+					} else if (best.peek().getWeight() < block.myWeights[i]) {
+						best.remove();
+						best.add(new Term(block.myWords[i], block.myWeights[i]));
+					}
+				}
+			}
+			if (range[0] < b) {
+				ranges.add(new int[] { range[0], b, maxBlock(range[0], b) });
+			}
+			if (b + 1 < range[1]) {
+				ranges.add(new int[] { b + 1, range[1], maxBlock(b + 1, range[1]) });
+			}
+		}
+		while (!best.isEmpty()) {
+			ret.addFirst(best.remove().getWord());
+		}
+		return ret;
+	}
+
+	/**
+	 * The number of block heads that sort before every word starting with
+	 * the encoded prefix, or, if orMatching, that also start with it
+	 */
+	private int countHeads(byte[] key, boolean orMatching) {
+		int lo = 0;
+		int hi = myHeads.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int c = myHeads.compare(mid, key);
+			if (c < 0 || orMatching && c == 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Given a prefix, returns the largest-weight word in the dictionary which
+	 * starts with that prefix, or the empty string if there is none
+	 *
+	 * @throws NullPointerException
+	 *             if prefix is null
+	 */
+	public String topMatch(String prefix) {
+		Iterable<String> match = topMatches(prefix, 1);
+		for (String word : match) {
+			return word;
+		}
+		return "";
+	}
+
+	/**
+	 * Return the weight of a given term. If term is not in the dictionary,
+	 * return 0.0
+	 */
+	public double weightOf(String term) {
+		if (term == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		// the last block whose head is at most term
+		int lo = 0;
+		int hi = myHeads.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (myHeads.word(mid).compareTo(term) <= 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		if (lo == 0) {
+			return 0.0;
+		}
+		Block block = block(lo - 1);
+		int i = Arrays.binarySearch(block.myWords, term);
+		return i >= 0 ? block.myWeights[i] : 0.0;
+	}
+
+	/**
+	 * The number of terms in the index
+	 */
+	public long size() {
+		return mySize;
+	}
+
+	public int getBlockSize() {
+		return myBlockSize;
+	}
+
+	public int getBlockCount() {
+		return myBlockMax.length;
+	}
+
+	/**
+	 * The number of segments the file is mapped in, and how many of them have
+	 * been mapped so far
+	 */
+	public int getSegmentCount() {
+		return mySegments.length;
+	}
+
+	public int getMappedSegmentCount() {
+		synchronized (mySegments) {
+			int n = 0;
+			for (MappedByteBuffer segment : mySegments) {
+				if (segment != null) {
+					n++;
+				}
+			}
+			return n;
+		}
+	}
+
+	/**
+	 * Blocks found in the page cache and blocks decoded since opening
+	 */
+	public long getCacheHits() {
+		synchronized (myCache) {
+			return myHits;
+		}
+	}
+
+	public long getCacheMisses() {
+		synchronized (myCache) {
+			return myMisses;
+		}
+	}
+
+	public File getFile() {
+		return myFile;
+	}
+
+	/**
+	 * Closes the file. The mapped segments stay readable until they are
+	 * garbage collected, but queries must not be made after closing.
+	 */
+	public void close() throws IOException {
+		synchronized (myCache) {
+			myCache.clear();
+		}
+		myRaf.close();
+	}
+}
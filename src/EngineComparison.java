@@ -0,0 +1,63 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares every engine in AutocompletorBenchmark.ENGINES on every dictionary
+ * in a data directory: build time, estimated heap per term (see HeapFootprint),
+ * single-threaded throughput and latency on ConcurrentBenchmark's Zipfian
+ * topMatch/topMatches/weightOf workload. Words keep their case, so the sparse
+ * alphabets of cities.txt and similar files are what the engines index.
+ *
+ * % java -Xmx2g EngineComparison data 2
+ *
+ * measures each engine for 2 seconds per dictionary. Class names after the
+ * seconds restrict the comparison to those engines.
+ */
+public class EngineComparison {
+
+	public static void main(String[] args) throws FileNotFoundException, InterruptedException {
+		File data = new File(args.length >= 1 ? args[0] : "data");
+		int seconds = args.length >= 2 ? Integer.parseInt(args[1]) : 1;
+		String[] engines = args.length >= 3 ? Arrays.copyOfRange(args, 2, args.length)
+				: AutocompletorBenchmark.ENGINES;
+		File[] files = data.isDirectory() ? data.listFiles() : new File[] { data };
+		Arrays.sort(files);
+		for (File file : files) {
+			Dictionary dictionary;
+			try {
+				dictionary = Dictionary.read(file, false);
+			} catch (IllegalArgumentException e) {
+				System.out.println("Skipping " + file + ": " + e.getMessage());
+				continue;
+			}
+			if (dictionary.size() == 0) {
+				continue;
+			}
+			System.out.println();
+			System.out.println(file + " (" + dictionary.size() + " terms)");
+			System.out.println(String.format("%-26s %9s %10s %12s  %s", "engine", "build ms", "B/term", "ops/s",
+					"latency"));
+			ConcurrentBenchmark.Workload workload = new ConcurrentBenchmark.Workload(dictionary,
+					new int[] { 20, 70, 10 }, ConcurrentBenchmark.DEFAULT_K, new Random(1234));
+			for (String engine : engines) {
+				long start = System.nanoTime();
+				Autocompletor auto;
+				try {
+					auto = dictionary.newAutocompletor(engine);
+				} catch (IllegalArgumentException e) {
+					System.out.println(String.format("%-26s %s", engine, e.getMessage()));
+					continue;
+				}
+				double buildMillis = (System.nanoTime() - start) / 1E6;
+				long bytes = HeapFootprint.of(auto, dictionary.getTerms()).bytes();
+				ConcurrentBenchmark.run(auto, workload, 1, false, 500, new Histogram());
+				Histogram latencies = new Histogram();
+				long ops = ConcurrentBenchmark.run(auto, workload, 1, false, seconds * 1000L, latencies);
+				System.out.println(String.format("%-26s %9.1f %10.1f %12.0f  %s", engine, buildMillis,
+						(double) bytes / dictionary.size(), ops / (double) seconds, latencies.toLatencyString()));
+			}
+		}
+	}
+}
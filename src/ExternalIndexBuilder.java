@@ -0,0 +1,413 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Builds a DiskAutocomplete index from a dictionary file of any size in a
+ * fixed amount of memory. The file, in the format Dictionary reads, is read
+ * a line at a time into a buffer of at most the given number of bytes; each
+ * full buffer is sorted with TermSort and written to a temporary file as a
+ * sorted run. The runs are then merged k at a time, as many at once as their
+ * read buffers fit in the same memory, in as many passes as it takes, and
+ * the last merge streams the terms in order to a DiskAutocomplete.Writer,
+ * which writes the blocks and each block's largest weight for the range-max
+ * summaries.
+ *
+ * The memory counts the terms, by the estimate of termBytes, and the buffers
+ * of every file read or written at the same time: the input's, a run's or
+ * the index Writer's. Not counted are the input decoder's 8KB, the merge
+ * heap of one entry a run and the word each run reader holds, which are
+ * small beside the buffers, and any garbage waiting to be collected.
+ *
+ * As in the in-memory engines, a word that appears more than once takes its
+ * last weight: within a run the sort is stable, and across runs the run read
+ * later wins.
+ *
+ * % java -Xmx64m ExternalIndexBuilder data/cities.txt cities.idx 16
+ *
+ * builds cities.idx using at most 16MB for terms.
+ */
+public class ExternalIndexBuilder {
+
+	/**
+	 * Bytes read or written at a time from each run
+	 */
+	private static final int BUFFER_BYTES = 1 << 16;
+	/**
+	 * The most taken by the buffers of the files written at once: a run's,
+	 * or the index Writer's in the last merge
+	 */
+	private static final long WRITE_BYTES = Math.max(BUFFER_BYTES, DiskAutocomplete.Writer.BUFFERED_BYTES);
+	/**
+	 * The input's buffer, BUFFER_BYTES chars
+	 */
+	private static final long READ_BYTES = 2 * BUFFER_BYTES;
+	/**
+	 * The least memory a builder accepts: a two-way merge into the index,
+	 * and some terms beside the buffers of reading the input into runs
+	 */
+	public static final long MIN_MEMORY = WRITE_BYTES + READ_BYTES + BUFFER_BYTES;
+
+	private final long myMemory;
+	private final int myBlockSize;
+	private final File myTempDirectory;
+
+	private long myTermsRead;
+	private long myTermsWritten;
+	private int myRuns;
+	private int myMergePasses;
+
+	/**
+	 * @param memoryBytes
+	 *            - the most memory used for terms and file buffers
+	 * @param blockSize
+	 *            - the number of terms in each block of the index
+	 * @param tempDirectory
+	 *            - where the runs are written, or null for the default
+	 *            temporary directory
+	 * @throws IllegalArgumentException
+	 *             if memoryBytes is less than MIN_MEMORY or blockSize less
+	 *             than 1
+	 */
+	public ExternalIndexBuilder(long memoryBytes, int blockSize, File tempDirectory) {
+		if (memoryBytes < MIN_MEMORY) {
+			throw new IllegalArgumentException("Illegal memory " + memoryBytes + ", at least " + MIN_MEMORY);
+		}
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Illegal block size " + blockSize);
+		}
+		myMemory = memoryBytes;
+		myBlockSize = blockSize;
+		myTempDirectory = tempDirectory;
+	}
+
+	/**
+	 * An estimate of the heap a buffered term takes: the String and its
+	 * chars, its slot in the buffer, its weight and its sort index
+	 */
+	static long termBytes(String word) {
+		return 56 + 2L * word.length() + 8 + 8 + 4;
+	}
+
+	/**
+	 * Reads input and writes the index of its terms to output
+	 *
+	 * @param lowerCase
+	 *            - whether every word is converted to lower case, as
+	 *            Dictionary.read does
+	 * @throws IOException
+	 *             if a file cannot be read or written
+	 * @throws IllegalArgumentException
+	 *             if input is malformatted or has a negative weight
+	 */
+	public void build(File input, boolean lowerCase, File output) throws IOException {
+		myTermsRead = 0;
+		myTermsWritten = 0;
+		myMergePasses = 0;
+		List<File> runs = new ArrayList<File>();
+		try {
+			writeRuns(input, lowerCase, runs);
+			myRuns = runs.size();
+			// as many runs at once as their read buffers fit beside the
+			// output's, which the last merge into the Writer needs most of
+			int fanIn = (int) Math.max(2, Math.min(Integer.MAX_VALUE, (myMemory - WRITE_BYTES) / BUFFER_BYTES));
+			while (runs.size() > fanIn) {
+				List<File> merged = new ArrayList<File>();
+				for (int i = 0; i < runs.size(); i += fanIn) {
+					List<File> group = runs.subList(i, Math.min(runs.size(), i + fanIn));
+					if (group.size() == 1) {
+						merged.add(group.get(0));
+						continue;
+					}
+					File run = newRun();
+					merged.add(run);
+					RunWriter out = new RunWriter(run);
+					try {
+						merge(group, out);
+					} finally {
+						out.close();
+					}
+					for (File done : group) {
+						done.delete();
+					}
+				}
+				runs = merged;
+				myMergePasses++;
+			}
+			final DiskAutocomplete.Writer writer = new DiskAutocomplete.Writer(output, myBlockSize);
+			boolean merged = false;
+			try {
+				merge(runs, new Sink() {
+					public void add(String word, double weight) throws IOException {
+						writer.add(word, weight);
+						myTermsWritten++;
+					}
+				});
+				merged = true;
+			} finally {
+				// a failed merge leaves no index rather than a truncated one
+				if (merged) {
+					writer.close();
+				} else {
+					writer.abort();
+				}
+			}
+			myMergePasses++;
+		} finally {
+			for (File run : runs) {
+				run.delete();
+			}
+		}
+	}
+
+	private File newRun() throws IOException {
+		File run = File.createTempFile("run", ".tmp", myTempDirectory);
+		run.deleteOnExit();
+		return run;
+	}
+
+	/**
+	 * Reads input into sorted runs, one per buffer full
+	 */
+	private void writeRuns(File input, boolean lowerCase, List<File> runs) throws IOException {
+		BufferedReader in = new BufferedReader(
+				new InputStreamReader(new FileInputStream(input), Dictionary.CHARSET), BUFFER_BYTES);
+		try {
+			String line = in.readLine();
+			long n;
+			try {
+				n = Long.parseLong(line.trim());
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("File is malformatted: " + input, e);
+			}
+			ArrayList<String> words = new ArrayList<String>();
+			double[] weights = new double[1024];
+			long bytes = 0;
+			for (long i = 0; i < n; i++) {
+				line = in.readLine();
+				String word;
+				double weight;
+				try {
+					int tab = line.indexOf('\t');
+					weight = Double.parseDouble(line.substring(0, tab).trim());
+					word = line.substring(tab + 1);
+				} catch (RuntimeException e) { //could be any parsing related exception
+					throw new IllegalArgumentException("File is malformatted: " + input + " at term " + i, e);
+				}
+				if (!(weight >= 0)) {
+					throw new IllegalArgumentException("Negative weight:" + word);
+				}
+				if (lowerCase) {
+					word = word.toLowerCase();
+				}
+				// the buffer only grows while it is within budget, so it
+				// never takes more than twice the terms' share of what the
+				// input's buffer and a run's leave
+				if (bytes + termBytes(word) > (myMemory - READ_BYTES - BUFFER_BYTES) / 2 && !words.isEmpty()) {
+					runs.add(writeRun(words, weights));
+					words.clear();
+					bytes = 0;
+				}
+				if (words.size() == weights.length) {
+					weights = Arrays.copyOf(weights, 2 * weights.length);
+				}
+				weights[words.size()] = weight;
+				words.add(word);
+				bytes += termBytes(word);
+				myTermsRead++;
+			}
+			if (!words.isEmpty() || runs.isEmpty()) {
+				runs.add(writeRun(words, weights));
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Sorts the buffered terms and writes them as a run, keeping only the
+	 * last of equal words
+	 */
+	private File writeRun(List<String> buffered, double[] weights) throws IOException {
+		String[] words = buffered.toArray(new String[buffered.size()]);
+		int[] order = TermSort.order(words);
+		File run = newRun();
+		RunWriter out = new RunWriter(run);
+		try {
+			for (int i = 0; i < order.length; i++) {
+				if (i + 1 < order.length && words[order[i]].equals(words[order[i + 1]])) {
+					continue;
+				}
+				out.add(words[order[i]], weights[order[i]]);
+			}
+		} finally {
+			out.close();
+		}
+		return run;
+	}
+
+	/**
+	 * Where merged terms go
+	 */
+	private interface Sink {
+		public void add(String word, double weight) throws IOException;
+	}
+
+	/**
+	 * Writes a run: each word's length and chars, then its weight
+	 */
+	private static class RunWriter implements Sink, Closeable {
+		private final DataOutputStream myOut;
+
+		RunWriter(File file) throws IOException {
+			myOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_BYTES));
+		}
+
+		public void add(String word, double weight) throws IOException {
+			myOut.writeInt(word.length());
+			myOut.writeChars(word);
+			myOut.writeDouble(weight);
+		}
+
+		public void close() throws IOException {
+			myOut.close();
+		}
+	}
+
+	/**
+	 * Reads a run one term ahead
+	 */
+	private static class RunReader implements Closeable {
+		private final DataInputStream myIn;
+		/**
+		 * Where the run came in the input; a later run's weight wins
+		 */
+		final int myOrder;
+		String myWord;
+		double myWeight;
+		private char[] myChars = new char[32];
+
+		RunReader(File file, int order) throws IOException {
+			myIn = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_BYTES));
+			myOrder = order;
+		}
+
+		/**
+		 * Moves to the next term, returning false at the end of the run
+		 */
+		boolean next() throws IOException {
+			int length;
+			try {
+				length = myIn.readInt();
+			} catch (EOFException e) {
+				myWord = null;
+				return false;
+			}
+			if (length > myChars.length) {
+				myChars = new char[Math.max(2 * myChars.length, length)];
+			}
+			for (int j = 0; j < length; j++) {
+				myChars[j] = myIn.readChar();
+			}
+			myWord = new String(myChars, 0, length);
+			myWeight = myIn.readDouble();
+			return true;
+		}
+
+		public void close() throws IOException {
+			myIn.close();
+		}
+	}
+
+	/**
+	 * Merges runs, which are in input order, into out, keeping only the last
+	 * of equal words
+	 */
+	private static void merge(List<File> runs, Sink out) throws IOException {
+		PriorityQueue<RunReader> heads = new PriorityQueue<RunReader>(Math.max(1, runs.size()),
+				new Comparator<RunReader>() {
+					public int compare(RunReader a, RunReader b) {
+						int c = a.myWord.compareTo(b.myWord);
+						return c != 0 ? c : a.myOrder - b.myOrder;
+					}
+				});
+		List<RunReader> readers = new ArrayList<RunReader>();
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				RunReader reader = new RunReader(runs.get(i), i);
+				readers.add(reader);
+				if (reader.next()) {
+					heads.add(reader);
+				}
+			}
+			while (!heads.isEmpty()) {
+				RunReader reader = heads.remove();
+				String word = reader.myWord;
+				double weight = reader.myWeight;
+				if (reader.next()) {
+					heads.add(reader);
+				}
+				// equal words come out in run order, so the last one seen wins
+				if (heads.isEmpty() || !heads.peek().myWord.equals(word)) {
+					out.add(word, weight);
+				}
+			}
+		} finally {
+			for (RunReader reader : readers) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * The number of terms read and written by the last build; fewer are
+	 * written when words repeat
+	 */
+	public long getTermsRead() {
+		return myTermsRead;
+	}
+
+	public long getTermsWritten() {
+		return myTermsWritten;
+	}
+
+	/**
+	 * The number of sorted runs the last build wrote, and the number of
+	 * merge passes over them, the last into the index included
+	 */
+	public int getRunCount() {
+		return myRuns;
+	}
+
+	public int getMergePasses() {
+		return myMergePasses;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: java ExternalIndexBuilder <dictionary file> <index file> [memory MB]");
+			System.exit(1);
+		}
+		long memory = (args.length >= 3 ? Long.parseLong(args[2]) : 64) << 20;
+		ExternalIndexBuilder builder = new ExternalIndexBuilder(memory, DiskAutocomplete.DEFAULT_BLOCK_SIZE, null);
+		long start = System.nanoTime();
+		builder.build(new File(args[0]), false, new File(args[1]));
+		System.out.println(String.format("Indexed %d terms (%d distinct) from %d runs in %d merge passes in %.1fs",
+				builder.getTermsRead(), builder.getTermsWritten(), builder.getRunCount(), builder.getMergePasses(),
+				(System.nanoTime() - start) / 1E9));
+	}
+}
@@ -0,0 +1,596 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+
+/**
+ * Autocompletor over a minimal acyclic finite state transducer, in the style
+ * of Lucene's completion suggester. A trie shares the prefixes of the terms;
+ * the transducer shares their suffixes too, so the thousands of terms ending in
+ * ", China" or ", United States" in cities.txt reuse one chain of states.
+ *
+ * Every arc is labeled with a character and carries an integer cost output;
+ * the costs along a term's path add up to its weight rank, 0 for the heaviest
+ * weight. During construction each state's smallest outgoing cost is pushed
+ * onto the arc leading into it, as far toward the start as it will go, which
+ * makes equal suffixes equal and lets them be merged. The cheapest completion
+ * below every state is also kept, so an arc's output plus that of its target
+ * is the best (heaviest) rank reachable through it: the max weight annotation
+ * that lets topMatches search best-first and return terms in order without
+ * visiting anything that cannot make the top k.
+ *
+ * The transducer is built in one pass over the terms sorted as in
+ * BinarySearchAutocomplete. States whose last term has been seen are frozen
+ * and looked up in a table of frozen states, so equal states are stored
+ * once. Frozen states and arcs live in parallel primitive arrays.
+ */
+public class FSTAutocomplete implements Autocompletor, QueryStatsSource {
+
+	private static final int NOT_FINAL = -1;
+
+	/**
+	 * Distinct weights in descending order; a term's cost is the index of its
+	 * weight here
+	 */
+	private final double[] myWeights;
+
+	// frozen states
+	private int myStateCount;
+	private int[] myFirstArc = new int[16];
+	private int[] myArcCount = new int[16];
+	private int[] myFinalOutput = new int[16];
+	/**
+	 * Cost of the cheapest way from the state to the end of a term
+	 */
+	private int[] myMinCost = new int[16];
+
+	// arcs of frozen states, sorted by label within a state
+	private int myArcTotal;
+	private char[] myArcLabel = new char[16];
+	private int[] myArcOutput = new int[16];
+	private int[] myArcTarget = new int[16];
+
+	/**
+	 * Open addressing table of frozen states, holding state + 1 or 0 for empty.
+	 * Only needed while building.
+	 */
+	private int[] myRegistry = new int[16];
+
+	private int myRoot;
+	private int myTermCount;
+
+	/**
+	 * Where per-query statistics go, null when they are not being collected
+	 */
+	QueryStatsCollector myStatsCollector;
+
+	/**
+	 * A state on the path of the last term added, which can still change
+	 */
+	private static class PendingState {
+		char[] labels = new char[4];
+		int[] outputs = new int[4];
+		int[] targets = new int[4];
+		int arcs;
+		int finalOutput = NOT_FINAL;
+
+		void clear() {
+			arcs = 0;
+			finalOutput = NOT_FINAL;
+		}
+
+		void addArc(char label) {
+			if (arcs == labels.length) {
+				labels = Arrays.copyOf(labels, 2 * arcs);
+				outputs = Arrays.copyOf(outputs, 2 * arcs);
+				targets = Arrays.copyOf(targets, 2 * arcs);
+			}
+			labels[arcs] = label;
+			outputs[arcs] = 0;
+			targets[arcs] = -1;
+			arcs++;
+		}
+
+		/**
+		 * Adds cost in front of everything leaving this state
+		 */
+		void prependOutput(int cost) {
+			for (int i = 0; i < arcs; i++) {
+				outputs[i] += cost;
+			}
+			if (finalOutput != NOT_FINAL) {
+				finalOutput += cost;
+			}
+		}
+	}
+
+	/**
+	 * @param terms
+	 *            - The words we will autocomplete from
+	 * @param weights
+	 *            - Their weights, such that terms[i] has weight weights[i]. If a
+	 *            word appears more than once its last weight is used, as in
+	 *            TrieAutocomplete.
+	 * @throws NullPointerException
+	 *             if either argument or any term is null
+	 * @throws IllegalArgumentException
+	 *             if terms and weights are different length or any weight is
+	 *             negative
+	 */
+	public FSTAutocomplete(String[] terms, double[] weights) {
+		if (terms == null || weights == null) {
+			throw new NullPointerException("One or more arguments null");
+		}
+		if (terms.length != weights.length) {
+			throw new IllegalArgumentException("Terms and weights are different lengths");
+		}
+		Term[] sorted = new Term[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			// Term rejects null words and negative weights
+			sorted[i] = new Term(terms[i], weights[i]);
+		}
+		// stable, so the last of several equal words is last here too
+		TermSort.sort(sorted);
+
+		double[] ascending = weights.clone();
+		Arrays.sort(ascending);
+		double[] distinct = new double[ascending.length];
+		int n = 0;
+		for (int i = ascending.length - 1; i >= 0; i--) {
+			if (n == 0 || ascending[i] != distinct[n - 1]) {
+				distinct[n++] = ascending[i];
+			}
+		}
+		myWeights = Arrays.copyOf(distinct, n);
+		build(sorted);
+	}
+
+	/**
+	 * Adds the sorted terms one at a time. Only the states on the path of the
+	 * previous term are pending; when the next term leaves that path, the
+	 * states below the fork are frozen deepest first.
+	 */
+	private void build(Term[] sorted) {
+		PendingState[] frontier = new PendingState[8];
+		for (int i = 0; i < frontier.length; i++) {
+			frontier[i] = new PendingState();
+		}
+		String last = "";
+		for (int t = 0; t < sorted.length; t++) {
+			String word = sorted[t].getWord();
+			if (t + 1 < sorted.length && word.equals(sorted[t + 1].getWord())) {
+				continue;
+			}
+			frontier = add(frontier, last, word, cost(sorted[t].getWeight()));
+			last = word;
+			myTermCount++;
+		}
+		freezeTail(frontier, last.length(), 0);
+		myRoot = freeze(frontier[0]);
+		myRegistry = null;
+		myFirstArc = Arrays.copyOf(myFirstArc, myStateCount);
+		myArcCount = Arrays.copyOf(myArcCount, myStateCount);
+		myFinalOutput = Arrays.copyOf(myFinalOutput, myStateCount);
+		myMinCost = Arrays.copyOf(myMinCost, myStateCount);
+		myArcLabel = Arrays.copyOf(myArcLabel, myArcTotal);
+		myArcOutput = Arrays.copyOf(myArcOutput, myArcTotal);
+		myArcTarget = Arrays.copyOf(myArcTarget, myArcTotal);
+	}
+
+	/**
+	 * Adds word, which sorts after last, with the given cost
+	 *
+	 * @return frontier, or a longer copy of it if word did not fit
+	 */
+	private PendingState[] add(PendingState[] frontier, String last, String word, int cost) {
+		if (word.length() + 1 > frontier.length) {
+			int old = frontier.length;
+			frontier = Arrays.copyOf(frontier, Math.max(2 * old, word.length() + 1));
+			for (int i = old; i < frontier.length; i++) {
+				frontier[i] = new PendingState();
+			}
+		}
+		int prefix = 0;
+		int max = Math.min(word.length(), last.length());
+		while (prefix < max && word.charAt(prefix) == last.charAt(prefix)) {
+			prefix++;
+		}
+		freezeTail(frontier, last.length(), prefix);
+		for (int depth = prefix + 1; depth <= word.length(); depth++) {
+			frontier[depth - 1].addArc(word.charAt(depth - 1));
+		}
+		if (word.isEmpty()) {
+			frontier[0].finalOutput = cost;
+		} else {
+			frontier[word.length()].finalOutput = 0;
+			// along the shared prefix keep the smaller cost on the arc and push
+			// the difference down to the state it leads to
+			int output = cost;
+			for (int depth = 1; depth <= prefix; depth++) {
+				PendingState parent = frontier[depth - 1];
+				int arc = parent.arcs - 1;
+				int common = Math.min(parent.outputs[arc], output);
+				int rest = parent.outputs[arc] - common;
+				parent.outputs[arc] = common;
+				if (rest > 0) {
+					frontier[depth].prependOutput(rest);
+				}
+				output -= common;
+			}
+			PendingState fork = frontier[prefix];
+			fork.outputs[fork.arcs - 1] = output;
+		}
+		return frontier;
+	}
+
+	/**
+	 * Freezes the pending states deeper than depth, from length up
+	 */
+	private void freezeTail(PendingState[] frontier, int length, int depth) {
+		for (int d = length; d > depth; d--) {
+			int state = freeze(frontier[d]);
+			PendingState parent = frontier[d - 1];
+			parent.targets[parent.arcs - 1] = state;
+			frontier[d].clear();
+		}
+	}
+
+	/**
+	 * Returns the frozen state equal to pending, adding it if there is none
+	 */
+	private int freeze(PendingState pending) {
+		int hash = pending.finalOutput * 31;
+		for (int i = 0; i < pending.arcs; i++) {
+			hash = 31 * (31 * (31 * hash + pending.labels[i]) + pending.outputs[i]) + pending.targets[i];
+		}
+		int mask = myRegistry.length - 1;
+		int slot = mix(hash) & mask;
+		while (myRegistry[slot] != 0) {
+			int state = myRegistry[slot] - 1;
+			if (equal(state, pending)) {
+				return state;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int state = append(pending);
+		myRegistry[slot] = state + 1;
+		if (2 * myStateCount > myRegistry.length) {
+			rehash();
+		}
+		return state;
+	}
+
+	/**
+	 * Spreads a polynomial hash of small numbers over all bits, so linear
+	 * probing does not run into long clusters
+	 */
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	private boolean equal(int state, PendingState pending) {
+		if (myFinalOutput[state] != pending.finalOutput || myArcCount[state] != pending.arcs) {
+			return false;
+		}
+		int first = myFirstArc[state];
+		for (int i = 0; i < pending.arcs; i++) {
+			if (myArcLabel[first + i] != pending.labels[i] || myArcOutput[first + i] != pending.outputs[i]
+					|| myArcTarget[first + i] != pending.targets[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int append(PendingState pending) {
+		if (myStateCount == myFirstArc.length) {
+			int size = 2 * myStateCount;
+			myFirstArc = Arrays.copyOf(myFirstArc, size);
+			myArcCount = Arrays.copyOf(myArcCount, size);
+			myFinalOutput = Arrays.copyOf(myFinalOutput, size);
+			myMinCost = Arrays.copyOf(myMinCost, size);
+		}
+		if (myArcTotal + pending.arcs > myArcLabel.length) {
+			int size = Math.max(2 * myArcLabel.length, myArcTotal + pending.arcs);
+			myArcLabel = Arrays.copyOf(myArcLabel, size);
+			myArcOutput = Arrays.copyOf(myArcOutput, size);
+			myArcTarget = Arrays.copyOf(myArcTarget, size);
+		}
+		int state = myStateCount++;
+		myFirstArc[state] = myArcTotal;
+		myArcCount[state] = pending.arcs;
+		myFinalOutput[state] = pending.finalOutput;
+		int min = pending.finalOutput == NOT_FINAL ? Integer.MAX_VALUE : pending.finalOutput;
+		for (int i = 0; i < pending.arcs; i++) {
+			myArcLabel[myArcTotal] = pending.labels[i];
+			myArcOutput[myArcTotal] = pending.outputs[i];
+			myArcTarget[myArcTotal] = pending.targets[i];
+			myArcTotal++;
+			min = Math.min(min, pending.outputs[i] + myMinCost[pending.targets[i]]);
+		}
+		myMinCost[state] = min;
+		return state;
+	}
+
+	private void rehash() {
+		int[] registry = new int[2 * myRegistry.length];
+		int mask = registry.length - 1;
+		for (int entry : myRegistry) {
+			if (entry == 0) {
+				continue;
+			}
+			int state = entry - 1;
+			int hash = myFinalOutput[state] * 31;
+			for (int a = myFirstArc[state]; a < myFirstArc[state] + myArcCount[state]; a++) {
+				hash = 31 * (31 * (31 * hash + myArcLabel[a]) + myArcOutput[a]) + myArcTarget[a];
+			}
+			int slot = mix(hash) & mask;
+			while (registry[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			registry[slot] = entry;
+		}
+		myRegistry = registry;
+	}
+
+	private int cost(double weight) {
+		// myWeights is descending
+		int lo = 0;
+		int hi = myWeights.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (myWeights[mid] > weight) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Number of states, which is far below the number of trie nodes when
+	 * terms share suffixes
+	 */
+	public int stateCount() {
+		return myStateCount;
+	}
+
+	public int arcCount() {
+		return myArcTotal;
+	}
+
+	/**
+	 * The arc leaving state with label, or -1
+	 */
+	private int arc(int state, char label) {
+		int lo = myFirstArc[state];
+		int hi = lo + myArcCount[state] - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			char c = myArcLabel[mid];
+			if (c < label) {
+				lo = mid + 1;
+			} else if (c > label) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Follows prefix from the start. Returns the state reached and the cost
+	 * spent getting there, or null if no term starts with prefix.
+	 */
+	private int[] walk(String prefix) {
+		int state = myRoot;
+		int cost = 0;
+		for (int i = 0; i < prefix.length(); i++) {
+			int a = arc(state, prefix.charAt(i));
+			if (a < 0) {
+				return null;
+			}
+			cost += myArcOutput[a];
+			state = myArcTarget[a];
+		}
+		return new int[] { state, cost };
+	}
+
+	/**
+	 * A partial path in the best-first search. The term is rebuilt from the
+	 * parent links once the path reaches a final state.
+	 */
+	private static class Path {
+		final Path parent;
+		final char label;
+		final int state;
+		final int cost;
+		/**
+		 * Cost of the cheapest term this path can reach, or of this term once
+		 * the path is complete
+		 */
+		final int bound;
+		final boolean complete;
+
+		Path(Path parent, char label, int state, int cost, int bound, boolean complete) {
+			this.parent = parent;
+			this.label = label;
+			this.state = state;
+			this.cost = cost;
+			this.bound = bound;
+			this.complete = complete;
+		}
+
+		String word(String prefix) {
+			int length = 0;
+			for (Path p = this; p.parent != null; p = p.parent) {
+				length++;
+			}
+			char[] chars = new char[prefix.length() + length];
+			prefix.getChars(0, prefix.length(), chars, 0);
+			int i = chars.length;
+			for (Path p = this; p.parent != null; p = p.parent) {
+				chars[--i] = p.label;
+			}
+			return new String(chars);
+		}
+	}
+
+	private static final Comparator<Path> BOUND_ORDER = new Comparator<Path>() {
+		public int compare(Path v, Path w) {
+			return Integer.compare(v.bound, w.bound);
+		}
+	};
+
+	/**
+	 * Returns the k words with the largest weights that start with prefix, in
+	 * descending weight order. Paths come off the queue cheapest possible
+	 * completion first, so completed terms come off in order and the search
+	 * stops after the k-th.
+	 *
+	 * @throws NullPointerException
+	 *             if prefix is null
+	 * @throws IllegalArgumentException
+	 *             if k is negative
+	 */
+	public Iterable<String> topMatches(String prefix, int k) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		if (k < 0) {
+			throw new IllegalArgumentException("Illegal value of k:" + k);
+		}
+		QueryStats stats = myStatsCollector == null ? null : new QueryStats(prefix, k);
+		long start = stats == null ? 0 : System.nanoTime();
+		if (k == 0 || myTermCount == 0) {
+			if (stats != null) {
+				stats.nanos = System.nanoTime() - start;
+				myStatsCollector.record(stats);
+			}
+			return new ArrayList<String>();
+		}
+		int[] reached = walk(prefix);
+		LinkedList<String> ret = new LinkedList<String>();
+		if (reached == null) {
+			if (stats != null) {
+				stats.nanos = System.nanoTime() - start;
+				myStatsCollector.record(stats);
+			}
+			return ret;
+		}
+		PriorityQueue<Path> queue = new PriorityQueue<Path>(BOUND_ORDER);
+		int state = reached[0];
+		queue.add(new Path(null, '\0', state, reached[1], reached[1] + myMinCost[state], false));
+		if (stats != null) {
+			stats.nodesPushed++;
+		}
+		while (!queue.isEmpty() && ret.size() < k) {
+			Path path = queue.remove();
+			if (stats != null) {
+				stats.nodesPopped++;
+			}
+			if (path.complete) {
+				ret.add(path.word(prefix));
+				if (stats != null) {
+					stats.rangeScanned++;
+				}
+				continue;
+			}
+			state = path.state;
+			if (myFinalOutput[state] != NOT_FINAL) {
+				int cost = path.cost + myFinalOutput[state];
+				queue.add(new Path(path.parent, path.label, state, cost, cost, true));
+			}
+			int first = myFirstArc[state];
+			for (int a = first; a < first + myArcCount[state]; a++) {
+				int cost = path.cost + myArcOutput[a];
+				queue.add(new Path(path, myArcLabel[a], myArcTarget[a], cost, cost + myMinCost[myArcTarget[a]],
+						false));
+			}
+			if (stats != null) {
+				stats.nodesPushed += myArcCount[state] + (myFinalOutput[state] != NOT_FINAL ? 1 : 0);
+			}
+		}
+		if (stats != null) {
+			stats.earlyTermination = !queue.isEmpty();
+			stats.nanos = System.nanoTime() - start;
+			myStatsCollector.record(stats);
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the word with the largest weight that starts with prefix, or an
+	 * empty string if none exists. Follows the cheapest arcs straight down.
+	 *
+	 * @throws NullPointerException
+	 *             if prefix is null
+	 */
+	public String topMatch(String prefix) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid Prefix");
+		}
+		QueryStats stats = myStatsCollector == null ? null : new QueryStats(prefix, 1);
+		long start = stats == null ? 0 : System.nanoTime();
+		if (myTermCount == 0) {
+			if (stats != null) {
+				stats.nanos = System.nanoTime() - start;
+				myStatsCollector.record(stats);
+			}
+			return "";
+		}
+		int[] reached = walk(prefix);
+		if (reached == null) {
+			if (stats != null) {
+				stats.nanos = System.nanoTime() - start;
+				myStatsCollector.record(stats);
+			}
+			return "";
+		}
+		StringBuilder sb = new StringBuilder(prefix);
+		int state = reached[0];
+		while (myFinalOutput[state] != myMinCost[state]) {
+			int first = myFirstArc[state];
+			for (int a = first; a < first + myArcCount[state]; a++) {
+				if (myArcOutput[a] + myMinCost[myArcTarget[a]] == myMinCost[state]) {
+					sb.append(myArcLabel[a]);
+					state = myArcTarget[a];
+					break;
+				}
+			}
+			if (stats != null) {
+				stats.nodesPopped++;
+			}
+		}
+		if (stats != null) {
+			stats.rangeScanned = 1;
+			stats.earlyTermination = true;
+			stats.nanos = System.nanoTime() - start;
+			myStatsCollector.record(stats);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Return the weight of a given term. If term is not in the dictionary,
+	 * return 0.0
+	 */
+	public double weightOf(String term) {
+		if (myTermCount == 0) {
+			return 0.0;
+		}
+		int[] reached = walk(term);
+		if (reached == null || myFinalOutput[reached[0]] == NOT_FINAL) {
+			return 0.0;
+		}
+		return myWeights[reached[1] + myFinalOutput[reached[0]]];
+	}
+
+	public void setStatsCollector(QueryStatsCollector collector) {
+		myStatsCollector = collector;
+	}
+}
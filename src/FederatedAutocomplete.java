@@ -0,0 +1,301 @@
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suggests from several dictionaries at once, such as places, people and
+ * general vocabulary, whose weights are on very different scales. Every
+ * query goes to all the sources concurrently; each answers with at most its
+ * quota of matches, their weights multiplied by its scale so the sources can
+ * be compared, and the best k scores overall are kept in a bounded heap. A
+ * word found in more than one source scores its best.
+ *
+ * Each source has a deadline, counted from the start of the query. A source
+ * that has not answered by then is left out of that query's results and its
+ * task cancelled, so one slow engine costs at most its deadline and does not
+ * hold up the others. A source whose engine throws is left out the same
+ * way, so one failing engine does not fail the whole query.
+ */
+public class FederatedAutocomplete implements Autocompletor, Closeable {
+
+	/**
+	 * One dictionary and how it takes part
+	 */
+	public static class Source {
+		private final String myName;
+		private final Autocompletor myEngine;
+		private final double myScale;
+		private final int myQuota;
+		private final long myDeadline;
+		private final AtomicLong myTimeouts = new AtomicLong();
+		private final AtomicLong myFailures = new AtomicLong();
+
+		/**
+		 * @param name
+		 *            - for reports
+		 * @param engine
+		 *            - the source's engine
+		 * @param scale
+		 *            - what its weights are multiplied by
+		 * @param quota
+		 *            - the most results it adds to a query
+		 * @param deadlineMillis
+		 *            - how long a query waits for it
+		 * @throws NullPointerException
+		 *             if name or engine is null
+		 * @throws IllegalArgumentException
+		 *             if scale is not positive, quota is negative or
+		 *             deadlineMillis is not positive
+		 */
+		public Source(String name, Autocompletor engine, double scale, int quota, long deadlineMillis) {
+			if (name == null || engine == null) {
+				throw new NullPointerException("One or more arguments null");
+			}
+			if (!(scale > 0) || quota < 0 || deadlineMillis <= 0) {
+				throw new IllegalArgumentException("Illegal scale " + scale + ", quota " + quota + " or deadline "
+						+ deadlineMillis);
+			}
+			myName = name;
+			myEngine = engine;
+			myScale = scale;
+			myQuota = quota;
+			myDeadline = deadlineMillis;
+		}
+
+		/**
+		 * A source normalized so its heaviest word scores 1
+		 */
+		public Source(String name, Autocompletor engine, int quota, long deadlineMillis) {
+			this(name, engine, normalizer(engine), quota, deadlineMillis);
+		}
+
+		private static double normalizer(Autocompletor engine) {
+			if (engine == null) {
+				throw new NullPointerException("One or more arguments null");
+			}
+			double max = engine.weightOf(engine.topMatch(""));
+			return max > 0 ? 1 / max : 1;
+		}
+
+		public String getName() {
+			return myName;
+		}
+
+		public Autocompletor getEngine() {
+			return myEngine;
+		}
+
+		public double getScale() {
+			return myScale;
+		}
+
+		public int getQuota() {
+			return myQuota;
+		}
+
+		public long getDeadlineMillis() {
+			return myDeadline;
+		}
+
+		/**
+		 * The number of queries this source missed its deadline for
+		 */
+		public long getTimeouts() {
+			return myTimeouts.get();
+		}
+
+		/**
+		 * The number of queries this source was left out of because its
+		 * engine threw
+		 */
+		public long getFailures() {
+			return myFailures.get();
+		}
+
+		public String toString() {
+			return myName;
+		}
+	}
+
+	private final Source[] mySources;
+	/**
+	 * The sources in order of deadline, the order their answers are awaited
+	 */
+	private final Source[] myByDeadline;
+	private final ExecutorService myExecutor;
+	private final boolean myOwnsExecutor;
+
+	/**
+	 * Queries the sources on a thread per task, virtual threads where the JVM
+	 * has them; close shuts the threads down
+	 *
+	 * @throws NullPointerException
+	 *             if sources or any source is null
+	 */
+	public FederatedAutocomplete(List<Source> sources) {
+		this(sources, VirtualThreads.newThreadPerTaskExecutor(), true);
+	}
+
+	/**
+	 * Queries the sources on executor, which close leaves running
+	 *
+	 * @throws NullPointerException
+	 *             if either argument or any source is null
+	 */
+	public FederatedAutocomplete(List<Source> sources, ExecutorService executor) {
+		this(sources, executor, false);
+	}
+
+	private FederatedAutocomplete(List<Source> sources, ExecutorService executor, boolean ownsExecutor) {
+		if (sources == null || executor == null) {
+			throw new NullPointerException("One or more arguments null");
+		}
+		mySources = sources.toArray(new Source[sources.size()]);
+		for (Source source : mySources) {
+			if (source == null) {
+				throw new NullPointerException("Invalid source");
+			}
+		}
+		myByDeadline = mySources.clone();
+		Arrays.sort(myByDeadline, new Comparator<Source>() {
+			public int compare(Source a, Source b) {
+				return Long.compare(a.myDeadline, b.myDeadline);
+			}
+		});
+		myExecutor = executor;
+		myOwnsExecutor = ownsExecutor;
+	}
+
+	public List<Source> getSources() {
+		return Arrays.asList(mySources.clone());
+	}
+
+	/**
+	 * Returns the k words starting with prefix with the best scaled weights
+	 * among the sources that answered in time, in descending order of that
+	 * score
+	 *
+	 * @throws NullPointerException
+	 *             if prefix is null
+	 * @throws IllegalArgumentException
+	 *             if k is negative
+	 */
+	public Iterable<String> topMatches(final String prefix, final int k) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		if (k < 0) {
+			throw new IllegalArgumentException("Illegal value of k:" + k);
+		}
+		LinkedList<String> ret = new LinkedList<String>();
+		if (k == 0) {
+			return ret;
+		}
+		long start = System.nanoTime();
+		HashMap<Source, Future<List<Term>>> answers = new HashMap<Source, Future<List<Term>>>();
+		// each word's best score
+		HashMap<String, Double> scores = new HashMap<String, Double>();
+		try {
+			for (final Source source : mySources) {
+				final int n = Math.min(k, source.myQuota);
+				if (n == 0) {
+					continue;
+				}
+				answers.put(source, myExecutor.submit(new Callable<List<Term>>() {
+					public List<Term> call() {
+						ArrayList<Term> matches = new ArrayList<Term>(n);
+						for (String word : source.myEngine.topMatches(prefix, n)) {
+							matches.add(new Term(word, source.myScale * source.myEngine.weightOf(word)));
+						}
+						return matches;
+					}
+				}));
+			}
+			for (Source source : myByDeadline) {
+				Future<List<Term>> answer = answers.get(source);
+				if (answer == null) {
+					continue;
+				}
+				long wait = TimeUnit.MILLISECONDS.toNanos(source.myDeadline) - (System.nanoTime() - start);
+				try {
+					for (Term match : answer.get(Math.max(0, wait), TimeUnit.NANOSECONDS)) {
+						Double score = scores.get(match.getWord());
+						if (score == null || score < match.getWeight()) {
+							scores.put(match.getWord(), match.getWeight());
+						}
+					}
+				} catch (TimeoutException e) {
+					source.myTimeouts.incrementAndGet();
+				} catch (ExecutionException e) {
+					// left out like a source that timed out
+					source.myFailures.incrementAndGet();
+				} catch (InterruptedException e) {
+					// answer with what has arrived, and leave the interrupt set
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		} finally {
+			// whatever happened, no task outlives the query
+			for (Future<List<Term>> answer : answers.values()) {
+				answer.cancel(true);
+			}
+		}
+		// the best k so far, lowest score first
+		PriorityQueue<Term> best = new PriorityQueue<Term>(k, new Term.WeightOrder());
+		for (Map.Entry<String, Double> e : scores.entrySet()) {
+			if (best.size() < k) {
+				best.add(new Term(e.getKey(), e.getValue()));
+			} else if (best.peek().getWeight() < e.getValue()) {
+				best.remove();
+				best.add(new Term(e.getKey(), e.getValue()));
+			}
+		}
+		while (!best.isEmpty()) {
+			ret.addFirst(best.remove().getWord());
+		}
+		return ret;
+	}
+
+	public String topMatch(String prefix) {
+		for (String word : topMatches(prefix, 1)) {
+			return word;
+		}
+		return "";
+	}
+
+	/**
+	 * The best scaled weight of term in any source, asked of each in turn
+	 * without deadlines
+	 */
+	public double weightOf(String term) {
+		double weight = 0;
+		for (Source source : mySources) {
+			weight = Math.max(weight, source.myScale * source.myEngine.weightOf(term));
+		}
+		return weight;
+	}
+
+	/**
+	 * Shuts down the threads this created; an executor given to the
+	 * constructor is left running
+	 */
+	public void close() {
+		if (myOwnsExecutor) {
+			myExecutor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,19 @@
+/**
+ * An Autocompletor whose terms carry attribute ids and whose matches can be
+ * restricted to the terms with any of a filter's ids. The filter is applied
+ * during the search, which skips every subtree or range whose attribute
+ * summary rules it out, rather than to a larger candidate set afterwards.
+ */
+public interface FilteredAutocompletor extends Autocompletor {
+
+	/**
+	 * The k words starting with prefix that pass filter, in descending weight
+	 * order; with a null filter, the same as topMatches(prefix, k)
+	 *
+	 * @throws NullPointerException
+	 *             if prefix is null
+	 * @throws IllegalArgumentException
+	 *             if k is negative
+	 */
+	public Iterable<String> topMatches(String prefix, int k, AttributeFilter filter);
+}
@@ -0,0 +1,101 @@
+/**
+ * A count-min sketch of 4-bit counters used to estimate how often a key has
+ * been seen recently, as in TinyLFU. Each key maps to one counter in each of
+ * DEPTH rows and its frequency is the smallest of those counters. Counters
+ * saturate at 15, and once sampleSize increments have been made every counter
+ * is halved so that old popularity fades.
+ *
+ * Not thread-safe; callers synchronize.
+ */
+public class FrequencySketch {
+
+	private static final int DEPTH = 4;
+	private static final int MAX_COUNT = 15;
+	private static final long[] SEEDS = { 0x97cb3127a3b9f1d5L, 0xc2b2ae3d27d4eb4fL, 0x165667b19e3779f9L,
+			0x9e3779b97f4a7c15L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	/**
+	 * 16 counters of 4 bits packed in each long
+	 */
+	private final long[] myTable;
+	private final int myMask;
+	private final int mySampleSize;
+	private int myAdditions;
+
+	/**
+	 * Creates a sketch sized for roughly capacity distinct hot keys.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if capacity is not positive
+	 */
+	public FrequencySketch(long capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Illegal capacity: " + capacity);
+		}
+		// four counters per row for every key, eight bytes per key in total
+		int keys = Integer.highestOneBit((int) Math.min(capacity, 1 << 26) * 2 - 1);
+		int counters = Math.max(4 * keys, 256);
+		myTable = new long[counters / 16 * DEPTH];
+		myMask = counters / 16 - 1;
+		mySampleSize = (int) Math.min(10L * capacity, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Estimated number of recent occurrences of a key with the given hash code,
+	 * at most 15.
+	 */
+	public int frequency(int hash) {
+		int min = MAX_COUNT;
+		for (int row = 0; row < DEPTH; row++) {
+			min = Math.min(min, counterAt(row, hash));
+		}
+		return min;
+	}
+
+	/**
+	 * Counts one more occurrence of a key with the given hash code.
+	 */
+	public void increment(int hash) {
+		boolean added = false;
+		for (int row = 0; row < DEPTH; row++) {
+			int index = indexOf(row, hash);
+			int shift = shiftOf(row, hash);
+			long count = (myTable[index] >>> shift) & 0xF;
+			if (count < MAX_COUNT) {
+				myTable[index] += 1L << shift;
+				added = true;
+			}
+		}
+		if (added && ++myAdditions >= mySampleSize) {
+			reset();
+		}
+	}
+
+	/**
+	 * Halves every counter.
+	 */
+	private void reset() {
+		for (int i = 0; i < myTable.length; i++) {
+			myTable[i] = (myTable[i] >>> 1) & RESET_MASK;
+		}
+		myAdditions /= 2;
+	}
+
+	private int counterAt(int row, int hash) {
+		return (int) (myTable[indexOf(row, hash)] >>> shiftOf(row, hash)) & 0xF;
+	}
+
+	private long spread(int row, int hash) {
+		long h = (hash + SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+		return h ^ (h >>> 31);
+	}
+
+	private int indexOf(int row, int hash) {
+		return row * (myMask + 1) + (int) (spread(row, hash) >>> 40 & myMask);
+	}
+
+	private int shiftOf(int row, int hash) {
+		return (int) (spread(row, hash) & 0xF) << 2;
+	}
+}
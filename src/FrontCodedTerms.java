@@ -0,0 +1,278 @@
+import java.util.Arrays;
+
+/**
+ * Sorted terms stored with front coding. The terms are cut into blocks of a
+ * fixed size; the first term of each block, its head, is stored whole and
+ * every other term as the number of leading characters it shares with the
+ * term before it plus the characters that follow. Neighbours in sorted order
+ * share long prefixes, so this takes a fraction of the space of a String per
+ * term. The characters are stored as UTF-8 style bytes, one for ASCII and at
+ * most three for any char as in TermArena, and the lengths as varints.
+ *
+ * Lookups binary search the block heads and then decode forward through one
+ * block, O(log(n/B) + B) terms in all.
+ */
+public class FrontCodedTerms implements TermStore {
+
+	private final int myBlockSize;
+	private final int mySize;
+	/**
+	 * The encoded terms, one after another
+	 */
+	private final byte[] myData;
+	/**
+	 * Offset in myData of each block's head
+	 */
+	private final int[] myBlockStart;
+	/**
+	 * Each thread's decoder, reused so that lookups allocate nothing once its
+	 * characters have grown to the longest word
+	 */
+	private final ThreadLocal<Decoder> myDecoders = new ThreadLocal<Decoder>() {
+		@Override
+		protected Decoder initialValue() {
+			return new Decoder();
+		}
+	};
+
+	/**
+	 * @param sorted
+	 *            - words in ascending order
+	 * @param blockSize
+	 *            - the number of words in a block
+	 * @throws NullPointerException
+	 *             if sorted or any word is null
+	 * @throws IllegalArgumentException
+	 *             if blockSize is less than 1 or the words are not sorted
+	 */
+	public FrontCodedTerms(String[] sorted, int blockSize) {
+		if (sorted == null) {
+			throw new NullPointerException("Invalid terms");
+		}
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Illegal block size " + blockSize);
+		}
+		myBlockSize = blockSize;
+		mySize = sorted.length;
+		myBlockStart = new int[(mySize + blockSize - 1) / blockSize];
+		byte[] data = new byte[16];
+		int length = 0;
+		String previous = "";
+		for (int i = 0; i < mySize; i++) {
+			String word = sorted[i];
+			if (previous.compareTo(word) > 0) {
+				throw new IllegalArgumentException("Terms not sorted at " + word);
+			}
+			int shared = 0;
+			if (i % blockSize == 0) {
+				myBlockStart[i / blockSize] = length;
+			} else {
+				int limit = Math.min(previous.length(), word.length());
+				while (shared < limit && previous.charAt(shared) == word.charAt(shared)) {
+					shared++;
+				}
+			}
+			// two varints of at most 5 bytes and 3 bytes a char
+			int needed = length + 10 + 3 * (word.length() - shared);
+			if (needed > data.length) {
+				data = Arrays.copyOf(data, Math.max(2 * data.length, needed));
+			}
+			length = writeVarint(data, length, shared);
+			length = writeVarint(data, length, word.length() - shared);
+			for (int j = shared; j < word.length(); j++) {
+				length = TermArena.encode(word.charAt(j), data, length);
+			}
+			previous = word;
+		}
+		myData = Arrays.copyOf(data, length);
+	}
+
+	private static int writeVarint(byte[] data, int pos, int value) {
+		while (value >= 0x80) {
+			data[pos++] = (byte) (value | 0x80);
+			value >>>= 7;
+		}
+		data[pos++] = (byte) value;
+		return pos;
+	}
+
+	/**
+	 * Decodes terms one after another, starting from a block head
+	 */
+	private class Decoder {
+		char[] myChars = new char[32];
+		int myLength;
+		int myIndex;
+		int myPos;
+
+		/**
+		 * Moves to just before the head of block
+		 */
+		Decoder start(int block) {
+			myIndex = block * myBlockSize - 1;
+			myPos = myBlockStart[block];
+			myLength = 0;
+			return this;
+		}
+
+		/**
+		 * Moves to the next term, whose characters are myChars[0, myLength)
+		 */
+		void next() {
+			int shared = readVarint();
+			int suffix = readVarint();
+			myLength = shared + suffix;
+			if (myLength > myChars.length) {
+				myChars = Arrays.copyOf(myChars, Math.max(2 * myChars.length, myLength));
+			}
+			for (int j = shared; j < myLength; j++) {
+				myChars[j] = TermArena.decode(myData, myPos);
+				myPos += TermArena.sequenceLength(myData[myPos]);
+			}
+			myIndex++;
+		}
+
+		private int readVarint() {
+			int value = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = myData[myPos++];
+				value |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+		}
+
+		/**
+		 * Compares the current term with prefix as Term.PrefixOrder does:
+		 * using only the first prefix.length() characters, and a shorter term
+		 * that prefix starts with sorts first
+		 */
+		int compareTo(CharSequence prefix) {
+			int n = Math.min(myLength, prefix.length());
+			for (int j = 0; j < n; j++) {
+				if (myChars[j] != prefix.charAt(j)) {
+					return myChars[j] - prefix.charAt(j);
+				}
+			}
+			return myLength >= prefix.length() ? 0 : myLength - prefix.length();
+		}
+
+		String word() {
+			return new String(myChars, 0, myLength);
+		}
+	}
+
+	/**
+	 * The last block whose head compares below prefix, or at most equal to it
+	 * when orEqual, and -1 if there is none
+	 */
+	private int lastBlockBefore(CharSequence prefix, boolean orEqual) {
+		Decoder head = myDecoders.get();
+		int lo = -1;
+		int hi = myBlockStart.length;
+		while (lo + 1 < hi) {
+			int mid = (lo + hi) >>> 1;
+			head.start(mid).next();
+			int c = head.compareTo(prefix);
+			if (c < 0 || orEqual && c == 0) {
+				lo = mid;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	public int firstIndexOf(CharSequence prefix) {
+		if (mySize == 0) {
+			return -1;
+		}
+		int block = Math.max(0, lastBlockBefore(prefix, false));
+		// the match, if any, is in this block or is the next block's head
+		Decoder decoder = myDecoders.get().start(block);
+		int end = Math.min(mySize, (block + 1) * myBlockSize + 1);
+		while (decoder.myIndex + 1 < end) {
+			decoder.next();
+			int c = decoder.compareTo(prefix);
+			if (c >= 0) {
+				return c == 0 ? decoder.myIndex : -1;
+			}
+		}
+		return -1;
+	}
+
+	public int lastIndexOf(CharSequence prefix) {
+		int block = lastBlockBefore(prefix, true);
+		if (block < 0) {
+			return -1;
+		}
+		Decoder decoder = myDecoders.get().start(block);
+		int end = Math.min(mySize, (block + 1) * myBlockSize);
+		int last = -1;
+		while (decoder.myIndex + 1 < end) {
+			decoder.next();
+			int c = decoder.compareTo(prefix);
+			if (c > 0) {
+				break;
+			}
+			last = c == 0 ? decoder.myIndex : -1;
+		}
+		return last;
+	}
+
+	public int indexOf(String word) {
+		int first = firstIndexOf(word);
+		// a word sorts before every longer word it starts
+		return first >= 0 && wordLength(first) == word.length() ? first : -1;
+	}
+
+	private int wordLength(int index) {
+		return decode(index).myLength;
+	}
+
+	private Decoder decode(int index) {
+		if (index < 0 || index >= mySize) {
+			throw new IndexOutOfBoundsException("Index " + index + " of " + mySize);
+		}
+		Decoder decoder = myDecoders.get().start(index / myBlockSize);
+		while (decoder.myIndex < index) {
+			decoder.next();
+		}
+		return decoder;
+	}
+
+	/**
+	 * The word at index, decoded from the head of its block
+	 */
+	public String word(int index) {
+		return decode(index).word();
+	}
+
+	/**
+	 * Decodes the word from the head of its block with this thread's decoder,
+	 * so adding allocates nothing
+	 */
+	public void addWord(int index, double weight, ResultBuffer results) {
+		Decoder decoder = decode(index);
+		for (int j = 0; j < decoder.myLength; j++) {
+			results.append(decoder.myChars[j]);
+		}
+		results.endWord(weight);
+	}
+
+	public int size() {
+		return mySize;
+	}
+
+	public int getBlockSize() {
+		return myBlockSize;
+	}
+
+	/**
+	 * Bytes used to encode the terms, not counting the block offsets
+	 */
+	public int encodedBytes() {
+		return myData.length;
+	}
+}
@@ -0,0 +1,298 @@
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates the heap retained by an object graph by walking every object
+ * reachable from a root and adding up their shallow sizes, counting objects
+ * by class along the way.
+ *
+ * Sizes assume a 64-bit HotSpot JVM with compressed references: 12 byte object
+ * headers, 16 byte array headers, 4 byte references and 8 byte alignment.
+ * Fields of the project's own classes are read by reflection. JDK classes
+ * cannot be opened by reflection on newer JDKs, so the common ones (String,
+ * boxed primitives, HashMap, ArrayList, other collections) are sized from
+ * their public API with the same layout their OpenJDK implementation uses, and
+ * walked through their elements; any other JDK object counts as one object
+ * header and is not descended into.
+ */
+public class HeapFootprint {
+
+	static final int HEADER = 12;
+	static final int ARRAY_HEADER = 16;
+	static final int REFERENCE = 4;
+
+	private final Map<String, long[]> myByClass = new HashMap<String, long[]>();
+	private long myObjects;
+	private long myBytes;
+
+	/**
+	 * Walks everything reachable from root. Objects reachable from more than
+	 * one place are counted once.
+	 */
+	public static HeapFootprint of(Object root) {
+		return of(root, null);
+	}
+
+	/**
+	 * Walks everything reachable from root except what is also reachable from
+	 * shared, such as input arrays the caller keeps anyway.
+	 */
+	public static HeapFootprint of(Object root, Object shared) {
+		IdentityHashMap<Object, Boolean> seen = new IdentityHashMap<Object, Boolean>();
+		if (shared != null) {
+			new HeapFootprint().walk(shared, seen);
+		}
+		HeapFootprint footprint = new HeapFootprint();
+		footprint.walk(root, seen);
+		return footprint;
+	}
+
+	/**
+	 * Total estimated bytes of the graph
+	 */
+	public long bytes() {
+		return myBytes;
+	}
+
+	/**
+	 * Total number of objects in the graph, arrays included
+	 */
+	public long objects() {
+		return myObjects;
+	}
+
+	/**
+	 * Number of objects of the named class, e.g. "Node" or "java.util.HashMap$Node"
+	 */
+	public long count(String className) {
+		long[] stats = myByClass.get(className);
+		return stats == null ? 0 : stats[0];
+	}
+
+	/**
+	 * Estimated bytes in objects of the named class
+	 */
+	public long bytes(String className) {
+		long[] stats = myByClass.get(className);
+		return stats == null ? 0 : stats[1];
+	}
+
+	/**
+	 * Class names sorted by descending bytes
+	 */
+	public List<String> classNames() {
+		List<String> names = new ArrayList<String>(myByClass.keySet());
+		Collections.sort(names, new Comparator<String>() {
+			public int compare(String a, String b) {
+				return Long.compare(myByClass.get(b)[1], myByClass.get(a)[1]);
+			}
+		});
+		return names;
+	}
+
+	static long align(long size) {
+		return (size + 7) & ~7L;
+	}
+
+	private void add(String className, long bytes) {
+		long[] stats = myByClass.get(className);
+		if (stats == null) {
+			stats = new long[2];
+			myByClass.put(className, stats);
+		}
+		stats[0]++;
+		stats[1] += bytes;
+		myObjects++;
+		myBytes += bytes;
+	}
+
+	private void walk(Object root, IdentityHashMap<Object, Boolean> seen) {
+		ArrayDeque<Object> stack = new ArrayDeque<Object>();
+		Map<Class<?>, Field[]> layouts = new HashMap<Class<?>, Field[]>();
+		if (root != null) {
+			stack.push(root);
+		}
+		while (!stack.isEmpty()) {
+			Object o = stack.pop();
+			if (seen.put(o, Boolean.TRUE) != null) {
+				continue;
+			}
+			Class<?> c = o.getClass();
+			if (c.isArray()) {
+				walkArray(o, c, stack);
+			} else if (isJdkClass(c)) {
+				walkJdkObject(o, c, stack);
+			} else {
+				walkFields(o, c, stack, layouts);
+			}
+		}
+	}
+
+	private void walkArray(Object array, Class<?> c, ArrayDeque<Object> stack) {
+		int length = Array.getLength(array);
+		Class<?> component = c.getComponentType();
+		add(component.getSimpleName() + "[]", align(ARRAY_HEADER + (long) length * sizeOf(component)));
+		if (!component.isPrimitive()) {
+			for (Object element : (Object[]) array) {
+				if (element != null) {
+					stack.push(element);
+				}
+			}
+		}
+	}
+
+	private void walkFields(Object o, Class<?> c, ArrayDeque<Object> stack, Map<Class<?>, Field[]> layouts) {
+		Field[] fields = layouts.get(c);
+		if (fields == null) {
+			List<Field> instanceFields = new ArrayList<Field>();
+			for (Class<?> k = c; k != null && k != Object.class; k = k.getSuperclass()) {
+				for (Field f : k.getDeclaredFields()) {
+					if (!Modifier.isStatic(f.getModifiers())) {
+						if (!isJdkClass(k)) {
+							f.setAccessible(true);
+						}
+						instanceFields.add(f);
+					}
+				}
+			}
+			fields = instanceFields.toArray(new Field[0]);
+			layouts.put(c, fields);
+		}
+		long size = HEADER;
+		for (Field f : fields) {
+			size += sizeOf(f.getType());
+			// only fields of our own classes were made accessible to follow
+			if (!f.getType().isPrimitive() && !isJdkClass(f.getDeclaringClass())) {
+				try {
+					Object value = f.get(o);
+					if (value != null) {
+						stack.push(value);
+					}
+				} catch (IllegalAccessException e) {
+					// cannot happen, the field was made accessible above
+				}
+			}
+		}
+		add(c.getName(), align(size));
+	}
+
+	/**
+	 * Sizes the JDK classes that index structures are made of.
+	 */
+	private void walkJdkObject(Object o, Class<?> c, ArrayDeque<Object> stack) {
+		if (o instanceof String) {
+			String s = (String) o;
+			// hash, coder and value; compact strings store Latin-1 in one byte a char
+			add("java.lang.String", align(HEADER + 4 + 1 + REFERENCE));
+			add("byte[]", align(ARRAY_HEADER + (long) s.length() * (isLatin1(s) ? 1 : 2)));
+		} else if (o instanceof Character || o instanceof Integer || o instanceof Float || o instanceof Short
+				|| o instanceof Byte || o instanceof Boolean) {
+			add(c.getName(), 16);
+		} else if (o instanceof Long || o instanceof Double) {
+			add(c.getName(), 24);
+		} else if (o instanceof HashMap) {
+			// HashSet is a HashMap underneath and is handled as Collection below
+			Map<?, ?> map = (Map<?, ?>) o;
+			// table, entrySet, keySet, values, size, modCount, threshold, loadFactor
+			add(c.getName(), align(HEADER + 4 * REFERENCE + 4 * 4
+					+ (o instanceof java.util.LinkedHashMap ? 2 * REFERENCE + 1 : 0)));
+			if (!map.isEmpty()) {
+				add("java.util.HashMap$Node[]", align(ARRAY_HEADER + (long) tableSize(map.size()) * REFERENCE));
+			}
+			for (Map.Entry<?, ?> e : map.entrySet()) {
+				add("java.util.HashMap$Node", o instanceof java.util.LinkedHashMap ? 40 : 32);
+				if (e.getKey() != null) {
+					stack.push(e.getKey());
+				}
+				if (e.getValue() != null) {
+					stack.push(e.getValue());
+				}
+			}
+		} else if (o instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) o;
+			add(c.getName(), align(HEADER + 4 * REFERENCE + 8));
+			for (Map.Entry<?, ?> e : map.entrySet()) {
+				add(c.getName() + "$Entry", 40);
+				if (e.getKey() != null) {
+					stack.push(e.getKey());
+				}
+				if (e.getValue() != null) {
+					stack.push(e.getValue());
+				}
+			}
+		} else if (o instanceof Collection) {
+			Collection<?> collection = (Collection<?>) o;
+			add(c.getName(), align(HEADER + 8 + 2 * REFERENCE));
+			if (o instanceof java.util.HashSet) {
+				add("java.util.HashMap", 48);
+				if (!collection.isEmpty()) {
+					add("java.util.HashMap$Node[]", align(ARRAY_HEADER + (long) tableSize(collection.size()) * REFERENCE));
+				}
+			} else if (o instanceof java.util.RandomAccess || o instanceof java.util.PriorityQueue) {
+				add("Object[]", align(ARRAY_HEADER + (long) Math.max(collection.size(), 10) * REFERENCE));
+			}
+			for (Object element : collection) {
+				if (o instanceof java.util.HashSet) {
+					add("java.util.HashMap$Node", 32);
+				} else if (o instanceof java.util.LinkedList) {
+					add("java.util.LinkedList$Node", 24);
+				}
+				if (element != null) {
+					stack.push(element);
+				}
+			}
+		} else {
+			add(c.getName(), align(HEADER + 4));
+		}
+	}
+
+	/**
+	 * Length of the table a HashMap grows to for size entries
+	 */
+	static int tableSize(int size) {
+		int needed = (int) Math.ceil(size / 0.75);
+		int table = 16;
+		while (table < needed) {
+			table <<= 1;
+		}
+		return table;
+	}
+
+	private static boolean isLatin1(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) > 0xFF) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isJdkClass(Class<?> c) {
+		String name = c.getName();
+		return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.")
+				|| name.startsWith("jdk.") || name.startsWith("com.sun.");
+	}
+
+	static int sizeOf(Class<?> type) {
+		if (type == long.class || type == double.class) {
+			return 8;
+		} else if (type == int.class || type == float.class) {
+			return 4;
+		} else if (type == char.class || type == short.class) {
+			return 2;
+		} else if (type == byte.class || type == boolean.class) {
+			return 1;
+		}
+		return REFERENCE;
+	}
+}
@@ -0,0 +1,140 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of non-negative long values, such as latencies in
+ * nanoseconds. Values are counted in log-linear buckets: every power of two is
+ * split into SUB_BUCKETS equal buckets, so any reported percentile is within
+ * about 1/SUB_BUCKETS of the true value. Recording a value does not allocate.
+ */
+public class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray myCounts = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong myTotal = new AtomicLong();
+	private final AtomicLong mySum = new AtomicLong();
+	private final AtomicLong myMax = new AtomicLong();
+
+	/**
+	 * Index of the bucket holding value. Values below SUB_BUCKETS get a bucket
+	 * of their own.
+	 */
+	static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+		return (shift + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Largest value that falls into the given bucket.
+	 */
+	static long highestValueIn(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		long low = (SUB_BUCKETS + sub) << shift;
+		return low + (1L << shift) - 1;
+	}
+
+	/**
+	 * Counts one occurrence of value.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if value is negative
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Negative value: " + value);
+		}
+		myCounts.incrementAndGet(bucketOf(value));
+		myTotal.incrementAndGet();
+		mySum.addAndGet(value);
+		long max = myMax.get();
+		while (value > max && !myMax.compareAndSet(max, value)) {
+			max = myMax.get();
+		}
+	}
+
+	/**
+	 * Adds every value counted by other to this histogram.
+	 */
+	public void add(Histogram other) {
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			long c = other.myCounts.get(i);
+			if (c != 0) {
+				myCounts.addAndGet(i, c);
+			}
+		}
+		myTotal.addAndGet(other.myTotal.get());
+		mySum.addAndGet(other.mySum.get());
+		long max = myMax.get();
+		long otherMax = other.myMax.get();
+		while (otherMax > max && !myMax.compareAndSet(max, otherMax)) {
+			max = myMax.get();
+		}
+	}
+
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			myCounts.set(i, 0);
+		}
+		myTotal.set(0);
+		mySum.set(0);
+		myMax.set(0);
+	}
+
+	public long count() {
+		return myTotal.get();
+	}
+
+	public long max() {
+		return myMax.get();
+	}
+
+	public double mean() {
+		long n = myTotal.get();
+		return n == 0 ? 0 : (double) mySum.get() / n;
+	}
+
+	/**
+	 * Returns an upper bound on the value at the given percentile, e.g.
+	 * percentile(99) for the p99. Returns 0 if nothing has been recorded.
+	 */
+	public long percentile(double percentile) {
+		long n = myTotal.get();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(percentile / 100.0 * n);
+		if (rank < 1) {
+			rank = 1;
+		}
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += myCounts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValueIn(i), myMax.get());
+			}
+		}
+		return myMax.get();
+	}
+
+	/**
+	 * One line summary, treating recorded values as nanoseconds and printing
+	 * them in microseconds.
+	 */
+	public String toLatencyString() {
+		return String.format("n=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus", count(),
+				mean() / 1E3, percentile(50) / 1E3, percentile(90) / 1E3, percentile(99) / 1E3,
+				percentile(99.9) / 1E3, max() / 1E3);
+	}
+}
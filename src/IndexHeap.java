@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of int items, such as term indexes, by double priority,
+ * kept in two parallel primitive arrays: no boxing, no entry objects. The
+ * arrays only grow, so a heap kept per thread and cleared between queries
+ * allocates nothing once it has grown to the largest query's size.
+ */
+class IndexHeap {
+
+	private int[] myItems;
+	private double[] myPriorities;
+	private int mySize;
+
+	IndexHeap(int capacity) {
+		myItems = new int[Math.max(1, capacity)];
+		myPriorities = new double[myItems.length];
+	}
+
+	int size() {
+		return mySize;
+	}
+
+	boolean isEmpty() {
+		return mySize == 0;
+	}
+
+	void clear() {
+		mySize = 0;
+	}
+
+	void add(int item, double priority) {
+		if (mySize == myItems.length) {
+			myItems = Arrays.copyOf(myItems, 2 * mySize);
+			myPriorities = Arrays.copyOf(myPriorities, 2 * mySize);
+		}
+		int i = mySize++;
+		// sift up
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (myPriorities[parent] <= priority) {
+				break;
+			}
+			myItems[i] = myItems[parent];
+			myPriorities[i] = myPriorities[parent];
+			i = parent;
+		}
+		myItems[i] = item;
+		myPriorities[i] = priority;
+	}
+
+	/**
+	 * The item of lowest priority
+	 */
+	int peek() {
+		return myItems[0];
+	}
+
+	double peekPriority() {
+		return myPriorities[0];
+	}
+
+	/**
+	 * Removes and returns the item of lowest priority
+	 */
+	int remove() {
+		int top = myItems[0];
+		mySize--;
+		sink(myItems[mySize], myPriorities[mySize], mySize);
+		return top;
+	}
+
+	/**
+	 * Replaces the item of lowest priority, as remove then add would but
+	 * sifting once
+	 */
+	void replaceTop(int item, double priority) {
+		sink(item, priority, mySize);
+	}
+
+	/**
+	 * Puts item at the root of the first size entries and sinks it
+	 */
+	private void sink(int item, double priority, int size) {
+		int i = 0;
+		while (2 * i + 1 < size) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && myPriorities[child + 1] < myPriorities[child]) {
+				child++;
+			}
+			if (priority <= myPriorities[child]) {
+				break;
+			}
+			myItems[i] = myItems[child];
+			myPriorities[i] = myPriorities[child];
+			i = child;
+		}
+		myItems[i] = item;
+		myPriorities[i] = priority;
+	}
+
+	/**
+	 * Heap sorts the items in place into descending priority, readable with
+	 * item, and empties the heap. Returns how many there are.
+	 */
+	int drainDescending() {
+		int n = mySize;
+		for (int end = n - 1; end > 0; end--) {
+			int item = myItems[end];
+			double priority = myPriorities[end];
+			myItems[end] = myItems[0];
+			myPriorities[end] = myPriorities[0];
+			sink(item, priority, end);
+		}
+		mySize = 0;
+		return n;
+	}
+
+	/**
+	 * Entry i of the array, meaningful after drainDescending
+	 */
+	int item(int i) {
+		return myItems[i];
+	}
+
+	double priority(int i) {
+		return myPriorities[i];
+	}
+}
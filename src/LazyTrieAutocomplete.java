@@ -0,0 +1,438 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+
+/**
+ * A trie that is built only where it is used. Construction just sorts the
+ * terms as BinarySearchAutocomplete does and builds a segment tree that finds
+ * the heaviest term in any range of them, so startup costs little more than
+ * the sort. Every trie node stands for the range of sorted terms sharing its
+ * prefix, and knows its subtree's max weight as the heaviest term in that
+ * range. A node's children are created the first time a query walks through
+ * it or its subtree is searched, so memory grows only with the part of the
+ * key space that queries actually explore.
+ *
+ * topMatch is answered straight from the prefix node's heaviest term;
+ * topMatches runs the same best-first search as TrieAutocomplete, and into a
+ * ResultBuffer on heaps kept per thread, which allocates nothing once the
+ * nodes it visits have been created. Nodes are expanded under their own lock
+ * and published whole, so one instance can be shared between threads.
+ */
+public class LazyTrieAutocomplete implements BufferedAutocompletor, QueryStatsSource {
+
+	/**
+	 * The sorted terms and their weights, without duplicates
+	 */
+	private final String[] myWords;
+	private final double[] myWeights;
+
+	/**
+	 * Segment tree of indexes into myWeights: myMaxIndex[myLeaves + i] is i,
+	 * and every inner entry is the heavier of its two children
+	 */
+	private final int[] myMaxIndex;
+	private final int myLeaves;
+
+	private final LazyNode myRoot;
+
+	/**
+	 * Each thread's heaps for buffered queries: nodes by their heaviest term,
+	 * negated so the heaviest comes first, and word indexes by weight
+	 */
+	private final ThreadLocal<ObjectHeap<LazyNode>> myNodeHeaps = new ThreadLocal<ObjectHeap<LazyNode>>() {
+		protected ObjectHeap<LazyNode> initialValue() {
+			return new ObjectHeap<LazyNode>(64);
+		}
+	};
+	private final ThreadLocal<IndexHeap> myWordHeaps = new ThreadLocal<IndexHeap>() {
+		protected IndexHeap initialValue() {
+			return new IndexHeap(16);
+		}
+	};
+
+	/**
+	 * Where per-query statistics go, null when they are not being collected
+	 */
+	QueryStatsCollector myStatsCollector;
+
+	/**
+	 * The trie node for the terms myWords[lo, hi), which all start with the
+	 * same depth characters
+	 */
+	static class LazyNode {
+		final char myInfo;
+		final int myLo, myHi;
+		final int myDepth;
+		/**
+		 * Index of the heaviest term in the range
+		 */
+		final int myBest;
+		/**
+		 * Sorted by character; null until the node is expanded
+		 */
+		volatile LazyNode[] myChildren;
+
+		LazyNode(char info, int lo, int hi, int depth, int best) {
+			myInfo = info;
+			myLo = lo;
+			myHi = hi;
+			myDepth = depth;
+			myBest = best;
+		}
+	}
+
+	/**
+	 * @param terms
+	 *            - The words we will autocomplete from
+	 * @param weights
+	 *            - Their weights, such that terms[i] has weight weights[i]. If a
+	 *            word appears more than once its last weight is used, as in
+	 *            TrieAutocomplete.
+	 * @throws NullPointerException
+	 *             if either argument or any term is null
+	 * @throws IllegalArgumentException
+	 *             if terms and weights are different length or any weight is
+	 *             negative
+	 */
+	public LazyTrieAutocomplete(String[] terms, double[] weights) {
+		if (terms == null || weights == null) {
+			throw new NullPointerException("One or more arguments null");
+		}
+		if (terms.length != weights.length) {
+			throw new IllegalArgumentException("Terms and weights are different lengths");
+		}
+		Term[] sorted = new Term[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			// Term rejects null words and negative weights
+			sorted[i] = new Term(terms[i], weights[i]);
+		}
+		// stable, so the last of several equal words is last here too
+		TermSort.sort(sorted);
+		int n = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (i + 1 < sorted.length && sorted[i].getWord().equals(sorted[i + 1].getWord())) {
+				continue;
+			}
+			sorted[n++] = sorted[i];
+		}
+		myWords = new String[n];
+		myWeights = new double[n];
+		for (int i = 0; i < n; i++) {
+			myWords[i] = sorted[i].getWord();
+			myWeights[i] = sorted[i].getWeight();
+		}
+
+		myLeaves = Math.max(1, n);
+		myMaxIndex = new int[2 * myLeaves];
+		for (int i = 0; i < myLeaves; i++) {
+			myMaxIndex[myLeaves + i] = Math.min(i, n - 1);
+		}
+		for (int i = myLeaves - 1; i > 0; i--) {
+			myMaxIndex[i] = heavier(myMaxIndex[2 * i], myMaxIndex[2 * i + 1]);
+		}
+		myRoot = new LazyNode('-', 0, n, 0, n == 0 ? -1 : maxIndex(0, n));
+	}
+
+	private int heavier(int i, int j) {
+		return myWeights[j] > myWeights[i] ? j : i;
+	}
+
+	/**
+	 * Index of the heaviest term in myWords[lo, hi), which must not be empty
+	 */
+	private int maxIndex(int lo, int hi) {
+		int best = lo;
+		for (int l = lo + myLeaves, r = hi + myLeaves; l < r; l >>>= 1, r >>>= 1) {
+			if ((l & 1) == 1) {
+				best = heavier(best, myMaxIndex[l++]);
+			}
+			if ((r & 1) == 1) {
+				best = heavier(best, myMaxIndex[--r]);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Whether a term ends at node; it would sort first in the node's range
+	 */
+	private boolean isWord(LazyNode node) {
+		return node.myLo < node.myHi && myWords[node.myLo].length() == node.myDepth;
+	}
+
+	/**
+	 * The children of node, creating them if this is the first time
+	 */
+	private LazyNode[] children(LazyNode node) {
+		LazyNode[] children = node.myChildren;
+		if (children != null) {
+			return children;
+		}
+		synchronized (node) {
+			children = node.myChildren;
+			if (children == null) {
+				children = expand(node);
+				node.myChildren = children;
+			}
+		}
+		return children;
+	}
+
+	private LazyNode[] expand(LazyNode node) {
+		ArrayList<LazyNode> children = new ArrayList<LazyNode>();
+		int depth = node.myDepth;
+		int start = isWord(node) ? node.myLo + 1 : node.myLo;
+		while (start < node.myHi) {
+			char c = myWords[start].charAt(depth);
+			int end = c == Character.MAX_VALUE ? node.myHi : firstWith(start, node.myHi, depth, (char) (c + 1));
+			children.add(new LazyNode(c, start, end, depth + 1, maxIndex(start, end)));
+			start = end;
+		}
+		return children.toArray(new LazyNode[children.size()]);
+	}
+
+	/**
+	 * First index in myWords[from, to) whose character at depth is at least
+	 * c. Every word there is longer than depth.
+	 */
+	private int firstWith(int from, int to, int depth, char c) {
+		int lo = from;
+		int hi = to;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (myWords[mid].charAt(depth) < c) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * The node for prefix, creating nodes along the way, or null if no term
+	 * starts with prefix
+	 */
+	private LazyNode find(CharSequence prefix) {
+		LazyNode node = myRoot;
+		for (int i = 0; i < prefix.length() && node != null; i++) {
+			node = child(children(node), prefix.charAt(i));
+		}
+		return node == null || node.myLo == node.myHi ? null : node;
+	}
+
+	private static LazyNode child(LazyNode[] children, char c) {
+		int lo = 0;
+		int hi = children.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			char info = children[mid].myInfo;
+			if (info < c) {
+				lo = mid + 1;
+			} else if (info > c) {
+				hi = mid - 1;
+			} else {
+				return children[mid];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Number of nodes created so far, the root included
+	 */
+	public long materializedNodes() {
+		long count = 0;
+		ArrayList<LazyNode> stack = new ArrayList<LazyNode>();
+		stack.add(myRoot);
+		while (!stack.isEmpty()) {
+			LazyNode node = stack.remove(stack.size() - 1);
+			count++;
+			LazyNode[] children = node.myChildren;
+			if (children != null) {
+				stack.addAll(Arrays.asList(children));
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * In descending order of the weight of the heaviest term below
+	 */
+	private final Comparator<LazyNode> myNodeOrder = new Comparator<LazyNode>() {
+		public int compare(LazyNode v, LazyNode w) {
+			return Double.compare(myWeights[w.myBest], myWeights[v.myBest]);
+		}
+	};
+
+	/**
+	 * Returns the k words with the largest weights that start with prefix, in
+	 * descending weight order.
+	 *
+	 * @throws NullPointerException
+	 *             if prefix is null
+	 * @throws IllegalArgumentException
+	 *             if k is negative
+	 */
+	public Iterable<String> topMatches(String prefix, int k) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		if (k < 0) {
+			throw new IllegalArgumentException("Illegal value of k:" + k);
+		}
+		QueryStats stats = myStatsCollector == null ? null : new QueryStats(prefix, k);
+		long start = stats == null ? 0 : System.nanoTime();
+		if (k == 0) {
+			if (stats != null) {
+				stats.nanos = System.nanoTime() - start;
+				myStatsCollector.record(stats);
+			}
+			return new ArrayList<String>();
+		}
+		LazyNode node = find(prefix);
+		if (node == null) {
+			if (stats != null) {
+				stats.nanos = System.nanoTime() - start;
+				myStatsCollector.record(stats);
+			}
+			return new ArrayList<String>();
+		}
+		PriorityQueue<LazyNode> nodePQ = new PriorityQueue<LazyNode>(myNodeOrder);
+		// the words found, lightest first
+		PriorityQueue<Term> termPQ = new PriorityQueue<Term>(k, new Term.WeightOrder());
+		nodePQ.add(node);
+		if (stats != null) {
+			stats.nodesPushed++;
+		}
+		while (!nodePQ.isEmpty()) {
+			if (termPQ.size() == k && termPQ.peek().getWeight() > myWeights[nodePQ.peek().myBest]) {
+				if (stats != null) {
+					stats.earlyTermination = true;
+				}
+				break;
+			}
+			LazyNode current = nodePQ.remove();
+			if (stats != null) {
+				stats.nodesPopped++;
+			}
+			if (isWord(current)) {
+				termPQ.add(new Term(myWords[current.myLo], myWeights[current.myLo]));
+				if (stats != null) {
+					stats.rangeScanned++;
+				}
+				if (termPQ.size() > k) {
+					termPQ.remove();
+					if (stats != null) {
+						stats.heapReplacements++;
+					}
+				}
+			}
+			for (LazyNode below : children(current)) {
+				nodePQ.add(below);
+			}
+			if (stats != null) {
+				stats.nodesPushed += current.myChildren.length;
+			}
+		}
+		LinkedList<String> ret = new LinkedList<String>();
+		while (!termPQ.isEmpty()) {
+			ret.addFirst(termPQ.remove().getWord());
+		}
+		if (stats != null) {
+			stats.nanos = System.nanoTime() - start;
+			myStatsCollector.record(stats);
+		}
+		return ret;
+	}
+
+	/**
+	 * topMatches into results: the same best-first search, on this thread's
+	 * heaps rather than new PriorityQueues, with the words copied into
+	 * results
+	 */
+	public int topMatches(CharSequence prefix, ResultBuffer results) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		int k = results.capacity();
+		results.clear();
+		LazyNode node = find(prefix);
+		if (node == null || k == 0) {
+			return 0;
+		}
+		ObjectHeap<LazyNode> nodeHeap = myNodeHeaps.get();
+		IndexHeap wordHeap = myWordHeaps.get();
+		nodeHeap.clear();
+		wordHeap.clear();
+		nodeHeap.add(node, -myWeights[node.myBest]);
+		while (!nodeHeap.isEmpty()) {
+			if (wordHeap.size() == k && wordHeap.peekPriority() > -nodeHeap.peekPriority()) {
+				break;
+			}
+			LazyNode current = nodeHeap.remove();
+			if (isWord(current)) {
+				double weight = myWeights[current.myLo];
+				if (wordHeap.size() < k) {
+					wordHeap.add(current.myLo, weight);
+				} else if (wordHeap.peekPriority() < weight) {
+					wordHeap.replaceTop(current.myLo, weight);
+				}
+			}
+			for (LazyNode below : children(current)) {
+				nodeHeap.add(below, -myWeights[below.myBest]);
+			}
+		}
+		nodeHeap.clear();
+		int n = wordHeap.drainDescending();
+		for (int i = 0; i < n; i++) {
+			results.add(myWords[wordHeap.item(i)], wordHeap.priority(i));
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the word with the largest weight that starts with prefix, or an
+	 * empty string if none exists. The prefix node already knows it.
+	 *
+	 * @throws NullPointerException
+	 *             if prefix is null
+	 */
+	public String topMatch(String prefix) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid Prefix");
+		}
+		QueryStats stats = myStatsCollector == null ? null : new QueryStats(prefix, 1);
+		long start = stats == null ? 0 : System.nanoTime();
+		LazyNode node = find(prefix);
+		if (node == null) {
+			if (stats != null) {
+				stats.nanos = System.nanoTime() - start;
+				myStatsCollector.record(stats);
+			}
+			return "";
+		}
+		if (stats != null) {
+			stats.rangeScanned = 1;
+			stats.earlyTermination = true;
+			stats.nanos = System.nanoTime() - start;
+			myStatsCollector.record(stats);
+		}
+		return myWords[node.myBest];
+	}
+
+	/**
+	 * Return the weight of a given term. If term is not in the dictionary,
+	 * return 0.0. Looks the term up in the sorted array, so it creates no nodes.
+	 */
+	public double weightOf(String term) {
+		int i = Arrays.binarySearch(myWords, term);
+		return i < 0 ? 0.0 : myWeights[i];
+	}
+
+	public void setStatsCollector(QueryStatsCollector collector) {
+		myStatsCollector = collector;
+	}
+}
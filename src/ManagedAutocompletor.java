@@ -0,0 +1,344 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An Autocompletor whose engine can be replaced while it serves queries. A
+ * new engine is built on a background thread, from the dictionary file when
+ * it changes or reload is called, from a given Dictionary, or from a batch of
+ * weight changes such as PopularityIngester pushes. Once built it replaces
+ * the current engine with one volatile write. Each query reads the engine
+ * once, so a query in progress finishes on the engine it started with, and
+ * queries never wait for a build.
+ *
+ * Builds run one at a time in the order requested; a build that fails leaves
+ * the current engine in place. Listeners hear of every swap and failure.
+ *
+ * With AutocompletorFactory.AUTOMATIC for the class name the first build
+ * chooses the engine, and every later one builds the same engine the same
+ * way, so a reload neither calibrates again nor switches engines.
+ */
+public class ManagedAutocompletor implements Autocompletor, Closeable {
+
+	/**
+	 * Told about builds, on the building thread
+	 */
+	public interface Listener {
+		/**
+		 * current replaced previous after a build of buildNanos
+		 */
+		public void swapped(Autocompletor previous, Autocompletor current, Dictionary dictionary, long buildNanos);
+
+		/**
+		 * A build failed and the current engine was kept
+		 */
+		public void failed(Exception e);
+	}
+
+	private final String myClassName;
+	private final File myFile;
+	private final boolean myLowerCase;
+	private final ScheduledExecutorService myBuilder;
+	private final CopyOnWriteArrayList<Listener> myListeners = new CopyOnWriteArrayList<Listener>();
+
+	private volatile Autocompletor myCurrent;
+	/**
+	 * The dictionary myCurrent was built from; only written by builds
+	 */
+	private volatile Dictionary myDictionary;
+	private volatile long mySwaps;
+	private volatile long myLastBuildNanos;
+	/**
+	 * The first build's choice, when the engine is chosen automatically
+	 */
+	private volatile AutocompletorFactory.Choice myChoice;
+	/**
+	 * The modification time and length of myFile when last read
+	 */
+	private long myStamp;
+	private long myLength;
+
+	/**
+	 * Reads file and builds the first engine before returning
+	 *
+	 * @param file
+	 *            - the dictionary file, in the format Dictionary reads
+	 * @param lowerCase
+	 *            - whether words are converted to lower case
+	 * @param className
+	 *            - the Autocompletor class to build, with a (String[],
+	 *            double[]) constructor
+	 * @throws FileNotFoundException
+	 *             if file cannot be opened
+	 * @throws IllegalArgumentException
+	 *             if the file is malformatted or className is not such a class
+	 */
+	public ManagedAutocompletor(File file, boolean lowerCase, String className) throws FileNotFoundException {
+		if (file == null || className == null) {
+			throw new NullPointerException("One or more arguments null");
+		}
+		myFile = file;
+		myLowerCase = lowerCase;
+		myClassName = className;
+		myStamp = file.lastModified();
+		myLength = file.length();
+		Dictionary dictionary = Dictionary.read(file, lowerCase);
+		myCurrent = newAutocompletor(dictionary);
+		myDictionary = dictionary;
+		myBuilder = newBuilder();
+	}
+
+	/**
+	 * Builds the first engine from dictionary before returning; there is no
+	 * file to reload or watch
+	 *
+	 * @throws IllegalArgumentException
+	 *             if className does not name an Autocompletor class with a
+	 *             (String[], double[]) constructor
+	 */
+	public ManagedAutocompletor(Dictionary dictionary, String className) {
+		if (dictionary == null || className == null) {
+			throw new NullPointerException("One or more arguments null");
+		}
+		myFile = null;
+		myLowerCase = false;
+		myClassName = className;
+		myCurrent = newAutocompletor(dictionary);
+		myDictionary = dictionary;
+		myBuilder = newBuilder();
+	}
+
+	/**
+	 * Builds myClassName from dictionary, only choosing an automatic engine
+	 * the first time; runs in a constructor or on the builder
+	 */
+	private Autocompletor newAutocompletor(Dictionary dictionary) {
+		if (!AutocompletorFactory.AUTOMATIC.equals(myClassName)) {
+			return dictionary.newAutocompletor(myClassName);
+		}
+		if (myChoice == null) {
+			myChoice = dictionary.chooseAutocompletor(AutocompleteMain.K);
+			return myChoice.getEngine();
+		}
+		return myChoice.build(dictionary);
+	}
+
+	private static ScheduledExecutorService newBuilder() {
+		return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ManagedAutocompletor");
+				t.setDaemon(true);
+				t.setPriority(Thread.NORM_PRIORITY - 1);
+				return t;
+			}
+		});
+	}
+
+	public void addListener(Listener listener) {
+		if (listener == null) {
+			throw new NullPointerException("Invalid listener");
+		}
+		myListeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		myListeners.remove(listener);
+	}
+
+	/**
+	 * Rereads the file and builds an engine from it in the background
+	 *
+	 * @return the new engine when it is swapped in; the Future fails if the
+	 *         build does
+	 * @throws IllegalStateException
+	 *             if this was not created from a file
+	 */
+	public Future<Autocompletor> reload() {
+		if (myFile == null) {
+			throw new IllegalStateException("No dictionary file to reload");
+		}
+		return myBuilder.submit(new Build() {
+			Dictionary dictionary() throws FileNotFoundException {
+				return readFile();
+			}
+		});
+	}
+
+	/**
+	 * Builds an engine from dictionary in the background
+	 */
+	public Future<Autocompletor> rebuild(final Dictionary dictionary) {
+		if (dictionary == null) {
+			throw new NullPointerException("Invalid dictionary");
+		}
+		return myBuilder.submit(new Build() {
+			Dictionary dictionary() {
+				return dictionary;
+			}
+		});
+	}
+
+	/**
+	 * Builds an engine in the background from the dictionary the engine
+	 * before it was built from, with the weights in changes as
+	 * Dictionary.withWeights applies them. Batches given one after another
+	 * all apply, as each build starts from the one before.
+	 */
+	public Future<Autocompletor> updateWeights(final Map<String, Double> changes) {
+		if (changes == null) {
+			throw new NullPointerException("Invalid changes");
+		}
+		return myBuilder.submit(new Build() {
+			Dictionary dictionary() {
+				return myDictionary.withWeights(changes);
+			}
+		});
+	}
+
+	/**
+	 * Checks the file every periodMillis and reloads it when its modification
+	 * time or length changes
+	 *
+	 * @throws IllegalStateException
+	 *             if this was not created from a file
+	 * @throws IllegalArgumentException
+	 *             if periodMillis is not positive
+	 */
+	public void watch(long periodMillis) {
+		if (myFile == null) {
+			throw new IllegalStateException("No dictionary file to watch");
+		}
+		if (periodMillis <= 0) {
+			throw new IllegalArgumentException("Illegal period " + periodMillis);
+		}
+		myBuilder.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				if (myFile.lastModified() != myStamp || myFile.length() != myLength) {
+					new Build() {
+						Dictionary dictionary() throws FileNotFoundException {
+							return readFile();
+						}
+					}.run();
+				}
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Only called on the building thread
+	 */
+	private Dictionary readFile() throws FileNotFoundException {
+		// stamped before reading, so a write during the read is seen next time
+		myStamp = myFile.lastModified();
+		myLength = myFile.length();
+		return Dictionary.read(myFile, myLowerCase);
+	}
+
+	/**
+	 * Builds an engine from dictionary() and swaps it in, reporting either
+	 * way
+	 */
+	private abstract class Build implements Callable<Autocompletor> {
+
+		abstract Dictionary dictionary() throws Exception;
+
+		public Autocompletor call() throws Exception {
+			try {
+				long start = System.nanoTime();
+				Dictionary dictionary = dictionary();
+				Autocompletor built = newAutocompletor(dictionary);
+				long nanos = System.nanoTime() - start;
+				Autocompletor previous = myCurrent;
+				myDictionary = dictionary;
+				myCurrent = built;
+				myLastBuildNanos = nanos;
+				mySwaps++;
+				for (Listener listener : myListeners) {
+					listener.swapped(previous, built, dictionary, nanos);
+				}
+				return built;
+			} catch (Exception e) {
+				for (Listener listener : myListeners) {
+					listener.failed(e);
+				}
+				throw e;
+			}
+		}
+
+		/**
+		 * Builds for the watcher, which has no Future to fail
+		 */
+		void run() {
+			try {
+				call();
+			} catch (Exception e) {
+				// reported to the listeners
+			}
+		}
+	}
+
+	/**
+	 * The engine queries are answered by now
+	 */
+	public Autocompletor getCurrent() {
+		return myCurrent;
+	}
+
+	/**
+	 * The dictionary the current engine was built from
+	 */
+	public Dictionary getDictionary() {
+		return myDictionary;
+	}
+
+	/**
+	 * Which engine was chosen and why, or null unless it was chosen
+	 * automatically
+	 */
+	public AutocompletorFactory.Choice getChoice() {
+		return myChoice;
+	}
+
+	/**
+	 * The number of engines swapped in since the first
+	 */
+	public long getSwapCount() {
+		return mySwaps;
+	}
+
+	/**
+	 * How long, in nanoseconds, the last engine swapped in took to read and
+	 * build; 0 before the first swap
+	 */
+	public long getLastBuildNanos() {
+		return myLastBuildNanos;
+	}
+
+	public Iterable<String> topMatches(String prefix, int k) {
+		return myCurrent.topMatches(prefix, k);
+	}
+
+	public String topMatch(String prefix) {
+		return myCurrent.topMatch(prefix);
+	}
+
+	public double weightOf(String term) {
+		return myCurrent.weightOf(term);
+	}
+
+	/**
+	 * Stops watching and building; a build in progress is finished, and the
+	 * current engine keeps answering queries
+	 */
+	public void close() {
+		myBuilder.shutdown();
+	}
+}
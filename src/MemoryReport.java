@@ -0,0 +1,228 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Reports how much memory each Autocompletor needs. Every engine listed in
+ * AutocompletorBenchmark.ENGINES is built from every dictionary in a data
+ * directory, and for each build the report shows:
+ *
+ *   * retained heap, measured as the drop in used heap after a full GC when
+ *     the engine is released, and estimated by walking the engine's object
+ *     graph with HeapFootprint. The dictionary's own term Strings are not
+ *     counted against the engine.
+ *   * bytes per term
+ *   * objects by class for the classes indexes are made of
+ *   * bytes allocated, and GC collections and pause time, during construction
+ *
+ * % java -Xmx2g -XX:+UseParallelGC MemoryReport data
+ *
+ * The measured column relies on System.gc() collecting everything that is
+ * unreachable. No collector promises that: full collections of Serial,
+ * Parallel and G1 may leave dead objects uncompacted (MarkSweepDeadRatio)
+ * and only compact everything every few collections, so the heap is
+ * collected until it holds still for longer than that. When it will not, or
+ * shows no drop at all, the row shows the estimate instead, marked with a *;
+ * -XX:MarkSweepDeadRatio=0 makes every collection reclaim everything.
+ *
+ * Pass a file instead of a directory to report on one dictionary, and class
+ * names after it to report on only those engines.
+ */
+public class MemoryReport {
+
+	/**
+	 * Classes whose object counts are always shown
+	 */
+	public static final String[] TRACKED_CLASSES = { "Node", "Node[]", "Node$Indexed", "Node$Direct", "Term",
+			"java.lang.String" };
+
+	/**
+	 * The engine being measured. Held in a field rather than a local so the
+	 * JIT cannot keep it alive after it is cleared.
+	 */
+	private static Autocompletor ourEngine;
+
+	/**
+	 * What building and keeping one engine cost
+	 */
+	static class Measurement {
+		String engine;
+		int terms;
+		long buildNanos;
+		long allocatedBytes = -1;
+		long gcCount;
+		long gcMillis;
+		long retainedBytes;
+		/**
+		 * Whether retainedBytes was measured rather than estimated
+		 */
+		boolean measured;
+		HeapFootprint footprint;
+
+		String summary() {
+			String mark = measured ? "" : "*";
+			return String.format("%-26s %9.1f %12s %12s %10s %10.1f %8s %6d %8d", engine, buildNanos / 1E6,
+					kb(retainedBytes) + mark, kb(footprint.bytes()),
+					String.format("%.1f", (double) retainedBytes / Math.max(1, terms)) + mark,
+					(double) footprint.bytes() / Math.max(1, terms),
+					allocatedBytes < 0 ? "n/a" : String.format("%.1f", allocatedBytes / 1E6), gcCount, gcMillis);
+		}
+
+		String objectCounts() {
+			StringBuilder sb = new StringBuilder("    objects:");
+			for (String c : TRACKED_CLASSES) {
+				sb.append(String.format(" %s=%d", c.substring(c.lastIndexOf('.') + 1), footprint.count(c)));
+			}
+			sb.append(String.format(" total=%d%n    largest:", footprint.objects()));
+			int shown = 0;
+			for (String c : footprint.classNames()) {
+				if (shown++ == 5) {
+					break;
+				}
+				sb.append(String.format(" %s=%d (%s)", c, footprint.count(c), kb(footprint.bytes(c))));
+			}
+			return sb.toString();
+		}
+
+		static String kb(long bytes) {
+			return String.format("%.1fK", bytes / 1024.0);
+		}
+	}
+
+	/**
+	 * Builds className from dictionary and measures it.
+	 */
+	public static Measurement measure(String className, Dictionary dictionary) {
+		Measurement m = new Measurement();
+		m.engine = className;
+		m.terms = dictionary.size();
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+		usedAfterGC(memory);
+		long allocatedBefore = allocatedBytes();
+		long[] gcBefore = gcTotals();
+		long start = System.nanoTime();
+		ourEngine = dictionary.newAutocompletor(className);
+		m.buildNanos = System.nanoTime() - start;
+		long[] gcAfter = gcTotals();
+		long allocatedAfter = allocatedBytes();
+		m.gcCount = gcAfter[0] - gcBefore[0];
+		m.gcMillis = gcAfter[1] - gcBefore[1];
+		if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+			m.allocatedBytes = allocatedAfter - allocatedBefore;
+		}
+		// the terms themselves belong to the dictionary, not the engine
+		m.footprint = HeapFootprint.of(ourEngine, dictionary.getTerms());
+		// retained size is what the heap shrinks by once the engine is dropped,
+		// which is not thrown off by garbage left over from earlier work
+		long usedWith = usedAfterGC(memory);
+		ourEngine = null;
+		long usedWithout = usedAfterGC(memory);
+		m.measured = usedWith >= 0 && usedWithout >= 0 && usedWith > usedWithout;
+		m.retainedBytes = m.measured ? usedWith - usedWithout : m.footprint.bytes();
+		return m;
+	}
+
+	/**
+	 * Full collections only compact everything every MarkSweepAlwaysCompactCount
+	 * collections, 4 by default, so the heap has stopped shrinking once it
+	 * holds still for more than that
+	 */
+	private static final int STEADY_COLLECTIONS = 5;
+	private static final int MAX_COLLECTIONS = 40;
+	/**
+	 * Smaller changes in used heap are the JVM's own bookkeeping
+	 */
+	private static final long SLACK_BYTES = 16 << 10;
+
+	/**
+	 * Used heap after collecting until it stops shrinking, or -1 if it does
+	 * not within MAX_COLLECTIONS
+	 */
+	static long usedAfterGC(MemoryMXBean memory) {
+		long used = Long.MAX_VALUE;
+		int steady = 0;
+		for (int i = 0; i < MAX_COLLECTIONS; i++) {
+			System.gc();
+			long now = memory.getHeapMemoryUsage().getUsed();
+			steady = now < used - SLACK_BYTES ? 0 : steady + 1;
+			used = Math.min(used, now);
+			if (steady == STEADY_COLLECTIONS) {
+				return used;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Number and total time in milliseconds of collections so far
+	 */
+	static long[] gcTotals() {
+		long[] totals = new long[2];
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			totals[0] += Math.max(0, gc.getCollectionCount());
+			totals[1] += Math.max(0, gc.getCollectionTime());
+		}
+		return totals;
+	}
+
+	/**
+	 * Bytes allocated so far by all live threads, or -1 if the JVM cannot tell.
+	 * Counting every thread includes work done by pools during construction.
+	 */
+	static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+		if (!sun.isThreadAllocatedMemorySupported() || !sun.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		long total = 0;
+		for (long bytes : sun.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+			total += Math.max(0, bytes);
+		}
+		return total;
+	}
+
+	public static void main(String[] args) throws FileNotFoundException {
+		File data = new File(args.length >= 1 ? args[0] : "data");
+		String[] engines = args.length >= 2 ? Arrays.copyOfRange(args, 1, args.length)
+				: AutocompletorBenchmark.ENGINES;
+		File[] files = data.isDirectory() ? data.listFiles() : new File[] { data };
+		Arrays.sort(files);
+		System.out.println("Max heap " + Runtime.getRuntime().maxMemory() / (1 << 20) + "M; sizes assume "
+				+ "compressed references");
+		for (File file : files) {
+			Dictionary dictionary;
+			try {
+				dictionary = Dictionary.read(file, false);
+			} catch (IllegalArgumentException e) {
+				System.out.println("Skipping " + file + ": " + e.getMessage());
+				continue;
+			}
+			System.out.println();
+			System.out.println(file + " (" + dictionary.size() + " terms)");
+			System.out.println(String.format("%-26s %9s %12s %12s %10s %10s %8s %6s %8s", "engine", "build ms",
+					"retained", "estimated", "B/term", "est B/term", "alloc MB", "GCs", "GC ms"));
+			for (String engine : engines) {
+				Measurement m;
+				try {
+					m = measure(engine, dictionary);
+				} catch (IllegalArgumentException e) {
+					System.out.println(String.format("%-26s %s", engine, e.getMessage()));
+					continue;
+				}
+				System.out.println(m.summary());
+				System.out.println(m.objectCounts());
+			}
+		}
+		System.out.println();
+		System.out.println("* not reclaimed by System.gc(), estimated instead");
+	}
+}
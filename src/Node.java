@@ -1,115 +1,354 @@
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Node in a general trie, each representing a character. Each node will keep
  * track of additional valid state if it is the last character of a word.
- * 
+ * Weights are not stored in nodes; the word's index and the subtree's
+ * largest key refer to the trie's WeightTable.
+ *
+ * Children are kept in the smallest container that fits, in the style of an
+ * adaptive radix tree, and the container is replaced as children are added:
+ *
+ *   * no children: null
+ *   * one child: the child Node itself
+ *   * up to 16 children: a Node[] sorted by character, grown 4, 8, 16
+ *   * 17 to 48 children, all Latin-1: an Indexed, a 256 entry byte index
+ *     into a Node[48]
+ *   * more than 48 children, all Latin-1: a Direct table of 256 Nodes
+ *   * more than 16 children, some beyond Latin-1: a sorted Node[] searched
+ *     by binary search, doubled as it fills
+ *
+ * Children are visited through slotCount() and slot(i), which may return
+ * null for empty slots, so walking them allocates nothing.
+ *
  * @author Austin Lu
  *
  */
-public class Node implements Comparable<Node> {
+public class Node {
+
+	static final int MAX_SORTED = 16;
+	static final int MAX_INDEXED = 48;
+	static final int DIRECT_SIZE = 256;
+
 	/**
 	 * The character this Node represents
 	 */
-	String myInfo;
+	char myInfo;
 
 	/**
-	 * Whether or not this node represents the last character in a word
+	 * Index of the word ending at this Node in the trie's terms and
+	 * WeightTable, or -1 if no word ends here
 	 */
-	boolean isWord;
+	int myIndex = -1;
 
 	/**
-	 * Only non-null/interpretable if isWord is true. Holds the entire word ending
-	 * at this Node.
+	 * The largest WeightTable key of any word in this Node's subtrie,
+	 * including this Node itself
 	 */
-	String myWord;
+	int mySubtreeMaxKey;
 
 	/**
-	 * Only positive/interpretable if isWord is true. Represents the weight of
-	 * myWord.
+	 * The AttributeFilter summary of the attributes of every word in this
+	 * Node's subtrie, 0 if the trie has none. It fits in the padding of a
+	 * Node without attributes, so costs no memory.
 	 */
-	double myWeight = -1;
+	int mySubtreeAttributes;
 
 	/**
-	 * The maximum weight of any Node rooted at this Node (i.e. in this Nodes
-	 * subtrie, including this Node itself).
+	 * null, a Node, a sorted Node[], an Indexed or a Direct
 	 */
-	double mySubtreeMaxWeight;
+	private Object myChildren;
 
-	Map<Character, Node> children;
-	Node parent;
+	public Node(char character, int subtreeMaximumKey) {
+		myInfo = character;
+		mySubtreeMaxKey = subtreeMaximumKey;
+	}
 
-	public Node(char character, Node parentNode, double subtreeMaximumWeight) {
-		myInfo = "" + character;
-		isWord = false;
-		children = new HashMap<Character, Node>();
-		parent = parentNode;
-		mySubtreeMaxWeight = subtreeMaximumWeight;
+	/**
+	 * Up to 48 Latin-1 children. index[c] is one more than the slot of the child
+	 * for c in nodes, or 0 if there is none.
+	 */
+	static final class Indexed {
+		final byte[] index = new byte[DIRECT_SIZE];
+		final Node[] nodes = new Node[MAX_INDEXED];
+		int size;
 	}
 
 	/**
-	 * Set the word that this node is the last character of. Only do this if the
-	 * Node's character ends a word.
+	 * Latin-1 children addressed directly by character
 	 */
-	public void setWord(String word) {
-		myWord = word;
+	static final class Direct {
+		final Node[] table = new Node[DIRECT_SIZE];
+		int size;
 	}
 
-	public String getWord() {
-		return myWord;
+	/**
+	 * Whether or not this node represents the last character in a word
+	 */
+	public boolean isWord() {
+		return myIndex >= 0;
 	}
 
 	/**
-	 * Set the weight corresponding to the word that this node is the last character
-	 * of.
+	 * Returns null if key is not a valid child.
 	 */
-	public void setWeight(double w) {
-		myWeight = w;
+	Node getChild(char ch) {
+		Object children = myChildren;
+		if (children instanceof Node) {
+			Node only = (Node) children;
+			return only.myInfo == ch ? only : null;
+		} else if (children instanceof Node[]) {
+			Node[] sorted = (Node[]) children;
+			int i = find(sorted, sortedSize(sorted), ch);
+			return i >= 0 ? sorted[i] : null;
+		} else if (children instanceof Indexed) {
+			if (ch >= DIRECT_SIZE) {
+				return null;
+			}
+			Indexed indexed = (Indexed) children;
+			int slot = indexed.index[ch] & 0xFF;
+			return slot == 0 ? null : indexed.nodes[slot - 1];
+		} else if (children instanceof Direct) {
+			return ch < DIRECT_SIZE ? ((Direct) children).table[ch] : null;
+		}
+		return null;
 	}
 
-	public double getWeight() {
-		return myWeight;
+	/**
+	 * Adds child under its character, replacing any child already there, and
+	 * moves the children to a larger container if needed.
+	 */
+	void putChild(Node child) {
+		char ch = child.myInfo;
+		Object children = myChildren;
+		if (children == null) {
+			myChildren = child;
+		} else if (children instanceof Node) {
+			Node only = (Node) children;
+			if (only.myInfo == ch) {
+				myChildren = child;
+			} else {
+				Node[] sorted = new Node[4];
+				sorted[0] = only;
+				insert(sorted, 1, child);
+				myChildren = sorted;
+			}
+		} else if (children instanceof Node[]) {
+			putSorted((Node[]) children, child);
+		} else if (children instanceof Indexed) {
+			Indexed indexed = (Indexed) children;
+			if (ch >= DIRECT_SIZE) {
+				myChildren = toSorted(indexed.nodes, indexed.size, child);
+			} else if (indexed.index[ch] != 0) {
+				indexed.nodes[(indexed.index[ch] & 0xFF) - 1] = child;
+			} else if (indexed.size < MAX_INDEXED) {
+				indexed.nodes[indexed.size++] = child;
+				indexed.index[ch] = (byte) indexed.size;
+			} else {
+				Direct direct = new Direct();
+				for (int i = 0; i < indexed.size; i++) {
+					direct.table[indexed.nodes[i].myInfo] = indexed.nodes[i];
+				}
+				direct.size = indexed.size + 1;
+				direct.table[ch] = child;
+				myChildren = direct;
+			}
+		} else {
+			Direct direct = (Direct) children;
+			if (ch >= DIRECT_SIZE) {
+				Node[] all = new Node[direct.size];
+				int n = 0;
+				for (Node c : direct.table) {
+					if (c != null) {
+						all[n++] = c;
+					}
+				}
+				myChildren = toSorted(all, n, child);
+			} else {
+				if (direct.table[ch] == null) {
+					direct.size++;
+				}
+				direct.table[ch] = child;
+			}
+		}
+	}
+
+	private void putSorted(Node[] sorted, Node child) {
+		int size = sortedSize(sorted);
+		int i = find(sorted, size, child.myInfo);
+		if (i >= 0) {
+			sorted[i] = child;
+			return;
+		}
+		if (size < sorted.length) {
+			insert(sorted, size, child);
+			return;
+		}
+		if (size == MAX_SORTED && isLatin1(sorted, size) && child.myInfo < DIRECT_SIZE) {
+			Indexed indexed = new Indexed();
+			for (int j = 0; j < size; j++) {
+				indexed.nodes[j] = sorted[j];
+				indexed.index[sorted[j].myInfo] = (byte) (j + 1);
+			}
+			indexed.nodes[size] = child;
+			indexed.index[child.myInfo] = (byte) (size + 1);
+			indexed.size = size + 1;
+			myChildren = indexed;
+			return;
+		}
+		Node[] grown = new Node[2 * sorted.length];
+		System.arraycopy(sorted, 0, grown, 0, size);
+		insert(grown, size, child);
+		myChildren = grown;
 	}
 
 	/**
-	 * Returns null if key is not a valid child.
+	 * A sorted array with room to spare holding the first size of nodes and child
 	 */
-	Node getChild(char ch) {
-		return children.get(ch);
+	private static Node[] toSorted(Node[] nodes, int size, Node child) {
+		Node[] sorted = new Node[Integer.highestOneBit(size + 1) << 1];
+		for (int i = 0; i < size; i++) {
+			insert(sorted, i, nodes[i]);
+		}
+		insert(sorted, size, child);
+		return sorted;
 	}
 
-	@Override
-	public String toString() {
-		return myInfo + " (" + myWeight + ")";
+	/**
+	 * Inserts child in order into the first size entries of sorted, which has
+	 * room for it
+	 */
+	private static void insert(Node[] sorted, int size, Node child) {
+		int i = size;
+		while (i > 0 && sorted[i - 1].myInfo > child.myInfo) {
+			sorted[i] = sorted[i - 1];
+			i--;
+		}
+		sorted[i] = child;
 	}
 
-	@Override
-	public int compareTo(Node o) {
-		// Sort in weight ascending
-		if (this.myWeight < o.myWeight) {
+	/**
+	 * Index of the child for ch in the first size entries of sorted, or
+	 * negative if there is none
+	 */
+	private static int find(Node[] sorted, int size, char ch) {
+		if (size <= MAX_SORTED) {
+			for (int i = 0; i < size; i++) {
+				char c = sorted[i].myInfo;
+				if (c == ch) {
+					return i;
+				} else if (c > ch) {
+					return -1;
+				}
+			}
 			return -1;
-		} else if (this.myWeight > o.myWeight) {
+		}
+		int lo = 0;
+		int hi = size - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			char c = sorted[mid].myInfo;
+			if (c < ch) {
+				lo = mid + 1;
+			} else if (c > ch) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Sorted arrays are filled from the front, so the size is the number of
+	 * leading non-null entries
+	 */
+	private static int sortedSize(Node[] sorted) {
+		int lo = 0;
+		int hi = sorted.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (sorted[mid] == null) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+		return lo;
+	}
+
+	private static boolean isLatin1(Node[] nodes, int size) {
+		for (int i = 0; i < size; i++) {
+			if (nodes[i].myInfo >= DIRECT_SIZE) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Number of children
+	 */
+	int childCount() {
+		Object children = myChildren;
+		if (children == null) {
+			return 0;
+		} else if (children instanceof Node) {
 			return 1;
-		} else {
+		} else if (children instanceof Node[]) {
+			return sortedSize((Node[]) children);
+		} else if (children instanceof Indexed) {
+			return ((Indexed) children).size;
+		}
+		return ((Direct) children).size;
+	}
+
+	/**
+	 * Number of child slots; every child is in one of slot(0) to
+	 * slot(slotCount() - 1).
+	 */
+	int slotCount() {
+		Object children = myChildren;
+		if (children == null) {
 			return 0;
+		} else if (children instanceof Node) {
+			return 1;
+		} else if (children instanceof Node[]) {
+			return ((Node[]) children).length;
+		} else if (children instanceof Indexed) {
+			return ((Indexed) children).size;
 		}
+		return DIRECT_SIZE;
+	}
+
+	/**
+	 * The child in slot i, or null if the slot is empty
+	 */
+	Node slot(int i) {
+		Object children = myChildren;
+		if (children instanceof Node) {
+			return (Node) children;
+		} else if (children instanceof Node[]) {
+			return ((Node[]) children)[i];
+		} else if (children instanceof Indexed) {
+			return ((Indexed) children).nodes[i];
+		}
+		return ((Direct) children).table[i];
+	}
+
+	@Override
+	public String toString() {
+		return myInfo + " (" + myIndex + ")";
 	}
 
 	/*
-	 * In reverse subtreeMaxWeight order to make the PriorityQueue (a min-heap) act
-	 * as a max heap.
+	 * In reverse subtree max key order to make the PriorityQueue (a min-heap)
+	 * act as a max heap.
 	 */
 	public static class ReverseSubtreeMaxWeightComparator implements Comparator<Node> {
 		@Override
 		public int compare(Node o1, Node o2) {
-			if (o1.mySubtreeMaxWeight < o2.mySubtreeMaxWeight) {
-				return 1;
-			} else if (o1.mySubtreeMaxWeight > o2.mySubtreeMaxWeight) {
-				return -1;
-			}
-			return 0;
+			return Integer.compare(o2.mySubtreeMaxKey, o1.mySubtreeMaxKey);
 		}
 	}
 }
@@ -0,0 +1,144 @@
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of objects, such as trie nodes, by a double priority
+ * given with each, in two parallel arrays. Unlike a PriorityQueue it calls
+ * no Comparator and can be cleared and reused, so a heap kept per thread
+ * allocates nothing once it has grown to the largest query's size. For the
+ * most promising node first, add with the negated bound.
+ */
+class ObjectHeap<T> {
+
+	private Object[] myItems;
+	private double[] myPriorities;
+	private int mySize;
+	/**
+	 * The number of entries drainDescending left in the array
+	 */
+	private int myDrained;
+
+	ObjectHeap(int capacity) {
+		myItems = new Object[Math.max(1, capacity)];
+		myPriorities = new double[myItems.length];
+	}
+
+	int size() {
+		return mySize;
+	}
+
+	boolean isEmpty() {
+		return mySize == 0;
+	}
+
+	/**
+	 * Empties the heap, dropping its references so the items can be
+	 * collected
+	 */
+	void clear() {
+		Arrays.fill(myItems, 0, Math.max(mySize, myDrained), null);
+		mySize = 0;
+		myDrained = 0;
+	}
+
+	void add(T item, double priority) {
+		if (mySize == myItems.length) {
+			myItems = Arrays.copyOf(myItems, 2 * mySize);
+			myPriorities = Arrays.copyOf(myPriorities, 2 * mySize);
+		}
+		int i = mySize++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (myPriorities[parent] <= priority) {
+				break;
+			}
+			myItems[i] = myItems[parent];
+			myPriorities[i] = myPriorities[parent];
+			i = parent;
+		}
+		myItems[i] = item;
+		myPriorities[i] = priority;
+	}
+
+	@SuppressWarnings("unchecked")
+	T peek() {
+		return (T) myItems[0];
+	}
+
+	double peekPriority() {
+		return myPriorities[0];
+	}
+
+	/**
+	 * Removes and returns the item of lowest priority
+	 */
+	T remove() {
+		T top = peek();
+		mySize--;
+		Object last = myItems[mySize];
+		myItems[mySize] = null;
+		if (mySize > 0) {
+			sink(last, myPriorities[mySize], mySize);
+		}
+		return top;
+	}
+
+	/**
+	 * Replaces the item of lowest priority, as remove then add would but
+	 * sifting once
+	 */
+	void replaceTop(T item, double priority) {
+		sink(item, priority, mySize);
+	}
+
+	/**
+	 * Puts item at the root of the first size entries and sinks it
+	 */
+	private void sink(Object item, double priority, int size) {
+		int i = 0;
+		while (2 * i + 1 < size) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && myPriorities[child + 1] < myPriorities[child]) {
+				child++;
+			}
+			if (priority <= myPriorities[child]) {
+				break;
+			}
+			myItems[i] = myItems[child];
+			myPriorities[i] = myPriorities[child];
+			i = child;
+		}
+		myItems[i] = item;
+		myPriorities[i] = priority;
+	}
+
+	/**
+	 * Heap sorts the items in place into descending priority, readable with
+	 * item until the next clear, and empties the heap. Returns how many there
+	 * are.
+	 */
+	int drainDescending() {
+		int n = mySize;
+		for (int end = n - 1; end > 0; end--) {
+			Object item = myItems[end];
+			double priority = myPriorities[end];
+			myItems[end] = myItems[0];
+			myPriorities[end] = myPriorities[0];
+			sink(item, priority, end);
+		}
+		mySize = 0;
+		myDrained = n;
+		return n;
+	}
+
+	/**
+	 * Entry i of the array, meaningful after drainDescending
+	 */
+	@SuppressWarnings("unchecked")
+	T item(int i) {
+		return (T) myItems[i];
+	}
+
+	double priority(int i) {
+		return myPriorities[i];
+	}
+}
@@ -0,0 +1,111 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Measures DiskAutocomplete on a dictionary several times the size of the
+ * heap. The terms are generated in sorted order and streamed to the index
+ * file, so neither writing nor querying ever holds the dictionary in memory:
+ * term i is i written in base 26 with a fixed number of letters, followed by
+ * a few random letters, and its weight is drawn from a skewed distribution.
+ * Then random prefixes of random terms are queried, first with an empty page
+ * cache and then again with a warm one.
+ *
+ * % java -Xmx64m OutOfCoreBenchmark 10 4096
+ *
+ * writes an index 10 times the maximum heap and queries it with a page cache
+ * of 4096 blocks. The index is written to the temporary directory and deleted
+ * afterwards.
+ */
+public class OutOfCoreBenchmark {
+
+	private static final int QUERIES = 20000;
+	private static final int K = 10;
+
+	/**
+	 * Term i of a dictionary whose terms start with width letters
+	 */
+	static String term(long i, int width) {
+		char[] chars = new char[width + 4];
+		long rest = i;
+		for (int j = width - 1; j >= 0; j--) {
+			chars[j] = (char) ('a' + rest % 26);
+			rest /= 26;
+		}
+		// a few letters that depend only on the number, so any term can be
+		// regenerated to make queries
+		long h = i * 0x9E3779B97F4A7C15L;
+		int extra = (int) ((h >>> 60) & 3) + 1;
+		for (int j = 0; j < extra; j++) {
+			chars[width + j] = (char) ('a' + (int) ((h >>> (8 * j)) & 0xFF) % 26);
+		}
+		return new String(chars, 0, width + extra);
+	}
+
+	public static void main(String[] args) throws IOException {
+		double times = args.length >= 1 ? Double.parseDouble(args[0]) : 10;
+		int cacheBlocks = args.length >= 2 ? Integer.parseInt(args[1]) : DiskAutocomplete.DEFAULT_CACHE_BLOCKS;
+		long heap = Runtime.getRuntime().maxMemory();
+		long target = (long) (times * heap);
+		File file = File.createTempFile("outofcore", ".idx");
+		file.deleteOnExit();
+		Random random = new Random(1234);
+
+		System.out.println("Max heap " + heap / (1 << 20) + "M, writing an index of about " + target / (1 << 20)
+				+ "M to " + file);
+		// 26^7 is about 8 billion terms, more than any file here
+		int width = 7;
+		long start = System.nanoTime();
+		DiskAutocomplete.Writer writer = new DiskAutocomplete.Writer(file, DiskAutocomplete.DEFAULT_BLOCK_SIZE);
+		long n = 0;
+		while (n % (1 << 16) != 0 || file.length() < target) {
+			double u = random.nextDouble();
+			writer.add(term(n++, width), Math.floor(1E6 * u * u * u * u));
+		}
+		writer.close();
+		double writeSeconds = (System.nanoTime() - start) / 1E9;
+		System.out.println(String.format("Wrote %d terms, %dM, in %.1fs (%.0f terms/s)", n,
+				file.length() / (1 << 20), writeSeconds, n / writeSeconds));
+
+		System.gc();
+		long before = usedHeap();
+		start = System.nanoTime();
+		DiskAutocomplete disk = new DiskAutocomplete(file, cacheBlocks);
+		System.out.println(String.format("Opened %d blocks in %d segments in %.0fms; directory uses about %dM "
+				+ "of heap", disk.getBlockCount(), disk.getSegmentCount(), (System.nanoTime() - start) / 1E6,
+				(usedHeap() - before) / (1 << 20)));
+
+		String[] prefixes = new String[QUERIES];
+		for (int q = 0; q < QUERIES; q++) {
+			String word = term((long) (random.nextDouble() * n), width);
+			// mostly the long prefixes typed after a few keystrokes
+			prefixes[q] = word.substring(0, 2 + random.nextInt(word.length() - 1));
+		}
+		for (String pass : new String[] { "cold", "warm" }) {
+			long hits = disk.getCacheHits();
+			long misses = disk.getCacheMisses();
+			Histogram latency = new Histogram();
+			start = System.nanoTime();
+			for (String prefix : prefixes) {
+				long t = System.nanoTime();
+				disk.topMatches(prefix, K);
+				latency.record(System.nanoTime() - t);
+			}
+			double seconds = (System.nanoTime() - start) / 1E9;
+			hits = disk.getCacheHits() - hits;
+			misses = disk.getCacheMisses() - misses;
+			System.out.println(String.format("%s: %.0f queries/s, %s, %.1f blocks/query, %.1f%% cache hits", pass,
+					QUERIES / seconds, latency.toLatencyString(), (hits + misses) / (double) QUERIES,
+					100.0 * hits / Math.max(1, hits + misses)));
+		}
+		System.out.println("Mapped " + disk.getMappedSegmentCount() + " of " + disk.getSegmentCount()
+				+ " segments; heap used " + usedHeap() / (1 << 20) + "M of " + heap / (1 << 20) + "M");
+		disk.close();
+		file.delete();
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
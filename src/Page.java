@@ -0,0 +1,89 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of matches from a PagedAutocompletor, with the continuation for
+ * the page after it
+ */
+public class Page {
+
+	private final List<String> myWords;
+	private final double[] myWeights;
+	private final Continuation myNext;
+
+	/**
+	 * @param weights
+	 *            - the weights of words, in the same order
+	 */
+	Page(List<String> words, double[] weights, Continuation next) {
+		myWords = Collections.unmodifiableList(words);
+		myWeights = weights;
+		myNext = next;
+	}
+
+	/**
+	 * The matches on this page, heaviest first
+	 */
+	public List<String> getWords() {
+		return myWords;
+	}
+
+	/**
+	 * The weight of the i-th word on this page, as weightOf would return it,
+	 * read from the index alongside the word instead of looked up again
+	 *
+	 * @throws IndexOutOfBoundsException
+	 *             if i is not the index of a word on this page
+	 */
+	public double getWeight(int i) {
+		if (i < 0 || i >= myWords.size()) {
+			throw new IndexOutOfBoundsException("No word " + i + " on a page of " + myWords.size());
+		}
+		return myWeights[i];
+	}
+
+	/**
+	 * Where the next page starts, or null if there are no more matches
+	 */
+	public Continuation getNext() {
+		return myNext;
+	}
+
+	public boolean hasNext() {
+		return myNext != null;
+	}
+
+	/**
+	 * The opaque state of a paged search. The state is consumed by fetching
+	 * the next page, so each continuation can be used once.
+	 */
+	public static class Continuation {
+		private final Object myOwner;
+		private Object myState;
+
+		Continuation(Object owner, Object state) {
+			myOwner = owner;
+			myState = state;
+		}
+
+		/**
+		 * The state, for the engine that created it
+		 *
+		 * @throws IllegalArgumentException
+		 *             if owner did not create this continuation
+		 * @throws IllegalStateException
+		 *             if the state has already been taken
+		 */
+		synchronized Object take(Object owner) {
+			if (owner != myOwner) {
+				throw new IllegalArgumentException("Continuation from another autocompletor");
+			}
+			if (myState == null) {
+				throw new IllegalStateException("Continuation already used");
+			}
+			Object state = myState;
+			myState = null;
+			return state;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+/**
+ * An Autocompletor that can return the matches for a prefix a page at a
+ * time, for "show more" scrolling. Each page comes with a continuation that
+ * holds the search's state, so fetching the next page resumes the search
+ * rather than repeating it with a larger k: a page costs in proportion to
+ * its size, not to the number of matches already returned.
+ */
+public interface PagedAutocompletor extends Autocompletor {
+
+	/**
+	 * The first size matches for prefix in descending weight order, as
+	 * topMatches(prefix, size) would return them up to ties
+	 *
+	 * @throws NullPointerException
+	 *             if prefix is null
+	 * @throws IllegalArgumentException
+	 *             if size is negative
+	 */
+	public Page firstPage(String prefix, int size);
+
+	/**
+	 * The next size matches after the page whose continuation this is
+	 *
+	 * @throws NullPointerException
+	 *             if next is null
+	 * @throws IllegalArgumentException
+	 *             if size is negative or next came from another instance
+	 * @throws IllegalStateException
+	 *             if next has already been used
+	 */
+	public Page nextPage(Page.Continuation next, int size);
+}
@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Ranks one user's suggestions by global weight plus the UserBoosts of the
+ * words they selected, without touching the global engine. A query scores
+ * the few boosted words matching the prefix exactly, then reads the global
+ * engine's matches in descending weight order and stops, as in the
+ * threshold algorithm, once the k-th best score is at least the last global
+ * weight read: every global match still unread weighs no more than that and,
+ * not being boosted, scores its weight. That usually happens within the
+ * first page of k.
+ *
+ * A PagedAutocompletor is read page by page, with the weights its pages carry,
+ * so a personalized query on TrieAutocomplete or BinarySearchAutocomplete
+ * costs about what a global one does plus a weightOf per boosted match. Any
+ * other Autocompletor is asked once for its top k plus the number of boosted
+ * matches, which always contains every unboosted word that can make the
+ * combined top k, and then for the weightOf each: cheap on the trie-like
+ * engines, a block decoded on DiskAutocomplete, and a scan of every term on
+ * BruteAutocomplete.
+ *
+ * Boosted words should come from the global dictionary, as selected
+ * suggestions do; one that does not is scored by its boost alone.
+ */
+public class PersonalizedAutocomplete implements Autocompletor {
+
+	private final Autocompletor myGlobal;
+	private final UserBoosts myBoosts;
+
+	/**
+	 * @throws NullPointerException
+	 *             if either argument is null
+	 */
+	public PersonalizedAutocomplete(Autocompletor global, UserBoosts boosts) {
+		if (global == null || boosts == null) {
+			throw new NullPointerException("One or more arguments null");
+		}
+		myGlobal = global;
+		myBoosts = boosts;
+	}
+
+	public UserBoosts getBoosts() {
+		return myBoosts;
+	}
+
+	/**
+	 * The k words starting with prefix with the largest global weight plus
+	 * boost, in descending order of that score
+	 *
+	 * @throws NullPointerException
+	 *             if prefix is null
+	 * @throws IllegalArgumentException
+	 *             if k is negative
+	 */
+	public Iterable<String> topMatches(String prefix, int k) {
+		return topMatches(prefix, k, System.currentTimeMillis());
+	}
+
+	/**
+	 * topMatches with the boosts as of nowMillis
+	 */
+	public Iterable<String> topMatches(String prefix, int k, long nowMillis) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		if (k < 0) {
+			throw new IllegalArgumentException("Illegal value of k:" + k);
+		}
+		if (k == 0) {
+			return new ArrayList<String>();
+		}
+		// the best k so far, lowest score first
+		PriorityQueue<Term> best = new PriorityQueue<Term>(k, new Term.WeightOrder());
+		HashSet<String> boosted = new HashSet<String>();
+		for (Term match : myBoosts.matches(prefix, nowMillis)) {
+			boosted.add(match.getWord());
+			offer(best, k, new Term(match.getWord(), myGlobal.weightOf(match.getWord()) + match.getWeight()));
+		}
+		if (myGlobal instanceof PagedAutocompletor) {
+			PagedAutocompletor paged = (PagedAutocompletor) myGlobal;
+			Page page = paged.firstPage(prefix, k);
+			while (true) {
+				double last = Double.POSITIVE_INFINITY;
+				List<String> words = page.getWords();
+				for (int i = 0; i < words.size(); i++) {
+					last = page.getWeight(i);
+					if (!boosted.contains(words.get(i))) {
+						offer(best, k, new Term(words.get(i), last));
+					}
+				}
+				if (!page.hasNext() || best.size() == k && best.peek().getWeight() >= last) {
+					break;
+				}
+				page = paged.nextPage(page.getNext(), k);
+			}
+		} else {
+			for (String word : myGlobal.topMatches(prefix, k + boosted.size())) {
+				if (!boosted.contains(word)) {
+					offer(best, k, new Term(word, myGlobal.weightOf(word)));
+				}
+			}
+		}
+		LinkedList<String> ret = new LinkedList<String>();
+		while (!best.isEmpty()) {
+			ret.addFirst(best.remove().getWord());
+		}
+		return ret;
+	}
+
+	private static void offer(PriorityQueue<Term> best, int k, Term term) {
+		if (best.size() < k) {
+			best.add(term);
+		} else if (best.peek().getWeight() < term.getWeight()) {
+			best.remove();
+			best.add(term);
+		}
+	}
+
+	public String topMatch(String prefix) {
+		List<String> match = (List<String>) topMatches(prefix, 1);
+		return match.isEmpty() ? "" : match.get(0);
+	}
+
+	/**
+	 * The global weight of term plus its boost, the score it ranks by
+	 */
+	public double weightOf(String term) {
+		return myGlobal.weightOf(term) + myBoosts.boost(term);
+	}
+}
@@ -0,0 +1,168 @@
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Consumes a stream of selection events on a background thread, counts them
+ * in a PopularityTracker, and every period hands the estimates that changed
+ * to a Listener as one batch. The engines are immutable, so the listener is
+ * where a batch becomes new weights, for example by
+ * Dictionary.withWeights and a rebuild.
+ *
+ * Callers never wait: select only queues the event, and when the queue is
+ * full the event is dropped and counted, since a popularity estimate can
+ * lose a few events where a query cannot afford to block. Memory is the
+ * queue plus the tracker, however many distinct words are seen.
+ */
+public class PopularityIngester implements Closeable {
+
+	/**
+	 * Receives the batches of changed estimates
+	 */
+	public interface Listener {
+		/**
+		 * Called on the ingesting thread with each word whose estimate
+		 * changed and its new estimate; never called with an empty batch
+		 */
+		public void weightsChanged(Map<String, Double> changes);
+	}
+
+	private final PopularityTracker myTracker;
+	private final Listener myListener;
+	private final long myPeriod;
+	private final double myMinChange;
+	private final ArrayBlockingQueue<String> myEvents;
+	private final AtomicLong myDropped = new AtomicLong();
+	private final Thread myWorker;
+	private volatile boolean myClosed;
+
+	/**
+	 * Starts ingesting
+	 *
+	 * @param tracker
+	 *            - counts the events
+	 * @param listener
+	 *            - receives the batches
+	 * @param periodMillis
+	 *            - time between batches
+	 * @param minChange
+	 *            - the fraction an estimate must move by to be pushed again
+	 * @param queueCapacity
+	 *            - events held before more are dropped
+	 * @throws NullPointerException
+	 *             if tracker or listener is null
+	 * @throws IllegalArgumentException
+	 *             if periodMillis or queueCapacity is not positive or
+	 *             minChange is negative
+	 */
+	public PopularityIngester(PopularityTracker tracker, Listener listener, long periodMillis, double minChange,
+			int queueCapacity) {
+		if (tracker == null || listener == null) {
+			throw new NullPointerException("One or more arguments null");
+		}
+		if (periodMillis <= 0 || !(minChange >= 0) || queueCapacity <= 0) {
+			throw new IllegalArgumentException("Illegal period " + periodMillis + ", minimum change " + minChange
+					+ " or queue capacity " + queueCapacity);
+		}
+		myTracker = tracker;
+		myListener = listener;
+		myPeriod = periodMillis;
+		myMinChange = minChange;
+		myEvents = new ArrayBlockingQueue<String>(queueCapacity);
+		myWorker = new Thread(new Runnable() {
+			public void run() {
+				ingest();
+			}
+		}, "PopularityIngester");
+		myWorker.setDaemon(true);
+		myWorker.start();
+	}
+
+	/**
+	 * Queues a selection of word, or drops it if the queue is full
+	 *
+	 * @return whether the event was queued
+	 * @throws NullPointerException
+	 *             if word is null
+	 */
+	public boolean select(String word) {
+		if (word == null) {
+			throw new NullPointerException("Invalid word");
+		}
+		if (myClosed || !myEvents.offer(word)) {
+			myDropped.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	private void ingest() {
+		long next = System.currentTimeMillis() + myPeriod;
+		while (!myClosed) {
+			try {
+				String word = myEvents.poll(Math.max(1, next - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				long now = System.currentTimeMillis();
+				if (word != null) {
+					myTracker.record(word, now);
+				}
+				if (now >= next) {
+					push(now);
+					next = now + myPeriod;
+				}
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		// count what was queued before close and push it
+		String word;
+		while ((word = myEvents.poll()) != null) {
+			myTracker.record(word, System.currentTimeMillis());
+		}
+		push(System.currentTimeMillis());
+	}
+
+	private void push(long now) {
+		Map<String, Double> changes = myTracker.changes(myMinChange, now);
+		if (!changes.isEmpty()) {
+			try {
+				myListener.weightsChanged(changes);
+			} catch (RuntimeException e) {
+				// a failed batch should not stop ingestion; the next one
+				// carries any estimate that keeps changing
+				Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+				if (handler != null) {
+					handler.uncaughtException(Thread.currentThread(), e);
+				} else {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	public PopularityTracker getTracker() {
+		return myTracker;
+	}
+
+	/**
+	 * The number of events dropped because the queue was full or closed
+	 */
+	public long dropped() {
+		return myDropped.get();
+	}
+
+	/**
+	 * Stops ingesting after counting the events already queued and pushing a
+	 * last batch, and waits for that to finish
+	 */
+	public void close() {
+		myClosed = true;
+		myWorker.interrupt();
+		try {
+			myWorker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,277 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates how popular terms are from a stream of events, in memory that
+ * does not grow with the number of distinct terms. A count-min sketch counts
+ * every term approximately; a heap keeps the heavyHitters terms with the
+ * largest estimates, which are the ones worth ranking by. Counts decay
+ * exponentially with the given half-life, so the estimates follow current
+ * traffic rather than all traffic ever seen.
+ *
+ * Unlike FrequencySketch, whose 4-bit counters only tell hot keys from cold
+ * ones, the counters here are doubles, and the sketch is updated
+ * conservatively (only the counters at the minimum are raised), which keeps
+ * the overestimate for colliding terms small.
+ *
+ * Decay is forward decay: an event at time t adds 2^((t - start) / halfLife)
+ * and estimates are divided by the same at query time, so no counter is
+ * touched as time passes. When the factor grows large everything is
+ * rescaled once.
+ *
+ * Thread-safe.
+ */
+public class PopularityTracker {
+
+	/**
+	 * Rescale when an event would add more than this
+	 */
+	private static final double RESCALE = 1E12;
+
+	private final int myWidth;
+	private final int myDepth;
+	private final double[] myCounters;
+	private final double myHalfLife;
+	private long myStart;
+	private boolean myStarted;
+
+	/**
+	 * Min-heap by count of the heavy hitters; myPosition maps each to its slot
+	 */
+	private final String[] myHeap;
+	private final double[] myHeapCount;
+	private int myHeapSize;
+	private final HashMap<String, Integer> myPosition = new HashMap<String, Integer>();
+
+	/**
+	 * The decayed estimates pushed by the calls to changes, as of each call
+	 */
+	private final HashMap<String, Double> myPushed = new HashMap<String, Double>();
+	private long myEvents;
+
+	/**
+	 * @param width
+	 *            - counters in each row of the sketch; the error of an
+	 *            estimate is about e / width of the total count
+	 * @param depth
+	 *            - rows of the sketch; the error bound fails with probability
+	 *            about e^-depth
+	 * @param heavyHitters
+	 *            - the number of most popular terms tracked by name
+	 * @param halfLifeMillis
+	 *            - how long it takes a count to fall to half
+	 * @throws IllegalArgumentException
+	 *             if any argument is not positive
+	 */
+	public PopularityTracker(int width, int depth, int heavyHitters, long halfLifeMillis) {
+		if (width <= 0 || depth <= 0 || heavyHitters <= 0 || halfLifeMillis <= 0) {
+			throw new IllegalArgumentException("Illegal width " + width + ", depth " + depth + ", heavy hitters "
+					+ heavyHitters + " or half-life " + halfLifeMillis);
+		}
+		myWidth = width;
+		myDepth = depth;
+		myCounters = new double[width * depth];
+		myHalfLife = halfLifeMillis;
+		myHeap = new String[heavyHitters];
+		myHeapCount = new double[heavyHitters];
+	}
+
+	/**
+	 * Counts one event for term now
+	 */
+	public void record(String term) {
+		record(term, System.currentTimeMillis());
+	}
+
+	/**
+	 * Counts one event for term at nowMillis. Events should arrive roughly in
+	 * time order; an earlier one just counts for less.
+	 *
+	 * @throws NullPointerException
+	 *             if term is null
+	 */
+	public synchronized void record(String term, long nowMillis) {
+		if (term == null) {
+			throw new NullPointerException("Invalid term");
+		}
+		if (!myStarted) {
+			myStart = nowMillis;
+			myStarted = true;
+		}
+		double amount = scale(nowMillis);
+		if (amount > RESCALE) {
+			rescale(amount);
+			amount = 1;
+		}
+		myEvents++;
+		int hash = term.hashCode();
+		double min = Double.POSITIVE_INFINITY;
+		for (int row = 0; row < myDepth; row++) {
+			min = Math.min(min, myCounters[index(row, hash)]);
+		}
+		double count = min + amount;
+		for (int row = 0; row < myDepth; row++) {
+			int i = index(row, hash);
+			if (myCounters[i] < count) {
+				myCounters[i] = count;
+			}
+		}
+		offer(term, count);
+	}
+
+	/**
+	 * The factor an event at nowMillis is counted with
+	 */
+	private double scale(long nowMillis) {
+		return Math.pow(2, (nowMillis - myStart) / myHalfLife);
+	}
+
+	/**
+	 * Divides every count by factor and moves the start of time to when an
+	 * event counted factor
+	 */
+	private void rescale(double factor) {
+		for (int i = 0; i < myCounters.length; i++) {
+			myCounters[i] /= factor;
+		}
+		for (int i = 0; i < myHeapSize; i++) {
+			myHeapCount[i] /= factor;
+		}
+		myStart += Math.round(myHalfLife * Math.log(factor) / Math.log(2));
+	}
+
+	private int index(int row, int hash) {
+		int h = (hash + row * 0x9E3779B9) * 0x85EBCA6B;
+		h ^= h >>> 15;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 13;
+		return row * myWidth + ((h & 0x7FFFFFFF) % myWidth);
+	}
+
+	/**
+	 * Puts term in the heavy hitters if its count now ranks there
+	 */
+	private void offer(String term, double count) {
+		Integer position = myPosition.get(term);
+		if (position != null) {
+			myHeapCount[position] = count;
+			sink(position);
+		} else if (myHeapSize < myHeap.length) {
+			set(myHeapSize, term, count);
+			swim(myHeapSize++);
+		} else if (count > myHeapCount[0]) {
+			myPosition.remove(myHeap[0]);
+			set(0, term, count);
+			sink(0);
+		}
+	}
+
+	private void set(int i, String term, double count) {
+		myHeap[i] = term;
+		myHeapCount[i] = count;
+		myPosition.put(term, i);
+	}
+
+	private void swap(int i, int j) {
+		String term = myHeap[i];
+		double count = myHeapCount[i];
+		set(i, myHeap[j], myHeapCount[j]);
+		set(j, term, count);
+	}
+
+	private void swim(int i) {
+		while (i > 0 && myHeapCount[(i - 1) / 2] > myHeapCount[i]) {
+			swap(i, (i - 1) / 2);
+			i = (i - 1) / 2;
+		}
+	}
+
+	private void sink(int i) {
+		while (2 * i + 1 < myHeapSize) {
+			int child = 2 * i + 1;
+			if (child + 1 < myHeapSize && myHeapCount[child + 1] < myHeapCount[child]) {
+				child++;
+			}
+			if (myHeapCount[i] <= myHeapCount[child]) {
+				return;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	/**
+	 * The estimated decayed number of events for term as of nowMillis, never
+	 * less than the true decayed count
+	 */
+	public synchronized double estimate(String term, long nowMillis) {
+		if (!myStarted) {
+			return 0;
+		}
+		int hash = term.hashCode();
+		double min = Double.POSITIVE_INFINITY;
+		for (int row = 0; row < myDepth; row++) {
+			min = Math.min(min, myCounters[index(row, hash)]);
+		}
+		return min / scale(nowMillis);
+	}
+
+	/**
+	 * The heavy hitters with their estimates as of nowMillis, most popular
+	 * first
+	 */
+	public synchronized List<Term> topTerms(long nowMillis) {
+		Term[] terms = new Term[myHeapSize];
+		double scale = myStarted ? scale(nowMillis) : 1;
+		for (int i = 0; i < myHeapSize; i++) {
+			terms[i] = new Term(myHeap[i], myHeapCount[i] / scale);
+		}
+		Arrays.sort(terms, new Term.ReverseWeightOrder());
+		return new ArrayList<Term>(Arrays.asList(terms));
+	}
+
+	/**
+	 * The estimates as of nowMillis that moved by more than minChange, as a
+	 * fraction, since the last call: every heavy hitter that is new or has
+	 * changed that much, and every term reported before that has since left
+	 * the heavy hitters, with its final estimate. A batch of weight updates to
+	 * push into an Autocompletor.
+	 */
+	public synchronized Map<String, Double> changes(double minChange, long nowMillis) {
+		HashMap<String, Double> changes = new HashMap<String, Double>();
+		if (!myStarted) {
+			return changes;
+		}
+		double scale = scale(nowMillis);
+		Iterator<Map.Entry<String, Double>> it = myPushed.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Double> e = it.next();
+			if (!myPosition.containsKey(e.getKey())) {
+				changes.put(e.getKey(), estimate(e.getKey(), nowMillis));
+				it.remove();
+			}
+		}
+		// compared decayed, so a term that is no longer searched for is
+		// pushed down as it decays
+		for (int i = 0; i < myHeapSize; i++) {
+			Double pushed = myPushed.get(myHeap[i]);
+			double estimate = myHeapCount[i] / scale;
+			if (pushed == null || Math.abs(estimate - pushed) > minChange * pushed) {
+				changes.put(myHeap[i], estimate);
+				myPushed.put(myHeap[i], estimate);
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * The number of events recorded
+	 */
+	public synchronized long events() {
+		return myEvents;
+	}
+}
@@ -0,0 +1,110 @@
+import java.util.Comparator;
+
+/**
+ * Counts of the work done by one topMatches or topMatch call. Engines only
+ * fill these in when a QueryStatsCollector has been set on them; otherwise no
+ * QueryStats is created and counting costs one null check per step.
+ *
+ * Not thread-safe, each query gets its own QueryStats.
+ */
+public class QueryStats {
+
+	/**
+	 * The kinds of work counted
+	 */
+	public enum Counter {
+		/** trie nodes removed from the node priority queue */
+		NODES_POPPED,
+		/** trie nodes added to the node priority queue */
+		NODES_PUSHED,
+		/** comparator calls, or prefix tests for engines without a comparator */
+		COMPARISONS,
+		/** terms matching the prefix that were looked at */
+		RANGE_SCANNED,
+		/** times a term was pushed out of the top k heap by a heavier one */
+		HEAP_REPLACEMENTS,
+		/** 1 if the search stopped before exhausting the matching terms */
+		EARLY_TERMINATIONS
+	}
+
+	final String prefix;
+	final int k;
+	long nodesPopped;
+	long nodesPushed;
+	long comparisons;
+	long rangeScanned;
+	long heapReplacements;
+	boolean earlyTermination;
+	long nanos;
+
+	/**
+	 * @param prefix
+	 *            - the prefix queried
+	 * @param k
+	 *            - the number of matches asked for, 1 for topMatch
+	 */
+	public QueryStats(String prefix, int k) {
+		this.prefix = prefix;
+		this.k = k;
+	}
+
+	public String getPrefix() {
+		return prefix;
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	/**
+	 * Wall clock time of the query in nanoseconds
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	public long get(Counter counter) {
+		switch (counter) {
+		case NODES_POPPED:
+			return nodesPopped;
+		case NODES_PUSHED:
+			return nodesPushed;
+		case COMPARISONS:
+			return comparisons;
+		case RANGE_SCANNED:
+			return rangeScanned;
+		case HEAP_REPLACEMENTS:
+			return heapReplacements;
+		case EARLY_TERMINATIONS:
+			return earlyTermination ? 1 : 0;
+		default:
+			throw new IllegalArgumentException("Unknown counter " + counter);
+		}
+	}
+
+	/**
+	 * Total of the counters, used to rank queries by how much work they did.
+	 */
+	public long work() {
+		return nodesPopped + nodesPushed + comparisons + rangeScanned + heapReplacements;
+	}
+
+	/**
+	 * Returns a comparator that behaves like comparator but adds each call to
+	 * the comparison count.
+	 */
+	public <T> Comparator<T> counting(final Comparator<T> comparator) {
+		return new Comparator<T>() {
+			public int compare(T o1, T o2) {
+				comparisons++;
+				return comparator.compare(o1, o2);
+			}
+		};
+	}
+
+	public String toString() {
+		return String.format("\"%s\" k=%d %.1fus popped=%d pushed=%d comparisons=%d scanned=%d replacements=%d%s",
+				prefix, k, nanos / 1E3, nodesPopped, nodesPushed, comparisons, rangeScanned, heapReplacements,
+				earlyTermination ? " early" : "");
+	}
+}
@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Aggregates QueryStats from many queries into a Histogram per counter plus a
+ * latency Histogram, and keeps the queries that did the most work so that
+ * pathological prefixes can be found. Safe to share between threads and
+ * engines.
+ *
+ * To collect statistics from an engine, pass a collector to its
+ * setStatsCollector method; pass null to stop.
+ */
+public class QueryStatsCollector {
+
+	private static final int DEFAULT_WORST = 20;
+
+	private final EnumMap<QueryStats.Counter, Histogram> myHistograms = new EnumMap<QueryStats.Counter, Histogram>(
+			QueryStats.Counter.class);
+	private final Histogram myLatencies = new Histogram();
+	private final int myWorstSize;
+	/**
+	 * Min-heap by work of the worst queries seen
+	 */
+	private final PriorityQueue<QueryStats> myWorst;
+
+	public QueryStatsCollector() {
+		this(DEFAULT_WORST);
+	}
+
+	/**
+	 * @param worst
+	 *            - how many of the most expensive queries to keep
+	 */
+	public QueryStatsCollector(int worst) {
+		if (worst < 0) {
+			throw new IllegalArgumentException("Illegal worst count: " + worst);
+		}
+		for (QueryStats.Counter c : QueryStats.Counter.values()) {
+			myHistograms.put(c, new Histogram());
+		}
+		myWorstSize = worst;
+		myWorst = new PriorityQueue<QueryStats>(Math.max(1, worst), new WorkOrder());
+	}
+
+	/**
+	 * Orders QueryStats by ascending work
+	 */
+	public static class WorkOrder implements Comparator<QueryStats> {
+		public int compare(QueryStats v, QueryStats w) {
+			return Long.compare(v.work(), w.work());
+		}
+	}
+
+	/**
+	 * Adds the counts of one finished query.
+	 */
+	public void record(QueryStats stats) {
+		for (QueryStats.Counter c : QueryStats.Counter.values()) {
+			myHistograms.get(c).record(stats.get(c));
+		}
+		myLatencies.record(stats.nanos);
+		if (myWorstSize == 0) {
+			return;
+		}
+		synchronized (myWorst) {
+			if (myWorst.size() < myWorstSize) {
+				myWorst.add(stats);
+			} else if (myWorst.peek().work() < stats.work()) {
+				myWorst.remove();
+				myWorst.add(stats);
+			}
+		}
+	}
+
+	public Histogram getHistogram(QueryStats.Counter counter) {
+		return myHistograms.get(counter);
+	}
+
+	public Histogram getLatencies() {
+		return myLatencies;
+	}
+
+	/**
+	 * The queries that did the most work, most expensive first.
+	 */
+	public List<QueryStats> getWorstQueries() {
+		List<QueryStats> worst;
+		synchronized (myWorst) {
+			worst = new ArrayList<QueryStats>(myWorst);
+		}
+		Collections.sort(worst, Collections.reverseOrder(new WorkOrder()));
+		return worst;
+	}
+
+	public void reset() {
+		for (Histogram h : myHistograms.values()) {
+			h.reset();
+		}
+		myLatencies.reset();
+		synchronized (myWorst) {
+			myWorst.clear();
+		}
+	}
+
+	/**
+	 * Multi-line summary of every histogram and the worst queries.
+	 */
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-18s %10s %10s %10s %10s %10s%n", "counter", "mean", "p50", "p99", "p99.9", "max"));
+		for (QueryStats.Counter c : QueryStats.Counter.values()) {
+			Histogram h = myHistograms.get(c);
+			sb.append(String.format("%-18s %10.1f %10d %10d %10d %10d%n", c, h.mean(), h.percentile(50),
+					h.percentile(99), h.percentile(99.9), h.max()));
+		}
+		sb.append("latency ").append(myLatencies.toLatencyString()).append(String.format("%n"));
+		for (QueryStats q : getWorstQueries()) {
+			sb.append("  ").append(q).append(String.format("%n"));
+		}
+		return sb.toString();
+	}
+}
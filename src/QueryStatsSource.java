@@ -0,0 +1,17 @@
+/**
+ * An Autocompletor that can report the work done by each of its queries as
+ * QueryStats.
+ */
+public interface QueryStatsSource {
+
+	/**
+	 * Starts or stops collecting per-query statistics. While no collector is
+	 * set, queries must not create QueryStats.
+	 * 
+	 * @param collector
+	 *            - receives the QueryStats of every following query, or null to
+	 *            stop collecting
+	 */
+	public void setStatsCollector(QueryStatsCollector collector);
+
+}
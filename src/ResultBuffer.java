@@ -0,0 +1,173 @@
+import java.util.Arrays;
+
+/**
+ * A caller's reusable place for the results of a query: up to capacity words
+ * with their weights, the words' characters one after another in a single
+ * char array. A BufferedAutocompletor fills it in descending weight order
+ * without allocating once the arrays have grown to the longest results seen,
+ * so a caller that keeps one buffer per thread queries without garbage.
+ *
+ * The words are read in place with length and charAt, or copied out with
+ * appendTo; word decodes one to a String, which allocates.
+ */
+public class ResultBuffer {
+
+	private char[] myChars;
+	/**
+	 * Word i is myChars[i == 0 ? 0 : myEnds[i - 1], myEnds[i])
+	 */
+	private final int[] myEnds;
+	private final double[] myWeights;
+	private int mySize;
+	/**
+	 * The end of the characters written so far, those of a word being added
+	 * included
+	 */
+	private int myLength;
+
+	/**
+	 * @param capacity
+	 *            - the most words a query returns into this, its k
+	 * @throws IllegalArgumentException
+	 *             if capacity is negative
+	 */
+	public ResultBuffer(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Illegal capacity:" + capacity);
+		}
+		myEnds = new int[capacity];
+		myWeights = new double[capacity];
+		myChars = new char[16 * Math.max(1, capacity)];
+	}
+
+	public int capacity() {
+		return myEnds.length;
+	}
+
+	/**
+	 * The number of words held
+	 */
+	public int size() {
+		return mySize;
+	}
+
+	public void clear() {
+		mySize = 0;
+		myLength = 0;
+	}
+
+	private int start(int i) {
+		return i == 0 ? 0 : myEnds[i - 1];
+	}
+
+	private void check(int i) {
+		if (i < 0 || i >= mySize) {
+			throw new IndexOutOfBoundsException("Index " + i + " of " + mySize);
+		}
+	}
+
+	public double weight(int i) {
+		check(i);
+		return myWeights[i];
+	}
+
+	/**
+	 * The length of word i
+	 */
+	public int length(int i) {
+		check(i);
+		return myEnds[i] - start(i);
+	}
+
+	/**
+	 * Character j of word i
+	 */
+	public char charAt(int i, int j) {
+		if (j < 0 || j >= length(i)) {
+			throw new IndexOutOfBoundsException("Index " + j + " of word " + i);
+		}
+		return myChars[start(i) + j];
+	}
+
+	/**
+	 * Appends word i to sb
+	 */
+	public void appendTo(int i, StringBuilder sb) {
+		check(i);
+		sb.append(myChars, start(i), myEnds[i] - start(i));
+	}
+
+	/**
+	 * Whether word i is s
+	 */
+	public boolean contentEquals(int i, CharSequence s) {
+		int start = start(i);
+		if (length(i) != s.length()) {
+			return false;
+		}
+		for (int j = 0; j < s.length(); j++) {
+			if (myChars[start + j] != s.charAt(j)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Word i as a String, which allocates
+	 */
+	public String word(int i) {
+		check(i);
+		return new String(myChars, start(i), myEnds[i] - start(i));
+	}
+
+	/**
+	 * Adds word with weight after the words held
+	 *
+	 * @throws IllegalStateException
+	 *             if the buffer is full
+	 */
+	public void add(CharSequence word, double weight) {
+		for (int j = 0; j < word.length(); j++) {
+			append(word.charAt(j));
+		}
+		endWord(weight);
+	}
+
+	/**
+	 * Appends c to the word being added, for engines that decode words
+	 * straight into the buffer
+	 */
+	void append(char c) {
+		if (myLength == myChars.length) {
+			myChars = Arrays.copyOf(myChars, 2 * myChars.length);
+		}
+		myChars[myLength++] = c;
+	}
+
+	/**
+	 * Ends the word being added, giving it weight
+	 *
+	 * @throws IllegalStateException
+	 *             if the buffer is full
+	 */
+	void endWord(double weight) {
+		if (mySize == myEnds.length) {
+			myLength = start(mySize);
+			throw new IllegalStateException("Buffer full at " + mySize);
+		}
+		myEnds[mySize] = myLength;
+		myWeights[mySize++] = weight;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < mySize; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			appendTo(i, sb);
+		}
+		return sb.append(']').toString();
+	}
+}
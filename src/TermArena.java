@@ -0,0 +1,264 @@
+/**
+ * Words stored one after another in a single byte array, with an offset
+ * table marking where each starts: no String objects, no object headers, and
+ * a scan over the words reads memory in order. Prefix tests and comparisons
+ * work on the bytes; a word is decoded to a String only when asked for.
+ *
+ * Each char is encoded on its own as in UTF-8, in one byte for ASCII, two up
+ * to U+07FF and three above. Surrogates are encoded separately rather than
+ * as one four-byte code point, so the bytes of any prefix are a prefix of the
+ * bytes, and unsigned byte order is the char order String.compareTo uses.
+ */
+public class TermArena implements TermStore {
+
+	private final byte[] myBytes;
+	/**
+	 * Word i is myBytes[myOffsets[i], myOffsets[i + 1])
+	 */
+	private final int[] myOffsets;
+
+	/**
+	 * Stores words in the order given
+	 *
+	 * @throws NullPointerException
+	 *             if words or any word is null
+	 */
+	public TermArena(String[] words) {
+		if (words == null) {
+			throw new NullPointerException("Invalid words");
+		}
+		long length = 0;
+		for (String word : words) {
+			if (word == null) {
+				throw new NullPointerException("Invalid word");
+			}
+			for (int j = 0; j < word.length(); j++) {
+				length += encodedLength(word.charAt(j));
+			}
+		}
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Words too long for one array: " + length + " bytes");
+		}
+		myBytes = new byte[(int) length];
+		myOffsets = new int[words.length + 1];
+		int pos = 0;
+		for (int i = 0; i < words.length; i++) {
+			myOffsets[i] = pos;
+			String word = words[i];
+			for (int j = 0; j < word.length(); j++) {
+				pos = encode(word.charAt(j), myBytes, pos);
+			}
+		}
+		myOffsets[words.length] = pos;
+	}
+
+	/**
+	 * Wraps words already encoded, word i being bytes[offsets[i], offsets[i +
+	 * 1]), without copying either array
+	 */
+	TermArena(byte[] bytes, int[] offsets) {
+		myBytes = bytes;
+		myOffsets = offsets;
+	}
+
+	/**
+	 * The number of bytes encode writes for c
+	 */
+	static int encodedLength(char c) {
+		return c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+	}
+
+	/**
+	 * Writes c to bytes at pos and returns the position after it
+	 */
+	static int encode(char c, byte[] bytes, int pos) {
+		if (c < 0x80) {
+			bytes[pos++] = (byte) c;
+		} else if (c < 0x800) {
+			bytes[pos++] = (byte) (0xC0 | c >> 6);
+			bytes[pos++] = (byte) (0x80 | c & 0x3F);
+		} else {
+			bytes[pos++] = (byte) (0xE0 | c >> 12);
+			bytes[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+			bytes[pos++] = (byte) (0x80 | c & 0x3F);
+		}
+		return pos;
+	}
+
+	/**
+	 * The bytes of s, as they would be stored
+	 */
+	public static byte[] encode(String s) {
+		int length = 0;
+		for (int j = 0; j < s.length(); j++) {
+			length += encodedLength(s.charAt(j));
+		}
+		byte[] bytes = new byte[length];
+		int pos = 0;
+		for (int j = 0; j < s.length(); j++) {
+			pos = encode(s.charAt(j), bytes, pos);
+		}
+		return bytes;
+	}
+
+	/**
+	 * The number of bytes in the char whose first byte is lead
+	 */
+	static int sequenceLength(byte lead) {
+		return lead >= 0 ? 1 : (lead & 0xE0) == 0xC0 ? 2 : 3;
+	}
+
+	/**
+	 * The char whose encoding starts at bytes[pos]
+	 */
+	static char decode(byte[] bytes, int pos) {
+		int b = bytes[pos] & 0xFF;
+		if (b < 0x80) {
+			return (char) b;
+		} else if (b < 0xE0) {
+			return (char) ((b & 0x1F) << 6 | bytes[pos + 1] & 0x3F);
+		}
+		return (char) ((b & 0x0F) << 12 | (bytes[pos + 1] & 0x3F) << 6 | bytes[pos + 2] & 0x3F);
+	}
+
+	public int size() {
+		return myOffsets.length - 1;
+	}
+
+	/**
+	 * Bytes used by the words, not counting the offset table
+	 */
+	public int encodedBytes() {
+		return myBytes.length;
+	}
+
+	public String word(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index " + index + " of " + size());
+		}
+		int end = myOffsets[index + 1];
+		char[] chars = new char[end - myOffsets[index]];
+		int n = 0;
+		for (int pos = myOffsets[index]; pos < end; pos += sequenceLength(myBytes[pos])) {
+			chars[n++] = decode(myBytes, pos);
+		}
+		return new String(chars, 0, n);
+	}
+
+	/**
+	 * Decodes word index into results, without a String in between
+	 */
+	public void addWord(int index, double weight, ResultBuffer results) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index " + index + " of " + size());
+		}
+		int end = myOffsets[index + 1];
+		for (int pos = myOffsets[index]; pos < end; pos += sequenceLength(myBytes[pos])) {
+			results.append(decode(myBytes, pos));
+		}
+		results.endWord(weight);
+	}
+
+	/**
+	 * Whether word index starts with the encoded prefix
+	 */
+	public boolean startsWith(int index, byte[] prefix) {
+		int start = myOffsets[index];
+		if (myOffsets[index + 1] - start < prefix.length) {
+			return false;
+		}
+		for (int j = 0; j < prefix.length; j++) {
+			if (myBytes[start + j] != prefix[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Whether word index is the encoded word
+	 */
+	public boolean matches(int index, byte[] word) {
+		return myOffsets[index + 1] - myOffsets[index] == word.length && startsWith(index, word);
+	}
+
+	/**
+	 * Compares word index with the encoded prefix as Term.PrefixOrder does:
+	 * negative if it sorts before every word starting with prefix, 0 if it
+	 * starts with prefix and positive if it sorts after them
+	 */
+	public int compare(int index, byte[] prefix) {
+		int start = myOffsets[index];
+		int length = myOffsets[index + 1] - start;
+		int n = Math.min(length, prefix.length);
+		for (int j = 0; j < n; j++) {
+			int c = (myBytes[start + j] & 0xFF) - (prefix[j] & 0xFF);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return length >= prefix.length ? 0 : -1;
+	}
+
+	/**
+	 * Compares word index with prefix as compare does with its encoding,
+	 * decoding the word a char at a time rather than encoding prefix, so
+	 * nothing is allocated. Encoding preserves char order, so the two agree.
+	 */
+	public int compare(int index, CharSequence prefix) {
+		int pos = myOffsets[index];
+		int end = myOffsets[index + 1];
+		for (int j = 0; j < prefix.length(); j++) {
+			if (pos == end) {
+				return -1;
+			}
+			char c = decode(myBytes, pos);
+			if (c != prefix.charAt(j)) {
+				return c - prefix.charAt(j);
+			}
+			pos += sequenceLength(myBytes[pos]);
+		}
+		return 0;
+	}
+
+	/**
+	 * Whether word index starts with prefix, allocating nothing
+	 */
+	public boolean startsWith(int index, CharSequence prefix) {
+		return compare(index, prefix) == 0;
+	}
+
+	public int firstIndexOf(CharSequence prefix) {
+		int lo = 0;
+		int hi = size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(mid, prefix) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo < size() && compare(lo, prefix) == 0 ? lo : -1;
+	}
+
+	public int lastIndexOf(CharSequence prefix) {
+		int lo = 0;
+		int hi = size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(mid, prefix) <= 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo > 0 && compare(lo - 1, prefix) == 0 ? lo - 1 : -1;
+	}
+
+	public int indexOf(String word) {
+		int first = firstIndexOf(word);
+		// a word sorts before every longer word it starts
+		return first >= 0 && matches(first, encode(word)) ? first : -1;
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * The attribute ids of each term of a dictionary, stored one term after
+ * another in a single int array with an offset table, as TermArena stores
+ * words. Each term's ids are sorted, so matching one against an
+ * AttributeFilter is a merge of two short sorted lists.
+ */
+public class TermAttributes {
+
+	/**
+	 * The ids of term i are myIds[myStart[i], myStart[i + 1])
+	 */
+	private final int[] myStart;
+	private final int[] myIds;
+
+	/**
+	 * Stores attributes in the order given
+	 *
+	 * @param attributes
+	 *            - the ids of each term; null or empty for a term with none
+	 * @throws NullPointerException
+	 *             if attributes is null
+	 * @throws IllegalArgumentException
+	 *             if any id is negative
+	 */
+	public TermAttributes(int[][] attributes) {
+		this(attributes, null);
+	}
+
+	/**
+	 * Stores attributes[order[i]] as the ids of term i, or attributes in the
+	 * order given if order is null
+	 */
+	TermAttributes(int[][] attributes, int[] order) {
+		if (attributes == null) {
+			throw new NullPointerException("Invalid attributes");
+		}
+		int n = order == null ? attributes.length : order.length;
+		int[][] sorted = new int[n][];
+		long length = 0;
+		for (int i = 0; i < n; i++) {
+			int[] ids = attributes[order == null ? i : order[i]];
+			sorted[i] = ids == null ? new int[0] : AttributeFilter.sortedIds(ids);
+			length += sorted[i].length;
+		}
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Too many attributes for one array: " + length);
+		}
+		myStart = new int[n + 1];
+		myIds = new int[(int) length];
+		for (int i = 0; i < n; i++) {
+			myStart[i + 1] = myStart[i] + sorted[i].length;
+			System.arraycopy(sorted[i], 0, myIds, myStart[i], sorted[i].length);
+		}
+	}
+
+	public int size() {
+		return myStart.length - 1;
+	}
+
+	/**
+	 * The summary of term index's ids, as AttributeFilter.mayMatch takes
+	 */
+	public int summary(int index) {
+		return AttributeFilter.summary(myIds, myStart[index], myStart[index + 1]);
+	}
+
+	/**
+	 * Whether term index has any of filter's ids
+	 */
+	public boolean matches(int index, AttributeFilter filter) {
+		return filter.accepts(myIds, myStart[index], myStart[index + 1]);
+	}
+}
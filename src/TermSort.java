@@ -0,0 +1,201 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Lexicographic sorting for the engines' term arrays. Indexes are sorted
+ * rather than Terms: a first pass distributes the indexes into buckets by
+ * first character, then each bucket is sorted on its own fork-join task by
+ * multikey quicksort (Bentley and Sedgewick), which partitions on one
+ * character at a time and never compares the prefix it has already matched.
+ *
+ * The order is String.compareTo's, and it is stable: equal words keep the
+ * order of their indexes, so engines that let the last of several equal
+ * words win can rely on it as they did on Arrays.sort.
+ */
+public class TermSort {
+
+	/**
+	 * Fewer words than this are sorted on the calling thread
+	 */
+	static final int PARALLEL_THRESHOLD = 1 << 14;
+
+	/**
+	 * Ranges this short are insertion sorted
+	 */
+	private static final int INSERTION_SORT = 12;
+
+	/**
+	 * Sorts terms by word in place, stably, on the common pool
+	 *
+	 * @throws NullPointerException
+	 *             if terms or any of them is null
+	 */
+	public static void sort(Term[] terms) {
+		String[] words = new String[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			words[i] = terms[i].getWord();
+		}
+		int[] order = order(words);
+		Term[] unsorted = terms.clone();
+		for (int i = 0; i < order.length; i++) {
+			terms[i] = unsorted[order[i]];
+		}
+	}
+
+	/**
+	 * The indexes of words in ascending order of the word, equal words by
+	 * index, sorted on the common pool
+	 *
+	 * @throws NullPointerException
+	 *             if words or any word is null
+	 */
+	public static int[] order(String[] words) {
+		return order(words, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * The indexes of words in ascending order of the word, equal words by
+	 * index. The buckets are sorted on pool, or on the calling thread if pool
+	 * is null or there are fewer than PARALLEL_THRESHOLD words.
+	 *
+	 * @throws NullPointerException
+	 *             if words or any word is null
+	 */
+	public static int[] order(final String[] words, ForkJoinPool pool) {
+		// bucket 0 is the empty word, bucket c + 1 the words starting with c
+		int[] start = new int[Character.MAX_VALUE + 3];
+		for (String word : words) {
+			if (word == null) {
+				throw new NullPointerException("Invalid word");
+			}
+			start[(word.isEmpty() ? 0 : word.charAt(0) + 1) + 1]++;
+		}
+		for (int b = 1; b < start.length; b++) {
+			start[b] += start[b - 1];
+		}
+		final int[] order = new int[words.length];
+		int[] next = start.clone();
+		for (int i = 0; i < words.length; i++) {
+			order[next[words[i].isEmpty() ? 0 : words[i].charAt(0) + 1]++] = i;
+		}
+		// the empty words are already in index order
+		final ArrayList<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for (int b = 1; b + 1 < start.length; b++) {
+			if (start[b + 1] - start[b] > 1) {
+				final int from = start[b];
+				final int to = start[b + 1];
+				tasks.add(new RecursiveAction() {
+					protected void compute() {
+						sort(words, order, from, to, 1);
+					}
+				});
+			}
+		}
+		if (pool == null || words.length < PARALLEL_THRESHOLD) {
+			for (RecursiveAction task : tasks) {
+				task.invoke();
+			}
+		} else {
+			pool.invoke(new RecursiveAction() {
+				protected void compute() {
+					invokeAll(tasks);
+				}
+			});
+		}
+		return order;
+	}
+
+	/**
+	 * The character of word at depth, or -1 past its end
+	 */
+	private static int charAt(String word, int depth) {
+		return depth < word.length() ? word.charAt(depth) : -1;
+	}
+
+	/**
+	 * Multikey quicksort of order[from, to), whose words all have the same
+	 * first depth characters
+	 */
+	private static void sort(String[] words, int[] order, int from, int to, int depth) {
+		while (to - from > INSERTION_SORT) {
+			int pivot = median(words, order, from, to, depth);
+			// order[from, lt) < pivot, [lt, i) == pivot, (gt, to) > pivot
+			int lt = from;
+			int gt = to - 1;
+			int i = from;
+			while (i <= gt) {
+				int c = charAt(words[order[i]], depth);
+				if (c < pivot) {
+					swap(order, lt++, i++);
+				} else if (c > pivot) {
+					swap(order, i, gt--);
+				} else {
+					i++;
+				}
+			}
+			sort(words, order, from, lt, depth);
+			sort(words, order, gt + 1, to, depth);
+			if (pivot < 0) {
+				// equal words, which the partitioning shuffled
+				Arrays.sort(order, lt, gt + 1);
+				return;
+			}
+			from = lt;
+			to = gt + 1;
+			depth++;
+		}
+		insertionSort(words, order, from, to, depth);
+	}
+
+	/**
+	 * The median of the characters at depth of the first, middle and last
+	 * words of the range
+	 */
+	private static int median(String[] words, int[] order, int from, int to, int depth) {
+		int a = charAt(words[order[from]], depth);
+		int b = charAt(words[order[(from + to) >>> 1]], depth);
+		int c = charAt(words[order[to - 1]], depth);
+		return a < b ? (b < c ? b : Math.max(a, c)) : (a < c ? a : Math.max(b, c));
+	}
+
+	private static void insertionSort(String[] words, int[] order, int from, int to, int depth) {
+		for (int i = from + 1; i < to; i++) {
+			int index = order[i];
+			int j = i;
+			while (j > from && less(words, index, order[j - 1], depth)) {
+				order[j] = order[j - 1];
+				j--;
+			}
+			order[j] = index;
+		}
+	}
+
+	/**
+	 * Whether word i sorts before word j, comparing from depth on and by index
+	 * when the words are equal
+	 */
+	private static boolean less(String[] words, int i, int j, int depth) {
+		String v = words[i];
+		String w = words[j];
+		int length = Math.min(v.length(), w.length());
+		for (int d = depth; d < length; d++) {
+			char a = v.charAt(d);
+			char b = w.charAt(d);
+			if (a != b) {
+				return a < b;
+			}
+		}
+		if (v.length() != w.length()) {
+			return v.length() < w.length();
+		}
+		return i < j;
+	}
+
+	private static void swap(int[] a, int i, int j) {
+		int t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
+}
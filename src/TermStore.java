@@ -0,0 +1,45 @@
+/**
+ * Words kept in compact form and decoded to Strings only when asked for,
+ * such as the results of a query. The lookups assume the words are in
+ * ascending order and compare prefixes as Term.PrefixOrder does, so they
+ * behave like BinarySearchAutocomplete's firstIndexOf and lastIndexOf.
+ */
+public interface TermStore {
+
+	/**
+	 * The number of words
+	 */
+	public int size();
+
+	/**
+	 * The word at index, decoded
+	 *
+	 * @throws IndexOutOfBoundsException
+	 *             if index is not between 0 and size() - 1
+	 */
+	public String word(int index);
+
+	/**
+	 * Adds the word at index to results with weight, decoding it straight
+	 * into the buffer
+	 *
+	 * @throws IndexOutOfBoundsException
+	 *             if index is not between 0 and size() - 1
+	 */
+	public void addWord(int index, double weight, ResultBuffer results);
+
+	/**
+	 * The first index whose word starts with prefix, or -1 if there is none
+	 */
+	public int firstIndexOf(CharSequence prefix);
+
+	/**
+	 * The last index whose word starts with prefix, or -1 if there is none
+	 */
+	public int lastIndexOf(CharSequence prefix);
+
+	/**
+	 * The first index of word, or -1 if it is not stored
+	 */
+	public int indexOf(String word);
+}
@@ -0,0 +1,476 @@
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+
+/**
+ * Ternary search tree implementation of Autocompletor. Every node holds one
+ * character and three links: lo and hi to nodes for smaller and larger
+ * characters in the same position, eq to the next position. Nodes cost the
+ * same whatever the alphabet, which suits dictionaries with mixed case,
+ * punctuation and Unicode, where a trie node's child container is mostly
+ * empty and binary search costs log n string compares a probe.
+ *
+ * Each node also records the largest weight in its subtree (lo, eq and hi),
+ * so topMatches can search best-first and stop as soon as nothing left can
+ * beat the k-th best word found, as TrieAutocomplete does.
+ *
+ * The tree is built from the sorted terms, always splitting at the character
+ * of the middle term, so it is balanced whatever order the terms come in.
+ */
+public class TernarySearchAutocomplete implements BufferedAutocompletor, QueryStatsSource {
+
+	/**
+	 * A node that is not the last character of a word
+	 */
+	static class TernaryNode {
+		final char myInfo;
+		TernaryNode myLo, myEq, myHi;
+		/**
+		 * Largest weight of any word in this subtree, lo and hi included
+		 */
+		double mySubtreeMaxWeight;
+
+		TernaryNode(char info) {
+			myInfo = info;
+		}
+
+		String getWord() {
+			return null;
+		}
+
+		double getWeight() {
+			return -1;
+		}
+	}
+
+	/**
+	 * A node that ends a word. Only these pay for the word and weight.
+	 */
+	static class WordNode extends TernaryNode {
+		final String myWord;
+		final double myWeight;
+
+		WordNode(char info, String word, double weight) {
+			super(info);
+			myWord = word;
+			myWeight = weight;
+		}
+
+		@Override
+		String getWord() {
+			return myWord;
+		}
+
+		@Override
+		double getWeight() {
+			return myWeight;
+		}
+	}
+
+	/**
+	 * In reverse subtree max weight order so a PriorityQueue returns the most
+	 * promising node first
+	 */
+	static class ReverseSubtreeMaxWeightComparator implements java.util.Comparator<TernaryNode> {
+		public int compare(TernaryNode v, TernaryNode w) {
+			return Double.compare(w.mySubtreeMaxWeight, v.mySubtreeMaxWeight);
+		}
+	}
+
+	private static final ReverseSubtreeMaxWeightComparator ourNodeOrder = new ReverseSubtreeMaxWeightComparator();
+
+	/**
+	 * Root of the tree, null if there are no non-empty terms
+	 */
+	TernaryNode myRoot;
+
+	/**
+	 * The empty string cannot be stored in a node; its weight, or -1 if it is
+	 * not a term
+	 */
+	private double myEmptyWeight = -1;
+
+	/**
+	 * The empty string as a node for the buffered search's heap, or null if
+	 * it is not a term
+	 */
+	private WordNode myEmptyWord;
+
+	/**
+	 * Where per-query statistics go, null when they are not being collected
+	 */
+	QueryStatsCollector myStatsCollector;
+
+	/**
+	 * Each thread's heaps for buffered queries: nodes by subtree max weight,
+	 * negated so the heaviest comes first, and word nodes by weight
+	 */
+	private final ThreadLocal<ObjectHeap<TernaryNode>> myNodeHeaps = new ThreadLocal<ObjectHeap<TernaryNode>>() {
+		protected ObjectHeap<TernaryNode> initialValue() {
+			return new ObjectHeap<TernaryNode>(64);
+		}
+	};
+	private final ThreadLocal<ObjectHeap<TernaryNode>> myWordHeaps = new ThreadLocal<ObjectHeap<TernaryNode>>() {
+		protected ObjectHeap<TernaryNode> initialValue() {
+			return new ObjectHeap<TernaryNode>(16);
+		}
+	};
+
+	/**
+	 * @param terms
+	 *            - The words we will autocomplete from
+	 * @param weights
+	 *            - Their weights, such that terms[i] has weight weights[i].
+	 *            If a word appears more than once its last weight is used, as
+	 *            in TrieAutocomplete.
+	 * @throws NullPointerException
+	 *             if either argument or any term is null
+	 * @throws IllegalArgumentException
+	 *             if terms and weights are different length or any weight is
+	 *             negative
+	 */
+	public TernarySearchAutocomplete(String[] terms, double[] weights) {
+		if (terms == null || weights == null) {
+			throw new NullPointerException("One or more arguments null");
+		}
+		if (terms.length != weights.length) {
+			throw new IllegalArgumentException("Terms and weights are different lengths");
+		}
+		Term[] sorted = new Term[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			// Term rejects null words and negative weights
+			sorted[i] = new Term(terms[i], weights[i]);
+		}
+		// stable, so the last of several equal words is last here too
+		TermSort.sort(sorted);
+		int start = 0;
+		while (start < sorted.length && sorted[start].getWord().isEmpty()) {
+			myEmptyWeight = sorted[start].getWeight();
+			start++;
+		}
+		if (myEmptyWeight >= 0) {
+			myEmptyWord = new WordNode('\0', "", myEmptyWeight);
+		}
+		myRoot = build(sorted, start, sorted.length, 0);
+	}
+
+	/**
+	 * Builds the tree for sorted[from, to), whose words all have the same first
+	 * depth characters and are longer than depth.
+	 */
+	private static TernaryNode build(Term[] sorted, int from, int to, int depth) {
+		if (from >= to) {
+			return null;
+		}
+		// split at the character of the middle word
+		char c = sorted[(from + to) >>> 1].getWord().charAt(depth);
+		int first = firstWith(sorted, from, to, depth, c);
+		int last = firstWith(sorted, first, to, depth, (char) (c + 1));
+		if (c == Character.MAX_VALUE) {
+			last = to;
+		}
+		// words ending here sort first among those with character c
+		int rest = first;
+		while (rest < last && sorted[rest].getWord().length() == depth + 1) {
+			rest++;
+		}
+		TernaryNode node = rest > first ? new WordNode(c, sorted[rest - 1].getWord(), sorted[rest - 1].getWeight())
+				: new TernaryNode(c);
+		node.myLo = build(sorted, from, first, depth);
+		node.myEq = build(sorted, rest, last, depth + 1);
+		node.myHi = build(sorted, last, to, depth);
+		node.mySubtreeMaxWeight = Math.max(node.getWeight(),
+				Math.max(max(node.myLo), Math.max(max(node.myEq), max(node.myHi))));
+		return node;
+	}
+
+	/**
+	 * First index in sorted[from, to) whose character at depth is at least c
+	 */
+	private static int firstWith(Term[] sorted, int from, int to, int depth, char c) {
+		int lo = from;
+		int hi = to;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (sorted[mid].getWord().charAt(depth) < c) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private static double max(TernaryNode node) {
+		return node == null ? -1 : node.mySubtreeMaxWeight;
+	}
+
+	/**
+	 * The node for the last character of prefix, which must not be empty, or
+	 * null if no word starts with prefix
+	 */
+	private TernaryNode find(CharSequence prefix) {
+		TernaryNode node = myRoot;
+		int i = 0;
+		while (node != null) {
+			char c = prefix.charAt(i);
+			if (c < node.myInfo) {
+				node = node.myLo;
+			} else if (c > node.myInfo) {
+				node = node.myHi;
+			} else if (++i == prefix.length()) {
+				return node;
+			} else {
+				node = node.myEq;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the k words with the largest weights that start with prefix, in
+	 * descending weight order.
+	 *
+	 * @throws NullPointerException
+	 *             if prefix is null
+	 * @throws IllegalArgumentException
+	 *             if k is negative
+	 */
+	public Iterable<String> topMatches(String prefix, int k) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		if (k < 0) {
+			throw new IllegalArgumentException("Illegal value of k:" + k);
+		}
+		QueryStats stats = myStatsCollector == null ? null : new QueryStats(prefix, k);
+		long start = stats == null ? 0 : System.nanoTime();
+		if (k == 0) {
+			if (stats != null) {
+				stats.nanos = System.nanoTime() - start;
+				myStatsCollector.record(stats);
+			}
+			return new ArrayList<String>();
+		}
+		PriorityQueue<Term> termPQ = new PriorityQueue<Term>(k, new Term.WeightOrder());
+		TernaryNode subtree;
+		if (prefix.isEmpty()) {
+			if (myEmptyWeight >= 0) {
+				termPQ.add(new Term("", myEmptyWeight));
+			}
+			subtree = myRoot;
+		} else {
+			TernaryNode node = find(prefix);
+			if (node == null) {
+				if (stats != null) {
+					stats.nanos = System.nanoTime() - start;
+					myStatsCollector.record(stats);
+				}
+				return new ArrayList<String>();
+			}
+			if (node.getWord() != null) {
+				termPQ.add(new Term(node.getWord(), node.getWeight()));
+			}
+			// below the prefix node, lo and hi links stay within the prefix
+			subtree = node.myEq;
+		}
+		PriorityQueue<TernaryNode> nodePQ = new PriorityQueue<TernaryNode>(ourNodeOrder);
+		if (subtree != null) {
+			nodePQ.add(subtree);
+			if (stats != null) {
+				stats.nodesPushed++;
+			}
+		}
+		while (!nodePQ.isEmpty()) {
+			if (termPQ.size() == k && termPQ.peek().getWeight() > nodePQ.peek().mySubtreeMaxWeight) {
+				if (stats != null) {
+					stats.earlyTermination = true;
+				}
+				break;
+			}
+			TernaryNode current = nodePQ.remove();
+			if (stats != null) {
+				stats.nodesPopped++;
+			}
+			if (current.getWord() != null) {
+				termPQ.add(new Term(current.getWord(), current.getWeight()));
+				if (stats != null) {
+					stats.rangeScanned++;
+				}
+				if (termPQ.size() > k) {
+					termPQ.remove();
+					if (stats != null) {
+						stats.heapReplacements++;
+					}
+				}
+			}
+			push(nodePQ, current.myLo, stats);
+			push(nodePQ, current.myEq, stats);
+			push(nodePQ, current.myHi, stats);
+		}
+		LinkedList<String> ret = new LinkedList<String>();
+		while (!termPQ.isEmpty()) {
+			ret.addFirst(termPQ.remove().getWord());
+		}
+		if (stats != null) {
+			stats.nanos = System.nanoTime() - start;
+			myStatsCollector.record(stats);
+		}
+		return ret;
+	}
+
+	/**
+	 * topMatches into results: the same best-first search, on this thread's
+	 * heaps rather than new PriorityQueues and Terms, with the words copied
+	 * into results
+	 */
+	public int topMatches(CharSequence prefix, ResultBuffer results) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		int k = results.capacity();
+		results.clear();
+		if (k == 0) {
+			return 0;
+		}
+		ObjectHeap<TernaryNode> wordHeap = myWordHeaps.get();
+		wordHeap.clear();
+		TernaryNode subtree;
+		if (prefix.length() == 0) {
+			if (myEmptyWord != null) {
+				wordHeap.add(myEmptyWord, myEmptyWeight);
+			}
+			subtree = myRoot;
+		} else {
+			TernaryNode node = find(prefix);
+			if (node == null) {
+				return 0;
+			}
+			if (node.getWord() != null) {
+				wordHeap.add(node, node.getWeight());
+			}
+			subtree = node.myEq;
+		}
+		ObjectHeap<TernaryNode> nodeHeap = myNodeHeaps.get();
+		nodeHeap.clear();
+		if (subtree != null) {
+			nodeHeap.add(subtree, -subtree.mySubtreeMaxWeight);
+		}
+		while (!nodeHeap.isEmpty()) {
+			if (wordHeap.size() == k && wordHeap.peekPriority() > nodeHeap.peek().mySubtreeMaxWeight) {
+				break;
+			}
+			TernaryNode current = nodeHeap.remove();
+			double weight = current.getWeight();
+			if (current.getWord() != null) {
+				if (wordHeap.size() < k) {
+					wordHeap.add(current, weight);
+				} else if (wordHeap.peekPriority() < weight) {
+					wordHeap.replaceTop(current, weight);
+				}
+			}
+			push(nodeHeap, current.myLo);
+			push(nodeHeap, current.myEq);
+			push(nodeHeap, current.myHi);
+		}
+		nodeHeap.clear();
+		int n = wordHeap.drainDescending();
+		for (int i = 0; i < n; i++) {
+			results.add(wordHeap.item(i).getWord(), wordHeap.priority(i));
+		}
+		return n;
+	}
+
+	private static void push(ObjectHeap<TernaryNode> nodeHeap, TernaryNode node) {
+		if (node != null) {
+			nodeHeap.add(node, -node.mySubtreeMaxWeight);
+		}
+	}
+
+	private static void push(PriorityQueue<TernaryNode> nodePQ, TernaryNode node, QueryStats stats) {
+		if (node != null) {
+			nodePQ.add(node);
+			if (stats != null) {
+				stats.nodesPushed++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the word with the largest weight that starts with prefix, or an
+	 * empty string if none exists. Follows the subtree max weights straight
+	 * down to it.
+	 *
+	 * @throws NullPointerException
+	 *             if prefix is null
+	 */
+	public String topMatch(String prefix) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid Prefix");
+		}
+		QueryStats stats = myStatsCollector == null ? null : new QueryStats(prefix, 1);
+		long start = stats == null ? 0 : System.nanoTime();
+		String best = "";
+		double bestWeight = -1;
+		TernaryNode current;
+		if (prefix.isEmpty()) {
+			if (myEmptyWeight >= 0) {
+				bestWeight = myEmptyWeight;
+			}
+			current = myRoot;
+		} else {
+			TernaryNode node = find(prefix);
+			if (node == null) {
+				if (stats != null) {
+					stats.nanos = System.nanoTime() - start;
+					myStatsCollector.record(stats);
+				}
+				return "";
+			}
+			if (node.getWord() != null) {
+				best = node.getWord();
+				bestWeight = node.getWeight();
+			}
+			current = node.myEq;
+		}
+		if (current != null && current.mySubtreeMaxWeight > bestWeight) {
+			while (current.getWeight() != current.mySubtreeMaxWeight) {
+				double target = current.mySubtreeMaxWeight;
+				if (max(current.myLo) == target) {
+					current = current.myLo;
+				} else if (max(current.myEq) == target) {
+					current = current.myEq;
+				} else {
+					current = current.myHi;
+				}
+				if (stats != null) {
+					stats.nodesPopped++;
+				}
+			}
+			best = current.getWord();
+		}
+		if (stats != null) {
+			stats.rangeScanned = 1;
+			stats.earlyTermination = true;
+			stats.nanos = System.nanoTime() - start;
+			myStatsCollector.record(stats);
+		}
+		return best;
+	}
+
+	/**
+	 * Return the weight of a given term. If term is not in the dictionary,
+	 * return 0.0
+	 */
+	public double weightOf(String term) {
+		if (term.isEmpty()) {
+			return Math.max(0, myEmptyWeight);
+		}
+		TernaryNode node = find(term);
+		return node == null || node.getWord() == null ? 0.0 : node.getWeight();
+	}
+
+	public void setStatsCollector(QueryStatsCollector collector) {
+		myStatsCollector = collector;
+	}
+}
@@ -0,0 +1,177 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestAttributeFilter {
+
+	String[] names = { "ape", "app", "ban", "bat", "bee", "car", "cat" };
+	double[] weights = { 6, 4, 2, 3, 5, 7, 1 };
+	// 1 is a country, 2 and 3 categories
+	int[][] attributes = { { 1 }, { 2 }, { 1, 3 }, null, { 3 }, { 2 }, { 1, 2 } };
+
+	private List<String> toList(Iterable<String> it) {
+		ArrayList<String> list = new ArrayList<String>();
+		for (String s : it)
+			list.add(s);
+		return list;
+	}
+
+	private List<FilteredAutocompletor> engines(String[] names, double[] weights, int[][] attributes) {
+		return Arrays.<FilteredAutocompletor>asList(new TrieAutocomplete(names, weights, attributes),
+				new BinarySearchAutocomplete(names, weights, attributes));
+	}
+
+	@Test(timeout = 10000)
+	public void testFilter() {
+		AttributeFilter filter = new AttributeFilter(3, 1, 3);
+		assertEquals("[1, 3]", filter.toString());
+		assertTrue(filter.accepts(1));
+		assertFalse(filter.accepts(2));
+		assertTrue(filter.accepts(new int[] { 0, 2, 3 }, 0, 3));
+		assertFalse(filter.accepts(new int[] { 0, 2, 3 }, 0, 2));
+		assertTrue(filter.mayMatch(AttributeFilter.summary(new int[] { 2, 3 })));
+		assertFalse(filter.mayMatch(0));
+		try {
+			new AttributeFilter(1, -1);
+			fail("negative id accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testTopMatches() {
+		for (FilteredAutocompletor test : engines(names, weights, attributes)) {
+			String name = test.getClass().getName();
+			assertEquals(name, Arrays.asList("ape", "ban", "cat"), toList(test.topMatches("", 5, new AttributeFilter(1))));
+			assertEquals(name, Arrays.asList("bee", "ban"), toList(test.topMatches("b", 5, new AttributeFilter(3))));
+			assertEquals(name, Arrays.asList("car"), toList(test.topMatches("", 1, new AttributeFilter(2))));
+			assertEquals(name, Arrays.asList("app"), toList(test.topMatches("a", 3, new AttributeFilter(2, 9))));
+			assertEquals(name, 0, toList(test.topMatches("a", 3, new AttributeFilter(9))).size());
+			assertEquals(name, 0, toList(test.topMatches("b", 3, new AttributeFilter())).size());
+			assertEquals(name, 0, toList(test.topMatches("x", 3, new AttributeFilter(1))).size());
+			assertEquals(name, 0, toList(test.topMatches("", 0, new AttributeFilter(1))).size());
+			assertEquals(name, Arrays.asList("car", "cat"), toList(test.topMatches("c", 3, null)));
+		}
+		// an engine built without attributes has no term passing a filter
+		assertEquals(0, toList(new TrieAutocomplete(names, weights).topMatches("", 3, new AttributeFilter(1))).size());
+	}
+
+	/**
+	 * Filtered results are the heaviest of the passing terms, found by
+	 * brute force
+	 */
+	@Test(timeout = 20000)
+	public void testRandom() {
+		Random rand = new Random(48);
+		int n = 5000;
+		String[] words = new String[n];
+		double[] wts = new double[n];
+		int[][] attrs = new int[n][];
+		for (int i = 0; i < n; i++) {
+			char[] word = new char[1 + rand.nextInt(6)];
+			for (int j = 0; j < word.length; j++) {
+				word[j] = (char) ('a' + rand.nextInt(4));
+			}
+			words[i] = new String(word);
+			wts[i] = i;
+			attrs[i] = new int[rand.nextInt(3)];
+			for (int j = 0; j < attrs[i].length; j++) {
+				attrs[i][j] = rand.nextInt(200);
+			}
+		}
+		// a repeated word keeps its last weight and attributes
+		List<Integer> last = new ArrayList<Integer>();
+		HashMap<String, Integer> latest = new HashMap<String, Integer>();
+		for (int i = 0; i < n; i++) {
+			latest.put(words[i], i);
+		}
+		last.addAll(latest.values());
+		Collections.sort(last, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return b - a;
+			}
+		});
+		TrieAutocomplete trie = new TrieAutocomplete(words, wts, attrs);
+		for (int q = 0; q < 200; q++) {
+			AttributeFilter filter = new AttributeFilter(rand.nextInt(200), rand.nextInt(200));
+			String prefix = words[rand.nextInt(n)];
+			prefix = prefix.substring(0, rand.nextInt(prefix.length() + 1));
+			List<String> expected = new ArrayList<String>();
+			for (int i : last) {
+				int[] ids = AttributeFilter.sortedIds(attrs[i]);
+				if (expected.size() < 5 && words[i].startsWith(prefix) && filter.accepts(ids, 0, ids.length)) {
+					expected.add(words[i]);
+				}
+			}
+			assertEquals(prefix + " " + filter, expected, toList(trie.topMatches(prefix, 5, filter)));
+		}
+	}
+
+	/**
+	 * Binary search keeps repeated words, so is compared on distinct ones
+	 */
+	@Test(timeout = 20000)
+	public void testRandomBinarySearch() {
+		Random rand = new Random(49);
+		int n = 3000;
+		String[] words = new String[n];
+		double[] wts = new double[n];
+		int[][] attrs = new int[n][];
+		for (int i = 0; i < n; i++) {
+			words[i] = Integer.toString(i, 5);
+			wts[i] = rand.nextInt(1000000);
+			attrs[i] = new int[] { rand.nextInt(100) };
+		}
+		BinarySearchAutocomplete test = new BinarySearchAutocomplete(words, wts, attrs);
+		TrieAutocomplete trie = new TrieAutocomplete(words, wts, attrs);
+		for (int q = 0; q < 200; q++) {
+			AttributeFilter filter = new AttributeFilter(rand.nextInt(100), rand.nextInt(100), rand.nextInt(100));
+			String prefix = words[rand.nextInt(n)];
+			prefix = prefix.substring(0, rand.nextInt(prefix.length() + 1));
+			assertEquals(prefix + " " + filter, toList(trie.topMatches(prefix, 7, filter)),
+					toList(test.topMatches(prefix, 7, filter)));
+		}
+	}
+
+	/**
+	 * A rare attribute is found without visiting the subtries or blocks that
+	 * lack it
+	 */
+	@Test(timeout = 10000)
+	public void testPruning() {
+		int n = 10000;
+		String[] words = new String[n];
+		double[] wts = new double[n];
+		int[][] attrs = new int[n][];
+		for (int i = 0; i < n; i++) {
+			words[i] = String.format("w%05d", i);
+			wts[i] = i;
+			attrs[i] = new int[] { i == 1234 ? 7 : 8 };
+		}
+		AttributeFilter rare = new AttributeFilter(7);
+		assertFalse("ids collide", rare.mayMatch(AttributeFilter.summary(new int[] { 8 })));
+
+		TrieAutocomplete trie = new TrieAutocomplete(words, wts, attrs);
+		QueryStatsCollector collector = new QueryStatsCollector();
+		trie.setStatsCollector(collector);
+		assertEquals(Arrays.asList("w01234"), toList(trie.topMatches("w", 10, rare)));
+		QueryStats stats = collector.getWorstQueries().get(0);
+		// the path down to the word, and none of its neighbours
+		assertEquals(6, stats.get(QueryStats.Counter.NODES_POPPED));
+
+		BinarySearchAutocomplete binary = new BinarySearchAutocomplete(words, wts, attrs);
+		collector = new QueryStatsCollector();
+		binary.setStatsCollector(collector);
+		assertEquals(Arrays.asList("w01234"), toList(binary.topMatches("w", 10, rare)));
+		stats = collector.getWorstQueries().get(0);
+		assertEquals(BinarySearchAutocomplete.ATTRIBUTE_BLOCK, stats.get(QueryStats.Counter.RANGE_SCANNED));
+	}
+}
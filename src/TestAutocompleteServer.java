@@ -0,0 +1,130 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestAutocompleteServer {
+
+	String[] names = { "ape", "app", "ban", "bat", "bee", "car", "cat", "caf\u00e9" };
+	double[] weights = { 6, 4, 2, 3, 5, 7, 1, 0.5 };
+
+	AutocompleteServer server;
+
+	@Before
+	public void start() throws IOException {
+		server = new AutocompleteServer(new TrieAutocomplete(names, weights), 0);
+		server.start();
+	}
+
+	@After
+	public void stop() {
+		server.stop(0);
+	}
+
+	/**
+	 * Returns the status and body of a request to path on the server
+	 */
+	private String[] request(String method, String path) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path)
+				.openConnection();
+		connection.setRequestMethod(method);
+		int status = connection.getResponseCode();
+		assertEquals("application/json; charset=utf-8", connection.getContentType());
+		InputStream in = status == 200 ? connection.getInputStream() : connection.getErrorStream();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+			body.write(buffer, 0, read);
+		}
+		in.close();
+		return new String[] { "" + status, body.toString("UTF-8") };
+	}
+
+	private String get(String path) throws IOException {
+		String[] response = request("GET", path);
+		assertEquals(response[1], "200", response[0]);
+		return response[1];
+	}
+
+	private void assertStatus(String status, String method, String path) throws IOException {
+		String[] response = request(method, path);
+		assertEquals(response[1], status, response[0]);
+		assertTrue(response[1], response[1].startsWith("{\"error\":\""));
+	}
+
+	@Test(timeout = 10000)
+	public void testTopMatches() throws IOException {
+		assertEquals("{\"prefix\":\"ca\",\"k\":2,\"matches\":[\"car\",\"cat\"]}", get("/topMatches?prefix=ca&k=2"));
+		assertEquals("{\"prefix\":\"b\",\"k\":10,\"matches\":[\"bee\",\"bat\",\"ban\"]}", get("/topMatches?prefix=b"));
+		assertEquals("{\"prefix\":\"x\",\"k\":3,\"matches\":[]}", get("/topMatches?k=3&prefix=x"));
+		assertEquals("{\"prefix\":\"caf\u00e9\",\"k\":1,\"matches\":[\"caf\u00e9\"]}",
+				get("/topMatches?prefix=" + URLEncoder.encode("caf\u00e9", "UTF-8") + "&k=1"));
+	}
+
+	@Test(timeout = 10000)
+	public void testTopMatch() throws IOException {
+		assertEquals("{\"prefix\":\"b\",\"match\":\"bee\"}", get("/topMatch?prefix=b"));
+		assertEquals("{\"prefix\":\"\",\"match\":\"car\"}", get("/topMatch"));
+	}
+
+	@Test(timeout = 10000)
+	public void testWeightOf() throws IOException {
+		assertEquals("{\"term\":\"car\",\"weight\":7.0}", get("/weightOf?term=car"));
+		assertEquals("{\"term\":\"caf\u00e9\",\"weight\":0.5}",
+				get("/weightOf?term=" + URLEncoder.encode("caf\u00e9", "UTF-8")));
+		assertEquals("{\"term\":\"zzz\",\"weight\":0.0}", get("/weightOf?term=zzz"));
+	}
+
+	/**
+	 * The query's words are decoded afresh, so engines must look them up by
+	 * value
+	 */
+	@Test(timeout = 10000)
+	public void testBinarySearch() throws IOException {
+		server.stop(0);
+		server = new AutocompleteServer(new BinarySearchAutocomplete(names, weights), 0);
+		server.start();
+		assertEquals("{\"term\":\"car\",\"weight\":7.0}", get("/weightOf?term=car"));
+		assertEquals("{\"term\":\"caf\u00e9\",\"weight\":0.5}",
+				get("/weightOf?term=" + URLEncoder.encode("caf\u00e9", "UTF-8")));
+		assertEquals("{\"term\":\"ca\",\"weight\":0.0}", get("/weightOf?term=ca"));
+		assertEquals("{\"prefix\":\"ca\",\"k\":2,\"matches\":[\"car\",\"cat\"]}", get("/topMatches?prefix=ca&k=2"));
+	}
+
+	@Test(timeout = 10000)
+	public void testBadRequests() throws IOException {
+		assertStatus("400", "GET", "/topMatches?prefix=a&k=x");
+		assertStatus("400", "GET", "/topMatches?prefix=a&k=-1");
+		assertStatus("400", "GET", "/weightOf");
+		assertStatus("400", "GET", "/weightOf?name=car");
+		assertStatus("405", "POST", "/topMatch?prefix=a");
+	}
+
+	@Test(timeout = 10000)
+	public void testParam() {
+		assertEquals("a b", AutocompleteServer.param("k=3&prefix=a+b", "prefix", null));
+		assertEquals("3", AutocompleteServer.param("prefix=k&k=3", "k", null));
+		assertEquals("", AutocompleteServer.param("prefix=&k=3", "prefix", "x"));
+		assertEquals("x", AutocompleteServer.param("kk=3", "k", "x"));
+		assertEquals("x", AutocompleteServer.param(null, "k", "x"));
+	}
+
+	@Test(timeout = 10000)
+	public void testEncoder() throws IOException {
+		AutocompleteServer.ResponseEncoder out = new AutocompleteServer.ResponseEncoder();
+		out.beginArray().value(Long.MIN_VALUE).value(Long.MAX_VALUE).value(-7).value(0).value(-2.5)
+				.value(Double.NaN).value("\"\\\n").endArray();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		out.writeTo(bytes);
+		assertEquals("[-9223372036854775808,9223372036854775807,-7,0,-2.5,null,\"\\\"\\\\\\u000a\"]",
+				bytes.toString("UTF-8"));
+	}
+}
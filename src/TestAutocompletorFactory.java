@@ -0,0 +1,159 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestAutocompletorFactory {
+
+	String[] names = { "ape", "app", "ban", "bat", "bee", "car", "cat" };
+	double[] weights = { 6, 4, 2, 3, 5, 7, 1 };
+
+	private String[] iterToArr(Iterable<String> it) {
+		ArrayList<String> list = new ArrayList<String>();
+		for (String s : it)
+			list.add(s);
+		return list.toArray(new String[0]);
+	}
+
+	private Dictionary random(int n) {
+		Random rand = new Random(50);
+		String[] words = new String[n];
+		double[] wts = new double[n];
+		for (int i = 0; i < n; i++) {
+			words[i] = Integer.toString(i, 7) + (char) ('a' + rand.nextInt(26));
+			wts[i] = rand.nextInt(1000000);
+		}
+		return new Dictionary(words, wts);
+	}
+
+	@Test(timeout = 10000)
+	public void testProfile() {
+		AutocompletorFactory.Profile profile = new AutocompletorFactory.Profile(
+				new String[] { "ape", "app", "apple" }, new double[] { 2, 1, 2 }, 5);
+		assertEquals(3, profile.getSize());
+		assertEquals(4, profile.getAlphabet());
+		assertEquals(11 / 3.0, profile.getAverageLength(), 1E-9);
+		// app shares 2 with ape, apple 3 with app
+		assertEquals(5 / 11.0, profile.getPrefixSharing(), 1E-9);
+		assertEquals(2, profile.getDistinctWeights());
+		assertEquals(5, profile.getK());
+	}
+
+	/**
+	 * Blocks lengthen with the sharing, and RANK is kept unless most weights
+	 * are distinct
+	 */
+	@Test(timeout = 10000)
+	public void testConfiguration() {
+		assertEquals(4, AutocompletorFactory.frontCodedBlock(0));
+		assertEquals(4, AutocompletorFactory.frontCodedBlock(0.25));
+		assertEquals(16, AutocompletorFactory.frontCodedBlock(0.5));
+		assertEquals(32, AutocompletorFactory.frontCodedBlock(0.75));
+		assertEquals(64, AutocompletorFactory.frontCodedBlock(0.99));
+		assertEquals(64, AutocompletorFactory.frontCodedBlock(1));
+		String[] words = { "a", "b", "c", "d" };
+		assertEquals(WeightEncoding.RANK, AutocompletorFactory
+				.trieEncoding(new AutocompletorFactory.Profile(words, new double[] { 1, 2, 3, 3 }, 1)));
+		assertEquals(WeightEncoding.QUANTIZED_16, AutocompletorFactory
+				.trieEncoding(new AutocompletorFactory.Profile(words, new double[] { 1, 2, 3, 4 }, 1)));
+	}
+
+	/**
+	 * Words sharing nothing leave out the front-coded candidate
+	 */
+	@Test(timeout = 20000)
+	public void testNoSharing() {
+		AutocompletorFactory factory = new AutocompletorFactory(1L << 40, 1000, 100, new Random(1));
+		AutocompletorFactory.Choice choice = factory.choose(
+				new Dictionary(new String[] { "ape", "bat", "cow", "dog" }, new double[] { 1, 2, 3, 4 }), 2);
+		assertEquals(AutocompletorFactory.candidates().size() - 1, choice.getEstimates().size());
+		assertFalse(choice.getReason(), choice.getReason().contains("front coded"));
+	}
+
+	/**
+	 * Whatever is chosen answers correctly, and the reason names it and every
+	 * candidate
+	 */
+	@Test(timeout = 20000)
+	public void testChoose() {
+		AutocompletorFactory factory = new AutocompletorFactory(1L << 40, 1000, 200, new Random(1));
+		AutocompletorFactory.Choice choice = factory.choose(new Dictionary(names, weights), 2);
+		assertArrayEquals(new String[] { "bee", "bat" }, iterToArr(choice.getEngine().topMatches("b", 2)));
+		assertEquals(AutocompletorFactory.candidates().size(), choice.getEstimates().size());
+		assertTrue(choice.getReason(), choice.getReason().startsWith("Chose " + choice.getName() + " for 7 terms"));
+		for (AutocompletorFactory.Estimate estimate : choice.getEstimates()) {
+			assertTrue(estimate.getName(), choice.getReason().contains(estimate.getName()));
+		}
+		assertTrue(choice.getReason(), choice.getReason().contains("front coded, blocks of 8"));
+		assertEquals(choice.getName(), choice.getEstimates().get(0).getName());
+	}
+
+	/**
+	 * The choice builds the same engine for another dictionary
+	 */
+	@Test(timeout = 20000)
+	public void testBuild() {
+		AutocompletorFactory factory = new AutocompletorFactory(1L << 40, 1000, 100, new Random(1));
+		AutocompletorFactory.Choice choice = factory.choose(new Dictionary(names, weights), 2);
+		Autocompletor built = choice.build(new Dictionary(new String[] { "bee", "bat" }, new double[] { 1, 2 }));
+		assertEquals(choice.getEngine().getClass(), built.getClass());
+		assertArrayEquals(new String[] { "bat", "bee" }, iterToArr(built.topMatches("b", 2)));
+		try {
+			choice.build(null);
+			fail("null dictionary accepted");
+		} catch (NullPointerException e) {
+		}
+	}
+
+	/**
+	 * Brute force grows with the dictionary and the trie hardly at all, so on
+	 * a large one the brute force estimate is far the slowest
+	 */
+	@Test(timeout = 60000)
+	public void testScaling() {
+		AutocompletorFactory factory = new AutocompletorFactory(1L << 40, 2000, 300, new Random(1));
+		AutocompletorFactory.Choice choice = factory.choose(random(100000), 10);
+		assertNotEquals(AutocompleteMain.BRUTE_AUTOCOMPLETE, choice.getName());
+		AutocompletorFactory.Estimate last = choice.getEstimates().get(choice.getEstimates().size() - 1);
+		assertEquals(choice.getReason(), AutocompleteMain.BRUTE_AUTOCOMPLETE, last.getName());
+	}
+
+	/**
+	 * With no heap to spare, the dictionary goes to disk
+	 */
+	@Test(timeout = 20000)
+	public void testBudget() throws IOException {
+		AutocompletorFactory factory = new AutocompletorFactory(0, 1000, 100, new Random(1));
+		AutocompletorFactory.Choice choice = factory.choose(random(5000), 10);
+		assertEquals(AutocompleteMain.DISK_AUTOCOMPLETE, choice.getName());
+		assertTrue(choice.getEngine() instanceof DiskAutocomplete);
+		assertTrue(choice.getReason(), choice.getReason().contains("budget"));
+		Dictionary dictionary = random(5000);
+		Autocompletor trie = new TrieAutocomplete(dictionary.getTerms(), dictionary.getWeights());
+		assertArrayEquals(iterToArr(trie.topMatches("1", 10)), iterToArr(choice.getEngine().topMatches("1", 10)));
+		((DiskAutocomplete) choice.getEngine()).close();
+	}
+
+	@Test(timeout = 10000)
+	public void testConstructorExceptions() {
+		try {
+			new AutocompletorFactory(-1, 10, 10, new Random());
+			fail("negative budget accepted");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			new AutocompletorFactory(0, 10, 10, null);
+			fail("null random accepted");
+		} catch (NullPointerException e) {
+		}
+		try {
+			new AutocompletorFactory().choose(new Dictionary(names, weights), -1);
+			fail("negative k accepted");
+		} catch (IllegalArgumentException e) {
+		}
+		assertTrue(AutocompletorFactory.candidates().contains(AutocompleteMain.TRIE_AUTOCOMPLETE));
+	}
+}
@@ -1,10 +1,12 @@
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.LinkedList;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -304,4 +306,179 @@ public class TestBinarySearchAutocomplete {
 			fail("Wrong throw");
 		}
 	}
+
+	/**
+	 * Collected statistics count the comparator calls of both binary searches
+	 * and the size of the matching range
+	 */
+	@Test(timeout = 10000)
+	public void testQueryStats() {
+		BinarySearchAutocomplete test = new BinarySearchAutocomplete(myNames, myWeights);
+		QueryStatsCollector collector = new QueryStatsCollector();
+		test.setStatsCollector(collector);
+		test.topMatches("b", 2);
+		test.setStatsCollector(null);
+		test.topMatches("a", 2);
+		assertEquals(1, collector.getLatencies().count());
+		QueryStats stats = collector.getWorstQueries().get(0);
+		assertEquals(3, stats.get(QueryStats.Counter.RANGE_SCANNED));
+		long comparisons = stats.get(QueryStats.Counter.COMPARISONS);
+		assertTrue("too many comparisons: " + comparisons,
+				comparisons > 0 && comparisons <= 2 * (1 + Math.ceil(Math.log(myNames.length) / Math.log(2))));
+		assertEquals(1, stats.get(QueryStats.Counter.HEAP_REPLACEMENTS));
+		// queries that find nothing are recorded too
+		collector = new QueryStatsCollector();
+		test.setStatsCollector(collector);
+		test.topMatches("zz", 3);
+		test.topMatches("a", 0);
+		test.topMatch("zz");
+		test.topMatches("b", 2, new AttributeFilter(7));
+		test.setStatsCollector(null);
+		assertEquals(4, collector.getLatencies().count());
+		collector = new QueryStatsCollector();
+		test = new BinarySearchAutocomplete(myNames, myWeights, 4);
+		test.setStatsCollector(collector);
+		test.topMatches("zz", 3);
+		test.topMatch("zz");
+		assertEquals(2, collector.getLatencies().count());
+	}
+
+	/**
+	 * weightOf finds words equal to the term, not only the same String
+	 */
+	@Test(timeout = 10000)
+	public void testWeightOfCopy() {
+		BinarySearchAutocomplete test = new BinarySearchAutocomplete(myNames, myWeights);
+		for (int i = 0; i < myNames.length; i++) {
+			assertEquals(myNames[i], myWeights[i], test.weightOf(new String(myNames[i].toCharArray())), 0);
+		}
+		assertEquals(0, test.weightOf("ap"), 0);
+		assertEquals(0, test.weightOf("cats"), 0);
+		assertEquals(0, test.weightOf(null), 0);
+	}
+
+	/**
+	 * Front-coded storage, for any block size, and a TermArena (block size
+	 * 0) find the same ranges as firstIndexOf and lastIndexOf on the Term
+	 * array, and answer queries as the Term array does
+	 */
+	@Test(timeout = 10000)
+	public void testFrontCoded() {
+		Random random = new Random(3);
+		String alphabet = "aab\u00e9\u4e2d";
+		int n = 1500;
+		String[] words = new String[n];
+		double[] ws = new double[n];
+		for (int i = 0; i < n; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(7);
+			for (int j = 0; j < length; j++) {
+				sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			words[i] = sb.toString();
+			// distinct weights, so ties cannot be ordered differently
+			ws[i] = (i * 7919) % n;
+		}
+		BinarySearchAutocomplete plain = new BinarySearchAutocomplete(words, ws);
+		for (int blockSize : new int[] { 0, 1, 2, 16, 5000 }) {
+			BinarySearchAutocomplete test = new BinarySearchAutocomplete(words, ws, blockSize);
+			assertTrue(test.myTerms == null);
+			TermStore coded = test.myStore;
+			for (int i = 0; i < n; i += 13) {
+				assertEquals(plain.myTerms[i].getWord(), coded.word(i));
+			}
+			for (int i = 0; i < 300; i++) {
+				String word = words[random.nextInt(n)];
+				String prefix = word.substring(0, random.nextInt(word.length() + 1)) + (i % 10 == 0 ? "b" : "");
+				Term key = new Term(prefix, 0);
+				Comparator<Term> order = new Term.PrefixOrder(prefix.length());
+				String message = blockSize + " " + prefix;
+				assertEquals(message, BinarySearchAutocomplete.firstIndexOf(plain.myTerms, key, order),
+						coded.firstIndexOf(prefix));
+				assertEquals(message, BinarySearchAutocomplete.lastIndexOf(plain.myTerms, key, order),
+						coded.lastIndexOf(prefix));
+				assertArrayEquals(message, iterToArr(plain.topMatches(prefix, 10)),
+						iterToArr(test.topMatches(prefix, 10)));
+				assertEquals(message, plain.topMatch(prefix), test.topMatch(prefix));
+			}
+			assertEquals(0, test.weightOf("nope"), 0);
+			assertEquals(0, test.weightOf(null), 0);
+			for (int i = 0; i < n; i += 7) {
+				int index = coded.indexOf(words[i]);
+				assertEquals(words[i], coded.word(index));
+				assertEquals(test.myWeights[index], test.weightOf(words[i]), 0);
+			}
+		}
+	}
+
+	/**
+	 * Sorted neighbours with long shared prefixes take a few bytes each
+	 */
+	@Test(timeout = 10000)
+	public void testFrontCodedSize() {
+		int n = 1000;
+		String[] terms = new String[n];
+		for (int i = 0; i < n; i++) {
+			terms[i] = String.format("San Francisco de los Rios %04d", i);
+		}
+		FrontCodedTerms coded = new FrontCodedTerms(terms, 16);
+		// 30 characters once a block, 2 to 4 characters and 2 varints otherwise
+		assertTrue("" + coded.encodedBytes(), coded.encodedBytes() < n / 16 * 32 + n * 6);
+		try {
+			new FrontCodedTerms(new String[] { "b", "a" }, 4);
+			fail("unsorted terms accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * Pages of any size concatenate to the full topMatches list, and a
+	 * continuation works once
+	 */
+	@Test(timeout = 10000)
+	public void testPaging() {
+		Random random = new Random(17);
+		int n = 2000;
+		String[] words = new String[n];
+		double[] ws = new double[n];
+		for (int i = 0; i < n; i++) {
+			words[i] = Integer.toString(i, 3);
+			// distinct weights, so ties cannot be ordered differently
+			ws[i] = (i * 7919) % n;
+		}
+		for (PagedAutocompletor test : new PagedAutocompletor[] { new BinarySearchAutocomplete(words, ws),
+				new BinarySearchAutocomplete(words, ws, 0), new BinarySearchAutocomplete(words, ws, 8) }) {
+			for (String prefix : new String[] { "", "1", "12", "2101", "3" }) {
+				String[] all = iterToArr(test.topMatches(prefix, n));
+				ArrayList<String> paged = new ArrayList<String>();
+				int size = 1 + random.nextInt(40);
+				Page page = test.firstPage(prefix, size);
+				paged.addAll(page.getWords());
+				assertPageWeights(test, page);
+				while (page.hasNext()) {
+					assertEquals(size, page.getWords().size());
+					page = test.nextPage(page.getNext(), size);
+					paged.addAll(page.getWords());
+					assertPageWeights(test, page);
+				}
+				assertArrayEquals(prefix + " " + size, all, paged.toArray(new String[0]));
+			}
+			Page first = test.firstPage("", 5);
+			test.nextPage(first.getNext(), 5);
+			try {
+				test.nextPage(first.getNext(), 5);
+				fail("continuation used twice");
+			} catch (IllegalStateException e) {
+			}
+		}
+	}
+
+	/**
+	 * A page carries the weight weightOf gives each of its words
+	 */
+	private static void assertPageWeights(Autocompletor test, Page page) {
+		for (int i = 0; i < page.getWords().size(); i++) {
+			assertEquals(page.getWords().get(i), test.weightOf(page.getWords().get(i)), page.getWeight(i), 0);
+		}
+	}
 }
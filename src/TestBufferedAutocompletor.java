@@ -0,0 +1,158 @@
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class TestBufferedAutocompletor {
+
+	String[] names = { "", "ape", "app", "ban", "bat", "bee", "car", "cat" };
+	double[] weights = { 0.5, 6, 4, 2, 3, 5, 7, 1 };
+
+	private List<BufferedAutocompletor> engines(String[] names, double[] weights) {
+		return Arrays.<BufferedAutocompletor>asList(new BruteAutocomplete(names, weights),
+				new BinarySearchAutocomplete(names, weights), new BinarySearchAutocomplete(names, weights, 0),
+				new BinarySearchAutocomplete(names, weights, 4), new TrieAutocomplete(names, weights),
+				new TernarySearchAutocomplete(names, weights), new LazyTrieAutocomplete(names, weights));
+	}
+
+	private List<String> toList(ResultBuffer results) {
+		ArrayList<String> list = new ArrayList<String>();
+		for (int i = 0; i < results.size(); i++)
+			list.add(results.word(i));
+		return list;
+	}
+
+	private List<String> toList(Iterable<String> it) {
+		ArrayList<String> list = new ArrayList<String>();
+		for (String s : it)
+			list.add(s);
+		return list;
+	}
+
+	@Test(timeout = 10000)
+	public void testResultBuffer() {
+		ResultBuffer results = new ResultBuffer(2);
+		results.add("car", 7);
+		results.add(new StringBuilder("ca"), 3);
+		assertEquals(2, results.size());
+		assertEquals("ca", results.word(1));
+		assertEquals(3, results.length(0));
+		assertEquals('r', results.charAt(0, 2));
+		assertEquals(7, results.weight(0), 0);
+		assertTrue(results.contentEquals(0, "car"));
+		assertFalse(results.contentEquals(1, "car"));
+		assertEquals("[car, ca]", results.toString());
+		try {
+			results.add("cat", 1);
+			fail("added past capacity");
+		} catch (IllegalStateException e) {
+		}
+		assertEquals(2, results.size());
+		results.clear();
+		assertEquals(0, results.size());
+		// the characters grow past their first guess
+		char[] longWord = new char[100];
+		Arrays.fill(longWord, 'x');
+		results.add(new String(longWord), 1);
+		assertEquals(100, results.length(0));
+	}
+
+	@Test(timeout = 10000)
+	public void testTopMatches() {
+		for (BufferedAutocompletor test : engines(names, weights)) {
+			String name = test.getClass().getName();
+			ResultBuffer results = new ResultBuffer(2);
+			assertEquals(name, 2, test.topMatches(new StringBuilder("b"), results));
+			assertEquals(name, Arrays.asList("bee", "bat"), toList(results));
+			assertEquals(name, 5, results.weight(0), 0);
+			assertEquals(name, 1, test.topMatches("ap", new ResultBuffer(1)));
+			assertEquals(name, 2, test.topMatches("ca", results));
+			assertEquals(name, Arrays.asList("car", "cat"), toList(results));
+			assertEquals(name, 0, test.topMatches("x", results));
+			assertEquals(name, 0, results.size());
+			results = new ResultBuffer(10);
+			assertEquals(name, 8, test.topMatches("", results));
+			assertEquals(name, Arrays.asList("car", "ape", "bee", "app", "bat", "ban", "cat", ""), toList(results));
+			assertEquals(name, 0, test.topMatches("", new ResultBuffer(0)));
+			try {
+				test.topMatches((CharSequence) null, results);
+				fail(name + " null prefix accepted");
+			} catch (NullPointerException e) {
+			}
+		}
+	}
+
+	/**
+	 * Buffered queries find what topMatches does
+	 */
+	@Test(timeout = 20000)
+	public void testRandom() {
+		Random rand = new Random(49);
+		int n = 3000;
+		String[] words = new String[n];
+		double[] wts = new double[n];
+		for (int i = 0; i < n; i++) {
+			words[i] = Integer.toString(i, 5) + (char) ('a' + rand.nextInt(3)) + (i % 7 == 0 ? "\u00e9\u4e2d" : "");
+			wts[i] = i * 1000 + rand.nextInt(1000);
+		}
+		ResultBuffer results = new ResultBuffer(7);
+		for (BufferedAutocompletor test : engines(words, wts)) {
+			for (int q = 0; q < 200; q++) {
+				String word = words[rand.nextInt(n)];
+				String prefix = word.substring(0, rand.nextInt(word.length() + 1));
+				test.topMatches(new StringBuilder(prefix), results);
+				assertEquals(test.getClass().getName() + " " + prefix, toList(test.topMatches(prefix, 7)),
+						toList(results));
+			}
+		}
+	}
+
+	/**
+	 * Once each engine's heaps, decoders and the buffer have grown, and the
+	 * lazy trie's nodes have been created, queries allocate nothing
+	 */
+	@Test(timeout = 20000)
+	public void testNoAllocation() {
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+		Random rand = new Random(50);
+		int n = 2000;
+		String[] words = new String[n];
+		double[] wts = new double[n];
+		for (int i = 0; i < n; i++) {
+			words[i] = Integer.toString(i, 3) + "\u00e9";
+			wts[i] = rand.nextInt(100000);
+		}
+		StringBuilder[] prefixes = new StringBuilder[100];
+		for (int i = 0; i < prefixes.length; i++) {
+			String word = words[rand.nextInt(n)];
+			prefixes[i] = new StringBuilder(word.substring(0, rand.nextInt(word.length() + 1)));
+		}
+		ResultBuffer results = new ResultBuffer(10);
+		long thread = Thread.currentThread().getId();
+		for (BufferedAutocompletor test : Arrays.<BufferedAutocompletor>asList(new BruteAutocomplete(words, wts),
+				new BinarySearchAutocomplete(words, wts), new BinarySearchAutocomplete(words, wts, 0),
+				new BinarySearchAutocomplete(words, wts, 16), new TrieAutocomplete(words, wts),
+				new TernarySearchAutocomplete(words, wts), new LazyTrieAutocomplete(words, wts))) {
+			for (StringBuilder prefix : prefixes) {
+				test.topMatches(prefix, results);
+			}
+			long bytes = threads.getThreadAllocatedBytes(thread);
+			for (int pass = 0; pass < 10; pass++) {
+				for (StringBuilder prefix : prefixes) {
+					test.topMatches(prefix, results);
+				}
+			}
+			// allow for the counter's own bookkeeping, far below a byte a query
+			assertTrue(test.getClass().getName(), threads.getThreadAllocatedBytes(thread) - bytes < 1000);
+		}
+	}
+}
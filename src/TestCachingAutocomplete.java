@@ -0,0 +1,187 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TestCachingAutocomplete {
+
+	String[] names = { "ape", "app", "ban", "bat", "bee", "car", "cat" };
+	double[] weights = { 6, 4, 2, 3, 5, 7, 1 };
+
+	/**
+	 * A TrieAutocomplete that counts how often it is asked for matches
+	 */
+	public class CountingAutocomplete extends TrieAutocomplete {
+		int calls = 0;
+
+		public CountingAutocomplete(String[] terms, double[] weights) {
+			super(terms, weights);
+		}
+
+		@Override
+		public Iterable<String> topMatches(String prefix, int k) {
+			calls++;
+			return super.topMatches(prefix, k);
+		}
+
+		@Override
+		public String topMatch(String prefix) {
+			calls++;
+			return super.topMatch(prefix);
+		}
+	}
+
+	private String[] iterToArr(Iterable<String> it) {
+		ArrayList<String> list = new ArrayList<String>();
+		for (String s : it)
+			list.add(s);
+		return list.toArray(new String[0]);
+	}
+
+	/**
+	 * Results through the cache match the wrapped Autocompletor, both on the
+	 * first query and on repeats
+	 */
+	@Test(timeout = 10000)
+	public void testSameResults() {
+		Autocompletor trie = new TrieAutocomplete(names, weights);
+		CachingAutocomplete cache = new CachingAutocomplete(new TrieAutocomplete(names, weights), 100);
+		String[] queries = { "", "a", "ap", "b", "ba", "c", "ca", "cat", "d", " " };
+		for (int round = 0; round < 2; round++) {
+			for (String query : queries) {
+				for (int k = 0; k <= 8; k++) {
+					assertArrayEquals("wrong top matches for " + query + " " + k,
+							iterToArr(trie.topMatches(query, k)), iterToArr(cache.topMatches(query, k)));
+				}
+				assertEquals("wrong top match for " + query, trie.topMatch(query), cache.topMatch(query));
+			}
+		}
+		assertEquals(7.0, cache.weightOf("car"), 1E-9);
+	}
+
+	/**
+	 * Smaller k is answered from the entry for a larger k, and a prefix with
+	 * fewer matches than k answers any k
+	 */
+	@Test(timeout = 10000)
+	public void testSmallerKFromLargerK() {
+		CountingAutocomplete trie = new CountingAutocomplete(names, weights);
+		CachingAutocomplete cache = new CachingAutocomplete(trie, 100);
+		cache.topMatches("", 3);
+		assertEquals(1, trie.calls);
+		assertArrayEquals(new String[] { "car", "ape" }, iterToArr(cache.topMatches("", 2)));
+		assertEquals("car", cache.topMatch(""));
+		assertEquals(1, trie.calls);
+		cache.topMatches("", 4);
+		assertEquals(2, trie.calls);
+
+		cache.topMatches("b", 10);
+		assertArrayEquals(new String[] { "bee", "bat", "ban" }, iterToArr(cache.topMatches("b", 50)));
+		assertEquals(3, trie.calls);
+		assertEquals(3, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+		assertEquals(0.5, cache.getHitRate(), 1E-9);
+	}
+
+	/**
+	 * topMatch cannot tell "" the word from no match, so its entry never
+	 * answers topMatches for a larger k
+	 */
+	@Test(timeout = 10000)
+	public void testTopMatchThenTopMatches() {
+		String[] words = { "", "ab", "ac" };
+		double[] wts = { 3, 2, 1 };
+		Autocompletor trie = new TrieAutocomplete(words, wts);
+		CountingAutocomplete counted = new CountingAutocomplete(words, wts);
+		CachingAutocomplete cache = new CachingAutocomplete(counted, 100);
+		assertEquals("", cache.topMatch(""));
+		assertEquals("", cache.topMatch(""));
+		assertEquals(1, counted.calls);
+		assertArrayEquals(iterToArr(trie.topMatches("", 3)), iterToArr(cache.topMatches("", 3)));
+		assertArrayEquals(new String[] { "", "ab" }, iterToArr(cache.topMatches("", 2)));
+		assertEquals("", cache.topMatch("x"));
+		assertArrayEquals(new String[0], iterToArr(cache.topMatches("x", 1)));
+		// a non-empty top match does answer k = 1
+		assertEquals("ab", cache.topMatch("a"));
+		int calls = counted.calls;
+		assertArrayEquals(new String[] { "ab" }, iterToArr(cache.topMatches("a", 1)));
+		assertEquals(calls, counted.calls);
+		assertArrayEquals(new String[] { "ab", "ac" }, iterToArr(cache.topMatches("a", 2)));
+		assertEquals(calls + 1, counted.calls);
+	}
+
+	/**
+	 * When misses on one prefix race, the results for the smaller k do not
+	 * replace those for the larger. The race is staged by a wrapped engine
+	 * that, asked for 2 matches, first has the cache look up 5.
+	 */
+	@Test(timeout = 10000)
+	public void testRacingMisses() {
+		final CachingAutocomplete[] cache = new CachingAutocomplete[1];
+		CountingAutocomplete racing = new CountingAutocomplete(names, weights) {
+			@Override
+			public Iterable<String> topMatches(String prefix, int k) {
+				if (k == 2) {
+					cache[0].topMatches(prefix, 5);
+				}
+				return super.topMatches(prefix, k);
+			}
+		};
+		cache[0] = new CachingAutocomplete(racing, 100);
+		assertArrayEquals(new String[] { "car", "ape" }, iterToArr(cache[0].topMatches("", 2)));
+		assertEquals(2, racing.calls);
+		assertArrayEquals(new String[] { "car", "ape", "bee", "app", "bat" }, iterToArr(cache[0].topMatches("", 5)));
+		assertEquals(2, racing.calls);
+	}
+
+	/**
+	 * The cache never holds more than its capacity, and a prefix queried
+	 * often survives a scan of one-off prefixes even though plain LRU would
+	 * have evicted it between its queries
+	 */
+	@Test(timeout = 10000)
+	public void testEviction() {
+		CachingAutocomplete cache = new CachingAutocomplete(new TrieAutocomplete(names, weights), 10);
+		for (int i = 0; i < 5; i++) {
+			cache.topMatches("ca", 2);
+		}
+		int popularHits = 0;
+		for (int i = 0; i < 1000; i++) {
+			cache.topMatches("x" + i, 2);
+			assertTrue("over capacity", cache.size() <= 10);
+			if (i % 20 == 19) {
+				long hits = cache.getHitCount();
+				cache.topMatches("ca", 2);
+				popularHits += cache.getHitCount() - hits;
+			}
+		}
+		assertTrue(cache.getEvictionCount() >= 980);
+		assertEquals("popular prefix was evicted", 50, popularHits);
+	}
+
+	@Test(timeout = 10000)
+	public void testByteBound() {
+		CachingAutocomplete cache = new CachingAutocomplete(new TrieAutocomplete(names, weights), 2000,
+				CachingAutocomplete.Bound.BYTES);
+		for (int i = 0; i < 1000; i++) {
+			cache.topMatches("prefix number " + i, 5);
+			assertTrue("over capacity", cache.weight() <= 2000);
+		}
+		assertTrue(cache.size() > 0);
+	}
+
+	@Test(timeout = 10000)
+	public void testWarm() {
+		CountingAutocomplete trie = new CountingAutocomplete(names, weights);
+		CachingAutocomplete cache = new CachingAutocomplete(trie, 100);
+		cache.warm(Arrays.asList("a", "b", "c", "a"), 5);
+		assertEquals(0, cache.getHitCount());
+		assertEquals(0, cache.getMissCount());
+		int calls = trie.calls;
+		cache.topMatches("b", 2);
+		assertEquals(calls, trie.calls);
+		assertEquals(1.0, cache.getHitRate(), 1E-9);
+	}
+}
@@ -0,0 +1,232 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestDiskAutocomplete {
+
+	String[] names = { "ape", "app", "ban", "bat", "bee", "car", "cat" };
+	double[] weights = { 6, 4, 2, 3, 5, 7, 1 };
+
+	public Autocompletor getInstance() {
+		return new DiskAutocomplete(names, weights);
+	}
+
+	private String[] iterToArr(Iterable<String> it) {
+		ArrayList<String> list = new ArrayList<String>();
+		for (String s : it)
+			list.add(s);
+		return list.toArray(new String[0]);
+	}
+
+	/**
+	 * Writes words, which must be sorted, to a temporary index
+	 */
+	private File write(String[] words, double[] ws, int blockSize) throws IOException {
+		File file = File.createTempFile("disk", ".idx");
+		file.deleteOnExit();
+		DiskAutocomplete.Writer writer = new DiskAutocomplete.Writer(file, blockSize);
+		for (int i = 0; i < words.length; i++) {
+			writer.add(words[i], ws[i]);
+		}
+		writer.close();
+		return file;
+	}
+
+	/**
+	 * Tests correctness of topMatch() for a few simple cases
+	 */
+	@Test(timeout = 10000)
+	public void testTopMatch() {
+		Autocompletor test = getInstance();
+		String[] queries = { "", "a", "ap", "b", "ba", "c", "ca", "cat", "d", " " };
+		String[] results = { "car", "ape", "ape", "bee", "bat", "car", "car", "cat", "", "" };
+		for (int i = 0; i < queries.length; i++) {
+			assertEquals("wrong top match for " + queries[i], results[i], test.topMatch(queries[i]));
+		}
+	}
+
+	/**
+	 * Tests correctness of topKMatches() for a few simple cases
+	 */
+	@Test(timeout = 10000)
+	public void testTopKMatches() {
+		Autocompletor test = getInstance();
+		String[] queries = { "", "", "", "", "a", "ap", "b", "ba", "d", "car" };
+		int[] ks = { 8, 1, 2, 3, 1, 1, 2, 2, 100, 0 };
+		String[][] results = { { "car", "ape", "bee", "app", "bat", "ban", "cat" }, { "car" }, { "car", "ape" },
+				{ "car", "ape", "bee" }, { "ape" }, { "ape" }, { "bee", "bat" }, { "bat", "ban" }, {}, {} };
+		for (int i = 0; i < queries.length; i++) {
+			assertArrayEquals("wrong top matches for " + queries[i] + " " + ks[i], results[i],
+					iterToArr(test.topMatches(queries[i], ks[i])));
+		}
+	}
+
+	/**
+	 * Words that are prefixes of other words, the empty word and repeated
+	 * words, for which the last weight counts
+	 */
+	@Test(timeout = 10000)
+	public void testPrefixWords() {
+		String[] words = { "a", "ab", "abc", "", "abc", "b" };
+		double[] ws = { 1, 5, 2, 3, 4, 0 };
+		Autocompletor test = new DiskAutocomplete(words, ws);
+		assertArrayEquals(new String[] { "ab", "abc", "", "a", "b" }, iterToArr(test.topMatches("", 10)));
+		assertArrayEquals(new String[] { "ab", "abc", "a" }, iterToArr(test.topMatches("a", 10)));
+		assertArrayEquals(new String[] { "abc" }, iterToArr(test.topMatches("abc", 10)));
+		assertEquals("ab", test.topMatch("a"));
+		assertEquals(4, test.weightOf("abc"), 0);
+		assertEquals(3, test.weightOf(""), 0);
+		assertEquals(0, test.weightOf("abcd"), 0);
+		assertEquals(0, test.weightOf("x"), 0);
+	}
+
+	/**
+	 * Agrees with BruteAutocomplete with small blocks spread over many mapped
+	 * segments and a page cache smaller than the index
+	 */
+	/**
+	 * The temporary index is deleted once mapped, and queries still read it
+	 */
+	@Test(timeout = 10000)
+	public void testTemporaryDeleted() throws IOException {
+		DiskAutocomplete test = (DiskAutocomplete) getInstance();
+		assertFalse(test.getFile().getPath(), test.getFile().exists());
+		assertArrayEquals(new String[] { "bee", "bat" }, iterToArr(test.topMatches("b", 2)));
+		test.close();
+	}
+
+	@Test(timeout = 10000)
+	public void testMatchesBrute() throws IOException {
+		Random random = new Random(45);
+		char[] alphabet = { 'a', 'b', 'Z', ',', ' ', '\u00e9', '\u4e2d', '\uffff' };
+		int n = 3000;
+		LinkedHashSet<String> terms = new LinkedHashSet<String>();
+		while (terms.size() < n) {
+			StringBuilder sb = new StringBuilder();
+			int length = 1 + random.nextInt(6);
+			for (int j = 0; j < length; j++) {
+				sb.append(alphabet[random.nextInt(alphabet.length)]);
+			}
+			terms.add(sb.toString());
+		}
+		String[] words = terms.toArray(new String[0]);
+		// distinct weights, so ties cannot be ordered differently
+		double[] ws = new double[n];
+		for (int i = 0; i < n; i++) {
+			ws[i] = (i * 7919) % n;
+		}
+		Autocompletor brute = new BruteAutocomplete(words, ws);
+		String[] sorted = words.clone();
+		Arrays.sort(sorted);
+		double[] sortedWeights = new double[n];
+		for (int i = 0; i < n; i++) {
+			sortedWeights[i] = brute.weightOf(sorted[i]);
+		}
+		for (int blockSize : new int[] { 1, 7, 64 }) {
+			DiskAutocomplete test = new DiskAutocomplete(write(sorted, sortedWeights, blockSize), 16, 512);
+			assertEquals(n, test.size());
+			assertTrue(test.getSegmentCount() > 1);
+			for (int i = 0; i < 200; i++) {
+				String word = words[random.nextInt(n)];
+				String prefix = word.substring(0, random.nextInt(word.length() + 1));
+				int k = 1 + random.nextInt(20);
+				assertArrayEquals(prefix + " " + k, iterToArr(brute.topMatches(prefix, k)),
+						iterToArr(test.topMatches(prefix, k)));
+				assertEquals(prefix, brute.topMatch(prefix), test.topMatch(prefix));
+				assertEquals(word, brute.weightOf(word), test.weightOf(word), 0);
+			}
+			test.close();
+		}
+	}
+
+	/**
+	 * A query decodes only the blocks that can still change its top k, and
+	 * decoded blocks are found in the cache the next time
+	 */
+	@Test(timeout = 10000)
+	public void testBlocksRead() throws IOException {
+		int n = 1000;
+		String[] words = new String[n];
+		double[] ws = new double[n];
+		for (int i = 0; i < n; i++) {
+			words[i] = String.format("w%04d", i);
+			ws[i] = i == 500 ? 2000 : i;
+		}
+		DiskAutocomplete test = new DiskAutocomplete(write(words, ws, 10), 4);
+		assertEquals(100, test.getBlockCount());
+		assertEquals(1, test.getSegmentCount());
+		assertEquals(0, test.getMappedSegmentCount());
+		assertArrayEquals(new String[] { "w0500", "w0999", "w0998" }, iterToArr(test.topMatches("", 3)));
+		assertEquals(2, test.getCacheMisses());
+		assertEquals(1, test.getMappedSegmentCount());
+		test.topMatches("", 3);
+		assertEquals(2, test.getCacheMisses());
+		assertEquals(2, test.getCacheHits());
+		assertEquals("w0129", test.topMatch("w012"));
+		assertEquals(123, test.weightOf("w0123"), 0);
+		test.close();
+	}
+
+	/**
+	 * An aborted Writer leaves neither the index nor its directory spools
+	 */
+	@Test(timeout = 10000)
+	public void testAbort() throws IOException {
+		File directory = File.createTempFile("disk", "");
+		directory.delete();
+		assertTrue(directory.mkdir());
+		File file = new File(directory, "aborted.idx");
+		DiskAutocomplete.Writer writer = new DiskAutocomplete.Writer(file, 4);
+		for (int i = 0; i < 100; i++) {
+			writer.add(String.format("w%03d", i), i);
+		}
+		writer.abort();
+		assertEquals(Arrays.asList(), Arrays.asList(directory.list()));
+		assertTrue(directory.delete());
+	}
+
+	@Test(timeout = 10000)
+	public void testExceptions() throws IOException {
+		File file = File.createTempFile("disk", ".idx");
+		file.deleteOnExit();
+		DiskAutocomplete.Writer writer = new DiskAutocomplete.Writer(file, 4);
+		writer.add("b", 1);
+		try {
+			writer.add("a", 1);
+			assertTrue("unsorted word accepted", false);
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			writer.add("b", 2);
+			assertTrue("duplicate word accepted", false);
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			writer.add("c", -1);
+			assertTrue("negative weight accepted", false);
+		} catch (IllegalArgumentException e) {
+		}
+		writer.close();
+		assertEquals(1, new DiskAutocomplete(file, 0).size());
+		try {
+			new DiskAutocomplete(File.createTempFile("disk", ".txt"), 0);
+			assertTrue("empty file accepted", false);
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			new DiskAutocomplete(null, weights);
+			assertTrue("null terms accepted", false);
+		} catch (NullPointerException e) {
+		}
+	}
+}
@@ -0,0 +1,137 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestExternalIndexBuilder {
+
+	private String[] iterToArr(Iterable<String> it) {
+		ArrayList<String> list = new ArrayList<String>();
+		for (String s : it)
+			list.add(s);
+		return list.toArray(new String[0]);
+	}
+
+	private File write(String[] terms, double[] weights) throws IOException {
+		File file = File.createTempFile("dictionary", ".txt");
+		file.deleteOnExit();
+		PrintWriter out = new PrintWriter(file, Dictionary.CHARSET);
+		out.println(terms.length);
+		for (int i = 0; i < terms.length; i++) {
+			out.println(weights[i] + "\t" + terms[i]);
+		}
+		out.close();
+		return file;
+	}
+
+	private File index() throws IOException {
+		File file = File.createTempFile("index", ".idx");
+		file.deleteOnExit();
+		return file;
+	}
+
+	/**
+	 * With memory for a few hundred terms, the input is split into many runs
+	 * merged in several passes, and the index agrees with the in-memory
+	 * engines, the last weight of a repeated word included
+	 */
+	@Test(timeout = 20000)
+	public void testManyRuns() throws IOException {
+		Random random = new Random(46);
+		int n = 20000;
+		String[] terms = new String[n];
+		double[] weights = new double[n];
+		for (int i = 0; i < n; i++) {
+			// about a third of the words repeat
+			terms[i] = Integer.toString(random.nextInt(2 * n / 3), 7);
+			weights[i] = random.nextInt(1000000);
+		}
+		ExternalIndexBuilder builder = new ExternalIndexBuilder(ExternalIndexBuilder.MIN_MEMORY, 16, null);
+		File index = index();
+		builder.build(write(terms, weights), false, index);
+		assertEquals(n, builder.getTermsRead());
+		assertTrue(builder.getRunCount() > 10);
+		assertTrue(builder.getMergePasses() > 1);
+
+		Autocompletor expected = new TrieAutocomplete(terms, weights);
+		DiskAutocomplete test = new DiskAutocomplete(index, 64);
+		assertEquals(builder.getTermsWritten(), test.size());
+		for (int i = 0; i < 300; i++) {
+			String word = terms[random.nextInt(n)];
+			String prefix = word.substring(0, random.nextInt(word.length() + 1));
+			assertEquals(word, expected.weightOf(word), test.weightOf(word), 0);
+			// compare weights, as words of equal weight may be in any order
+			double[] want = weightsOf(expected, expected.topMatches(prefix, 10));
+			double[] got = weightsOf(test, test.topMatches(prefix, 10));
+			assertArrayEquals(prefix, want, got, 0);
+		}
+		test.close();
+	}
+
+	private double[] weightsOf(Autocompletor auto, Iterable<String> words) {
+		ArrayList<Double> list = new ArrayList<Double>();
+		for (String word : words) {
+			list.add(auto.weightOf(word));
+		}
+		double[] ret = new double[list.size()];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = list.get(i);
+		}
+		return ret;
+	}
+
+	@Test(timeout = 10000)
+	public void testSmall() throws IOException {
+		String[] terms = { "Cat", "ape", "app", "car", "ape" };
+		double[] weights = { 1, 6, 4, 7, 2 };
+		ExternalIndexBuilder builder = new ExternalIndexBuilder(1 << 20, 2, null);
+		File index = index();
+		builder.build(write(terms, weights), true, index);
+		assertEquals(1, builder.getRunCount());
+		assertEquals(1, builder.getMergePasses());
+		assertEquals(4, builder.getTermsWritten());
+		DiskAutocomplete test = new DiskAutocomplete(index, 0);
+		assertArrayEquals(new String[] { "car", "app", "ape", "cat" }, iterToArr(test.topMatches("", 10)));
+		assertEquals(2, test.weightOf("ape"), 0);
+		test.close();
+
+		builder.build(write(new String[0], new double[0]), false, index);
+		test = new DiskAutocomplete(index, 0);
+		assertEquals(0, test.size());
+		assertEquals("", test.topMatch(""));
+		test.close();
+	}
+
+	@Test(timeout = 10000)
+	public void testExceptions() throws IOException {
+		try {
+			new ExternalIndexBuilder(ExternalIndexBuilder.MIN_MEMORY - 1, 16, null);
+			assertTrue("too little memory accepted", false);
+		} catch (IllegalArgumentException e) {
+		}
+		ExternalIndexBuilder builder = new ExternalIndexBuilder(ExternalIndexBuilder.MIN_MEMORY, 16, null);
+		try {
+			builder.build(write(new String[] { "a" }, new double[] { -1 }), false, index());
+			assertTrue("negative weight accepted", false);
+		} catch (IllegalArgumentException e) {
+		}
+		File shortFile = File.createTempFile("dictionary", ".txt");
+		shortFile.deleteOnExit();
+		PrintWriter out = new PrintWriter(shortFile, Dictionary.CHARSET);
+		out.println(3);
+		out.println("1\ta");
+		out.close();
+		try {
+			builder.build(shortFile, false, index());
+			assertTrue("missing terms accepted", false);
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
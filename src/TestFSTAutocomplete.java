@@ -0,0 +1,179 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestFSTAutocomplete {
+
+	String[] names = { "ape", "app", "ban", "bat", "bee", "car", "cat" };
+	double[] weights = { 6, 4, 2, 3, 5, 7, 1 };
+
+	public Autocompletor getInstance() {
+		return new FSTAutocomplete(names, weights);
+	}
+
+	private String[] iterToArr(Iterable<String> it) {
+		ArrayList<String> list = new ArrayList<String>();
+		for (String s : it)
+			list.add(s);
+		return list.toArray(new String[0]);
+	}
+
+	/**
+	 * Tests correctness of topMatch() for a few simple cases
+	 */
+	@Test(timeout = 10000)
+	public void testTopMatch() {
+		Autocompletor test = getInstance();
+		String[] queries = { "", "a", "ap", "b", "ba", "c", "ca", "cat", "d", " " };
+		String[] results = { "car", "ape", "ape", "bee", "bat", "car", "car", "cat", "", "" };
+		for (int i = 0; i < queries.length; i++) {
+			assertEquals("wrong top match for " + queries[i], results[i], test.topMatch(queries[i]));
+		}
+	}
+
+	/**
+	 * Tests correctness of topKMatches() for a few simple cases
+	 */
+	@Test(timeout = 10000)
+	public void testTopKMatches() {
+		Autocompletor test = getInstance();
+		String[] queries = { "", "", "", "", "a", "ap", "b", "ba", "d", "car" };
+		int[] ks = { 8, 1, 2, 3, 1, 1, 2, 2, 100, 0 };
+		String[][] results = { { "car", "ape", "bee", "app", "bat", "ban", "cat" }, { "car" }, { "car", "ape" },
+				{ "car", "ape", "bee" }, { "ape" }, { "ape" }, { "bee", "bat" }, { "bat", "ban" }, {}, {} };
+		for (int i = 0; i < queries.length; i++) {
+			assertArrayEquals("wrong top matches for " + queries[i] + " " + ks[i], results[i],
+					iterToArr(test.topMatches(queries[i], ks[i])));
+		}
+	}
+
+	/**
+	 * Words that are prefixes of other words, the empty word and repeated
+	 * words, for which the last weight counts
+	 */
+	@Test(timeout = 10000)
+	public void testPrefixWords() {
+		String[] words = { "a", "ab", "abc", "", "abc", "b" };
+		double[] ws = { 1, 5, 2, 3, 4, 0 };
+		Autocompletor test = new FSTAutocomplete(words, ws);
+		assertArrayEquals(new String[] { "ab", "abc", "", "a", "b" }, iterToArr(test.topMatches("", 10)));
+		assertArrayEquals(new String[] { "ab", "abc", "a" }, iterToArr(test.topMatches("a", 10)));
+		assertArrayEquals(new String[] { "abc" }, iterToArr(test.topMatches("abc", 10)));
+		assertEquals("ab", test.topMatch("a"));
+		assertEquals("abc", test.topMatch("abc"));
+		assertEquals("b", test.topMatch("b"));
+		assertEquals(4, test.weightOf("abc"), 0);
+		assertEquals(3, test.weightOf(""), 0);
+		assertEquals(0, test.weightOf("abcd"), 0);
+		assertEquals(0, test.weightOf("x"), 0);
+	}
+
+	/**
+	 * Agrees with BruteAutocomplete on random words over a sparse alphabet
+	 */
+	@Test(timeout = 10000)
+	public void testMatchesBrute() {
+		Random random = new Random(42);
+		char[] alphabet = { 'a', 'b', 'Z', ',', ' ', '\u00e9', '\u4e2d', '\uffff' };
+		int n = 2000;
+		LinkedHashSet<String> terms = new LinkedHashSet<String>();
+		while (terms.size() < n) {
+			StringBuilder sb = new StringBuilder();
+			int length = 1 + random.nextInt(6);
+			for (int j = 0; j < length; j++) {
+				sb.append(alphabet[random.nextInt(alphabet.length)]);
+			}
+			terms.add(sb.toString());
+		}
+		String[] words = terms.toArray(new String[0]);
+		// distinct weights, so ties cannot be ordered differently
+		double[] ws = new double[n];
+		for (int i = 0; i < n; i++) {
+			ws[i] = (i * 7919) % n;
+		}
+		Autocompletor test = new FSTAutocomplete(words, ws);
+		Autocompletor brute = new BruteAutocomplete(words, ws);
+		for (int i = 0; i < 200; i++) {
+			String word = words[random.nextInt(n)];
+			String prefix = word.substring(0, random.nextInt(word.length() + 1));
+			int k = 1 + random.nextInt(20);
+			assertArrayEquals(prefix + " " + k, iterToArr(brute.topMatches(prefix, k)),
+					iterToArr(test.topMatches(prefix, k)));
+			assertEquals(prefix, brute.topMatch(prefix), test.topMatch(prefix));
+			assertEquals(word, brute.weightOf(word), test.weightOf(word), 0);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testConstructorExceptions() {
+		try {
+			new FSTAutocomplete(null, weights);
+			assertTrue("null terms accepted", false);
+		} catch (NullPointerException e) {
+		}
+		try {
+			new FSTAutocomplete(names, new double[] { 1 });
+			assertTrue("lengths differ", false);
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			new FSTAutocomplete(new String[] { "a" }, new double[] { -1 });
+			assertTrue("negative weight accepted", false);
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * Terms with the same ending share its states whatever their weights,
+	 * where a trie would need 43 nodes
+	 */
+	@Test(timeout = 10000)
+	public void testSuffixSharing() {
+		String[] words = { "Paris, France", "Lyon, France", "Nice, France", "Lyon, Texas" };
+		FSTAutocomplete test = new FSTAutocomplete(words, new double[] { 3, 2, 1, 5 });
+		assertEquals(27, test.stateCount());
+		assertArrayEquals(new String[] { "Lyon, Texas", "Paris, France", "Lyon, France", "Nice, France" },
+				iterToArr(test.topMatches("", 4)));
+		assertArrayEquals(new String[] { "Lyon, Texas", "Lyon, France" }, iterToArr(test.topMatches("Lyon", 4)));
+		assertEquals("Paris, France", test.topMatch("P"));
+		assertEquals(1, test.weightOf("Nice, France"), 0);
+		assertEquals(0, test.weightOf("Nice, Franc"), 0);
+	}
+
+	/**
+	 * Completed terms come off the queue in order, so the search stops after
+	 * the k-th
+	 */
+	@Test(timeout = 10000)
+	public void testQueryStats() {
+		FSTAutocomplete test = new FSTAutocomplete(names, weights);
+		QueryStatsCollector collector = new QueryStatsCollector();
+		test.setStatsCollector(collector);
+		test.topMatches("", 8);
+		test.topMatches("", 1);
+		test.setStatsCollector(null);
+		QueryStats all = collector.getWorstQueries().get(0);
+		assertEquals("", all.getPrefix());
+		assertEquals(7, all.get(QueryStats.Counter.RANGE_SCANNED));
+		assertEquals(0, all.get(QueryStats.Counter.EARLY_TERMINATIONS));
+		QueryStats one = collector.getWorstQueries().get(1);
+		assertEquals(1, one.get(QueryStats.Counter.RANGE_SCANNED));
+		assertEquals(1, one.get(QueryStats.Counter.EARLY_TERMINATIONS));
+		// straight down the cheapest path: the start, c, a, r and the result
+		assertEquals(5, one.get(QueryStats.Counter.NODES_POPPED));
+		// queries that find nothing are recorded too
+		collector = new QueryStatsCollector();
+		test.setStatsCollector(collector);
+		test.topMatches("zz", 3);
+		test.topMatches("a", 0);
+		test.topMatch("zz");
+		test.setStatsCollector(null);
+		assertEquals(3, collector.getLatencies().count());
+	}
+}
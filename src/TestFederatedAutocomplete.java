@@ -0,0 +1,162 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestFederatedAutocomplete {
+
+	Autocompletor places = new TrieAutocomplete(new String[] { "paris", "perth", "porto", "pune" },
+			new double[] { 2000000, 1900000, 230000, 3100000 });
+	Autocompletor people = new TrieAutocomplete(new String[] { "paul", "peter", "pia", "paris", "zed" },
+			new double[] { 40, 30, 5, 10, 50 });
+
+	private String[] iterToArr(Iterable<String> it) {
+		ArrayList<String> list = new ArrayList<String>();
+		for (String s : it)
+			list.add(s);
+		return list.toArray(new String[0]);
+	}
+
+	/**
+	 * Weights are compared after scaling each source so its heaviest word
+	 * scores 1, and a word in both sources scores its best
+	 */
+	@Test(timeout = 10000)
+	public void testNormalized() {
+		FederatedAutocomplete test = new FederatedAutocomplete(Arrays.asList(
+				new FederatedAutocomplete.Source("places", places, 10, 1000),
+				new FederatedAutocomplete.Source("people", people, 10, 1000)));
+		try {
+			// pune 1, paul .8, paris .65 and .2, perth .61, peter .6
+			assertArrayEquals(new String[] { "pune", "paul", "paris", "perth", "peter", "pia" },
+					iterToArr(test.topMatches("p", 6)));
+			assertArrayEquals(new String[] { "paul", "paris" }, iterToArr(test.topMatches("pa", 2)));
+			assertEquals("perth", test.topMatch("pe"));
+			assertEquals("", test.topMatch("x"));
+			assertEquals(0, iterToArr(test.topMatches("p", 0)).length);
+			assertEquals(2000000 / 3100000.0, test.weightOf("paris"), 1E-9);
+			assertEquals(0, test.weightOf("rome"), 0);
+		} finally {
+			test.close();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testQuota() {
+		FederatedAutocomplete test = new FederatedAutocomplete(Arrays.asList(
+				new FederatedAutocomplete.Source("places", places, 1, 1, 1000),
+				new FederatedAutocomplete.Source("people", people, 1E6, 2, 1000)));
+		try {
+			// people's scale puts them first, but only two of them
+			assertArrayEquals(new String[] { "paul", "peter", "pune" }, iterToArr(test.topMatches("p", 10)));
+		} finally {
+			test.close();
+		}
+	}
+
+	/**
+	 * A source slower than its deadline is left out, without holding the
+	 * query up for longer than the deadline
+	 */
+	@Test(timeout = 10000)
+	public void testDeadline() {
+		Autocompletor slow = new Autocompletor() {
+			public Iterable<String> topMatches(String prefix, int k) {
+				try {
+					Thread.sleep(5000);
+				} catch (InterruptedException e) {
+					// cancelled
+				}
+				return Arrays.asList("pxx");
+			}
+
+			public String topMatch(String prefix) {
+				return "pxx";
+			}
+
+			public double weightOf(String term) {
+				return term.equals("pxx") ? 1 : 0;
+			}
+		};
+		FederatedAutocomplete.Source slowSource = new FederatedAutocomplete.Source("slow", slow, 1E9, 10, 50);
+		FederatedAutocomplete test = new FederatedAutocomplete(Arrays.asList(
+				new FederatedAutocomplete.Source("places", places, 10, 2000), slowSource));
+		try {
+			long start = System.nanoTime();
+			assertArrayEquals(new String[] { "pune", "paris" }, iterToArr(test.topMatches("p", 2)));
+			long millis = (System.nanoTime() - start) / 1000000;
+			assertTrue("took " + millis + "ms", millis < 2000);
+			assertEquals(1, slowSource.getTimeouts());
+			assertEquals(0, test.getSources().get(0).getTimeouts());
+		} finally {
+			test.close();
+		}
+	}
+
+	/**
+	 * A source whose engine throws is left out and counted, and the other
+	 * sources still answer
+	 */
+	@Test(timeout = 10000)
+	public void testFailure() throws InterruptedException {
+		Autocompletor broken = new TrieAutocomplete(new String[] { "pxx" }, new double[] { 1 }) {
+			@Override
+			public Iterable<String> topMatches(String prefix, int k) {
+				throw new IllegalStateException("index unavailable");
+			}
+		};
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		Autocompletor slow = new TrieAutocomplete(new String[] { "pyy" }, new double[] { 1 }) {
+			@Override
+			public Iterable<String> topMatches(String prefix, int k) {
+				try {
+					Thread.sleep(5000);
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+				}
+				return super.topMatches(prefix, k);
+			}
+		};
+		FederatedAutocomplete.Source brokenSource = new FederatedAutocomplete.Source("broken", broken, 1E9, 10,
+				1000);
+		FederatedAutocomplete.Source slowSource = new FederatedAutocomplete.Source("slow", slow, 1E9, 10, 50);
+		FederatedAutocomplete test = new FederatedAutocomplete(Arrays.asList(brokenSource,
+				new FederatedAutocomplete.Source("places", places, 10, 2000), slowSource));
+		try {
+			assertArrayEquals(new String[] { "pune", "paris" }, iterToArr(test.topMatches("p", 2)));
+			assertEquals(1, brokenSource.getFailures());
+			assertEquals(0, brokenSource.getTimeouts());
+			assertEquals(1, slowSource.getTimeouts());
+			assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+			assertEquals("pune", test.topMatch("p"));
+			assertEquals(2, brokenSource.getFailures());
+		} finally {
+			test.close();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testConstructorExceptions() {
+		try {
+			new FederatedAutocomplete.Source("places", places, 0, 1, 1);
+			assertTrue("zero scale accepted", false);
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			new FederatedAutocomplete.Source("places", places, 1, 1, 0);
+			assertTrue("zero deadline accepted", false);
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			new FederatedAutocomplete.Source("places", null, 1, 1);
+			assertTrue("null engine accepted", false);
+		} catch (NullPointerException e) {
+		}
+	}
+}
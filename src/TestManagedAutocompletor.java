@@ -0,0 +1,136 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestManagedAutocompletor {
+
+	private static void write(File file, String[] terms, double[] weights) throws IOException {
+		PrintWriter out = new PrintWriter(file, Dictionary.CHARSET);
+		out.println(terms.length);
+		for (int i = 0; i < terms.length; i++) {
+			out.println(weights[i] + "\t" + terms[i]);
+		}
+		out.close();
+	}
+
+	@Test(timeout = 10000)
+	public void testReloadAndUpdate() throws Exception {
+		File file = File.createTempFile("managed", ".txt");
+		file.deleteOnExit();
+		write(file, new String[] { "car", "cat" }, new double[] { 2, 1 });
+		ManagedAutocompletor test = new ManagedAutocompletor(file, false, "TrieAutocomplete");
+		try {
+			final AtomicInteger swaps = new AtomicInteger();
+			final AtomicInteger failures = new AtomicInteger();
+			test.addListener(new ManagedAutocompletor.Listener() {
+				public void swapped(Autocompletor previous, Autocompletor current, Dictionary dictionary,
+						long buildNanos) {
+					swaps.incrementAndGet();
+				}
+
+				public void failed(Exception e) {
+					failures.incrementAndGet();
+				}
+			});
+			assertEquals("car", test.topMatch("ca"));
+			Autocompletor first = test.getCurrent();
+
+			write(file, new String[] { "car", "cat", "cab" }, new double[] { 2, 1, 3 });
+			Autocompletor second = test.reload().get();
+			assertSame(second, test.getCurrent());
+			assertTrue(first != second);
+			assertEquals("cab", test.topMatch("ca"));
+			// the old engine still answers as before
+			assertEquals("car", first.topMatch("ca"));
+
+			HashMap<String, Double> changes = new HashMap<String, Double>();
+			changes.put("cat", 5.0);
+			test.updateWeights(changes);
+			changes = new HashMap<String, Double>();
+			changes.put("cow", 9.0);
+			test.updateWeights(changes).get();
+			assertEquals("cow", test.topMatch(""));
+			assertEquals("cat", test.topMatch("ca"));
+			assertEquals(4, test.getDictionary().size());
+			assertEquals(3, swaps.get());
+			assertEquals(3, test.getSwapCount());
+			assertTrue(test.getLastBuildNanos() > 0);
+
+			new PrintWriter(file).close();
+			try {
+				test.reload().get();
+				fail("Reloaded an empty file");
+			} catch (ExecutionException e) {
+				// expected
+			}
+			assertEquals(1, failures.get());
+			assertEquals("cow", test.topMatch(""));
+		} finally {
+			test.close();
+		}
+	}
+
+	/**
+	 * An engine chosen automatically is chosen once; a rebuild builds the
+	 * same class again
+	 */
+	@Test(timeout = 30000)
+	public void testAutomatic() throws Exception {
+		ManagedAutocompletor test = new ManagedAutocompletor(
+				new Dictionary(new String[] { "car", "cat" }, new double[] { 2, 1 }), AutocompletorFactory.AUTOMATIC);
+		try {
+			AutocompletorFactory.Choice choice = test.getChoice();
+			assertSame(choice.getEngine(), test.getCurrent());
+			Autocompletor second = test
+					.rebuild(new Dictionary(new String[] { "car", "cat", "cab" }, new double[] { 2, 1, 3 })).get();
+			assertSame(choice, test.getChoice());
+			assertEquals(choice.getEngine().getClass(), second.getClass());
+			assertEquals("cab", test.topMatch("ca"));
+		} finally {
+			test.close();
+		}
+		test = new ManagedAutocompletor(new Dictionary(new String[] { "car" }, new double[] { 2 }),
+				"TrieAutocomplete");
+		assertNull(test.getChoice());
+		test.close();
+	}
+
+	@Test(timeout = 10000)
+	public void testWatch() throws Exception {
+		File file = File.createTempFile("managed", ".txt");
+		file.deleteOnExit();
+		write(file, new String[] { "ape" }, new double[] { 1 });
+		ManagedAutocompletor test = new ManagedAutocompletor(file, false, "BinarySearchAutocomplete");
+		try {
+			final CountDownLatch swapped = new CountDownLatch(1);
+			test.addListener(new ManagedAutocompletor.Listener() {
+				public void swapped(Autocompletor previous, Autocompletor current, Dictionary dictionary,
+						long buildNanos) {
+					swapped.countDown();
+				}
+
+				public void failed(Exception e) {
+				}
+			});
+			test.watch(5);
+			write(file, new String[] { "ape", "app" }, new double[] { 1, 2 });
+			assertTrue(swapped.await(5, TimeUnit.SECONDS));
+			assertEquals("app", test.topMatch("a"));
+		} finally {
+			test.close();
+		}
+	}
+}
@@ -0,0 +1,100 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestPersonalizedAutocomplete {
+
+	String[] names = { "ape", "app", "ban", "bat", "bee", "car", "cat" };
+	double[] weights = { 6, 4, 2, 3, 5, 7, 1 };
+
+	private String[] iterToArr(Iterable<String> it) {
+		ArrayList<String> list = new ArrayList<String>();
+		for (String s : it)
+			list.add(s);
+		return list.toArray(new String[0]);
+	}
+
+	@Test(timeout = 10000)
+	public void testBoostedFirst() {
+		UserBoosts boosts = new UserBoosts(10, 1000, 8);
+		PersonalizedAutocomplete test = new PersonalizedAutocomplete(new TrieAutocomplete(names, weights), boosts);
+		assertEquals("car", test.topMatch(""));
+		boosts.select("cat", 0);
+		// 1 + 10 beats 7
+		assertArrayEquals(new String[] { "cat", "car", "ape" }, iterToArr(test.topMatches("", 3, 0)));
+		// after two half-lives the boost is 2.5 and cat scores 3.5
+		assertArrayEquals(new String[] { "car", "ape", "bee", "app", "cat" },
+				iterToArr(test.topMatches("", 5, 2000)));
+		assertArrayEquals(new String[] { "cat" }, iterToArr(test.topMatches("cat", 5, 2000)));
+		assertArrayEquals(new String[] {}, iterToArr(test.topMatches("d", 5, 0)));
+	}
+
+	@Test(timeout = 10000)
+	public void testBoostDecayAndCapacity() {
+		UserBoosts boosts = new UserBoosts(8, 100, 2);
+		boosts.select("a", 0);
+		boosts.select("a", 100);
+		assertEquals(12, boosts.boost("a", 100), 1E-9);
+		boosts.select("b", 100);
+		// "b" is weaker than "a", so "c" evicts it
+		boosts.select("c", 200);
+		assertEquals(2, boosts.size());
+		assertEquals(0, boosts.boost("b", 200), 0);
+		assertEquals(6, boosts.boost("a", 200), 1E-9);
+		assertEquals(1, boosts.matches("c", 200).size());
+	}
+
+	/**
+	 * Agrees with scoring every match, over both a paged and an unpaged
+	 * global engine
+	 */
+	@Test(timeout = 10000)
+	public void testMatchesExhaustive() {
+		Random random = new Random(9);
+		int n = 3000;
+		String[] words = new String[n];
+		double[] ws = new double[n];
+		for (int i = 0; i < n; i++) {
+			words[i] = Integer.toString(i, 4);
+			ws[i] = (i * 7919) % n;
+		}
+		UserBoosts boosts = new UserBoosts(1000, 1000000, 50);
+		for (int i = 0; i < 200; i++) {
+			boosts.select(words[random.nextInt(n)], i);
+		}
+		Autocompletor[] globals = { new TrieAutocomplete(words, ws), new BinarySearchAutocomplete(words, ws),
+				new TernarySearchAutocomplete(words, ws) };
+		for (Autocompletor global : globals) {
+			PersonalizedAutocomplete test = new PersonalizedAutocomplete(global, boosts);
+			for (String prefix : new String[] { "", "1", "23", "301", "3333" }) {
+				final double[] scores = new double[n];
+				ArrayList<Integer> matches = new ArrayList<Integer>();
+				for (int i = 0; i < n; i++) {
+					if (words[i].startsWith(prefix)) {
+						scores[i] = ws[i] + boosts.boost(words[i], 200);
+						matches.add(i);
+					}
+				}
+				Integer[] order = matches.toArray(new Integer[0]);
+				Arrays.sort(order, new Comparator<Integer>() {
+					public int compare(Integer i, Integer j) {
+						return Double.compare(scores[j], scores[i]);
+					}
+				});
+				int k = 10;
+				String[] expected = new String[Math.min(k, order.length)];
+				for (int i = 0; i < expected.length; i++) {
+					expected[i] = words[order[i]];
+				}
+				assertArrayEquals(global.getClass() + " " + prefix, expected,
+						iterToArr(test.topMatches(prefix, k, 200)));
+			}
+		}
+	}
+}
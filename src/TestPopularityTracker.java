@@ -0,0 +1,151 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestPopularityTracker {
+
+	/**
+	 * Finds the popular words among many rare ones, without underestimating
+	 */
+	@Test(timeout = 10000)
+	public void testHeavyHitters() {
+		PopularityTracker tracker = new PopularityTracker(1024, 4, 5, Long.MAX_VALUE / 4);
+		Random random = new Random(43);
+		HashMap<String, Integer> counts = new HashMap<String, Integer>();
+		for (int i = 0; i < 50000; i++) {
+			// words 0..4 are a quarter of the events, 100000 others the rest
+			String word = random.nextInt(4) == 0 ? "hot" + random.nextInt(5) : "cold" + random.nextInt(100000);
+			tracker.record(word, 0);
+			Integer count = counts.get(word);
+			counts.put(word, count == null ? 1 : count + 1);
+		}
+		assertEquals(50000, tracker.events());
+		List<Term> top = tracker.topTerms(0);
+		assertEquals(5, top.size());
+		for (Term term : top) {
+			assertTrue(term.getWord(), term.getWord().startsWith("hot"));
+		}
+		for (int i = 1; i < top.size(); i++) {
+			assertTrue(top.get(i - 1).getWeight() >= top.get(i).getWeight());
+		}
+		for (Map.Entry<String, Integer> e : counts.entrySet()) {
+			assertTrue(tracker.estimate(e.getKey(), 0) >= e.getValue() - 1E-9);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testDecay() {
+		PopularityTracker tracker = new PopularityTracker(64, 3, 2, 1000);
+		for (int i = 0; i < 8; i++) {
+			tracker.record("old", 0);
+		}
+		tracker.record("new", 3000);
+		assertEquals(1, tracker.estimate("old", 3000), 1E-9);
+		assertEquals(1, tracker.estimate("new", 3000), 1E-9);
+		assertEquals(4, tracker.estimate("old", 1000), 1E-9);
+		// long enough to rescale several times
+		for (long t = 0; t <= 1000000; t += 1000) {
+			tracker.record("new", t);
+		}
+		assertEquals(2, tracker.estimate("new", 1000000), 1E-6);
+		assertEquals("new", tracker.topTerms(1000000).get(0).getWord());
+	}
+
+	/**
+	 * changes reports new and moved estimates once, and words that leave the
+	 * heavy hitters with their last estimate
+	 */
+	@Test(timeout = 10000)
+	public void testChanges() {
+		PopularityTracker tracker = new PopularityTracker(256, 4, 2, 1000000);
+		tracker.record("a", 0);
+		tracker.record("a", 0);
+		tracker.record("b", 0);
+		Map<String, Double> changes = tracker.changes(0.5, 0);
+		assertEquals(2, changes.size());
+		assertEquals(2, changes.get("a"), 1E-9);
+		assertEquals(0, tracker.changes(0.5, 0).size());
+		tracker.record("a", 0);
+		// a moved by a half, not more
+		assertEquals(0, tracker.changes(0.5, 0).size());
+		tracker.record("a", 0);
+		assertEquals(4, tracker.changes(0.5, 0).get("a"), 1E-9);
+		tracker.record("c", 0);
+		tracker.record("c", 0);
+		changes = tracker.changes(0.5, 0);
+		// c pushed b out
+		assertEquals(2, changes.size());
+		assertEquals(2, changes.get("c"), 1E-9);
+		assertEquals(1, changes.get("b"), 1E-9);
+		assertEquals(0, tracker.changes(0.5, 0).size());
+	}
+
+	/**
+	 * Time passing without events moves the estimates too, and changes pushes
+	 * them down
+	 */
+	@Test(timeout = 10000)
+	public void testChangesDecay() {
+		PopularityTracker tracker = new PopularityTracker(256, 4, 2, 1000);
+		tracker.record("a", 0);
+		tracker.record("a", 0);
+		assertEquals(2, tracker.changes(0.1, 0).get("a"), 1E-9);
+		// 2^-0.1 is a 7% fall, less than minChange
+		assertEquals(0, tracker.changes(0.1, 100).size());
+		Map<String, Double> changes = tracker.changes(0.1, 10000);
+		assertEquals(1, changes.size());
+		assertEquals(tracker.estimate("a", 10000), changes.get("a"), 1E-12);
+		assertEquals(2 / 1024.0, changes.get("a"), 1E-12);
+		assertEquals(0, tracker.changes(0.1, 10000).size());
+		// an event 50 half-lives on rescales the counters, not what was pushed
+		tracker.record("b", 50000);
+		changes = tracker.changes(0.1, 50000);
+		assertEquals(2, changes.size());
+		assertEquals(1, changes.get("b"), 1E-9);
+		assertEquals(tracker.estimate("a", 50000), changes.get("a"), 1E-20);
+		assertEquals(0, tracker.changes(0.1, 50000).size());
+	}
+
+	@Test(timeout = 10000)
+	public void testIngester() throws InterruptedException {
+		final List<Map<String, Double>> batches = new ArrayList<Map<String, Double>>();
+		final CountDownLatch pushed = new CountDownLatch(1);
+		PopularityIngester ingester = new PopularityIngester(new PopularityTracker(256, 4, 8, 1000000),
+				new PopularityIngester.Listener() {
+					public void weightsChanged(Map<String, Double> changes) {
+						synchronized (batches) {
+							batches.add(changes);
+						}
+						pushed.countDown();
+					}
+				}, 10, 0, 100);
+		for (int i = 0; i < 20; i++) {
+			assertTrue(ingester.select(i % 2 == 0 ? "car" : "cat"));
+		}
+		assertTrue(pushed.await(5, TimeUnit.SECONDS));
+		ingester.close();
+		assertEquals(false, ingester.select("car"));
+		assertEquals(1, ingester.dropped());
+		assertEquals(20, ingester.getTracker().events());
+		Dictionary dictionary = new Dictionary(new String[] { "car", "bee" }, new double[] { 1, 2 });
+		synchronized (batches) {
+			for (Map<String, Double> batch : batches) {
+				dictionary = dictionary.withWeights(batch);
+			}
+		}
+		assertEquals(3, dictionary.size());
+		Autocompletor auto = dictionary.newAutocompletor("TrieAutocomplete");
+		assertEquals(10, auto.weightOf("car"), 0.01);
+		assertEquals(10, auto.weightOf("cat"), 0.01);
+		assertEquals(2, auto.weightOf("bee"), 0);
+	}
+}
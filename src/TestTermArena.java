@@ -0,0 +1,63 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestTermArena {
+
+	String[] words = { "", "a", "ab", "Z", "\u00e9", "\u4e2d\u6587", "\ud83d\ude00", "\uffff", "ab" };
+
+	@Test(timeout = 10000)
+	public void testRoundTrip() {
+		TermArena arena = new TermArena(words);
+		assertEquals(words.length, arena.size());
+		for (int i = 0; i < words.length; i++) {
+			assertEquals(words[i], arena.word(i));
+		}
+		// 1 + 2 + 1 + 2 + 6 + 6 + 3 + 2
+		assertEquals(23, arena.encodedBytes());
+	}
+
+	/**
+	 * Byte comparisons agree with String.compareTo, surrogates included, and
+	 * prefix tests with String.startsWith
+	 */
+	@Test(timeout = 10000)
+	public void testByteOrder() {
+		TermArena arena = new TermArena(words);
+		for (int i = 0; i < words.length; i++) {
+			for (String other : words) {
+				byte[] key = TermArena.encode(other);
+				assertEquals(words[i] + " " + other, words[i].startsWith(other), arena.startsWith(i, key));
+				assertEquals(words[i].equals(other), arena.matches(i, key));
+				int expected = Integer.signum(new Term.PrefixOrder(other.length()).compare(new Term(words[i], 0),
+						new Term(other, 0)));
+				assertEquals(words[i] + " " + other, expected, Integer.signum(arena.compare(i, key)));
+			}
+		}
+		// a high surrogate alone is a prefix of the pair it starts
+		assertTrue(arena.startsWith(6, TermArena.encode("\uD83D")));
+		assertFalse(arena.startsWith(1, TermArena.encode("b")));
+	}
+
+	@Test(timeout = 10000)
+	public void testSortedLookups() {
+		String[] sorted = { "", "a", "ab", "ab", "abc", "b", "\u4e2d" };
+		TermArena arena = new TermArena(sorted);
+		assertEquals(0, arena.firstIndexOf(""));
+		assertEquals(6, arena.lastIndexOf(""));
+		assertEquals(1, arena.firstIndexOf("a"));
+		assertEquals(4, arena.lastIndexOf("a"));
+		assertEquals(2, arena.indexOf("ab"));
+		assertEquals(-1, arena.indexOf("abd"));
+		assertEquals(-1, arena.firstIndexOf("c"));
+		assertEquals(-1, arena.lastIndexOf("c"));
+		assertEquals(6, arena.indexOf("\u4e2d"));
+	}
+
+	@Test(timeout = 10000, expected = NullPointerException.class)
+	public void testNullWord() {
+		new TermArena(new String[] { "a", null });
+	}
+}
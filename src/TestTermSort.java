@@ -0,0 +1,94 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class TestTermSort {
+
+	/**
+	 * The order Arrays.sort gives indexes, which is stable
+	 */
+	private Integer[] expectedOrder(final String[] words) {
+		Integer[] order = new Integer[words.length];
+		for (int i = 0; i < words.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i, Integer j) {
+				return words[i].compareTo(words[j]);
+			}
+		});
+		return order;
+	}
+
+	private String[] randomWords(Random random, int n, String alphabet, int maxLength) {
+		String[] words = new String[n];
+		for (int i = 0; i < n; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(maxLength + 1);
+			for (int j = 0; j < length; j++) {
+				sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			words[i] = sb.toString();
+		}
+		return words;
+	}
+
+	private void assertOrder(String[] words, int[] order) {
+		Integer[] expected = expectedOrder(words);
+		assertTrue(expected.length == order.length);
+		for (int i = 0; i < order.length; i++) {
+			assertTrue(i + ": " + words[order[i]], expected[i] == order[i]);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testSmall() {
+		String[] words = { "bat", "", "ba", "b", "bat", "a", "", "ab", "\u4e2d", "\u00e9", "Z", "bat" };
+		assertArrayEquals(new int[] { 1, 6, 10, 5, 7, 3, 2, 0, 4, 11, 9, 8 }, TermSort.order(words));
+		assertArrayEquals(new int[0], TermSort.order(new String[0]));
+	}
+
+	/**
+	 * Many repeated words and long shared prefixes, sorted sequentially and on
+	 * a pool
+	 */
+	@Test(timeout = 20000)
+	public void testMatchesArraysSort() {
+		Random random = new Random(5);
+		String[] words = randomWords(random, 3 * TermSort.PARALLEL_THRESHOLD, "ab", 12);
+		for (int i = 0; i < words.length; i += 3) {
+			words[i] = "commonprefix" + words[i];
+		}
+		String[] wide = randomWords(random, 5000, "aZ\u00e9\u4e2d\uffff ,", 6);
+		assertOrder(wide, TermSort.order(wide, null));
+		assertOrder(words, TermSort.order(words, null));
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			assertOrder(words, TermSort.order(words, pool));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testSortTerms() {
+		Term[] terms = { new Term("b", 1), new Term("a", 2), new Term("b", 3), new Term("", 4) };
+		TermSort.sort(terms);
+		double[] weights = new double[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			weights[i] = terms[i].getWeight();
+		}
+		assertArrayEquals(new double[] { 4, 2, 1, 3 }, weights, 0);
+	}
+
+	@Test(timeout = 10000, expected = NullPointerException.class)
+	public void testNullWord() {
+		TermSort.order(new String[] { "a", null });
+	}
+}
@@ -3,6 +3,8 @@ import static org.junit.Assert.*;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 
@@ -218,4 +220,287 @@ public class TestTrieAutocomplete {
 			assertArrayEquals(expected2, observed2);
 		}
 	}
+
+	/**
+	 * Statistics are only collected while a collector is set, and count the
+	 * nodes the best-first search touches
+	 */
+	@Test(timeout = 10000)
+	public void testQueryStats() {
+		TrieAutocomplete test = new TrieAutocomplete(names, weights);
+		QueryStatsCollector collector = new QueryStatsCollector();
+		test.topMatches("b", 1);
+		test.setStatsCollector(collector);
+		test.topMatches("b", 1);
+		test.topMatches("", 8);
+		test.setStatsCollector(null);
+		test.topMatches("c", 1);
+		assertEquals(2, collector.getLatencies().count());
+		QueryStats worst = collector.getWorstQueries().get(0);
+		assertEquals("", worst.getPrefix());
+		// every node of the trie, including the root
+		assertEquals(15, worst.get(QueryStats.Counter.NODES_POPPED));
+		assertEquals(15, worst.get(QueryStats.Counter.NODES_PUSHED));
+		assertEquals(7, worst.get(QueryStats.Counter.RANGE_SCANNED));
+		assertEquals(0, worst.get(QueryStats.Counter.EARLY_TERMINATIONS));
+		QueryStats b = collector.getWorstQueries().get(1);
+		assertEquals("b", b.getPrefix());
+		assertEquals(1, b.get(QueryStats.Counter.EARLY_TERMINATIONS));
+		assertTrue(b.get(QueryStats.Counter.NODES_POPPED) < 7);
+		// queries that find nothing are recorded too
+		collector = new QueryStatsCollector();
+		test.setStatsCollector(collector);
+		test.topMatches("zz", 3);
+		test.topMatches("a", 0);
+		test.topMatch("zz");
+		test.topMatches("b", 2, new AttributeFilter(7));
+		test.setStatsCollector(null);
+		assertEquals(4, collector.getLatencies().count());
+	}
+
+	/**
+	 * Nodes move their children to larger containers as fanout grows, past
+	 * Latin-1 and back; every word must still be found
+	 */
+	@Test(timeout = 10000)
+	public void testWideFanout() {
+		int n = 400;
+		String[] words = new String[2 * n];
+		double[] ws = new double[2 * n];
+		for (int i = 0; i < n; i++) {
+			// Latin-1 first so the root fills an index and a table before
+			// the wider characters arrive
+			char c = (char) (i < 250 ? i + 1 : 0x3000 + i);
+			words[i] = "" + c;
+			ws[i] = i;
+			words[n + i] = "x" + c;
+			ws[n + i] = n + (i * 7919) % n;
+		}
+		TrieAutocomplete test = new TrieAutocomplete(words, ws);
+		Autocompletor brute = new BruteAutocomplete(words, ws);
+		for (int i = 0; i < 2 * n; i++) {
+			assertEquals(words[i], ws[i], test.weightOf(words[i]), 0);
+		}
+		// the root, one node per character and one per character under "x"
+		assertEquals(1 + 2 * n, AutocompletorBenchmark.countNodes(test.myRoot));
+		assertArrayEquals(iterToArr(brute.topMatches("x", 50)), iterToArr(test.topMatches("x", 50)));
+		assertArrayEquals(iterToArr(brute.topMatches("", 2 * n)), iterToArr(test.topMatches("", 2 * n)));
+		assertEquals(brute.topMatch("x"), test.topMatch("x"));
+	}
+
+	/**
+	 * weightOf is 0 for prefixes that are not words and for strings not in the
+	 * trie
+	 */
+	@Test(timeout = 10000)
+	public void testWeightOf() {
+		Autocompletor test = getInstance();
+		assertEquals(6, test.weightOf("ape"), 0);
+		assertEquals(0, test.weightOf("ap"), 0);
+		assertEquals(0, test.weightOf("apex"), 0);
+		assertEquals(0, test.weightOf("zebra"), 0);
+		assertEquals(0, test.weightOf(""), 0);
+	}
+
+	/**
+	 * A word that ends where a longer word passed through, or that is added
+	 * again with a smaller weight, still leads topMatch to the heaviest word
+	 */
+	@Test(timeout = 10000)
+	public void testSubtreeMaxAfterReadd() {
+		Autocompletor test = getInstance(new String[] { "ab", "a", "ac", "ac" }, new double[] { 1, 5, 3, 0.5 });
+		assertEquals("a", test.topMatch("a"));
+		assertArrayEquals(new String[] { "a", "ab", "ac" }, iterToArr(test.topMatches("", 3)));
+		assertEquals(0.5, test.weightOf("ac"), 0);
+		test = getInstance(new String[] { "ab", "ac", "ac" }, new double[] { 1, 3, 0.5 });
+		assertEquals("ab", test.topMatch("a"));
+		assertEquals("ab", test.topMatch(""));
+	}
+
+	/**
+	 * Every weight encoding gives the same answers as BruteAutocomplete, even
+	 * for weights too close for a float or a 16-bit level to tell apart, and
+	 * weightOf returns the exact weights
+	 */
+	@Test(timeout = 10000)
+	public void testWeightEncodings() {
+		Random random = new Random(7);
+		int n = 3000;
+		String[] words = new String[n];
+		double[] ws = new double[n];
+		for (int i = 0; i < n; i++) {
+			words[i] = Integer.toString(i, 5) + (char) ('a' + i % 3);
+			// pairs one apart near a billion, and a spread of small weights
+			ws[i] = i % 2 == 0 ? 1E9 + i : random.nextInt(100) + i / 1E4;
+		}
+		Autocompletor brute = new BruteAutocomplete(words, ws);
+		for (WeightEncoding encoding : WeightEncoding.values()) {
+			Autocompletor test = new TrieAutocomplete(words, ws, encoding);
+			for (int i = 0; i < n; i += 7) {
+				assertEquals(encoding + " " + words[i], ws[i], test.weightOf(words[i]), 0);
+			}
+			for (int i = 0; i < 300; i++) {
+				String word = words[random.nextInt(n)];
+				String prefix = word.substring(0, random.nextInt(word.length()));
+				int k = 1 + random.nextInt(20);
+				assertArrayEquals(encoding + " " + prefix + " " + k, iterToArr(brute.topMatches(prefix, k)),
+						iterToArr(test.topMatches(prefix, k)));
+				assertEquals(encoding + " " + prefix, brute.topMatch(prefix), test.topMatch(prefix));
+			}
+		}
+	}
+
+	/**
+	 * A parallel build makes the same trie as a sequential one, including for
+	 * repeated words, whose last weight counts, and the empty word
+	 */
+	@Test(timeout = 20000)
+	public void testParallelBuild() {
+		Random random = new Random(11);
+		int n = 2 * TrieAutocomplete.PARALLEL_THRESHOLD;
+		String[] words = new String[n];
+		double[] ws = new double[n];
+		for (int i = 0; i < n; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(5);
+			for (int j = 0; j < length; j++) {
+				sb.append("abc\u00e9\u4e2d".charAt(random.nextInt(5)));
+			}
+			words[i] = sb.toString();
+			ws[i] = random.nextInt(1000);
+		}
+		TrieAutocomplete sequential = new TrieAutocomplete(words, ws, WeightEncoding.RANK, null);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			TrieAutocomplete parallel = new TrieAutocomplete(words, ws, WeightEncoding.RANK, pool);
+			assertSameTrie(sequential.myRoot, parallel.myRoot, true);
+			for (String prefix : new String[] { "", "a", "\u00e9\u4e2d", "cc", "x" }) {
+				assertArrayEquals(prefix, iterToArr(sequential.topMatches(prefix, 10)),
+						iterToArr(parallel.topMatches(prefix, 10)));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Sorted input is bulk loaded into the same trie that inserting it out of
+	 * order builds
+	 */
+	@Test(timeout = 10000)
+	public void testSortedBulkLoad() {
+		String[] words = { "", "a", "ab", "abc", "abc", "abd", "b", "ba", "bb", "\u00e9", "\u4e2d", "\u4e2d\u6587" };
+		double[] ws = { 2, 1, 5, 9, 3, 4, 0, 6, 6, 8, 1, 7 };
+		TrieAutocomplete sorted = new TrieAutocomplete(words, ws);
+		// the same words with two distinct ones swapped, so the last "abc"
+		// still wins
+		String[] shuffled = words.clone();
+		shuffled[0] = words[1];
+		shuffled[1] = words[0];
+		double[] shuffledWeights = ws.clone();
+		shuffledWeights[0] = ws[1];
+		shuffledWeights[1] = ws[0];
+		TrieAutocomplete inserted = new TrieAutocomplete(shuffled, shuffledWeights);
+		assertSameTrie(inserted.myRoot, sorted.myRoot, false);
+		assertEquals(3, sorted.weightOf("abc"), 0);
+		assertEquals(2, sorted.weightOf(""), 0);
+		assertArrayEquals(
+				new String[] { "\u00e9", "\u4e2d\u6587", "ba", "bb", "ab", "abd", "abc", "", "a", "\u4e2d", "b" },
+				iterToArr(sorted.topMatches("", 20)));
+		assertEquals("ab", sorted.topMatch("a"));
+		assertEquals("\u4e2d\u6587", sorted.topMatch("\u4e2d"));
+	}
+
+	/**
+	 * Compares two tries node by node; the indexes of words only if the tries
+	 * were built from the same array
+	 */
+	private void assertSameTrie(Node expected, Node actual, boolean sameIndexes) {
+		assertEquals(expected.myInfo, actual.myInfo);
+		assertEquals(expected.isWord(), actual.isWord());
+		if (sameIndexes) {
+			assertEquals(expected.myIndex, actual.myIndex);
+		}
+		assertEquals(expected.mySubtreeMaxKey, actual.mySubtreeMaxKey);
+		assertEquals(expected.childCount(), actual.childCount());
+		for (int i = 0; i < expected.slotCount(); i++) {
+			Node child = expected.slot(i);
+			if (child != null) {
+				assertSameTrie(child, actual.getChild(child.myInfo), sameIndexes);
+			}
+		}
+	}
+
+	/**
+	 * Keys never order weights the wrong way, and compare resolves ties
+	 * between keys exactly
+	 */
+	@Test(timeout = 10000)
+	public void testWeightTable() {
+		double[] ws = { 0, 1, 1, 2.5, 1E9, 1E9 + 1, 1E300 };
+		for (WeightEncoding encoding : WeightEncoding.values()) {
+			WeightTable table = new WeightTable(ws, encoding);
+			for (int i = 0; i + 1 < ws.length; i++) {
+				assertTrue(encoding + " " + i, table.key(i) <= table.key(i + 1));
+				assertEquals(encoding + " " + i, Double.compare(ws[i], ws[i + 1]), table.compare(i, i + 1));
+				assertEquals(ws[i], table.weight(i), 0);
+			}
+		}
+		try {
+			new WeightTable(new double[] { 1, -1 }, WeightEncoding.RANK);
+			fail("negative weight accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * Pages of any size concatenate to the full topMatches list, and a
+	 * continuation works once
+	 */
+	@Test(timeout = 10000)
+	public void testPaging() {
+		Random random = new Random(17);
+		int n = 2000;
+		String[] words = new String[n];
+		double[] ws = new double[n];
+		for (int i = 0; i < n; i++) {
+			words[i] = Integer.toString(i, 3);
+			// distinct weights, so ties cannot be ordered differently
+			ws[i] = (i * 7919) % n;
+		}
+		for (PagedAutocompletor test : new PagedAutocompletor[] { new TrieAutocomplete(words, ws),
+				new TrieAutocomplete(words, ws, WeightEncoding.QUANTIZED_16) }) {
+			for (String prefix : new String[] { "", "1", "12", "2101", "3" }) {
+				String[] all = iterToArr(test.topMatches(prefix, n));
+				ArrayList<String> paged = new ArrayList<String>();
+				int size = 1 + random.nextInt(40);
+				Page page = test.firstPage(prefix, size);
+				paged.addAll(page.getWords());
+				assertPageWeights(test, page);
+				while (page.hasNext()) {
+					assertEquals(size, page.getWords().size());
+					page = test.nextPage(page.getNext(), size);
+					paged.addAll(page.getWords());
+					assertPageWeights(test, page);
+				}
+				assertArrayEquals(prefix + " " + size, all, paged.toArray(new String[0]));
+			}
+			Page first = test.firstPage("", 5);
+			test.nextPage(first.getNext(), 5);
+			try {
+				test.nextPage(first.getNext(), 5);
+				fail("continuation used twice");
+			} catch (IllegalStateException e) {
+			}
+		}
+	}
+
+	/**
+	 * A page carries the weight weightOf gives each of its words
+	 */
+	private static void assertPageWeights(Autocompletor test, Page page) {
+		for (int i = 0; i < page.getWords().size(); i++) {
+			assertEquals(page.getWords().get(i), test.weightOf(page.getWords().get(i)), page.getWeight(i), 0);
+		}
+	}
 }
@@ -1,6 +1,11 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * General trie/priority queue algorithm for implementing Autocompletor
@@ -8,13 +13,56 @@ import java.util.PriorityQueue;
  * @author Austin Lu
  * @author Jeff Forbes
  */
-public class TrieAutocomplete implements Autocompletor {
+public class TrieAutocomplete
+		implements PagedAutocompletor, FilteredAutocompletor, BufferedAutocompletor, QueryStatsSource {
 
 	/**
 	 * Root of entire trie
 	 */
 	protected Node myRoot;
 
+	/**
+	 * The words, indexed by Node.myIndex. They are only decoded to be
+	 * returned; building and searching go by the nodes' chars.
+	 */
+	private final TermArena myWords;
+
+	/**
+	 * The weights of myWords
+	 */
+	private final WeightTable myWeights;
+
+	/**
+	 * The attributes of myWords, or null if they have none
+	 */
+	private TermAttributes myAttributes;
+
+	/**
+	 * Each thread's heaps for buffered queries: nodes by subtree max key,
+	 * negated so the heaviest comes first, and word indexes by weight
+	 */
+	private final ThreadLocal<ObjectHeap<Node>> myNodeHeaps = new ThreadLocal<ObjectHeap<Node>>() {
+		protected ObjectHeap<Node> initialValue() {
+			return new ObjectHeap<Node>(64);
+		}
+	};
+	private final ThreadLocal<IndexHeap> myWordHeaps = new ThreadLocal<IndexHeap>() {
+		protected IndexHeap initialValue() {
+			return new IndexHeap(16);
+		}
+	};
+
+	/**
+	 * Where per-query statistics go, null when they are not being collected
+	 */
+	QueryStatsCollector myStatsCollector;
+
+	/**
+	 * Fewer terms than this are inserted on the calling thread, since forking
+	 * costs more than it saves
+	 */
+	static final int PARALLEL_THRESHOLD = 1 << 14;
+
 	/**
 	 * Constructor method for TrieAutocomplete. Should initialize the trie rooted at
 	 * myRoot, as well as add all nodes necessary to represent the words in terms.
@@ -29,7 +77,83 @@ public class TrieAutocomplete implements Autocompletor {
 	 *             if terms and weights are different length
 	 */
 	public TrieAutocomplete(String[] terms, double[] weights) {
-		if (terms == null || weights == null) {
+		this(terms, weights, WeightEncoding.RANK);
+	}
+
+	/**
+	 * Builds the trie with attributes for its words, which topMatches can
+	 * filter on. Each node keeps a summary of the attributes in its subtrie,
+	 * so a filtered search skips the subtries without a passing word as it
+	 * skips those too light to make the top k. A word appearing more than
+	 * once takes its last attributes as well as its last weight.
+	 * 
+	 * @param attributes
+	 *            - the attribute ids of each term, null for a term with none
+	 * @throws NullPointerException
+	 *             if any argument is null
+	 * @throws IllegalArgumentException
+	 *             if the arrays are different lengths or any weight or
+	 *             attribute id is negative
+	 */
+	public TrieAutocomplete(String[] terms, double[] weights, int[][] attributes) {
+		this(terms, weights);
+		if (attributes == null) {
+			throw new NullPointerException("One or more arguments null");
+		}
+		if (attributes.length != terms.length) {
+			throw new IllegalArgumentException("Terms and attributes are different lengths");
+		}
+		myAttributes = new TermAttributes(attributes);
+		summarizeAttributes(myRoot);
+	}
+
+	/**
+	 * Sets mySubtreeAttributes of node and every node below it, from the
+	 * words up
+	 */
+	private int summarizeAttributes(Node node) {
+		int summary = node.isWord() ? myAttributes.summary(node.myIndex) : 0;
+		for (int i = 0; i < node.slotCount(); i++) {
+			Node child = node.slot(i);
+			if (child != null) {
+				summary |= summarizeAttributes(child);
+			}
+		}
+		node.mySubtreeAttributes = summary;
+		return summary;
+	}
+
+	/**
+	 * Builds the trie with weights stored in the given encoding. RANK is exact
+	 * and lets topMatch walk straight down; the lossy encodings resolve ties
+	 * from the exact weights while searching.
+	 * 
+	 * @throws NullPointerException
+	 *             if any argument is null
+	 * @throws IllegalArgumentException
+	 *             if terms and weights are different length or any weight is
+	 *             negative
+	 */
+	public TrieAutocomplete(String[] terms, double[] weights, WeightEncoding encoding) {
+		this(terms, weights, encoding, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Builds the trie on the given pool: the terms are partitioned by their
+	 * first character and the subtrie under each character is built as a
+	 * separate task, then attached to myRoot. A null pool, or fewer than
+	 * PARALLEL_THRESHOLD terms, builds on the calling thread. Terms that are
+	 * already sorted are bulk loaded in a single pass instead. The trie is the
+	 * same every way.
+	 * 
+	 * @throws NullPointerException
+	 *             if terms, weights or encoding is null
+	 * @throws IllegalArgumentException
+	 *             if terms and weights are different length or any weight is
+	 *             negative
+	 */
+	public TrieAutocomplete(String[] terms, double[] weights, WeightEncoding encoding, ForkJoinPool pool) {
+		if (terms == null || weights == null || encoding == null) {
 			throw new NullPointerException("One or more arguments null");
 		}
 		//Exception for terms and weights
@@ -37,60 +161,247 @@ public class TrieAutocomplete implements Autocompletor {
 			throw new IllegalArgumentException("Terms and weights are different lengths");
 		}
 
-		// Represent the root as a dummy/placeholder node
-		myRoot = new Node('-', null, 0);
+		myWeights = new WeightTable(weights, encoding);
+
+		// Represent the root as a dummy/placeholder node, with no words below yet
+		myRoot = new Node('-', -1);
+
+		if (isSorted(terms)) {
+			bulkLoad(terms);
+		} else if (pool == null || terms.length < PARALLEL_THRESHOLD) {
+			for (int i = 0; i < terms.length; i++) {
+				add(terms, myRoot, 0, i);
+			}
+		} else {
+			buildParallel(terms, pool);
+		}
+		myWords = new TermArena(terms);
+	}
+
+	/**
+	 * Whether words are in ascending order, equal words allowed
+	 * 
+	 * @throws NullPointerException
+	 *             if any word is null
+	 */
+	private static boolean isSorted(String[] words) {
+		for (int i = 0; i < words.length; i++) {
+			if (words[i] == null) {
+				throw new NullPointerException("One or more arguments null");
+			}
+			if (i > 0 && words[i - 1].compareTo(words[i]) > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Builds the trie from sorted words in one pass, without looking up any
+	 * child. The path to the previous word is kept on a stack; each word pops
+	 * the nodes past its common prefix with the previous word and pushes its
+	 * own new ones, which always sort after their siblings. A node's subtree
+	 * max is final when it is popped, and is folded into its parent then, so
+	 * the maximums are computed bottom-up in O(total characters).
+	 */
+	private void bulkLoad(String[] words) {
+		Node[] path = new Node[16];
+		path[0] = myRoot;
+		int depth = 0;
+		String previous = "";
+		for (int index = 0; index < words.length; index++) {
+			String word = words[index];
+			int common = 0;
+			int limit = Math.min(depth, word.length());
+			while (common < limit && previous.charAt(common) == word.charAt(common)) {
+				common++;
+			}
+			for (; depth > common; depth--) {
+				pop(path[depth], path[depth - 1]);
+			}
+			if (path.length <= word.length()) {
+				path = Arrays.copyOf(path, Math.max(2 * path.length, word.length() + 1));
+			}
+			for (; depth < word.length(); depth++) {
+				Node child = new Node(word.charAt(depth), -1);
+				path[depth].putChild(child);
+				path[depth + 1] = child;
+			}
+			// a repeated word is the same node, and the later index wins
+			path[depth].myIndex = index;
+			previous = word;
+		}
+		for (; depth > 0; depth--) {
+			pop(path[depth], path[depth - 1]);
+		}
+		if (myRoot.isWord()) {
+			myRoot.mySubtreeMaxKey = Math.max(myRoot.mySubtreeMaxKey, myWeights.key(myRoot.myIndex));
+		}
+	}
+
+	/**
+	 * Finishes node's subtree max with its own word and folds it into parent
+	 */
+	private void pop(Node node, Node parent) {
+		if (node.isWord()) {
+			node.mySubtreeMaxKey = Math.max(node.mySubtreeMaxKey, myWeights.key(node.myIndex));
+		}
+		parent.mySubtreeMaxKey = Math.max(parent.mySubtreeMaxKey, node.mySubtreeMaxKey);
+	}
+
+	/**
+	 * Groups the indexes of the words by first character, keeping their order
+	 * within a group so the last of several equal words still wins, builds the
+	 * groups' subtries on pool and attaches them to myRoot. Empty words end at
+	 * the root and are added last.
+	 */
+	private void buildParallel(String[] words, ForkJoinPool pool) {
+		int[] start = new int[Character.MAX_VALUE + 2];
+		int empty = 0;
+		for (String word : words) {
+			if (word == null) {
+				throw new NullPointerException("One or more arguments null");
+			}
+			if (word.isEmpty()) {
+				empty++;
+			} else {
+				start[word.charAt(0) + 1]++;
+			}
+		}
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			start[c + 1] += start[c];
+		}
+		int[] order = new int[words.length - empty];
+		int[] next = start.clone();
+		for (int i = 0; i < words.length; i++) {
+			if (!words[i].isEmpty()) {
+				order[next[words[i].charAt(0)]++] = i;
+			}
+		}
+		final ArrayList<SubtrieTask> tasks = new ArrayList<SubtrieTask>();
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			if (start[c] < start[c + 1]) {
+				tasks.add(new SubtrieTask(words, (char) c, order, start[c], start[c + 1]));
+			}
+		}
+		pool.invoke(new RecursiveAction() {
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+		for (SubtrieTask task : tasks) {
+			myRoot.putChild(task.mySubroot);
+			if (myRoot.mySubtreeMaxKey < task.mySubroot.mySubtreeMaxKey) {
+				myRoot.mySubtreeMaxKey = task.mySubroot.mySubtreeMaxKey;
+			}
+		}
+		if (empty > 0) {
+			for (int i = 0; i < words.length; i++) {
+				if (words[i].isEmpty()) {
+					add(words, myRoot, 0, i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the subtrie for the words order[from, to), which all start with
+	 * the same character. Only this task touches its nodes until it is joined.
+	 */
+	private class SubtrieTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final String[] myTerms;
+		final Node mySubroot;
+		final int[] myOrder;
+		final int myFrom, myTo;
+
+		SubtrieTask(String[] terms, char first, int[] order, int from, int to) {
+			myTerms = terms;
+			mySubroot = new Node(first, -1);
+			myOrder = order;
+			myFrom = from;
+			myTo = to;
+		}
 
-		for (int i = 0; i < terms.length; i++) {
-			add(terms[i], weights[i]);
+		protected void compute() {
+			for (int i = myFrom; i < myTo; i++) {
+				add(myTerms, mySubroot, 1, myOrder[i]);
+			}
 		}
 	}
 
 	/**
-	 * Add the word with given weight to the trie. If word already exists in the
+	 * Add the word with index i to the trie. If word already exists in the
 	 * trie, no new nodes should be created, but the weight of word should be
 	 * updated.
 	 * 
 	 * In adding a word, this method should do the following: Create any necessary
-	 * intermediate nodes if they do not exist. Update the subtreeMaxWeight of all
-	 * nodes in the path from root to the node representing word. Set the value of
-	 * myWord, myWeight, isWord, and mySubtreeMaxWeight of the node corresponding to
-	 * the added word to the correct values
+	 * intermediate nodes if they do not exist. Update the subtree max key of all
+	 * nodes in the path from root to the node representing word. Set the index
+	 * and subtree max key of the node corresponding to the added word.
+	 * 
+	 * The word is words[index], added below top, the node for its first depth
+	 * characters.
 	 * 
 	 * @throws a
 	 *             NullPointerException if word is null
-	 * @throws an
-	 *             IllegalArgumentException if weight is negative.
 	 */
-	private void add(String word, double weight) {
-		//Exception weight being negative
-		if (weight < 0) {
-			throw new IllegalArgumentException("Illegal Weight");
-		}
+	private void add(String[] words, Node top, int depth, int index) {
+		String word = words[index];
 		//Exception if word is null 
 		if (word == null) {
 			throw new NullPointerException("One or more arguments null");
 		}
-		//Initialize node current as the root
-		Node current = myRoot;
-		//Add new nodes to the trie and set weight for each
-		for (int i = 0; i < word.length(); i++) {
+		int key = myWeights.key(index);
+		//Initialize node current as the top of the path
+		Node current = top;
+		//Add new nodes to the trie and raise the subtree max of each on the path
+		for (int i = depth; i < word.length(); i++) {
 			char ch = word.charAt(i);
-			//Set mySubtreeMaxWeight to be the maximum of given weight and mySubt
-			if (current.mySubtreeMaxWeight<weight) {
-				current.mySubtreeMaxWeight = weight;
+			if (current.mySubtreeMaxKey < key) {
+				current.mySubtreeMaxKey = key;
+			}
+			Node child = current.getChild(ch);
+			if (child == null) {
+				child = new Node(ch, key);
+				current.putChild(child);
+			}
+			current = child;
+		}
+		//A word lowering its own weight may leave stale maximums along its path
+		boolean lowered = current.isWord() && key < myWeights.key(current.myIndex);
+		current.myIndex = index;
+		//The word may end at a node that was already on the path of a longer word
+		if (current.mySubtreeMaxKey < key) {
+			current.mySubtreeMaxKey = key;
+		}
+		if (lowered) {
+			recomputeSubtreeMaxKey(top, word, depth);
+		}
+	}
+
+	/**
+	 * Recomputes mySubtreeMaxKey of node and its descendants on the path of
+	 * word, from the children up.
+	 */
+	private int recomputeSubtreeMaxKey(Node node, String word, int depth) {
+		int max = node.isWord() ? myWeights.key(node.myIndex) : -1;
+		for (int i = 0; i < node.slotCount(); i++) {
+			Node child = node.slot(i);
+			if (child == null) {
+				continue;
 			}
-			if (current.children.get(ch)==null) {
-				current.children.put(ch, new Node(ch, current, weight));
+			if (depth < word.length() && child.myInfo == word.charAt(depth)) {
+				max = Math.max(max, recomputeSubtreeMaxKey(child, word, depth + 1));
+			} else {
+				max = Math.max(max, child.mySubtreeMaxKey);
 			}
-			current = current.children.get(ch);
 		}
-		//Set the current node to being a word because we've added entire string to the trie
-		current.isWord = true;
-		//Set the current node to have the specific word given because it is the last element
-		current.myWord = word;
-		//Set weight of final node to be given weight
-		current.myWeight = weight;
+		node.mySubtreeMaxKey = max;
+		return max;
 	}
+
 	/**
 	 * Required by the Autocompletor interface. Returns an array containing the k
 	 * words in the trie with the largest weight which match the given prefix, in
@@ -112,56 +423,159 @@ public class TrieAutocomplete implements Autocompletor {
 	 *             NullPointerException if prefix is null
 	 */
 	public Iterable<String> topMatches(String prefix, int k) {
+		return topMatches(prefix, k, null);
+	}
+
+	/**
+	 * topMatches among the words passing filter. Subtries whose attribute
+	 * summary rules the filter out are never pushed, so the search visits
+	 * about what an unfiltered one over just the passing words would.
+	 */
+	public Iterable<String> topMatches(String prefix, int k, AttributeFilter filter) {
 		if (prefix == null) {
 			throw new NullPointerException("Invalid parameter");
 		}
 		if (k < 0) {
 			throw new IllegalArgumentException("Illegal value of k:" + k);
 		}
+		QueryStats stats = myStatsCollector == null ? null : new QueryStats(prefix, k);
+		long start = stats == null ? 0 : System.nanoTime();
 		//Initialize current node as root
 		Node current = myRoot;
 		//Initialize empty iterable arraylist to return in special cases
 		ArrayList<String> emptyCase = new ArrayList<>();
 		if (k == 0) {
+			if (stats != null) {
+				stats.nanos = System.nanoTime() - start;
+				myStatsCollector.record(stats);
+			}
 			return emptyCase;
 		}
 		//Get to the prefix node
 		for (int i = 0; i < prefix.length(); i++) {
 			char ch = prefix.charAt(i);
-			current = current.children.get(ch);
+			current = current.getChild(ch);
 			//If prefix is not stored return an empty string
 			if(current == null) {
+				if (stats != null) {
+					stats.nanos = System.nanoTime() - start;
+					myStatsCollector.record(stats);
+				}
 				return emptyCase;
 			}
 		}
+		if (filter != null && (myAttributes == null || !filter.mayMatch(current.mySubtreeAttributes))) {
+			if (stats != null) {
+				stats.nanos = System.nanoTime() - start;
+				myStatsCollector.record(stats);
+			}
+			return emptyCase;
+		}
 		//Initialize priority queue for nodes
 		PriorityQueue<Node> nodePQ = new PriorityQueue<Node>(new Node.ReverseSubtreeMaxWeightComparator());
-		//Initialize Priority Queue for terms
-		PriorityQueue<Term> termPQ = new PriorityQueue<Term>(k, new Term.WeightOrder());
+		//Initialize Priority Queue for the word nodes found, lightest first
+		PriorityQueue<Node> termPQ = new PriorityQueue<Node>(k, myWordOrder);
 		//Add the current node to the priority queue
 		nodePQ.add(current);
+		if (stats != null) {
+			stats.nodesPushed++;
+		}
 		while (nodePQ.size()>0) {
+			//Stop once no node left can hold a word heavier than the k-th found
+			if (termPQ.size() == k && myWeights.key(termPQ.peek().myIndex) > nodePQ.peek().mySubtreeMaxKey) {
+				if (stats != null) {
+					stats.earlyTermination = true;
+				}
+				break;
+			}
 			current = nodePQ.remove();
-			if(current.isWord) {
-				termPQ.add(new Term(current.getWord(), current.getWeight()));
+			if (stats != null) {
+				stats.nodesPopped++;
+			}
+			if (current.isWord() && (filter == null || myAttributes.matches(current.myIndex, filter))) {
+				termPQ.add(current);
+				if (stats != null) {
+					stats.rangeScanned++;
+				}
 			}
 			if (termPQ.size() > k) {
 				termPQ.remove();
+				if (stats != null) {
+					stats.heapReplacements++;
+				}
 			}
-			if (termPQ.peek() != null && nodePQ.peek() != null && termPQ.peek().getWeight() > nodePQ.peek().mySubtreeMaxWeight && termPQ.size() == k) {
-					break;
-			}
-			for (Node below: current.children.values()) {
-				nodePQ.add(below);
+			for (int i = 0; i < current.slotCount(); i++) {
+				Node below = current.slot(i);
+				if (below != null && (filter == null || filter.mayMatch(below.mySubtreeAttributes))) {
+					nodePQ.add(below);
+					if (stats != null) {
+						stats.nodesPushed++;
+					}
+				}
 			}
 		}
 		LinkedList<String> ret = new LinkedList<String>();
 		while(termPQ.size()>0) {
-			ret.addFirst(termPQ.remove().getWord());
+			ret.addFirst(myWords.word(termPQ.remove().myIndex));
+		}
+		if (stats != null) {
+			stats.nanos = System.nanoTime() - start;
+			myStatsCollector.record(stats);
 		}
 		return ret;
 	}
 
+	/**
+	 * topMatches into results: the same best-first search, on this thread's
+	 * heaps rather than new PriorityQueues, with the words decoded straight
+	 * from the arena into results
+	 */
+	public int topMatches(CharSequence prefix, ResultBuffer results) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		int k = results.capacity();
+		results.clear();
+		Node current = myRoot;
+		for (int i = 0; i < prefix.length() && current != null; i++) {
+			current = current.getChild(prefix.charAt(i));
+		}
+		if (current == null || k == 0) {
+			return 0;
+		}
+		ObjectHeap<Node> nodeHeap = myNodeHeaps.get();
+		IndexHeap wordHeap = myWordHeaps.get();
+		nodeHeap.clear();
+		wordHeap.clear();
+		nodeHeap.add(current, -current.mySubtreeMaxKey);
+		while (!nodeHeap.isEmpty()) {
+			if (wordHeap.size() == k && myWeights.key(wordHeap.peek()) > nodeHeap.peek().mySubtreeMaxKey) {
+				break;
+			}
+			current = nodeHeap.remove();
+			if (current.isWord()) {
+				double weight = myWeights.weight(current.myIndex);
+				if (wordHeap.size() < k) {
+					wordHeap.add(current.myIndex, weight);
+				} else if (wordHeap.peekPriority() < weight) {
+					wordHeap.replaceTop(current.myIndex, weight);
+				}
+			}
+			for (int i = 0; i < current.slotCount(); i++) {
+				Node below = current.slot(i);
+				if (below != null) {
+					nodeHeap.add(below, -below.mySubtreeMaxKey);
+				}
+			}
+		}
+		nodeHeap.clear();
+		int n = wordHeap.drainDescending();
+		for (int i = 0; i < n; i++) {
+			myWords.addWord(wordHeap.item(i), wordHeap.priority(i), results);
+		}
+		return n;
+	}
+
 	/**
 	 * Given a prefix, returns the largest-weight word in the trie starting with
 	 * that prefix.
@@ -177,25 +591,158 @@ public class TrieAutocomplete implements Autocompletor {
 		if (prefix == null) {
 			throw new NullPointerException("Invalid Prefix");
 		}
+		if (!myWeights.isExact()) {
+			// equal keys do not mean equal weights, so ties need the full search
+			Iterator<String> best = topMatches(prefix, 1).iterator();
+			return best.hasNext() ? best.next() : "";
+		}
+		QueryStats stats = myStatsCollector == null ? null : new QueryStats(prefix, 1);
+		long start = stats == null ? 0 : System.nanoTime();
 		Node current = myRoot;	
 		for (int i = 0; i< prefix.length(); i++) {
 			char ch = prefix.charAt(i);
-			current = current.children.get(ch);
+			current = current.getChild(ch);
 			//If prefix is not stored return an empty string
 			if(current == null) {
+				if (stats != null) {
+					stats.nanos = System.nanoTime() - start;
+					myStatsCollector.record(stats);
+				}
 				return "";
 			}
 		}
-		while(current.mySubtreeMaxWeight != current.myWeight) {
-			for (Node below: current.children.values()) {
-				if (below.mySubtreeMaxWeight == current.mySubtreeMaxWeight) {
+		if (current.mySubtreeMaxKey < 0) {
+			//No words at all
+			if (stats != null) {
+				stats.nanos = System.nanoTime() - start;
+				myStatsCollector.record(stats);
+			}
+			return "";
+		}
+		while(!current.isWord() || myWeights.key(current.myIndex) != current.mySubtreeMaxKey) {
+			for (int i = 0; i < current.slotCount(); i++) {
+				Node below = current.slot(i);
+				if (below != null && below.mySubtreeMaxKey == current.mySubtreeMaxKey) {
 					current = below;
 					break;
 				}
 			}
+			if (stats != null) {
+				stats.nodesPopped++;
+			}
 		}
-		return current.getWord();
-}
+		if (stats != null) {
+			stats.rangeScanned = 1;
+			stats.earlyTermination = true;
+			stats.nanos = System.nanoTime() - start;
+			myStatsCollector.record(stats);
+		}
+		return myWords.word(current.myIndex);
+	}
+
+	/**
+	 * Orders word nodes by ascending weight
+	 */
+	private final Comparator<Node> myWordOrder = new Comparator<Node>() {
+		public int compare(Node v, Node w) {
+			return myWeights.compare(v.myIndex, w.myIndex);
+		}
+	};
+
+	/**
+	 * An entry of a paged search's frontier: a subtree still to explore, or
+	 * the word at a node, found but not yet returned
+	 */
+	private static class PageEntry {
+		final Node myNode;
+		final boolean myIsWord;
+
+		PageEntry(Node node, boolean isWord) {
+			myNode = node;
+			myIsWord = isWord;
+		}
+	}
+
+	/**
+	 * Heaviest first by subtree max or word key. On equal keys subtrees come
+	 * first, since under a lossy encoding one may still hold a heavier word;
+	 * words with equal keys are ordered by their exact weights.
+	 */
+	private final Comparator<PageEntry> myPageOrder = new Comparator<PageEntry>() {
+		public int compare(PageEntry v, PageEntry w) {
+			int vKey = v.myIsWord ? myWeights.key(v.myNode.myIndex) : v.myNode.mySubtreeMaxKey;
+			int wKey = w.myIsWord ? myWeights.key(w.myNode.myIndex) : w.myNode.mySubtreeMaxKey;
+			if (vKey != wKey) {
+				return Integer.compare(wKey, vKey);
+			}
+			if (v.myIsWord != w.myIsWord) {
+				return v.myIsWord ? 1 : -1;
+			}
+			return v.myIsWord ? myWeights.compare(w.myNode.myIndex, v.myNode.myIndex) : 0;
+		}
+	};
+
+	/**
+	 * Starts a best-first search from the prefix node whose frontier is kept
+	 * between pages. Words leave the frontier in descending weight order, so
+	 * a page pops about size entries times the fan-out, wherever it starts.
+	 */
+	public Page firstPage(String prefix, int size) {
+		if (prefix == null) {
+			throw new NullPointerException("Invalid parameter");
+		}
+		if (size < 0) {
+			throw new IllegalArgumentException("Illegal page size:" + size);
+		}
+		PriorityQueue<PageEntry> frontier = new PriorityQueue<PageEntry>(myPageOrder);
+		Node current = myRoot;
+		for (int i = 0; i < prefix.length() && current != null; i++) {
+			current = current.getChild(prefix.charAt(i));
+		}
+		if (current != null) {
+			frontier.add(new PageEntry(current, false));
+		}
+		return page(frontier, size);
+	}
+
+	@SuppressWarnings("unchecked")
+	public Page nextPage(Page.Continuation next, int size) {
+		if (next == null) {
+			throw new NullPointerException("Invalid continuation");
+		}
+		if (size < 0) {
+			throw new IllegalArgumentException("Illegal page size:" + size);
+		}
+		return page((PriorityQueue<PageEntry>) next.take(this), size);
+	}
+
+	private Page page(PriorityQueue<PageEntry> frontier, int size) {
+		ArrayList<String> words = new ArrayList<String>(size);
+		double[] weights = new double[size];
+		while (words.size() < size && !frontier.isEmpty()) {
+			PageEntry entry = frontier.remove();
+			Node node = entry.myNode;
+			if (entry.myIsWord) {
+				weights[words.size()] = myWeights.weight(node.myIndex);
+				words.add(myWords.word(node.myIndex));
+				continue;
+			}
+			if (node.isWord()) {
+				frontier.add(new PageEntry(node, true));
+			}
+			for (int i = 0; i < node.slotCount(); i++) {
+				Node child = node.slot(i);
+				if (child != null) {
+					frontier.add(new PageEntry(child, false));
+				}
+			}
+		}
+		return new Page(words, weights, frontier.isEmpty() ? null : new Page.Continuation(this, frontier));
+	}
+
+	public void setStatsCollector(QueryStatsCollector collector) {
+		myStatsCollector = collector;
+	}
 
 	/**
 	 * Return the weight of a given term. If term is not in the dictionary, return
@@ -203,13 +750,12 @@ public class TrieAutocomplete implements Autocompletor {
 	 */
 	public double weightOf(String term) {
 		Node current = myRoot;
-		char[] chars = term.toCharArray();
-		for (char c: chars) {
-			if (current.children == null) {
+		for (int i = 0; i < term.length(); i++) {
+			current = current.getChild(term.charAt(i));
+			if (current == null) {
 				return 0.0;
 			}
-			current = current.children.get(c);
 		}
-		return current.getWeight();
+		return current.isWord() ? myWeights.weight(current.myIndex) : 0.0;
 	}
 }
@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One user's boosts for the suggestions they selected recently. Selecting a
+ * word adds a fixed boost to it, and boosts halve every half-life, so words
+ * picked often and lately rank highest. Only the capacity most boosted words
+ * are kept; the overlay stays small enough to scan on every query.
+ *
+ * The words are kept sorted, so those starting with a prefix are one range.
+ * Thread-safe.
+ */
+public class UserBoosts {
+
+	private final double myBoost;
+	private final double myHalfLife;
+	private final int myCapacity;
+
+	/**
+	 * For each word, its boost and the time in millis it was last updated
+	 */
+	private final TreeMap<String, double[]> myBoosts = new TreeMap<String, double[]>();
+
+	/**
+	 * @param boost
+	 *            - added to a word's boost each time it is selected
+	 * @param halfLifeMillis
+	 *            - how long a boost takes to fall to half
+	 * @param capacity
+	 *            - the most words kept
+	 * @throws IllegalArgumentException
+	 *             if boost is negative or halfLifeMillis or capacity is not
+	 *             positive
+	 */
+	public UserBoosts(double boost, long halfLifeMillis, int capacity) {
+		if (!(boost >= 0) || halfLifeMillis <= 0 || capacity <= 0) {
+			throw new IllegalArgumentException("Illegal boost " + boost + ", half-life " + halfLifeMillis
+					+ " or capacity " + capacity);
+		}
+		myBoost = boost;
+		myHalfLife = halfLifeMillis;
+		myCapacity = capacity;
+	}
+
+	/**
+	 * Records that word was selected now
+	 */
+	public void select(String word) {
+		select(word, System.currentTimeMillis());
+	}
+
+	/**
+	 * Records that word was selected at nowMillis
+	 *
+	 * @throws NullPointerException
+	 *             if word is null
+	 */
+	public synchronized void select(String word, long nowMillis) {
+		if (word == null) {
+			throw new NullPointerException("Invalid word");
+		}
+		double[] entry = myBoosts.get(word);
+		if (entry == null) {
+			if (myBoosts.size() == myCapacity) {
+				evictWeakest(nowMillis);
+			}
+			entry = new double[] { 0, nowMillis };
+			myBoosts.put(word, entry);
+		}
+		entry[0] = decayed(entry, nowMillis) + myBoost;
+		entry[1] = nowMillis;
+	}
+
+	private double decayed(double[] entry, long nowMillis) {
+		return entry[0] * Math.pow(0.5, Math.max(0, nowMillis - entry[1]) / myHalfLife);
+	}
+
+	private void evictWeakest(long nowMillis) {
+		String weakest = null;
+		double least = Double.POSITIVE_INFINITY;
+		for (Map.Entry<String, double[]> e : myBoosts.entrySet()) {
+			double boost = decayed(e.getValue(), nowMillis);
+			if (boost < least) {
+				least = boost;
+				weakest = e.getKey();
+			}
+		}
+		myBoosts.remove(weakest);
+	}
+
+	/**
+	 * The current boost of word, 0 if it has none
+	 */
+	public double boost(String word) {
+		return boost(word, System.currentTimeMillis());
+	}
+
+	public synchronized double boost(String word, long nowMillis) {
+		double[] entry = myBoosts.get(word);
+		return entry == null ? 0 : decayed(entry, nowMillis);
+	}
+
+	/**
+	 * The boosted words starting with prefix and their boosts at nowMillis,
+	 * in sorted order of the words
+	 */
+	public synchronized List<Term> matches(String prefix, long nowMillis) {
+		ArrayList<Term> matches = new ArrayList<Term>();
+		Iterator<Map.Entry<String, double[]>> it = myBoosts.tailMap(prefix, true).entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, double[]> e = it.next();
+			if (!e.getKey().startsWith(prefix)) {
+				break;
+			}
+			matches.add(new Term(e.getKey(), decayed(e.getValue(), nowMillis)));
+		}
+		return matches;
+	}
+
+	public synchronized int size() {
+		return myBoosts.size();
+	}
+}
@@ -0,0 +1,61 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads without requiring a JDK that has them. The project
+ * still compiles for Java 8, so the JDK 21 methods are looked up by
+ * reflection; on older JDKs a cached pool of platform threads is used instead.
+ */
+public class VirtualThreads {
+
+	private static final Method NEW_VIRTUAL_EXECUTOR = lookup(Executors.class, "newVirtualThreadPerTaskExecutor");
+	private static final Method START_VIRTUAL_THREAD = lookup(Thread.class, "startVirtualThread", Runnable.class);
+
+	private static Method lookup(Class<?> owner, String name, Class<?>... parameterTypes) {
+		try {
+			return owner.getMethod(name, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Whether this JVM supports virtual threads.
+	 */
+	public static boolean isAvailable() {
+		return NEW_VIRTUAL_EXECUTOR != null && START_VIRTUAL_THREAD != null;
+	}
+
+	/**
+	 * Returns an executor that runs each task on a new virtual thread, or a
+	 * cached platform thread pool if virtual threads are not available.
+	 */
+	public static ExecutorService newThreadPerTaskExecutor() {
+		if (NEW_VIRTUAL_EXECUTOR != null) {
+			try {
+				return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				// fall through to platform threads
+			}
+		}
+		return Executors.newCachedThreadPool();
+	}
+
+	/**
+	 * Starts task on a new virtual thread if virtual is true and they are
+	 * available, otherwise on a new platform thread.
+	 */
+	public static Thread start(Runnable task, boolean virtual) {
+		if (virtual && START_VIRTUAL_THREAD != null) {
+			try {
+				return (Thread) START_VIRTUAL_THREAD.invoke(null, task);
+			} catch (ReflectiveOperationException e) {
+				// fall through to platform threads
+			}
+		}
+		Thread t = new Thread(task);
+		t.start();
+		return t;
+	}
+}
@@ -0,0 +1,23 @@
+/**
+ * How a WeightTable stores the weights it ranks by. Every encoding keeps the
+ * order of the weights, so the largest weight always has the largest key;
+ * the lossy ones may give nearby weights the same key, and those ties are
+ * resolved from the exact weights.
+ */
+public enum WeightEncoding {
+	/**
+	 * Dense rank among the distinct weights, 4 bytes a term. Exact: the
+	 * weights themselves are kept once per distinct value, which for counts
+	 * such as baby-names.txt's is far fewer than the terms.
+	 */
+	RANK,
+	/**
+	 * The weight rounded to a float, 4 bytes a term, exact weights on the side
+	 */
+	FLOAT,
+	/**
+	 * One of 65536 levels spread logarithmically between the smallest and
+	 * largest weight, 2 bytes a term, exact weights on the side
+	 */
+	QUANTIZED_16
+}
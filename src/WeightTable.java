@@ -0,0 +1,132 @@
+import java.util.Arrays;
+
+/**
+ * The weights of a list of terms, stored as compact order-preserving int keys
+ * in one of the WeightEncodings. Indexes compare by key first, which is a
+ * primitive int compare, and only look up the exact weights when keys tie
+ * under a lossy encoding. weight(i) always returns the exact original value.
+ */
+public class WeightTable {
+
+	private static final int LEVELS = 1 << 16;
+
+	private final WeightEncoding myEncoding;
+
+	// exactly one of these holds the keys, depending on the encoding
+	private int[] myRanks;
+	private float[] myFloats;
+	private char[] myLevels;
+
+	/**
+	 * Distinct weights in ascending order, for RANK
+	 */
+	private double[] myDistinct;
+	/**
+	 * The weight of every term, for the lossy encodings
+	 */
+	private double[] myExact;
+
+	/**
+	 * @throws NullPointerException
+	 *             if either argument is null
+	 * @throws IllegalArgumentException
+	 *             if any weight is negative or NaN
+	 */
+	public WeightTable(double[] weights, WeightEncoding encoding) {
+		if (weights == null || encoding == null) {
+			throw new NullPointerException("One or more arguments null");
+		}
+		for (double w : weights) {
+			if (!(w >= 0)) {
+				throw new IllegalArgumentException("Illegal weight " + w);
+			}
+		}
+		myEncoding = encoding;
+		switch (encoding) {
+		case RANK:
+			double[] sorted = weights.clone();
+			Arrays.sort(sorted);
+			int n = 0;
+			for (int i = 0; i < sorted.length; i++) {
+				if (n == 0 || sorted[i] != sorted[n - 1]) {
+					sorted[n++] = sorted[i];
+				}
+			}
+			myDistinct = Arrays.copyOf(sorted, n);
+			myRanks = new int[weights.length];
+			for (int i = 0; i < weights.length; i++) {
+				myRanks[i] = Arrays.binarySearch(myDistinct, weights[i]);
+			}
+			break;
+		case FLOAT:
+			myExact = weights.clone();
+			myFloats = new float[weights.length];
+			for (int i = 0; i < weights.length; i++) {
+				myFloats[i] = (float) weights[i];
+			}
+			break;
+		default:
+			myExact = weights.clone();
+			myLevels = new char[weights.length];
+			double lo = Double.POSITIVE_INFINITY;
+			double hi = Double.NEGATIVE_INFINITY;
+			for (double w : weights) {
+				lo = Math.min(lo, Math.log1p(w));
+				hi = Math.max(hi, Math.log1p(w));
+			}
+			double scale = hi > lo ? (LEVELS - 1) / (hi - lo) : 0;
+			for (int i = 0; i < weights.length; i++) {
+				myLevels[i] = (char) Math.round((Math.log1p(weights[i]) - lo) * scale);
+			}
+		}
+	}
+
+	public WeightEncoding getEncoding() {
+		return myEncoding;
+	}
+
+	public int size() {
+		return myEncoding == WeightEncoding.RANK ? myRanks.length : myExact.length;
+	}
+
+	/**
+	 * Whether equal keys always mean equal weights
+	 */
+	public boolean isExact() {
+		return myEncoding == WeightEncoding.RANK;
+	}
+
+	/**
+	 * Key of the weight of term i. Larger weights never have smaller keys.
+	 */
+	public int key(int i) {
+		switch (myEncoding) {
+		case RANK:
+			return myRanks[i];
+		case FLOAT:
+			// the bits of non-negative floats order like the floats
+			return Float.floatToIntBits(myFloats[i]);
+		default:
+			return myLevels[i];
+		}
+	}
+
+	/**
+	 * The exact weight of term i
+	 */
+	public double weight(int i) {
+		return myEncoding == WeightEncoding.RANK ? myDistinct[myRanks[i]] : myExact[i];
+	}
+
+	/**
+	 * Compares the weights of terms i and j, by key and then, if the keys tie
+	 * and the encoding is lossy, exactly
+	 */
+	public int compare(int i, int j) {
+		int c = Integer.compare(key(i), key(j));
+		if (c != 0 || isExact()) {
+			return c;
+		}
+		return Double.compare(myExact[i], myExact[j]);
+	}
+}
@@ -0,0 +1,49 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws ranks 0..n-1 from a Zipfian distribution, where rank r is chosen with
+ * probability proportional to 1/(r+1)^exponent. Rank 0 is the most popular.
+ * The cumulative distribution is computed once, so each draw is a binary
+ * search.
+ */
+public class ZipfGenerator {
+
+	private final double[] myCumulative;
+
+	/**
+	 * @param n
+	 *            - number of ranks
+	 * @param exponent
+	 *            - skew of the distribution, 0 for uniform; around 1 for query
+	 *            traffic
+	 * @throws IllegalArgumentException
+	 *             if n is not positive or exponent is negative
+	 */
+	public ZipfGenerator(int n, double exponent) {
+		if (n <= 0) {
+			throw new IllegalArgumentException("Illegal number of ranks: " + n);
+		}
+		if (exponent < 0) {
+			throw new IllegalArgumentException("Negative exponent: " + exponent);
+		}
+		myCumulative = new double[n];
+		double sum = 0;
+		for (int r = 0; r < n; r++) {
+			sum += 1 / Math.pow(r + 1, exponent);
+			myCumulative[r] = sum;
+		}
+		for (int r = 0; r < n; r++) {
+			myCumulative[r] /= sum;
+		}
+	}
+
+	/**
+	 * Returns a random rank.
+	 */
+	public int next(Random random) {
+		int r = Arrays.binarySearch(myCumulative, random.nextDouble());
+		r = r < 0 ? -r - 1 : r;
+		return Math.min(r, myCumulative.length - 1);
+	}
+}